@@ -0,0 +1,127 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder event of a text command of a server, with the time of each of its phases,
+ * as traced by CommandTracer. Committed only if the server's tracer has events on, and recorded
+ * only while a recording that enables "minesweeper.Command" runs, e.g. one started with
+ * -XX:StartFlightRecording:settings=profile, or with jcmd PID JFR.start. Needs jdk.jfr, which is
+ * part of Java 11 and later, and of Java 8 from update 262 on, so it is built apart from the
+ * other classes, from src-jfr. CommandTracer only loads its Recorder, by name, when events are
+ * on, so that only --trace-events needs it at run time.
+ *
+ * Phases that a command skipped have a time of 0.
+ */
+@Name("minesweeper.Command")
+@Label("Minesweeper Command")
+@Category("Minesweeper")
+@Description("A text command of a client, with the time of each phase of handling it")
+@Enabled(true)
+@Threshold("0 ms")
+@StackTrace(false)
+class CommandEvent extends Event {
+
+    @Label("Command")
+    String command;
+
+    @Label("Total")
+    @Timespan(Timespan.NANOSECONDS)
+    long total;
+
+    @Label("Throttle")
+    @Description("Waiting for the client's rate limit")
+    @Timespan(Timespan.NANOSECONDS)
+    long throttle;
+
+    @Label("Parse")
+    @Timespan(Timespan.NANOSECONDS)
+    long parse;
+
+    @Label("Lock")
+    @Description("Waiting for the lock on the board")
+    @Timespan(Timespan.NANOSECONDS)
+    long lock;
+
+    @Label("Apply")
+    @Timespan(Timespan.NANOSECONDS)
+    long apply;
+
+    @Label("Batch")
+    @Description("Waiting for the board owner to apply the command")
+    @Timespan(Timespan.NANOSECONDS)
+    long batch;
+
+    @Label("Render")
+    @Timespan(Timespan.NANOSECONDS)
+    long render;
+
+    @Label("Write")
+    @Description("Queuing the response for the client")
+    @Timespan(Timespan.NANOSECONDS)
+    long write;
+
+    /*
+     * Abstraction function:
+     *  AF(command, total, throttle, parse, lock, apply, batch, render, write) =
+     *      the command, handled in total nanoseconds, of which it spent each of the others
+     *      in the phase of that name
+     * Rep invariant:
+     *  every time >= 0
+     * Rep exposure:
+     *  fields are package-private, set by CommandTracer before the event is committed
+     * Thread safety:
+     *  confined to the thread that commits it
+     */
+
+    /**
+     * Commits a CommandEvent for each command, as CommandTracer.EventRecorder specifies.
+     */
+    static final class Recorder implements CommandTracer.EventRecorder {
+
+        private static final EventType TYPE = EventType.getEventType(CommandEvent.class);
+
+        /*
+         * Abstraction function:
+         *  AF() = the committer of CommandEvents
+         * Rep invariant:
+         *  true
+         * Rep exposure:
+         *  no fields but the immutable TYPE
+         * Thread safety:
+         *  stateless, and each event is confined to the thread that commits it
+         */
+
+        @Override
+        public boolean isEnabled() {
+            return TYPE.isEnabled();
+        }
+
+        @Override
+        public void commit(String command, long total, long[] phases) {
+            CommandEvent event = new CommandEvent();
+            event.command = command;
+            event.total = total;
+            event.throttle = phases[CommandTracer.THROTTLED];
+            event.parse = phases[CommandTracer.PARSED];
+            event.lock = phases[CommandTracer.LOCKED];
+            event.apply = phases[CommandTracer.APPLIED];
+            event.batch = phases[CommandTracer.BATCHED];
+            event.render = phases[CommandTracer.RENDERED];
+            event.write = phases[CommandTracer.WRITTEN];
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Admission control for the connections of a server: at most a maximum number of connections
+ * are served at once, and the connections beyond that wait in line, in the order they arrived,
+ * up to a maximum number, without a thread of their own; connections beyond those are refused.
+ * When a connection is done, the first connection in line takes its place.
+ */
+class AdmissionQueue {
+
+    private final int maxConnections;
+    private final int maxWaiting;
+    private final Deque<Socket> waiting = new ArrayDeque<>();
+    private int admitted = 0;
+
+    /*
+     * Abstraction function:
+     *  AF(maxConnections, maxWaiting, waiting, admitted) = admitted connections being served, of at
+     *      most maxConnections (no limit if 0), and the connections in waiting, first in line first,
+     *      of at most maxWaiting
+     * Rep invariant:
+     *  maxConnections >= 0, maxWaiting >= 0
+     *  0 <= admitted, and admitted <= maxConnections if maxConnections > 0
+     *  waiting.size() <= maxWaiting, and waiting is empty unless admitted == maxConnections > 0
+     * Rep exposure:
+     *  waiting is private and never returned; the sockets in it are shared with the caller, which
+     *      only uses each one again once it is admitted or taken out of line
+     * Thread safety:
+     *  not thread-safe; a GameServer only uses its admission queue while holding its lock
+     */
+
+    /**
+     * Makes an admission queue with no connections.
+     * @param maxConnections most connections served at once, or 0 for no limit;
+     *                       requires maxConnections >= 0
+     * @param maxWaiting most connections waiting in line, requires maxWaiting >= 0
+     */
+    AdmissionQueue(int maxConnections, int maxWaiting) {
+        assert maxConnections >= 0 && maxWaiting >= 0;
+        this.maxConnections = maxConnections;
+        this.maxWaiting = maxWaiting;
+        checkRep();
+    }
+
+    /**
+     * Checks that connections only wait while the server is full.
+     */
+    private void checkRep() {
+        assert 0 <= admitted && (maxConnections == 0 || admitted <= maxConnections);
+        assert waiting.size() <= maxWaiting && (waiting.isEmpty() || admitted == maxConnections);
+    }
+
+    /**
+     * Admits a new connection, or puts it in line if the server is full, or refuses it if the line
+     * is full too.
+     * @param socket new connection
+     * @return 0 if socket is admitted and must be served, its position in line (1 for the first)
+     *         if it waits, or -1 if it is refused and must be closed
+     */
+    int offer(Socket socket) {
+        assert socket != null;
+        int position;
+        if (maxConnections == 0 || admitted < maxConnections) {
+            admitted++;
+            position = 0;
+        } else if (waiting.size() < maxWaiting) {
+            waiting.addLast(socket);
+            position = waiting.size();
+        } else {
+            position = -1;
+        }
+        checkRep();
+        return position;
+    }
+
+    /**
+     * Ends an admitted connection, and admits the first connection in line in its place.
+     * Requires a connection to have been admitted and not yet released.
+     * @return the connection admitted in its place, which must be served, or null if none waited
+     */
+    Socket release() {
+        assert admitted > 0;
+        Socket next = waiting.pollFirst();
+        if (next == null) {
+            admitted--;
+        }
+        checkRep();
+        return next;
+    }
+
+    /**
+     * Takes every connection out of line, e.g. to tell them the server is stopping.
+     * @return the connections that waited, first in line first, which must be closed
+     */
+    List<Socket> clearWaiting() {
+        List<Socket> cleared = new ArrayList<>(waiting);
+        waiting.clear();
+        checkRep();
+        return cleared;
+    }
+
+    /**
+     * @return number of connections admitted and not yet released
+     */
+    int admitted() {
+        return admitted;
+    }
+
+    /**
+     * @return number of connections waiting in line
+     */
+    int waiting() {
+        return waiting.size();
+    }
+}
@@ -0,0 +1,353 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * The binary wire protocol of a GameServer, which a client switches to by sending 'binary' and
+ * waiting for the line "BINARY" in reply. From then on, the client and server exchange frames:
+ * <pre>
+ *      FRAME ::= LENGTH PAYLOAD              LENGTH is the number of bytes in PAYLOAD
+ *      PAYLOAD ::= OPCODE BODY
+ * </pre>
+ * Every number in a frame is an unsigned LEB128 varint; coordinates are zigzag-encoded first, so
+ * that small negative numbers stay small.
+ *
+ * <p>Client opcodes:
+ * <pre>
+ *      LOOK                                  sends the whole board
+ *      DIG X Y, FLAG X Y, DEFLAG X Y,        makes a move, sends the changes to the board
+ *      CHORD X Y
+ *      BATCH COUNT (MOVE X Y){COUNT}         makes COUNT moves (each DIG, FLAG, DEFLAG or CHORD),
+ *                                            sends the changes made by all of them at once
+ *      BYE                                   closes the connection
+ * </pre>
+ * Server opcodes, sent once for every client frame other than BYE:
+ * <pre>
+ *      FULL STATUS COLS ROWS VERSION CELLS   CELLS holds one nibble per cell, in row-major order,
+ *                                            high nibble first
+ *      DELTA STATUS VERSION COUNT CHANGE{COUNT}
+ *                                            changes since the last FULL or DELTA sent to this
+ *                                            client; CHANGE = (GAP << 4) | NIBBLE where GAP is the
+ *                                            cell's index minus the previous changed cell's index
+ *                                            (or its index, for the first change)
+ *      ERROR                                 the client frame was malformed, and none of its
+ *                                            moves were made
+ * </pre>
+ * A cell's NIBBLE is its visible value from GameBoard.snapshotVisible(). STATUS is STATUS_BOARD,
+ * STATUS_BOOM if a move dug a bomb, or STATUS_CLEARED if a move cleared the board and a new game started.
+ *
+ * <p>An instance of BinaryProtocol encodes the board for one connection, remembering what that
+ * connection has been sent so far.
+ */
+public class BinaryProtocol {
+
+    /** Client opcode: send the whole board. */
+    public static final int LOOK = 0x01;
+    /** Client opcode: dig a cell. */
+    public static final int DIG = 0x02;
+    /** Client opcode: flag a cell. */
+    public static final int FLAG = 0x03;
+    /** Client opcode: deflag a cell. */
+    public static final int DEFLAG = 0x04;
+    /** Client opcode: several moves at once. */
+    public static final int BATCH = 0x05;
+    /** Client opcode: close the connection. */
+    public static final int BYE = 0x06;
+    /** Client opcode: chord a cell, see GameBoard.chord(). */
+    public static final int CHORD = 0x07;
+    /** Server opcode: the whole board. */
+    public static final int FULL = 0x81;
+    /** Server opcode: changes to the board. */
+    public static final int DELTA = 0x82;
+    /** Server opcode: malformed client frame. */
+    public static final int ERROR = 0x83;
+
+    /** Status: the moves changed the board normally. */
+    public static final int STATUS_BOARD = 0;
+    /** Status: a move dug a bomb. */
+    public static final int STATUS_BOOM = 1;
+    /** Status: a move cleared the board, and a new game started. */
+    public static final int STATUS_CLEARED = 2;
+
+    /** Largest frame a client may send. */
+    public static final int MAX_CLIENT_FRAME = 1 << 16;
+
+    private final GameBoard board;
+    private byte[] current;
+    private byte[] sent = null;
+    private final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+
+    /*
+     * Abstraction function:
+     *  AF(board, sent) = the encoder of board for a client that was last sent the visible cells in
+     *                    sent, or that was never sent the board if sent is null
+     * Rep invariant:
+     *  current.length = board.getCols() * board.getRows()
+     *  sent is null, or sent.length = current.length
+     *  current != sent
+     * Rep exposure:
+     *  current, sent and payload are never returned; frames are returned as new arrays
+     * Thread safety:
+     *  not thread-safe; each connection has its own BinaryProtocol, confined to its thread
+     */
+
+    /**
+     * Makes an encoder for a client that has not been sent the board yet.
+     *
+     * @param board board to encode
+     */
+    public BinaryProtocol(GameBoard board) {
+        this.board = board;
+        this.current = new byte[board.getCols() * board.getRows()];
+    }
+
+    /**
+     * Encodes the board as a FULL or DELTA payload, and remembers that the client has been sent it.
+     * A DELTA is only used if the client has been sent the board before, and if it is smaller
+     * than a FULL.
+     *
+     * @param status STATUS_BOARD, STATUS_BOOM or STATUS_CLEARED
+     * @param full true to always encode the whole board
+     * @return the payload of the frame (without its length)
+     */
+    public byte[] encodeBoard(int status, boolean full) {
+        long version = board.snapshotVisible(current);
+        payload.reset();
+        if (sent == null || full || ! writeDelta(status, version)) {
+            payload.reset();
+            writeFull(status, version);
+        }
+        byte[] temp = sent != null ? sent : new byte[current.length];
+        sent = current;
+        current = temp;
+        return payload.toByteArray();
+    }
+
+    /**
+     * Writes a FULL payload of current into payload.
+     */
+    private void writeFull(int status, long version) {
+        payload.write(FULL);
+        payload.write(status);
+        writeVarint(payload, board.getCols());
+        writeVarint(payload, board.getRows());
+        writeVarint(payload, version);
+        for (int index = 0; index < current.length; index += 2) {
+            int high = current[index];
+            int low = index + 1 < current.length ? current[index + 1] : 0;
+            payload.write((high << 4) | low);
+        }
+    }
+
+    /**
+     * Writes a DELTA payload from sent to current into payload, if it is smaller than a FULL payload.
+     *
+     * @return true iff the DELTA payload was written
+     */
+    private boolean writeDelta(int status, long version) {
+        int count = 0;
+        for (int index = 0; index < current.length; index++) {
+            if (current[index] != sent[index]) {
+                count++;
+            }
+        }
+        int fullSize = 2 + varintSize(board.getCols()) + varintSize(board.getRows()) + varintSize(version)
+                + (current.length + 1) / 2;
+        // each change takes at least one byte
+        if (2 + varintSize(version) + varintSize(count) + count >= fullSize) {
+            return false;
+        }
+        payload.write(DELTA);
+        payload.write(status);
+        writeVarint(payload, version);
+        writeVarint(payload, count);
+        int previous = 0;
+        for (int index = 0; index < current.length; index++) {
+            if (current[index] != sent[index]) {
+                writeVarint(payload, ((long) (index - previous) << 4) | current[index]);
+                previous = index;
+            }
+        }
+        return payload.size() < fullSize;
+    }
+
+    /**
+     * Applies a FULL or DELTA payload to a client's copy of the visible cells of a board.
+     *
+     * @param payload payload of a FULL or DELTA frame
+     * @param cells the client's copy of the visible cells, as from GameBoard.snapshotVisible();
+     *              requires cells.length to be the number of cells on the board
+     * @return the STATUS of the payload
+     * @throws IOException if the payload is malformed, or is not FULL or DELTA
+     */
+    public static int decodeBoard(byte[] payload, byte[] cells) throws IOException {
+        InputStream in = new ByteArrayInputStream(payload);
+        int opcode = in.read();
+        int status = in.read();
+        if (opcode == FULL) {
+            long size = readVarint(in) * readVarint(in);
+            readVarint(in);
+            if (size != cells.length) {
+                throw new IOException("board size " + size + " does not match " + cells.length);
+            }
+            for (int index = 0; index < cells.length; index += 2) {
+                int both = readByte(in);
+                cells[index] = (byte) (both >> 4);
+                if (index + 1 < cells.length) {
+                    cells[index + 1] = (byte) (both & 0xF);
+                }
+            }
+        } else if (opcode == DELTA) {
+            readVarint(in);
+            long count = readVarint(in);
+            long index = 0;
+            for (long i = 0; i < count; i++) {
+                long change = readVarint(in);
+                index += change >>> 4;
+                if (index >= cells.length) {
+                    throw new IOException("changed cell " + index + " is not on the board");
+                }
+                cells[(int) index] = (byte) (change & 0xF);
+            }
+        } else {
+            throw new IOException("not a board payload: " + opcode);
+        }
+        return status;
+    }
+
+    /**
+     * Writes a number as an unsigned LEB128 varint: 7 bits per byte, least significant first,
+     * with the high bit set on every byte but the last.
+     *
+     * @param out stream to write to
+     * @param value number to write, treated as unsigned
+     */
+    public static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /**
+     * @param value number, treated as unsigned
+     * @return number of bytes in the varint encoding of value
+     */
+    private static int varintSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * Reads an unsigned LEB128 varint.
+     *
+     * @param in stream to read from
+     * @return the number read
+     * @throws IOException if the stream fails or ends, or the varint is longer than 10 bytes
+     */
+    public static long readVarint(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            int b = readByte(in);
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("varint is too long");
+    }
+
+    /**
+     * @param value signed number
+     * @return value zigzag-encoded: 0, -1, 1, -2, 2, ... become 0, 1, 2, 3, 4, ...
+     */
+    public static long zigzag(int value) {
+        return ((long) value << 1) ^ (value >> 31);
+    }
+
+    /**
+     * @param value zigzag-encoded number
+     * @return the signed number that was encoded
+     */
+    public static int unzigzag(long value) {
+        return (int) (value >>> 1) ^ -(int) (value & 1);
+    }
+
+    /**
+     * Reads one frame.
+     *
+     * @param in stream to read from
+     * @param maxLength largest payload allowed
+     * @return the payload of the frame
+     * @throws EOFException if the stream ends before the frame starts
+     * @throws IOException if the stream fails or ends within the frame, or the frame is too large
+     */
+    public static byte[] readFrame(InputStream in, int maxLength) throws IOException {
+        long length = readVarint(in);
+        if (length > maxLength) {
+            throw new IOException("frame of " + length + " bytes is too large");
+        }
+        byte[] payload = new byte[(int) length];
+        for (int read = 0; read < payload.length; ) {
+            int n = in.read(payload, read, payload.length - read);
+            if (n < 0) {
+                throw new IOException("stream ended within a frame");
+            }
+            read += n;
+        }
+        return payload;
+    }
+
+    /**
+     * Writes one frame, without flushing.
+     *
+     * @param out stream to write to
+     * @param payload payload of the frame
+     * @throws IOException if the stream fails
+     */
+    public static void writeFrame(OutputStream out, byte[] payload) throws IOException {
+        out.write(frame(payload).array());
+    }
+
+    /**
+     * Makes one frame, e.g. for an OutputQueue.
+     *
+     * @param payload payload of the frame
+     * @return the frame, its length prefix followed by payload, from position 0 to limit
+     */
+    public static ByteBuffer frame(byte[] payload) {
+        ByteArrayOutputStream length = new ByteArrayOutputStream(5);
+        writeVarint(length, payload.length);
+        ByteBuffer frame = ByteBuffer.allocate(length.size() + payload.length);
+        frame.put(length.toByteArray()).put(payload);
+        frame.flip();
+        return frame;
+    }
+
+    /**
+     * @param in stream to read from
+     * @return the next byte
+     * @throws EOFException if the stream has ended
+     */
+    private static int readByte(InputStream in) throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            throw new EOFException();
+        }
+        return b;
+    }
+}
@@ -0,0 +1,139 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+
+/**
+ * Compressed renderings of a GameBoard, for clients of the text protocol that asked for them with
+ * 'compress rle' or 'compress deflate'. A large board is mostly runs of untouched cells, so either
+ * rendering is far smaller than the text of 'look':
+ * <pre>
+ *      RLE ::= "RLE" SPACE COLS SPACE ROWS NEWLINE RUN (SPACE RUN)*
+ *      RUN ::= COUNT? SYMBOL                 COUNT cells (or 1) in row-major order, each SYMBOL
+ *      SYMBOL ::= "-" | "F" | [0-8]          untouched, flagged, or dug with that many bombs next to it
+ *      DEFLATE ::= "DEFLATE" SPACE LENGTH NEWLINE BYTES
+ * </pre>
+ * where BYTES are LENGTH bytes of a zlib stream (as written by java.util.zip.Deflater) of the text
+ * 'look' would send, with no newline after them.
+ *
+ * <p>Every call makes a new rendering, one at a time; ResponseCache is what shares a rendering
+ * between the clients that look at an unchanged board.
+ */
+public class BoardCompressor {
+
+    /** Compression mode: board responses are plain text. */
+    public static final String OFF = "off";
+    /** Compression mode: board responses are run-length encoded. */
+    public static final String RLE = "rle";
+    /** Compression mode: board responses are DEFLATE-compressed. */
+    public static final String DEFLATE = "deflate";
+
+    private static final int DEFLATE_BUFFER = 1 << 16;
+
+    private final GameBoard board;
+    private final byte[] visible;
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final byte[] deflateBuffer = new byte[DEFLATE_BUFFER];
+
+    /*
+     * Abstraction function:
+     *  AF(board, visible, deflater, deflateBuffer) =
+     *      the compressed renderings of board; visible, deflater and deflateBuffer are reused for
+     *      every rendering
+     * Rep invariant:
+     *  visible.length == board.getCols() * board.getRows()
+     * Rep exposure:
+     *  board is shared with the server, which is fine since GameBoard is thread-safe; visible,
+     *  deflater and deflateBuffer are never returned
+     * Thread safety:
+     *  visible, deflater and deflateBuffer are guarded by the lock on this compressor, which is
+     *  held while rendering, so that renderings are made one at a time
+     */
+
+    /**
+     * Makes a compressor for a board.
+     *
+     * @param board board to render
+     */
+    public BoardCompressor(GameBoard board) {
+        this.board = board;
+        this.visible = new byte[board.getCols() * board.getRows()];
+    }
+
+    /**
+     * @param cols number of columns of a board
+     * @param rows number of rows of a board
+     * @return number of characters in the text of 'look' for such a board
+     */
+    public static long textLength(int cols, int rows) {
+        return 2L * cols * rows - 1;
+    }
+
+    /**
+     * @return the RLE rendering of the board, at the version current when called or later
+     */
+    public synchronized String rle() {
+        board.snapshotVisible(visible);
+        StringBuilder text = new StringBuilder("RLE ").append(board.getCols()).append(' ')
+                .append(board.getRows()).append('\n');
+        int start = 0;
+        for (int index = 1; index <= visible.length; index++) {
+            if (index == visible.length || visible[index] != visible[start]) {
+                if (start > 0) {
+                    text.append(' ');
+                }
+                if (index - start > 1) {
+                    text.append(index - start);
+                }
+                text.append(symbol(visible[start]));
+                start = index;
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * @return the DEFLATE rendering of the board, at the version current when called or later, as
+     *         a new read-only buffer
+     */
+    public synchronized ByteBuffer deflate() {
+        board.snapshotVisible(visible);
+        deflater.reset();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        // the text is rendered as BoardExporter writes it, and deflated a chunk at a time, so
+        // that it never exists as a whole
+        ByteBuffer text = ByteBuffer.allocate(2 * Math.min(visible.length, BoardExporter.CHUNK_CELLS));
+        for (int start = 0; start < visible.length; start += BoardExporter.CHUNK_CELLS) {
+            int count = Math.min(BoardExporter.CHUNK_CELLS, visible.length - start);
+            text.clear();
+            BoardExporter.render(BoardExporter.TEXT, visible, start, start, count, board.getCols(),
+                    visible.length, text);
+            deflater.setInput(text.array(), 0, text.position());
+            while ( ! deflater.needsInput()) {
+                bytes.write(deflateBuffer, 0, deflater.deflate(deflateBuffer));
+            }
+        }
+        deflater.finish();
+        while ( ! deflater.finished()) {
+            bytes.write(deflateBuffer, 0, deflater.deflate(deflateBuffer));
+        }
+        byte[] header = ("DEFLATE " + bytes.size() + "\n").getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer frame = ByteBuffer.allocate(header.length + bytes.size());
+        frame.put(header).put(bytes.toByteArray()).flip();
+        return frame.asReadOnlyBuffer();
+    }
+
+    /**
+     * @param value visible value of a cell, as given by GameBoard.snapshotVisible()
+     * @return the SYMBOL of the cell in RLE: its character in the text of 'look', except "0"
+     *         rather than a space for a dug cell with no bombs next to it
+     */
+    private static char symbol(int value) {
+        return value == 0 ? '0' : BoardExporter.symbol(value);
+    }
+}
@@ -0,0 +1,164 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Streams a GameBoard to a channel or a stream, a chunk of cells at a time, so that exporting a
+ * board of any size takes a constant amount of memory, rather than a string of the whole board.
+ * The board can be written in three formats:
+ * <pre>
+ *      TEXT    the text of 'look', exactly as GameBoard.toString() renders it
+ *      BOMBS   the board file format that GameBoard(File) reads: "COLS ROWS", then a line for
+ *              each row with "1" for each cell with a bomb and "0" for the others
+ *      PGM     a binary PGM (P5) image, one gray pixel per cell: white for a dug cell with no
+ *              bomb next to it, lighter grays for dug cells with fewer bombs next to them,
+ *              dark gray for untouched cells and black for flagged cells
+ * </pre>
+ * Each chunk of cells is copied from the board atomically, without holding up moves, see
+ * GameBoard.snapshotVisible(); so the export of a board that changes meanwhile may show each
+ * chunk as it was at a different version.
+ */
+public class BoardExporter {
+
+    /** Export format: the text of 'look'. */
+    public static final String TEXT = "text";
+    /** Export format: a board file, of the bombs. */
+    public static final String BOMBS = "bombs";
+    /** Export format: a binary PGM image of what players see. */
+    public static final String PGM = "pgm";
+
+    /** Cells copied from the board and written at a time. */
+    static final int CHUNK_CELLS = 1 << 15;
+    // gray level of each visible value in PGM: dug with 0 to 8 bombs next to it, untouched, flagged
+    private static final byte[] GRAY = { (byte) 255, (byte) 224, (byte) 212, (byte) 200, (byte) 188,
+            (byte) 176, (byte) 164, (byte) 152, (byte) 140, 64, 0 };
+
+    /**
+     * Writes a board in a format.
+     *
+     * @param board board to export
+     * @param format TEXT, BOMBS or PGM
+     * @param out channel to write to, in blocking mode; not closed
+     * @return the version of the board that was written, as given by GameBoard.getVersion(), or -1
+     *         if the board changed while it was written, so that chunks show different versions
+     * @throws IOException if writing fails
+     * @throws IllegalArgumentException if format is not TEXT, BOMBS or PGM
+     */
+    public static long write(GameBoard board, String format, WritableByteChannel out) throws IOException {
+        int cols = board.getCols();
+        int cells = cols * board.getRows();
+        String header;
+        if (format.equals(TEXT)) {
+            header = "";
+        } else if (format.equals(BOMBS)) {
+            header = cols + " " + board.getRows() + "\n";
+        } else if (format.equals(PGM)) {
+            header = "P5\n" + cols + " " + board.getRows() + "\n255\n";
+        } else {
+            throw new IllegalArgumentException("unknown export format: \"" + format + "\"");
+        }
+        writeFully(out, ByteBuffer.wrap(header.getBytes(StandardCharsets.US_ASCII)));
+        boolean bombs = format.equals(BOMBS);
+        byte[] chunk = new byte[Math.min(cells, CHUNK_CELLS)];
+        // each cell takes at most 2 bytes: its symbol and the separator after it
+        ByteBuffer bytes = ByteBuffer.allocate(2 * chunk.length);
+        long version = -1;
+        boolean consistent = true;
+        for (int start = 0; start < cells; start += CHUNK_CELLS) {
+            int count = Math.min(CHUNK_CELLS, cells - start);
+            long chunkVersion = bombs ? board.snapshotBombs(start, chunk, count)
+                    : board.snapshotVisible(start, chunk, count);
+            consistent &= start == 0 || chunkVersion == version;
+            version = chunkVersion;
+            bytes.clear();
+            render(format, chunk, 0, start, count, cols, cells, bytes);
+            bytes.flip();
+            writeFully(out, bytes);
+        }
+        return consistent ? version : -1;
+    }
+
+    /**
+     * Renders cells of a board in a format, as write() writes them after the header.
+     *
+     * @param format TEXT, BOMBS or PGM
+     * @param values visible values of the cells, as given by GameBoard.snapshotVisible(), or for
+     *               BOMBS 1 for each cell with a bomb and 0 for the others, as given by
+     *               GameBoard.snapshotBombs()
+     * @param offset index in values of the first cell to render
+     * @param start index on the board of the first cell to render
+     * @param count number of cells to render
+     * @param cols number of columns of the board
+     * @param cells number of cells of the board
+     * @param bytes buffer to render into, with at least 2 * count bytes remaining
+     */
+    static void render(String format, byte[] values, int offset, int start, int count, int cols, int cells,
+            ByteBuffer bytes) {
+        boolean bombs = format.equals(BOMBS);
+        boolean pgm = format.equals(PGM);
+        for (int k = 0; k < count; k++) {
+            int index = start + k;
+            int value = values[offset + k];
+            boolean rowEnd = (index + 1) % cols == 0;
+            if (pgm) {
+                bytes.put(GRAY[value]);
+            } else if (bombs) {
+                bytes.put((byte) ('0' + value)).put((byte) (rowEnd ? '\n' : ' '));
+            } else {
+                bytes.put((byte) symbol(value));
+                // the text has no newline after its last row
+                if (index + 1 < cells) {
+                    bytes.put((byte) (rowEnd ? '\n' : ' '));
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes a board in a format, like write(board, format, channel).
+     *
+     * @param board board to export
+     * @param format TEXT, BOMBS or PGM
+     * @param out stream to write to; not flushed or closed
+     * @return as for write(board, format, channel)
+     * @throws IOException if writing fails
+     * @throws IllegalArgumentException if format is not TEXT, BOMBS or PGM
+     */
+    public static long write(GameBoard board, String format, OutputStream out) throws IOException {
+        return write(board, format, Channels.newChannel(out));
+    }
+
+    /**
+     * @param value visible value of a cell, as given by GameBoard.snapshotVisible()
+     * @return the character of the cell in the text of 'look'
+     */
+    static char symbol(int value) {
+        if (value == GameBoard.VISIBLE_UNTOUCHED) {
+            return '-';
+        } else if (value == GameBoard.VISIBLE_FLAGGED) {
+            return 'F';
+        }
+        return value == 0 ? ' ' : (char) ('0' + value);
+    }
+
+    /**
+     * Writes every remaining byte of a buffer.
+     *
+     * @param out channel to write to, in blocking mode
+     * @param bytes bytes to write
+     * @throws IOException if writing fails
+     */
+    private static void writeFully(WritableByteChannel out, ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+
+/**
+ * A pool of random GameBoards of one size, generated ahead of time by a background thread,
+ * so that starting a new game does not have to wait for a board to be generated.
+ *
+ * Boards that are no longer needed are recycled: the background thread regenerates them in place
+ * with GameBoard.reset(), so that a steady stream of new games creates no garbage.
+ *
+ * A pool may hold boards from a NoGuessGenerator instead of plain random boards, so that players
+ * do not wait for a search at the start of a game.
+ */
+public class BoardPool {
+
+    private final int numCols;
+    private final int numRows;
+    private final NoGuessGenerator generator;
+    private final Consumer<GameBoard> setup;
+    private final BlockingQueue<GameBoard> ready;
+    private final BlockingQueue<GameBoard> recycled = new LinkedBlockingQueue<>();
+    private final Thread filler;
+
+    /*
+     * Abstraction function:
+     *  AF(numCols, numRows, generator, setup, ready, recycled) = a pool of fresh numCols x numRows
+     *      boards, namely the boards in ready, plus the boards in recycled once they have been
+     *      regenerated; the boards are random boards if generator is null, else boards found by
+     *      generator, and setup has been applied to each of them
+     * Rep invariant:
+     *  numCols > 0, numRows > 0
+     *  every board in ready and recycled is numCols x numRows
+     *  every board in ready is fresh: all cells untouched and no bombs hit
+     *  generator is null, or makes numCols x numRows boards
+     *  setup is not null
+     * Rep exposure:
+     *  boards only leave the pool through take(), which gives up the pool's reference to them
+     * Thread safety:
+     *  ready and recycled are thread-safe queues, and a board is only ever in one of them
+     *  only the filler thread modifies boards that are in the pool
+     */
+
+    /**
+     * Makes a new pool and starts a background thread that fills it.
+     *
+     * @param sizeX number of columns of the boards in the pool, requires sizeX > 0
+     * @param sizeY number of rows of the boards in the pool, requires sizeY > 0
+     * @param capacity number of fresh boards to keep ready, requires capacity > 0
+     */
+    public BoardPool(int sizeX, int sizeY, int capacity) {
+        this(sizeX, sizeY, null, capacity);
+    }
+    
+    /**
+     * Makes a new pool of boards that can be cleared by logic alone, and starts a background thread
+     * that fills it.
+     *
+     * @param sizeX number of columns of the boards in the pool, requires sizeX > 0
+     * @param sizeY number of rows of the boards in the pool, requires sizeY > 0
+     * @param generator generator of sizeX x sizeY boards, or null for plain random boards;
+     *                  closed by close()
+     * @param capacity number of fresh boards to keep ready, requires capacity > 0
+     */
+    public BoardPool(int sizeX, int sizeY, NoGuessGenerator generator, int capacity) {
+        this(sizeX, sizeY, generator, board -> { }, capacity);
+    }
+    
+    /**
+     * Makes a new pool whose boards are set up by the caller, and starts a background thread that
+     * fills it.
+     *
+     * @param sizeX number of columns of the boards in the pool, requires sizeX > 0
+     * @param sizeY number of rows of the boards in the pool, requires sizeY > 0
+     * @param generator generator of sizeX x sizeY boards, or null for plain random boards;
+     *                  closed by close()
+     * @param setup applied once to each new board before it is handed out, e.g. to set
+     *              GameBoard.setSafeFirstDig(); settings that survive GameBoard.reset() are kept
+     *              when the board is recycled
+     * @param capacity number of fresh boards to keep ready, requires capacity > 0
+     */
+    public BoardPool(int sizeX, int sizeY, NoGuessGenerator generator, Consumer<GameBoard> setup, int capacity) {
+        assert sizeX > 0 && sizeY > 0 && capacity > 0;
+        this.numCols = sizeX;
+        this.numRows = sizeY;
+        this.generator = generator;
+        this.setup = setup;
+        this.ready = new ArrayBlockingQueue<>(capacity);
+        this.filler = new Thread(() -> fill(capacity), "board-pool-" + sizeX + "x" + sizeY);
+        this.filler.setDaemon(true);
+        this.filler.start();
+    }
+
+    /**
+     * Body of the filler thread: generates capacity boards, then regenerates recycled boards
+     * until the pool is closed.
+     *
+     * @param capacity number of boards to generate
+     */
+    private void fill(int capacity) {
+        Random seeds = new Random();
+        try {
+            for (int i = 0; i < capacity; i++) {
+                GameBoard board;
+                if (generator == null) {
+                    board = new GameBoard(numCols, numRows, seeds.nextLong());
+                } else {
+                    long seed = generator.findSeed(seeds.nextLong());
+                    board = new GameBoard(numCols, numRows, seed, generator.getStartX(), generator.getStartY());
+                }
+                setup.accept(board);
+                ready.put(board);
+            }
+            while (true) {
+                GameBoard board = recycled.take();
+                if (generator == null) {
+                    board.reset(seeds.nextLong());
+                } else {
+                    board.reset(generator.findSeed(seeds.nextLong()), generator.getStartX(), generator.getStartY());
+                }
+                ready.put(board);
+            }
+        } catch (InterruptedException ie) {
+            // pool was closed
+        }
+    }
+
+    /**
+     * Takes a fresh board out of the pool. Never waits for the background thread: if no board is
+     * ready, a new board is generated by the calling thread.
+     *
+     * @return a new board of this pool's size, owned by the caller
+     * @throws InterruptedException if interrupted while generating a board that needs no guess
+     */
+    public GameBoard take() throws InterruptedException {
+        GameBoard board = ready.poll();
+        if (board == null) {
+            board = generator == null ? new GameBoard(numCols, numRows) : generator.generate();
+            setup.accept(board);
+        }
+        return board;
+    }
+
+    /**
+     * Gives a board back to the pool, to be regenerated in the background and handed out again.
+     * If the pool already has enough boards, the board is dropped.
+     *
+     * @param board board of this pool's size that the caller no longer uses; no thread
+     *              may use it afterwards
+     */
+    public void recycle(GameBoard board) {
+        assert board.getCols() == numCols && board.getRows() == numRows;
+        if (ready.remainingCapacity() > recycled.size()) {
+            recycled.offer(board);
+        }
+    }
+
+    /**
+     * Stops the background thread, and closes the generator if there is one. Boards can still be
+     * taken from a closed pool if they are ready, or if the pool has no generator.
+     */
+    public void close() {
+        filler.interrupt();
+        if (generator != null) {
+            generator.close();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Saves and reloads the whole state of a GameBoard: which cells have bombs, and which are dug or
+ * flagged. A server saves its board when it shuts down and plays on from it when it starts again,
+ * or hands it to the server that takes over from it. A snapshot is a board file, as specified by
+ * OffHeapCellStorage, so a saved board can also be played on with "--storage mapped:FILE".
+ */
+class BoardSnapshot {
+
+    /**
+     * Writes a snapshot of a board. Its cells are copied without holding up moves on the board,
+     * unless a move is made during the copy, see GameBoard.snapshotCells().
+     *
+     * @param board board to save
+     * @param out channel to write to, in blocking mode
+     * @return version of the board that was saved, as given by GameBoard.getVersion()
+     * @throws IOException if writing fails
+     */
+    static long write(GameBoard board, WritableByteChannel out) throws IOException {
+        byte[] cells = new byte[board.getCols() * board.getRows()];
+        long version = board.snapshotCells(cells);
+        ByteBuffer header = ByteBuffer.allocate(OffHeapCellStorage.HEADER_SIZE);
+        header.putInt(OffHeapCellStorage.MAGIC).putInt(OffHeapCellStorage.FORMAT)
+                .putInt(board.getCols()).putInt(board.getRows()).flip();
+        for (ByteBuffer bytes : new ByteBuffer[] { header, ByteBuffer.wrap(cells) }) {
+            while (bytes.hasRemaining()) {
+                out.write(bytes);
+            }
+        }
+        return version;
+    }
+
+    /**
+     * Saves a board to a file, replacing it. The snapshot is written to a new file next to it,
+     * which then replaces it atomically, so the file always holds a whole snapshot.
+     *
+     * @param board board to save
+     * @param file file to save to
+     * @return version of the board that was saved, as given by GameBoard.getVersion()
+     * @throws IOException if writing fails
+     */
+    static long write(GameBoard board, File file) throws IOException {
+        Path temporary = file.toPath().resolveSibling(file.getName() + ".tmp");
+        long version;
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            version = write(board, channel);
+            channel.force(true);
+        }
+        Files.move(temporary, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return version;
+    }
+
+    /**
+     * Reads a snapshot into a new board on the Java heap.
+     *
+     * @param in channel to read from, in blocking mode; only the snapshot is read from it
+     * @return the board, in the state it was saved in
+     * @throws IOException if reading fails, or what is read is not a snapshot
+     */
+    static GameBoard read(ReadableByteChannel in) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(OffHeapCellStorage.HEADER_SIZE);
+        readFully(in, header);
+        header.flip();
+        if (header.getInt() != OffHeapCellStorage.MAGIC || header.getInt() != OffHeapCellStorage.FORMAT) {
+            throw new IOException("not a board snapshot");
+        }
+        int cols = header.getInt();
+        int rows = header.getInt();
+        if (cols <= 0 || rows <= 0 || (long) cols * rows > Integer.MAX_VALUE) {
+            throw new IOException("bad board size " + cols + "x" + rows + " in snapshot");
+        }
+        byte[] cells = new byte[cols * rows];
+        readFully(in, ByteBuffer.wrap(cells));
+        return new GameBoard(cols, rows, new HeapCellStorage(cells));
+    }
+
+    /**
+     * Reads a snapshot file into a new board on the Java heap.
+     *
+     * @param file file written by write(board, file)
+     * @return the board, in the state it was saved in
+     * @throws IOException if reading fails, or the file is not a snapshot
+     */
+    static GameBoard read(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return read(channel);
+        }
+    }
+
+    /**
+     * Reads until bytes is full.
+     *
+     * @param in channel to read from, in blocking mode
+     * @param bytes buffer to fill
+     * @throws EOFException if the channel ends first
+     */
+    private static void readFully(ReadableByteChannel in, ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            if (in.read(bytes) < 0) {
+                throw new EOFException("snapshot ended after " + bytes.position() + " of " + bytes.limit() + " bytes");
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+/**
+ * Mutable storage for the cells of a GameBoard: a fixed number of bytes, indexed from 0, which
+ * are all 0 in new storage unless its constructor says otherwise. Implementations differ in where
+ * the bytes live: HeapCellStorage keeps them in an array, OffHeapCellStorage outside the Java
+ * heap, optionally in a file, ChunkedCellStorage in chunks allocated when first written, and
+ * SparseCellStorage only keeps the bytes that were written, for huge boards that are mostly
+ * untouched.
+ *
+ * <p>Not thread-safe: a GameBoard only changes its storage while holding its lock, and only reads
+ * it without the lock if supportsOptimisticReads() says so.
+ */
+interface CellStorage {
+
+    /**
+     * @return number of bytes
+     */
+    int size();
+
+    /**
+     * @param index index of a byte, requires 0 <= index < size()
+     * @return the byte at index
+     */
+    byte get(int index);
+
+    /**
+     * @param index index of a byte, requires 0 <= index < size()
+     * @param value new value of the byte at index
+     */
+    void set(int index, byte value);
+
+    /**
+     * Sets every byte to 0.
+     */
+    void clear();
+
+    /**
+     * @param target array to copy every byte into, requires target.length == size()
+     */
+    void copyTo(byte[] target);
+
+    /**
+     * @return true iff get() may be called while another thread changes this storage, and then
+     *         returns some byte, possibly out of date, rather than failing or never returning; a
+     *         GameBoard then reads it optimistically, without waiting for its lock
+     */
+    boolean supportsOptimisticReads();
+
+    /**
+     * Writes the bytes to the file behind this storage, if there is one, so that they survive a
+     * crash of the machine. Does nothing for storage that is not backed by a file.
+     */
+    void flush();
+}
@@ -0,0 +1,122 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import java.util.Arrays;
+
+/**
+ * Cell storage in fixed-size chunks on the Java heap, each allocated when a byte in it is first
+ * set to something other than 0. A board of billions of cells thus needs no single array that
+ * large (nor that much contiguous heap), and the untouched 0 regions of a board, such as the area
+ * around a safe cell or a freshly cleared board, take no memory.
+ *
+ * <p>Chunks hold CHUNK_SIZE consecutive indices, i.e. runs of whole rows of the board rather than
+ * square tiles, so that finding the chunk of an index is a shift instead of a division.
+ */
+class ChunkedCellStorage implements CellStorage {
+
+    // bytes per chunk, a power of two
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final int size;
+    private final byte[][] chunks;
+
+    /*
+     * Abstraction function:
+     *  AF(size, chunks) = size bytes, where the byte at index is
+     *      chunks[index >>> CHUNK_BITS][index & CHUNK_MASK], or 0 if that chunk is null
+     * Rep invariant:
+     *  size >= 0
+     *  chunks.length = ceil(size / CHUNK_SIZE), and each chunk is null or has length CHUNK_SIZE
+     * Rep exposure:
+     *  size is final and primitive, and chunks is private and never returned
+     * Thread safety:
+     *  not thread-safe, see CellStorage; get() may race with set() and clear(), see
+     *  supportsOptimisticReads()
+     */
+
+    /**
+     * Makes storage of size bytes, all 0, with no chunk allocated yet.
+     * @param size number of bytes, requires size >= 0
+     */
+    ChunkedCellStorage(int size) {
+        assert size >= 0;
+        this.size = size;
+        this.chunks = new byte[(int) (((long) size + CHUNK_MASK) >>> CHUNK_BITS)][];
+    }
+
+    /**
+     * @return number of bytes taken by allocated chunks
+     */
+    long allocatedBytes() {
+        long bytes = 0;
+        for (byte[] chunk : chunks) {
+            if (chunk != null) {
+                bytes += CHUNK_SIZE;
+            }
+        }
+        return bytes;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public byte get(int index) {
+        byte[] chunk = chunks[index >>> CHUNK_BITS];
+        return chunk == null ? 0 : chunk[index & CHUNK_MASK];
+    }
+
+    @Override
+    public void set(int index, byte value) {
+        byte[] chunk = chunks[index >>> CHUNK_BITS];
+        if (chunk == null) {
+            if (value == 0) {
+                return;
+            }
+            chunk = new byte[CHUNK_SIZE];
+            chunks[index >>> CHUNK_BITS] = chunk;
+        }
+        chunk[index & CHUNK_MASK] = value;
+    }
+
+    @Override
+    public void clear() {
+        // keeps the chunks, which a new game on the same board would allocate again
+        for (byte[] chunk : chunks) {
+            if (chunk != null) {
+                Arrays.fill(chunk, (byte) 0);
+            }
+        }
+    }
+
+    @Override
+    public void copyTo(byte[] target) {
+        assert target.length == size;
+        for (int c = 0; c < chunks.length; c++) {
+            int start = c << CHUNK_BITS;
+            int length = Math.min(CHUNK_SIZE, size - start);
+            if (chunks[c] == null) {
+                Arrays.fill(target, start, start + length, (byte) 0);
+            } else {
+                System.arraycopy(chunks[c], 0, target, start, length);
+            }
+        }
+    }
+
+    @Override
+    public boolean supportsOptimisticReads() {
+        // a chunk is either still null, which reads as 0, or a whole array
+        return true;
+    }
+
+    @Override
+    public void flush() {
+        // not backed by a file
+    }
+}
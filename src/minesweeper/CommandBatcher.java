@@ -0,0 +1,284 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Applies the commands of every client of a server on one thread, the board owner, in batches.
+ *
+ * Client threads put their commands in a lock-free queue and wait for the answers. The owner thread
+ * takes the commands out in batches, once per tick, or as soon as commands arrive if the tick is 0,
+ * at most a maximum number at a time, and hands each batch to a handler, which answers every
+ * command of the batch. Since only the owner thread changes the board, the board's lock is never
+ * contended, and the handler may do once per batch what it would otherwise do once per command,
+ * e.g. render the board.
+ */
+public class CommandBatcher {
+
+    /**
+     * A command of a client, waiting to be answered.
+     */
+    public static final class Request {
+        private final String command;
+        private final PlayerSession session;
+        private final Thread waiter;
+        private volatile String response = null;
+
+        /*
+         * Abstraction function:
+         *  AF(command, session, waiter, response) = command sent by the client of session, whose
+         *                                           thread waiter waits for response, or for it
+         *                                           not to be null
+         * Rep invariant:
+         *  response, once not null, never changes
+         * Rep exposure:
+         *  all fields are private; session is shared with the server, and is thread-safe
+         * Thread safety:
+         *  command, session and waiter are final; response is volatile, so the waiter sees the
+         *  answer, and everything the owner thread did before answering, once it sees it set
+         */
+
+        private Request(String command, PlayerSession session) {
+            this.command = command;
+            this.session = session;
+            this.waiter = Thread.currentThread();
+        }
+
+        /**
+         * @return the command, as the client sent it
+         */
+        public String getCommand() {
+            return command;
+        }
+
+        /**
+         * @return session of the client that sent the command
+         */
+        public PlayerSession getSession() {
+            return session;
+        }
+
+        /**
+         * Answers the command, and wakes up the client's thread. Only called by the owner thread,
+         * once per request.
+         * @param answer response to the command, not null
+         */
+        public void respond(String answer) {
+            assert answer != null && response == null;
+            response = answer;
+            LockSupport.unpark(waiter);
+        }
+    }
+
+    /** Answer to the commands that the owner thread never took, compared by identity. */
+    private static final String CLOSED = new String("closed");
+
+    /**
+     * Answers the commands of a batch, on the owner thread.
+     */
+    public interface Handler {
+        /**
+         * Applies every command of a batch, in order, and answers each one with respond().
+         * @param batch requests of the batch, in the order the commands arrived; not empty
+         */
+        void apply(List<Request> batch);
+    }
+
+    private final Queue<Request> queue = new ConcurrentLinkedQueue<>();
+    private final Handler handler;
+    private final long tickNanos;
+    private final int maxBatch;
+    private final Thread owner;
+    private final AtomicBoolean idle = new AtomicBoolean(false);
+    private volatile boolean stopping = false;
+    private volatile boolean closed = false;
+    private long batches = 0;
+    private long commands = 0;
+
+    /*
+     * Abstraction function:
+     *  AF(queue, handler, tickNanos, maxBatch, owner, stopping, closed, batches, commands) =
+     *      the commands in queue, waiting to be applied by handler on the owner thread, in batches
+     *      of at most maxBatch commands (no limit if 0) taken once every tickNanos (as soon as
+     *      they arrive if 0), until stopping and every command is applied, after which the
+     *      batcher is closed and applies no more; of which batches batches of commands commands
+     *      in all have been applied so far
+     * Rep invariant:
+     *  tickNanos >= 0, maxBatch >= 0, 0 <= batches <= commands
+     *  idle is only true while the owner thread waits for commands with no tick
+     * Rep exposure:
+     *  queue and owner are private and never returned; requests are shared between a client's
+     *  thread and the owner thread, see Request
+     * Thread safety:
+     *  queue is lock-free, so client threads add commands without contending on a lock; only the
+     *  owner thread takes commands out, calls the handler and counts batches and commands; the
+     *  owner only parks after setting idle and finding the queue empty, and a client unparks it
+     *  after adding a command if it clears idle, so no command is left waiting while it sleeps;
+     *  stopping and closed are volatile; once closed is set, the owner answers every command still
+     *  in the queue with CLOSED, and a client that finds closed set after adding its command
+     *  takes it out again, so either the client or the owner takes each command, and no client
+     *  waits forever
+     */
+
+    /**
+     * Makes a batcher and starts its owner thread.
+     *
+     * @param handler handler of the batches, only called by the owner thread
+     * @param tickMillis milliseconds between batches, or 0 to apply commands as soon as they
+     *                   arrive; requires tickMillis >= 0
+     * @param maxBatch most commands per batch, or 0 for no limit; requires maxBatch >= 0
+     */
+    public CommandBatcher(Handler handler, long tickMillis, int maxBatch) {
+        assert tickMillis >= 0 && maxBatch >= 0;
+        this.handler = handler;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.maxBatch = maxBatch;
+        this.owner = new Thread(this::run, "board-owner");
+        this.owner.setDaemon(true);
+        this.owner.start();
+    }
+
+    /**
+     * Body of the owner thread: applies the commands in the queue, in batches, until the batcher
+     * is stopping and every command is applied, and then answers the commands that arrive too late.
+     */
+    private void run() {
+        try {
+            applyUntilStopped();
+        } finally {
+            closed = true;
+            for (Request request = queue.poll(); request != null; request = queue.poll()) {
+                request.respond(CLOSED);
+            }
+        }
+    }
+
+    /**
+     * Applies the commands in the queue, in batches, until the batcher is stopping and every
+     * command is applied.
+     */
+    private void applyUntilStopped() {
+        List<Request> batch = new ArrayList<>();
+        long nextTick = System.nanoTime() + tickNanos;
+        while (true) {
+            if (tickNanos > 0) {
+                // commands that arrive meanwhile wait for the tick
+                for (long wait = nextTick - System.nanoTime(); wait > 0 && ! stopping; wait = nextTick - System.nanoTime()) {
+                    LockSupport.parkNanos(this, wait);
+                }
+                nextTick = Math.max(nextTick + tickNanos, System.nanoTime());
+            }
+            boolean applied = false;
+            for (Request request = queue.poll(); request != null; request = queue.poll()) {
+                batch.add(request);
+                if (batch.size() == maxBatch) {
+                    apply(batch);
+                    applied = true;
+                }
+            }
+            if ( ! batch.isEmpty()) {
+                apply(batch);
+                applied = true;
+            }
+            if (applied || tickNanos > 0) {
+                if (stopping && queue.isEmpty()) {
+                    return;
+                }
+                continue;
+            }
+            if (stopping) {
+                return;
+            }
+            idle.set(true);
+            // a command added before idle was set is seen here; one added after unparks the owner
+            if (queue.isEmpty() && ! stopping) {
+                LockSupport.park(this);
+            }
+            idle.set(false);
+        }
+    }
+
+    /**
+     * Hands a batch to the handler, and empties it.
+     *
+     * @param batch requests to apply, not empty
+     */
+    private void apply(List<Request> batch) {
+        try {
+            handler.apply(batch);
+        } catch (RuntimeException re) {
+            re.printStackTrace(); // the clients are answered below, and the owner goes on
+        }
+        for (Request request : batch) {
+            if (request.response == null) {
+                request.respond("terminate");
+            }
+        }
+        batches++;
+        commands += batch.size();
+        batch.clear();
+    }
+
+    /**
+     * Applies a client's command on the owner thread, and waits for the answer.
+     *
+     * @param command command the client sent
+     * @param session session of the client
+     * @return the answer given by the handler, or null if the batcher was closed before it took
+     *         the command
+     */
+    public String submit(String command, PlayerSession session) {
+        Request request = new Request(command, session);
+        queue.add(request);
+        if (idle.get() && idle.compareAndSet(true, false)) {
+            LockSupport.unpark(owner);
+        }
+        if (closed && queue.remove(request)) {
+            // taken by no batch, and never will be
+            return null;
+        }
+        // woken up by respond(), or spuriously
+        while (request.response == null) {
+            LockSupport.park(this);
+        }
+        return request.response == CLOSED ? null : request.response;
+    }
+
+    /**
+     * @return number of batches applied so far; only meaningful once the batcher is closed, or on
+     *         the owner thread
+     */
+    long batches() {
+        return batches;
+    }
+
+    /**
+     * @return number of commands applied so far; only meaningful once the batcher is closed, or on
+     *         the owner thread
+     */
+    long commands() {
+        return commands;
+    }
+
+    /**
+     * Applies the commands already submitted, and stops the owner thread. Commands submitted after
+     * it stops are not applied.
+     */
+    public void close() {
+        stopping = true;
+        LockSupport.unpark(owner);
+        try {
+            owner.join();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
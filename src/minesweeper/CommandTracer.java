@@ -0,0 +1,362 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Traces the phases of each text command of a server, to find out where slow commands spend
+ * their time.
+ *
+ * The thread that handles a command begins its trace, then marks the end of each phase of the
+ * command, in this order, with a monotonic timestamp from System.nanoTime():
+ * <pre>
+ *      THROTTLED   waiting for the client's rate limit
+ *      PARSED      matching the command and reading its arguments
+ *      LOCKED      waiting for the lock on the board, for moves
+ *      APPLIED     applying the command to the board, or answering it from the board
+ *      BATCHED     waiting for the board owner to apply the command, see CommandBatcher
+ *      RENDERED    rendering the board for the response
+ *      WRITTEN     queuing the response for the client, see OutputQueue
+ * </pre>
+ * A phase that a command skips is not marked, and its time, if any, counts toward the next phase
+ * that is. Marks on a thread that has not begun a command, e.g. the board owner, are ignored.
+ *
+ * The timestamps are kept in a ring of the last RING_SIZE commands of each thread, allocated once
+ * per thread, so that tracing a command allocates nothing. A command that takes at least the slow
+ * threshold, from its beginning to its last mark, is written to the slow-request log with its
+ * phase breakdown; and if events are on, every command is committed as a CommandEvent, for Java
+ * Flight Recorder, which records it only while a recording that enables it runs.
+ *
+ * CommandEvent needs jdk.jfr, which Java 8 before update 262 lacks, so it is built apart from the
+ * other classes, from src-jfr, and a tracer with events on loads it by name, through the
+ * EventRecorder interface; the rest of the server builds and runs without it.
+ */
+public class CommandTracer {
+
+    /** Mark: the client's rate limit was waited for. */
+    public static final int THROTTLED = 0;
+    /** Mark: the command was parsed. */
+    public static final int PARSED = 1;
+    /** Mark: the lock on the board was taken. */
+    public static final int LOCKED = 2;
+    /** Mark: the command was applied to the board. */
+    public static final int APPLIED = 3;
+    /** Mark: the board owner answered the command. */
+    public static final int BATCHED = 4;
+    /** Mark: the board was rendered. */
+    public static final int RENDERED = 5;
+    /** Mark: the response was queued for the client. */
+    public static final int WRITTEN = 6;
+
+    /** Names of the phases ending with each mark, in the slow-request log. */
+    private static final String[] PHASES = { "throttle", "parse", "lock", "apply", "batch", "render", "write" };
+    private static final int MARKS = PHASES.length;
+
+    /** Number of recent commands whose traces each thread keeps. */
+    static final int RING_SIZE = 64;
+
+    /** Name of the EventRecorder that commits a CommandEvent, in src-jfr. */
+    private static final String RECORDER = "minesweeper.CommandEvent$Recorder";
+
+    /**
+     * Commits the events of commands, for Java Flight Recorder.
+     */
+    interface EventRecorder {
+
+        /**
+         * @return true iff a recording that enables the events runs, so that commit() records one
+         */
+        boolean isEnabled();
+
+        /**
+         * Commits the event of a command.
+         *
+         * @param command the command, as the client sent it
+         * @param total nanoseconds of the command
+         * @param phases nanoseconds of the phase ending with each mark, 0 for the marks not made;
+         *               read before commit() returns, and not kept
+         */
+        void commit(String command, long total, long[] phases);
+    }
+
+    /**
+     * Traces of the recent commands of one thread.
+     */
+    private static final class Ring {
+        // stamps[slot * (MARKS + 1)] is the beginning of the command in slot, followed by its marks
+        private final long[] stamps = new long[RING_SIZE * (MARKS + 1)];
+        // marked[slot] has bit m set iff mark m of the command in slot was made
+        private final int[] marked = new int[RING_SIZE];
+        private final String[] commands = new String[RING_SIZE];
+        // phases of the command being committed, see EventRecorder.commit()
+        private final long[] phases = new long[MARKS];
+        private long traced = 0;
+        private boolean active = false;
+
+        /*
+         * Abstraction function:
+         *  AF(stamps, marked, commands, phases, traced, active) =
+         *      the last min(traced, RING_SIZE) commands begun on a thread, of which the
+         *      (traced - 1)'th, in slot (traced - 1) % RING_SIZE, is still being handled if active;
+         *      phases is scratch space
+         * Rep invariant:
+         *  traced >= 0, and active implies traced > 0
+         *  commands[slot] != null for every slot that holds a command
+         * Rep exposure:
+         *  all fields are private to CommandTracer, and never returned
+         * Thread safety:
+         *  confined to its thread, see CommandTracer
+         */
+
+        private int slot() {
+            return (int) ((traced - 1) % RING_SIZE);
+        }
+    }
+
+    private final long slowNanos;
+    private final EventRecorder recorder;
+    private final Consumer<String> slowLog;
+    private final ThreadLocal<Ring> rings = ThreadLocal.withInitial(Ring::new);
+    private final AtomicLong slowCommands = new AtomicLong();
+
+    /*
+     * Abstraction function:
+     *  AF(slowNanos, recorder, slowLog, rings, slowCommands) =
+     *      a tracer of the commands of every thread, whose traces are in that thread's ring in
+     *      rings, that writes the commands that take at least slowNanos (none if -1) to slowLog,
+     *      of which it has written slowCommands so far, and commits every command as a
+     *      CommandEvent through recorder, unless it is null; it traces nothing if
+     *      slowNanos == -1 and recorder == null
+     * Rep invariant:
+     *  slowNanos >= -1, slowLog != null if slowNanos >= 0, slowCommands >= 0
+     * Rep exposure:
+     *  all fields are private and never returned; slowLog is shared with the server, and recorder
+     *  is made by this tracer
+     * Thread safety:
+     *  Each ring is confined to its thread by rings, so marks never contend; the other fields are
+     *  final, and slowCommands is atomic. slowLog must be thread-safe, e.g. System.err, and
+     *  CommandEvent$Recorder is stateless.
+     */
+
+    /**
+     * Make a tracer.
+     *
+     * @param slowMillis milliseconds from which a command is written to the slow-request log, or
+     *                   -1 for no log; requires slowMillis >= -1
+     * @param events true to commit every command as a CommandEvent; requires eventsSupported()
+     * @param slowLog thread-safe slow-request log, which takes one line per slow command; may be
+     *                null if slowMillis == -1
+     * @throws UnsupportedOperationException if events but CommandEvent cannot be loaded
+     */
+    public CommandTracer(long slowMillis, boolean events, Consumer<String> slowLog) {
+        this.slowNanos = slowMillis < 0 ? -1 : slowMillis * 1_000_000;
+        this.recorder = events ? loadRecorder() : null;
+        this.slowLog = slowLog;
+        checkRep();
+    }
+
+    /**
+     * @return the recorder of CommandEvent
+     * @throws UnsupportedOperationException if CommandEvent was not built, or this runtime has no
+     *                                       Flight Recorder
+     */
+    private static EventRecorder loadRecorder() {
+        try {
+            return (EventRecorder) Class.forName(RECORDER).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            throw new UnsupportedOperationException("events need Java Flight Recorder, and CommandEvent"
+                    + " built from src-jfr", e);
+        }
+    }
+
+    /**
+     * @return true iff a tracer can commit events: CommandEvent was built from src-jfr, and this
+     *         runtime has Java Flight Recorder, as Java 11 and later, and Java 8 from update 262 on
+     */
+    public static boolean eventsSupported() {
+        try {
+            loadRecorder();
+            return true;
+        } catch (UnsupportedOperationException uoe) {
+            return false;
+        }
+    }
+
+    private void checkRep() {
+        assert slowNanos >= -1;
+        assert slowNanos == -1 || slowLog != null;
+        assert slowCommands.get() >= 0;
+    }
+
+    /**
+     * @return true iff this tracer traces commands, i.e. logs slow ones or commits events
+     */
+    public boolean isTracing() {
+        return slowNanos >= 0 || recorder != null;
+    }
+
+    /**
+     * Begins tracing a command on the calling thread, ending the trace of its last command, if it
+     * was not ended.
+     *
+     * @param command the command, as the client sent it
+     */
+    public void begin(String command) {
+        if ( ! isTracing()) {
+            return;
+        }
+        Ring ring = rings.get();
+        ring.traced++;
+        int slot = ring.slot();
+        ring.commands[slot] = command;
+        ring.marked[slot] = 0;
+        ring.active = true;
+        ring.stamps[slot * (MARKS + 1)] = System.nanoTime();
+    }
+
+    /**
+     * Marks the end of a phase of the command that the calling thread is handling, if it began one.
+     *
+     * @param mark THROTTLED, PARSED, LOCKED, APPLIED, BATCHED, RENDERED or WRITTEN
+     */
+    public void mark(int mark) {
+        if ( ! isTracing()) {
+            return;
+        }
+        Ring ring = rings.get();
+        if ( ! ring.active) {
+            return;
+        }
+        int slot = ring.slot();
+        ring.stamps[slot * (MARKS + 1) + 1 + mark] = System.nanoTime();
+        ring.marked[slot] |= 1 << mark;
+    }
+
+    /**
+     * Ends tracing the command that the calling thread is handling, if it began one: writes it to
+     * the slow-request log if it took at least the slow threshold, and commits its event if
+     * events are on.
+     */
+    public void end() {
+        if ( ! isTracing()) {
+            return;
+        }
+        Ring ring = rings.get();
+        if ( ! ring.active) {
+            return;
+        }
+        ring.active = false;
+        int slot = ring.slot();
+        long total = lastStamp(ring, slot) - ring.stamps[slot * (MARKS + 1)];
+        if (slowNanos >= 0 && total >= slowNanos) {
+            slowCommands.incrementAndGet();
+            slowLog.accept("slow command " + describe(ring, slot));
+        }
+        if (recorder != null) {
+            commit(ring, slot, total);
+        }
+    }
+
+    /**
+     * @return number of commands written to the slow-request log so far
+     */
+    public long getSlowCommands() {
+        return slowCommands.get();
+    }
+
+    /**
+     * @return the traces of the last commands of the calling thread, at most RING_SIZE, oldest
+     *         first, each as it would be written to the slow-request log
+     */
+    List<String> recent() {
+        Ring ring = rings.get();
+        List<String> traces = new ArrayList<>();
+        for (long command = Math.max(0, ring.traced - RING_SIZE); command < ring.traced; command++) {
+            traces.add(describe(ring, (int) (command % RING_SIZE)));
+        }
+        return traces;
+    }
+
+    /**
+     * @param ring ring of a thread
+     * @param slot slot of a command in ring
+     * @return timestamp of the last mark of the command, or of its beginning if it has none
+     */
+    private static long lastStamp(Ring ring, int slot) {
+        int base = slot * (MARKS + 1);
+        long last = ring.stamps[base];
+        for (int mark = 0; mark < MARKS; mark++) {
+            if ((ring.marked[slot] & (1 << mark)) != 0) {
+                last = ring.stamps[base + 1 + mark];
+            }
+        }
+        return last;
+    }
+
+    /**
+     * @param ring ring of a thread
+     * @param slot slot of a command in ring
+     * @param mark a mark
+     * @return nanoseconds of the phase of the command ending with mark, since the last mark before
+     *         it, or its beginning; 0 if the mark was not made
+     */
+    private static long phaseNanos(Ring ring, int slot, int mark) {
+        if ((ring.marked[slot] & (1 << mark)) == 0) {
+            return 0;
+        }
+        int base = slot * (MARKS + 1);
+        long previous = ring.stamps[base];
+        for (int earlier = mark - 1; earlier >= 0; earlier--) {
+            if ((ring.marked[slot] & (1 << earlier)) != 0) {
+                previous = ring.stamps[base + 1 + earlier];
+                break;
+            }
+        }
+        return ring.stamps[base + 1 + mark] - previous;
+    }
+
+    /**
+     * @param ring ring of a thread
+     * @param slot slot of a command in ring
+     * @return the command with its total time and the time of each phase it was marked for, in
+     *         milliseconds, e.g. "\"dig 3 4\": 1.250 ms (throttle 0.001, parse 0.002, lock 0.950,
+     *         apply 0.200, render 0.090, write 0.007)"
+     */
+    private static String describe(Ring ring, int slot) {
+        long total = lastStamp(ring, slot) - ring.stamps[slot * (MARKS + 1)];
+        StringBuilder text = new StringBuilder();
+        text.append('"').append(ring.commands[slot]).append("\": ")
+            .append(String.format("%.3f", total / 1e6)).append(" ms (");
+        String separator = "";
+        for (int mark = 0; mark < MARKS; mark++) {
+            if ((ring.marked[slot] & (1 << mark)) != 0) {
+                text.append(separator).append(PHASES[mark]).append(' ')
+                    .append(String.format("%.3f", phaseNanos(ring, slot, mark) / 1e6));
+                separator = ", ";
+            }
+        }
+        return text.append(')').toString();
+    }
+
+    /**
+     * Commits the event of a command, if a recording enables it.
+     *
+     * @param ring ring of a thread
+     * @param slot slot of a command in ring
+     * @param total nanoseconds of the command
+     */
+    private void commit(Ring ring, int slot, long total) {
+        if ( ! recorder.isEnabled()) {
+            return;
+        }
+        for (int mark = 0; mark < MARKS; mark++) {
+            ring.phases[mark] = phaseNanos(ring, slot, mark);
+        }
+        recorder.commit(ring.commands[slot], total, ring.phases);
+    }
+}
@@ -6,9 +6,13 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.IntSupplier;
 
 /**
  * Creates a mutable, thread-safe Minesweeper board, where each cell (i,j) - where i is the x coordinate 
@@ -20,74 +24,244 @@ import java.util.Map;
  */
 public class GameBoard {
     
-    // board, where each key is a cell (i,j), and the value at each key is an int[]
-    // keys are in String form "i,j"
-    // values are int[] of size 3, where:
-    //      int[0] represents bomb status (0 for no bomb, 1 for bomb)
-    //      int[1] represents how many neighbors have a bomb
-    //      int[2] represents status (0 for untouched, 1 for flagged, 2 for dug)
+    // board, where cell (i,j) is stored at index j*numCols + i of cells, and each cell is a byte where:
+    //      bit BOMB represents bomb status (0 for no bomb, 1 for bomb)
+    //      bits NEIGHBOR_MASK represent how many neighbors have a bomb
+    //      bits STATUS_MASK represent status (UNTOUCHED, FLAGGED or DUG, shifted by STATUS_SHIFT)
+    //      bit EXPLODED marks a dug cell whose bomb was removed, so that bombsHit can be recounted
+    // cells is made by defaultStorage unless the board was constructed with other CellStorage, and
+    // reset() reuses it. After construction, it is only replaced while holding both the lock on this
+    // board and the write lock of stateLock: by startHistory(), which moves the cells into a
+    // VersionedCellStorage when undo is enabled, and by exchangeState(), which swaps it with the
+    // storage of a board from the pool in restartIfCleared(). Writers see the swap through the lock
+    // on this board; readers that take neither lock read the field once and validate their stamp,
+    // see read(), so they use either the old storage or the new one, and retry under the read lock.
     private final int numCols;
     private final int numRows;
-    private final Map<String, int[]> board = Collections.synchronizedMap(new HashMap<>());
+    private CellStorage cells;
+    // offsets from the index of a cell to the indices of its 8 neighbors, for the cells that are not
+    // on the edge of the board; cells on the edge take the bounds-checked path instead
+    private final int[] neighborOffsets;
+    // running counters, kept up to date by every method that changes the board
+    private int safeRemaining = 0;      // cells without a bomb that have not been dug yet
+    private int bombsRemaining = 0;     // cells that still contain a bomb
+    private int flagCount = 0;          // cells that are currently flagged
+    private int bombsHit = 0;           // bombs that have been dug (and removed)
+    // whether a cell has been dug in this game
+    private boolean anyDug = false;
+    // settings of this board object rather than of a game: kept by reset() and not exchanged by
+    // restartIfCleared(); see setSafeFirstDig()
+    private boolean safeFirstDig = false;
+    private boolean safeFirstArea = false;
+    // free-cell index, for moving bombs away from the first dig: freeCells[0..freeCount) are the
+    // indices of the cells without a bomb, in any order, and freeSlot[index] is the position of
+    // cell index in freeCells. Only kept up to date until the first dig (bombs do not move after
+    // that), and null if the board was never in first-dig-safe mode.
+    private int[] freeCells = null;
+    private int[] freeSlot = null;
+    private int freeCount = 0;
+    // record of the changes to this board, or null; a setting of this board object, like safeFirstDig
+    private MoveLog moveLog = null;
+    // number of moves of each game that can be undone, 0 if undo is disabled; a setting of this
+    // board object, like safeFirstDig. history holds the states of the current game since its
+    // start or its last undoDepth moves, or is null if undo is disabled; see setUndoDepth()
+    private int undoDepth = 0;
+    private UndoHistory<GameState> history = null;
+    // whether the cells of any rectangle can be counted quickly, a setting of this board object like
+    // safeFirstDig; if so, regions counts the cells with a bomb, flagged and dug, and is kept up to
+    // date by every method that changes them; otherwise it is null. Like freeCells, regions
+    // belongs to the game and is exchanged by restartIfCleared(); see setRegionIndex()
+    private boolean regionIndexed = false;
+    private RegionIndex regions = null;
+    // number of changes made to the board so far; volatile so that it can be read without the lock
+    private volatile long version = 0;
+    // lets readers of cells and the counters do without the lock on the board: writers, which hold
+    // that lock, also hold its write lock while they change the board
+    private final StampedLock stateLock = new StampedLock();
+    private final Random random = new Random();
+    /** Visible value of an untouched cell in snapshotVisible(); dug cells have their neighbor count, 0 to 8. */
+    public static final int VISIBLE_UNTOUCHED = 9;
+    /** Visible value of a flagged cell in snapshotVisible(). */
+    public static final int VISIBLE_FLAGGED = 10;
     private static final double BOMB_PROBABILITY = 0.25;
+    /** Coordinate of no cell, for boards without a safe cell. */
+    private static final int NO_SAFE_CELL = -2;
     private static final int MAX_NEIGHBOR_COUNT = 8;
-    private static final int BOMB_STATUS = 0;
-    private static final int NEIGHBOR_COUNT = 1;
-    private static final int PLAYER_STATUS = 2;
+    private static final int NEIGHBOR_MASK = 0x0F;
+    private static final int BOMB = 0x10;
+    private static final int EXPLODED = 0x80;
+    private static final int STATUS_SHIFT = 5;
+    private static final int STATUS_MASK = 0x3 << STATUS_SHIFT;
+    private static final int UNTOUCHED = 0;
+    private static final int FLAGGED = 1;
+    private static final int DUG = 2;
+    // makes the storage of the boards made by the public constructors, from the number of cells
+    private static volatile IntFunction<CellStorage> defaultStorage = HeapCellStorage::new;
     
     /*
      * Abstraction function:
-     *  AF(numCols, numRows, board) = Minesweeper board with numCols number of columns and numRows
+     *  AF(numCols, numRows, cells) = Minesweeper board with numCols number of columns and numRows
      *                                number of rows, where each coordinate is mapped to a status 
-     *                                array, representing if it contains a bomb, how many neighbors
+     *                                byte, representing if it contains a bomb, how many neighbors
      *                                have bombs, and if it is untouched/flagged/dug.
+     *                                safeRemaining, bombsRemaining, flagCount and bombsHit
+     *                                summarize the progress of the game on that board.
      * Rep invariant:
      *  numCols > 0
      *  numRows > 0
-     *  board.size() = numCols * numRows
+     *  cells.size() = numCols * numRows
+     *  neighborOffsets = neighborOffsets(numCols)
+     *  the neighbor count of each cell is in [0, MAX_NEIGHBOR_COUNT] and its status is
+     *      UNTOUCHED, FLAGGED or DUG
+     *  safeRemaining = number of cells with no bomb and status not dug
+     *  bombsRemaining = number of cells with a bomb
+     *  flagCount = number of cells with status flagged
+     *  bombsHit = number of cells marked exploded
+     *  anyDug is true if some cell has status dug
+     *  if safeFirstDig and !anyDug: freeCells and freeSlot have length cells.size(), and
+     *      freeCells[0..freeCount) are exactly the indices of the cells with no bomb, with
+     *      freeSlot[freeCells[k]] = k for 0 <= k < freeCount
+     *  version >= 0, and version never decreases
+     *  undoDepth >= 0; history is null iff undoDepth = 0, and otherwise cells is a
+     *      VersionedCellStorage, and the current state of history is the state of this board
+     *  regions is null iff !regionIndexed, and otherwise has the size of the board and counts
+     *      exactly the cells with a bomb, the cells with status flagged and the cells with status dug
      * Rep exposure:
      *  numRows and numCols are both final and primitive data types
-     *  board is never returned in any of the public methods
+     *  neighborOffsets is final and never returned
+     *  cells, freeCells and freeSlot are never returned in any of the public methods, and are only
+     *      handed over to another GameBoard by restartIfCleared()
+     *  history and its states are never returned, and the states are immutable
+     *  regions is never returned, and is only handed over to another GameBoard by restartIfCleared()
      * Thread safety:
-     *  board is wrapped in a thread-safe wrapper
-     *  each instance method that accesses the board has a lock to ensure that calls in the
-     *      method are atomic
+     *  each instance method that changes cells or the counters holds the lock on this board, so
+     *      that changes are atomic, and also holds the write lock of stateLock while it changes them
+     *  methods that only read cells and the counters do not take the lock on this board, see read():
+     *      they read optimistically, with a stamp of stateLock, and only read again under its read
+     *      lock if the board changed meanwhile, or if cells does not support optimistic reads; so
+     *      readers do not block each other, and only block writers when they read again
+     *  restartIfCleared() locks both boards, and requires that nobody else locks the fresh board
+     *  version is only changed while holding the lock and the write lock, and is volatile so
+     *      getVersion() needs no lock
+     *  moveLog is only called while holding the lock, which also guards the state of moveLog
+     *  undoDepth and history are guarded by the lock; history is only changed while also holding
+     *      the write lock, when the cells and the counters change with it
+     *  regionIndexed and regions are only changed, and regions only updated, while holding the lock
+     *      and the write lock, so regions is read like cells, see read()
      */
     
     /**
-     * Checks that the board size is always exactly equal to sizeX * sizeY
+     * Checks that the board size is always exactly equal to sizeX * sizeY, and that the counters
+     * are in range. (Checking the counters exactly would need a scan of the whole board.)
      */
     private void checkRep() {
         assert numCols > 0 && numRows > 0;
-        assert board.size() == numCols * numRows;
+        assert cells.size() == numCols * numRows;
+        assert safeRemaining >= 0 && bombsRemaining >= 0 && flagCount >= 0 && bombsHit >= 0;
+        assert safeRemaining + bombsRemaining <= cells.size() && flagCount <= cells.size();
+        assert !safeFirstDig || anyDug || (freeCells != null && freeCount == cells.size() - bombsRemaining);
+        assert undoDepth >= 0 && (history == null) == (undoDepth == 0);
+        assert history == null || cells instanceof VersionedCellStorage;
+        assert (regions != null) == regionIndexed;
     }
     
     /**
-     * Constructs a Minesweeper board of size sizeX * sizeY.
+     * Constructs a random Minesweeper board of size sizeX * sizeY.
      * @param sizeX number of columns in the board
      * @param sizeY number of rows in the board
      */
     public GameBoard(int sizeX, int sizeY) {
+        this(sizeX, sizeY, new Random().nextLong());
+    }
+    
+    /**
+     * Constructs a random Minesweeper board of size sizeX * sizeY. Boards constructed with
+     * the same size and seed have the same bombs.
+     * @param sizeX number of columns in the board
+     * @param sizeY number of rows in the board
+     * @param seed seed for placing the bombs
+     */
+    public GameBoard(int sizeX, int sizeY, long seed) {
+        this(sizeX, sizeY, seed, NO_SAFE_CELL, NO_SAFE_CELL);
+    }
+    
+    /**
+     * Constructs a random Minesweeper board of size sizeX * sizeY, like GameBoard(sizeX, sizeY, seed)
+     * except that there are no bombs in cell (safeX,safeY) or its neighbors, so that digging
+     * that cell first uncovers an opening.
+     * @param sizeX number of columns in the board
+     * @param sizeY number of rows in the board
+     * @param seed seed for placing the bombs
+     * @param safeX column of the safe cell
+     * @param safeY row of the safe cell
+     */
+    public GameBoard(int sizeX, int sizeY, long seed, int safeX, int safeY) {
+        this(sizeX, sizeY, seed, safeX, safeY, defaultStorage.apply(sizeX * sizeY));
+    }
+    
+    /**
+     * Constructs a random Minesweeper board like GameBoard(sizeX, sizeY, seed, safeX, safeY), with
+     * its cells in the given storage.
+     * @param sizeX number of columns in the board
+     * @param sizeY number of rows in the board
+     * @param seed seed for placing the bombs
+     * @param safeX column of the safe cell, or NO_SAFE_CELL
+     * @param safeY row of the safe cell, or NO_SAFE_CELL
+     * @param storage storage for the cells, requires storage.size() == sizeX * sizeY and every byte 0;
+     *                owned by the board from now on
+     */
+    GameBoard(int sizeX, int sizeY, long seed, int safeX, int safeY, CellStorage storage) {
+        assert sizeX > 0 && sizeY > 0 && storage.size() == sizeX * sizeY;
         numCols = sizeX;
         numRows = sizeY;
-        
-        // add entries to the board
-        for (int x=0; x < sizeX; x++) {
-            for (int y=0; y < sizeY; y++) {
-                int[] status = {0, 0, 0};
-                double random = Math.random();            // could generate any decimal >= 0 and < 1
-                if (random < BOMB_PROBABILITY) {
-                    status[BOMB_STATUS] = 1;                        // bomb status: bomb: 1, no bomb: 0
-                }
-                board.put(x+","+y, status);
+        neighborOffsets = neighborOffsets(numCols);
+        cells = storage;
+        placeRandomBombs(seed, safeX, safeY);
+        checkRep();
+    }
+    
+    /**
+     * Constructs a random Minesweeper board like GameBoard(sizeX, sizeY, seed), with its cells in
+     * the given storage.
+     * @param sizeX number of columns in the board
+     * @param sizeY number of rows in the board
+     * @param seed seed for placing the bombs
+     * @param storage storage for the cells, requires storage.size() == sizeX * sizeY and every byte 0;
+     *                owned by the board from now on
+     */
+    GameBoard(int sizeX, int sizeY, long seed, CellStorage storage) {
+        this(sizeX, sizeY, seed, NO_SAFE_CELL, NO_SAFE_CELL, storage);
+    }
+    
+    /**
+     * Reloads a board whose cells were saved in storage, e.g. a board file mapped by
+     * OffHeapCellStorage.map(), in the state it was in, or plays on the board that a
+     * SparseCellStorage computes. Its counters are recounted from the cells, in one pass over the
+     * storage.
+     * @param sizeX number of columns in the board
+     * @param sizeY number of rows in the board
+     * @param storage the cells of a sizeX * sizeY board, as stored by a GameBoard; owned by the
+     *                board from now on
+     */
+    GameBoard(int sizeX, int sizeY, CellStorage storage) {
+        assert sizeX > 0 && sizeY > 0 && storage.size() == sizeX * sizeY;
+        numCols = sizeX;
+        numRows = sizeY;
+        neighborOffsets = neighborOffsets(numCols);
+        cells = storage;
+        for (int index = 0; index < cells.size(); index++) {
+            if (hasBomb(index)) {
+                bombsRemaining += 1;
+            } else if (status(index) != DUG) {
+                safeRemaining += 1;
             }
-        }
-        // increment count of bombs in neighbors
-        for (int x=0; x < sizeX; x++) {
-            for (int y=0; y < sizeY; y++) {
-                if (board.get(x+","+y)[BOMB_STATUS]==1) {
-                    updateNeighbors(x, y, 1);
-                }
+            if (status(index) == FLAGGED) {
+                flagCount += 1;
+            } else if (status(index) == DUG) {
+                anyDug = true;
+            }
+            if ((cells.get(index) & EXPLODED) != 0) {
+                bombsHit += 1;
             }
         }
         checkRep();
@@ -110,15 +284,20 @@ public class GameBoard {
         String[] size = reader.readLine().split("\\s+");
         this.numCols = Integer.parseInt(size[0]);
         this.numRows = Integer.parseInt(size[1]);
+        this.neighborOffsets = neighborOffsets(numCols);
+        this.cells = defaultStorage.apply(numCols * numRows);
         
         // populate board
         for (int row = 0; row < numRows; row++) {
             String line = reader.readLine();
-            String[] cells = line.split("\\s+");
+            String[] values = line.split("\\s+");
             for (int col = 0; col < numCols; col++) {
-                int[] status = {0, 0, 0};
-                status[BOMB_STATUS] = Integer.parseInt(cells[col]);       // 0 if no bomb, 1 if has bomb
-                board.put(col+","+row, status);
+                if (Integer.parseInt(values[col]) == 1) {       // 0 if no bomb, 1 if has bomb
+                    setBomb(index(col, row), true);
+                    bombsRemaining += 1;
+                } else {
+                    safeRemaining += 1;
+                }
             }
         }
         reader.close();
@@ -126,7 +305,7 @@ public class GameBoard {
         // change neighbor counts
         for (int x=0; x < numCols; x++) {
             for (int y=0; y < numRows; y++) {
-                if (board.get(x+","+y)[BOMB_STATUS]==1) {
+                if (hasBomb(index(x, y))) {
                     updateNeighbors(x, y, 1);
                 }
             }
@@ -134,6 +313,805 @@ public class GameBoard {
         checkRep();
     }
     
+    /**
+     * Constructs a board with the given bombs, e.g. the region of a larger board owned by a
+     * ShardServer.
+     * @param sizeX number of columns in the board
+     * @param sizeY number of rows in the board
+     * @param bombs bombs[j*sizeX + i] is true iff cell (i,j) contains a bomb; requires
+     *              bombs.length == sizeX * sizeY
+     */
+    GameBoard(int sizeX, int sizeY, boolean[] bombs) {
+        assert sizeX > 0 && sizeY > 0 && bombs.length == sizeX * sizeY;
+        numCols = sizeX;
+        numRows = sizeY;
+        neighborOffsets = neighborOffsets(numCols);
+        cells = defaultStorage.apply(sizeX * sizeY);
+        for (int index = 0; index < cells.size(); index++) {
+            if (bombs[index]) {
+                setBomb(index, true);
+                bombsRemaining += 1;
+            } else {
+                safeRemaining += 1;
+            }
+        }
+        for (int index = 0; index < cells.size(); index++) {
+            if (bombs[index]) {
+                updateNeighbors(index % numCols, index / numCols, 1);
+            }
+        }
+        checkRep();
+    }
+    
+    /**
+     * @param cols number of columns of a board
+     * @return offsets from the index of a cell to the indices of its 8 neighbors, for a cell that
+     *         is not on the edge of the board
+     */
+    private static int[] neighborOffsets(int cols) {
+        return new int[] { -cols - 1, -cols, -cols + 1, -1, 1, cols - 1, cols, cols + 1 };
+    }
+    
+    /**
+     * @param x column of a cell
+     * @param y row of a cell
+     * @return true iff (x,y) is a cell of this board, and all its 8 neighbors are as well
+     */
+    private boolean isInterior(int x, int y) {
+        return x > 0 && x < numCols - 1 && y > 0 && y < numRows - 1;
+    }
+    
+    /**
+     * Sets the storage of the boards made from now on by the public constructors, and by
+     * GameBoard(sizeX, sizeY, bombs), so that every test of GameBoard can be run on every kind
+     * of storage. Boards that exist already keep their storage.
+     * @param storage makes storage of the given number of bytes, all 0, e.g. HeapCellStorage::new
+     *                (the default)
+     */
+    static void setDefaultStorage(IntFunction<CellStorage> storage) {
+        defaultStorage = storage;
+    }
+    
+    /**
+     * Encodes a cell of a new board, as stored by a GameBoard: untouched, and not exploded.
+     * Lets storage compute the cells of a board that were never written, see SparseCellStorage.
+     * @param bomb whether the cell contains a bomb
+     * @param neighborBombs how many neighbors of the cell contain a bomb, requires
+     *                      0 <= neighborBombs <= MAX_NEIGHBOR_COUNT
+     * @return the byte of the cell
+     */
+    static byte newCell(boolean bomb, int neighborBombs) {
+        assert neighborBombs >= 0 && neighborBombs <= MAX_NEIGHBOR_COUNT;
+        return (byte) ((bomb ? BOMB : 0) | neighborBombs | UNTOUCHED << STATUS_SHIFT);
+    }
+    
+    /**
+     * Clears the board and places new random bombs, where each cell contains a bomb with
+     * probability BOMB_PROBABILITY, except cell (safeX,safeY) and its neighbors. Reuses the storage
+     * of the board.
+     * Requires every cell to be untouched, with no bombs and a neighbor count of 0, and
+     * every counter to be 0.
+     * @param seed seed for placing the bombs
+     * @param safeX column of the safe cell, or NO_SAFE_CELL
+     * @param safeY row of the safe cell, or NO_SAFE_CELL
+     */
+    private void placeRandomBombs(long seed, int safeX, int safeY) {
+        random.setSeed(seed);
+        for (int x=0; x < numCols; x++) {
+            for (int y=0; y < numRows; y++) {
+                // always draw, so that the safe cell does not change where the other bombs are
+                boolean bomb = random.nextDouble() < BOMB_PROBABILITY;
+                if (bomb && (Math.abs(x - safeX) > 1 || Math.abs(y - safeY) > 1)) {
+                    setBomb(index(x, y), true);
+                    bombsRemaining += 1;
+                } else {
+                    safeRemaining += 1;
+                }
+            }
+        }
+        // increment count of bombs in neighbors
+        for (int x=0; x < numCols; x++) {
+            for (int y=0; y < numRows; y++) {
+                if (hasBomb(index(x, y))) {
+                    updateNeighbors(x, y, 1);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Starts a new game on this board: every cell becomes untouched, new random bombs are placed
+     * as if by GameBoard(getCols(), getRows(), seed), and all counters start over.
+     * The storage of the board is reused, so a reset creates no garbage.
+     * @param seed seed for placing the bombs
+     */
+    public synchronized void reset(long seed) {
+        reset(seed, NO_SAFE_CELL, NO_SAFE_CELL);
+    }
+    
+    /**
+     * Starts a new game on this board, like reset(seed), except that bombs are placed as if by
+     * GameBoard(getCols(), getRows(), seed, safeX, safeY).
+     * @param seed seed for placing the bombs
+     * @param safeX column of the cell that has no bomb and no neighboring bombs
+     * @param safeY row of the cell that has no bomb and no neighboring bombs
+     */
+    public synchronized void reset(long seed, int safeX, int safeY) {
+        long stamp = stateLock.writeLock();
+        try {
+            cells.clear();
+            safeRemaining = 0;
+            bombsRemaining = 0;
+            flagCount = 0;
+            bombsHit = 0;
+            anyDug = false;
+            // the index is out of date once the cells are cleared, so it is counted again at once
+            RegionIndex index = regions;
+            regions = null;
+            placeRandomBombs(seed, safeX, safeY);
+            regions = index;
+            if (regions != null) {
+                regions.rebuild(this::regionKinds);
+            }
+            if (safeFirstDig) {
+                buildFreeIndex();
+            } else {
+                // drop the index rather than leave it out of date for a board that may take this game
+                freeCells = null;
+                freeSlot = null;
+            }
+            startHistory();
+            if (moveLog != null) {
+                moveLog.newGame();
+            }
+            version++;
+            checkRep();
+        } finally {
+            stateLock.unlockWrite(stamp);
+        }
+    }
+    
+    /**
+     * Sets whether the first dig of each game on this board is safe. In first-dig-safe mode, if the
+     * first cell dug in a game contains a bomb, the bomb is moved to a random cell that has none
+     * (if there is one) before the cell is dug, so that the dig never returns "BOOM" and the number
+     * of bombs does not change. With wholeArea, the bombs in the cells next to the first cell dug
+     * are moved as well, so that the first dig always uncovers an opening.
+     * 
+     * The setting belongs to this board rather than to a game: it stays in effect after reset(),
+     * and restartIfCleared() does not exchange it. Enabling it before the first dig of a game
+     * takes time linear in the size of the board, to index the cells without a bomb; moving a bomb
+     * then takes constant time.
+     * @param enabled true to make the first dig safe
+     * @param wholeArea true to also move the bombs next to the first dig, if enabled
+     */
+    public synchronized void setSafeFirstDig(boolean enabled, boolean wholeArea) {
+        safeFirstDig = enabled;
+        safeFirstArea = wholeArea;
+        if (enabled && !anyDug) {
+            buildFreeIndex();
+        }
+        checkRep();
+    }
+    
+    /**
+     * Sets how many moves of each game on this board can be undone, see undo(). Each dig, flag,
+     * deflag and chord that changes the board keeps the state of the game after it, up to depth
+     * moves back; the oldest state is dropped when there are more.
+     * 
+     * The states share the cells they have in common: the cells are moved into a
+     * VersionedCellStorage, where a move only copies the tiles of cells it changed, so a state
+     * takes memory in proportion to the cells changed by its move rather than to the size of the
+     * board. Moving them takes time linear in the size of the board, once. The setting belongs to
+     * this board rather than to a game, like setSafeFirstDig(); the history of each game starts
+     * when the game does.
+     * @param depth number of moves that can be undone, or 0 to disable undo; requires depth >= 0
+     */
+    public synchronized void setUndoDepth(int depth) {
+        assert depth >= 0;
+        long stamp = stateLock.writeLock();
+        try {
+            undoDepth = depth;
+            startHistory();
+            checkRep();
+        } finally {
+            stateLock.unlockWrite(stamp);
+        }
+    }
+    
+    /**
+     * Sets whether this board keeps a region index, so that getRegionStats() counts the cells of
+     * any rectangle in time logarithmic in the size of the board, rather than linear in the size
+     * of the rectangle. The index keeps 2D Fenwick trees of the cells with a bomb, flagged and dug,
+     * updated as each of them changes, at the cost of a few more steps per cell changed; it takes
+     * 12 bytes per cell, and building it takes time linear in the size of the board, as does
+     * counting again after an undo, a redo or a reset. The setting belongs to this board rather
+     * than to a game, like setSafeFirstDig().
+     * @param enabled true to keep a region index; requires getCols() * getRows() to be at most
+     *                RegionIndex.MAX_CELLS
+     */
+    public synchronized void setRegionIndex(boolean enabled) {
+        long stamp = stateLock.writeLock();
+        try {
+            regionIndexed = enabled;
+            indexRegions();
+            checkRep();
+        } finally {
+            stateLock.unlockWrite(stamp);
+        }
+    }
+    
+    /**
+     * Builds the region index if this board keeps one and the game has none, e.g. after receiving
+     * a game from a board that keeps none, or drops it if this board keeps none. Requires the
+     * write lock.
+     */
+    private void indexRegions() {
+        if ( ! regionIndexed) {
+            regions = null;
+        } else if (regions == null) {
+            regions = new RegionIndex(numCols, numRows);
+            regions.rebuild(this::regionKinds);
+        }
+    }
+    
+    /**
+     * @param index index of a cell
+     * @return the kinds of the cell in the region index: a bit mask with bit 1 << RegionIndex.BOMBS
+     *         set if it has a bomb, and 1 << RegionIndex.FLAGS or 1 << RegionIndex.DUG if it is
+     *         flagged or dug
+     */
+    private int regionKinds(int index) {
+        byte cell = cells.get(index);
+        int kinds = (cell & BOMB) != 0 ? 1 << RegionIndex.BOMBS : 0;
+        if (statusOf(cell) == FLAGGED) {
+            kinds |= 1 << RegionIndex.FLAGS;
+        } else if (statusOf(cell) == DUG) {
+            kinds |= 1 << RegionIndex.DUG;
+        }
+        return kinds;
+    }
+    
+    /**
+     * Starts the history of the game as it is now, if undo is enabled, moving the cells into a
+     * VersionedCellStorage if they are not in one; otherwise drops the history. Requires the
+     * write lock.
+     */
+    private void startHistory() {
+        if (undoDepth == 0) {
+            history = null;
+            return;
+        }
+        if ( ! (cells instanceof VersionedCellStorage)) {
+            CellStorage versioned = new VersionedCellStorage(cells.size());
+            for (int index = 0; index < cells.size(); index++) {
+                versioned.set(index, cells.get(index));
+            }
+            cells = versioned;
+        }
+        history = new UndoHistory<>(undoDepth + 1, saveState());
+    }
+    
+    /**
+     * @return the state of the game as it is now; requires cells to be a VersionedCellStorage,
+     *         which keeps the cells as they are now
+     */
+    private GameState saveState() {
+        return new GameState(((VersionedCellStorage) cells).snapshot(), safeRemaining, bombsRemaining,
+                flagCount, bombsHit, anyDug);
+    }
+    
+    /**
+     * Keeps the state of the game after a move that changed it, if undo is enabled.
+     * Requires the write lock.
+     */
+    private void recordMove() {
+        if (history != null) {
+            history.record(saveState());
+        }
+    }
+    
+    /**
+     * Undoes the last moves of the game, in constant time, by going back to the state of the game
+     * before them. Moves that cannot be undone any more, because they are more than the depth set
+     * by setUndoDepth() back, or were made in an earlier game, are not undone. If undo is
+     * disabled, nothing happens. Undone moves can be redone by redo() until the next move.
+     * If the board is in first-dig-safe mode and the first dig of the game is undone, its bombs
+     * are back where they were, and indexing the cells without a bomb again takes linear time.
+     * @param moves number of moves to undo, requires moves >= 0
+     * @return "BOARD"
+     */
+    public synchronized String undo(int moves) {
+        assert moves >= 0;
+        if (history != null) {
+            int undoable = history.undoable();
+            travel(history.undo(moves), MoveLog.UNDO, undoable - history.undoable());
+        }
+        checkRep();
+        return "BOARD";
+    }
+    
+    /**
+     * Redoes moves that were undone by undo(), in constant time, by going forward to the state of
+     * the game after them. If no move was undone since the last move, or undo is disabled,
+     * nothing happens.
+     * @param moves number of moves to redo, requires moves >= 0
+     * @return "BOARD"
+     */
+    public synchronized String redo(int moves) {
+        assert moves >= 0;
+        if (history != null) {
+            int redoable = history.redoable();
+            travel(history.redo(moves), MoveLog.REDO, redoable - history.redoable());
+        }
+        checkRep();
+        return "BOARD";
+    }
+    
+    /**
+     * Brings the game back, or forward, to a state of its history.
+     * @param state state to bring the game to, or null to do nothing
+     * @param type event to record in the log: MoveLog.UNDO or MoveLog.REDO
+     * @param moves number of moves undone or redone
+     */
+    private void travel(GameState state, int type, int moves) {
+        if (state == null) {
+            return;
+        }
+        long stamp = stateLock.writeLock();
+        try {
+            ((VersionedCellStorage) cells).restore(state.cells);
+            safeRemaining = state.safeRemaining;
+            bombsRemaining = state.bombsRemaining;
+            flagCount = state.flagCount;
+            bombsHit = state.bombsHit;
+            anyDug = state.anyDug;
+            if (safeFirstDig && !anyDug) {
+                // the first dig may have moved bombs, so the index is out of date
+                buildFreeIndex();
+            }
+            if (regions != null) {
+                regions.rebuild(this::regionKinds);
+            }
+            version++;
+            if (moveLog != null) {
+                moveLog.travel(type, moves);
+            }
+        } finally {
+            stateLock.unlockWrite(stamp);
+        }
+    }
+    
+    /**
+     * Immutable state of a game, kept by the history of a board for undo.
+     */
+    private static final class GameState {
+        private final VersionedCellStorage.Version cells;
+        private final int safeRemaining;
+        private final int bombsRemaining;
+        private final int flagCount;
+        private final int bombsHit;
+        private final boolean anyDug;
+        
+        /**
+         * @param cells the cells of the game
+         * @param safeRemaining cells without a bomb that have not been dug
+         * @param bombsRemaining cells that contain a bomb
+         * @param flagCount cells that are flagged
+         * @param bombsHit bombs that have been dug
+         * @param anyDug whether a cell has been dug in the game
+         */
+        private GameState(VersionedCellStorage.Version cells, int safeRemaining, int bombsRemaining,
+                int flagCount, int bombsHit, boolean anyDug) {
+            this.cells = cells;
+            this.safeRemaining = safeRemaining;
+            this.bombsRemaining = bombsRemaining;
+            this.flagCount = flagCount;
+            this.bombsHit = bombsHit;
+            this.anyDug = anyDug;
+        }
+    }
+    
+    /**
+     * Rebuilds the free-cell index from cells, reusing its storage if there is one.
+     */
+    private void buildFreeIndex() {
+        if (freeCells == null) {
+            freeCells = new int[cells.size()];
+            freeSlot = new int[cells.size()];
+        }
+        freeCount = 0;
+        for (int index = 0; index < cells.size(); index++) {
+            if (!hasBomb(index)) {
+                freeSlot[index] = freeCount;
+                freeCells[freeCount++] = index;
+            }
+        }
+    }
+    
+    /**
+     * Removes a cell from the free-cell index, in constant time, by moving the last free cell
+     * into its slot.
+     * @param index index of a cell in freeCells[0..freeCount)
+     */
+    private void removeFree(int index) {
+        int slot = freeSlot[index];
+        int last = freeCells[--freeCount];
+        freeCells[slot] = last;
+        freeSlot[last] = slot;
+    }
+    
+    /**
+     * Moves the bombs in cell (x,y), and in its neighbors if safeFirstArea, to random cells that
+     * have no bomb and are not among those cells, as long as there are such cells. Only the
+     * neighbor counts around the old and the new position of each bomb are updated, and the
+     * counters do not change. Requires the free-cell index to be up to date.
+     * @param x column of the first cell dug
+     * @param y row of the first cell dug
+     */
+    private void moveBombsAwayFrom(int x, int y) {
+        int radius = safeFirstArea ? 1 : 0;
+        // take the area out of the index first, so that no bomb is moved into it
+        for (int i = x - radius; i <= x + radius; i++) {
+            for (int j = y - radius; j <= y + radius; j++) {
+                if (isCell(i, j) && !hasBomb(index(i, j))) {
+                    removeFree(index(i, j));
+                }
+            }
+        }
+        for (int i = x - radius; i <= x + radius; i++) {
+            for (int j = y - radius; j <= y + radius; j++) {
+                if (isCell(i, j) && hasBomb(index(i, j)) && freeCount > 0) {
+                    int target = freeCells[random.nextInt(freeCount)];
+                    removeFree(target);
+                    moveBomb(index(i, j), target);
+                }
+            }
+        }
+        // the index is not kept up to date after the first dig, so the area is not put back
+    }
+    
+    /**
+     * Moves a bomb, updating only the neighbor counts around its old and new cell.
+     * @param from index of a cell with a bomb
+     * @param to index of a cell without a bomb
+     */
+    private void moveBomb(int from, int to) {
+        assert hasBomb(from) && !hasBomb(to);
+        setBomb(from, false);
+        updateNeighbors(from % numCols, from / numCols, -1);
+        setBomb(to, true);
+        updateNeighbors(to % numCols, to / numCols, 1);
+        if (moveLog != null) {
+            moveLog.moveBomb(from, to);
+        }
+    }
+    
+    /**
+     * Writes the cells to the file behind the board's storage, if there is one, as they are
+     * between two moves.
+     */
+    synchronized void flush() {
+        cells.flush();
+    }
+    
+    /**
+     * Records every change to this board in moveLog from now on, or stops recording.
+     * Called by MoveLog, which checkpoints the board first.
+     * @param moveLog log to record in, or null to stop recording
+     */
+    synchronized void attachMoveLog(MoveLog moveLog) {
+        assert moveLog == null || this.moveLog == null;
+        this.moveLog = moveLog;
+    }
+    
+    /**
+     * Copies the state of this game into a checkpoint, reusing its storage if it has the right size.
+     * @param checkpoint checkpoint to fill in, except for its move number
+     */
+    synchronized void saveCheckpoint(MoveLog.Checkpoint checkpoint) {
+        if (checkpoint.cells == null || checkpoint.cells.length != cells.size()) {
+            checkpoint.cells = new byte[cells.size()];
+        }
+        cells.copyTo(checkpoint.cells);
+        checkpoint.safeRemaining = safeRemaining;
+        checkpoint.bombsRemaining = bombsRemaining;
+        checkpoint.flagCount = flagCount;
+        checkpoint.bombsHit = bombsHit;
+        checkpoint.anyDug = anyDug;
+    }
+    
+    /**
+     * Constructs a board in the state saved in a checkpoint, with no settings and no log.
+     * @param sizeX number of columns in the board
+     * @param sizeY number of rows in the board
+     * @param checkpoint state of a sizeX * sizeY board
+     */
+    GameBoard(int sizeX, int sizeY, MoveLog.Checkpoint checkpoint) {
+        assert sizeX > 0 && sizeY > 0 && checkpoint.cells.length == sizeX * sizeY;
+        numCols = sizeX;
+        numRows = sizeY;
+        neighborOffsets = neighborOffsets(numCols);
+        cells = new HeapCellStorage(checkpoint.cells.clone());
+        safeRemaining = checkpoint.safeRemaining;
+        bombsRemaining = checkpoint.bombsRemaining;
+        flagCount = checkpoint.flagCount;
+        bombsHit = checkpoint.bombsHit;
+        anyDug = checkpoint.anyDug;
+        checkRep();
+    }
+    
+    /**
+     * Applies an event recorded by a MoveLog, as it was applied to the recorded board.
+     * Requires this board to be in the state the recorded board had just before the event,
+     * and not to be in first-dig-safe mode, since bomb moves are events of their own.
+     * @param event an event encoded by MoveLog, other than NEW_GAME, UNDO and REDO
+     */
+    synchronized void replay(long event) {
+        assert !safeFirstDig;
+        int cell = MoveLog.first(event);
+        switch (MoveLog.type(event)) {
+        case MoveLog.DIG:
+            dig(cell % numCols, cell / numCols);
+            break;
+        case MoveLog.FLAG:
+            flag(cell % numCols, cell / numCols);
+            break;
+        case MoveLog.DEFLAG:
+            deflag(cell % numCols, cell / numCols);
+            break;
+        case MoveLog.CHORD:
+            chord(cell % numCols, cell / numCols);
+            break;
+        case MoveLog.BOOM:
+            // the bomb was removed by the dig or chord just before
+            assert !hasBomb(cell);
+            break;
+        case MoveLog.MOVE_BOMB:
+            long stamp = stateLock.writeLock();
+            try {
+                moveBomb(cell, MoveLog.second(event));
+                version++;
+            } finally {
+                stateLock.unlockWrite(stamp);
+            }
+            break;
+        default:
+            throw new IllegalArgumentException("cannot replay event " + MoveLog.describe(event, numCols));
+        }
+        checkRep();
+    }
+    
+    /**
+     * If this board is cleared, starts a new game on it in constant time, by exchanging the entire
+     * state (cells and counters) of this board with fresh, a board that was generated ahead of time.
+     * Requires fresh to have the same size as this board, and that no other thread uses fresh
+     * during the call.
+     * @param fresh board to take the new game from; receives the cleared game if there was one
+     * @return true iff this board was cleared, and the states were exchanged
+     */
+    synchronized boolean restartIfCleared(GameBoard fresh) {
+        if (!isCleared()) {
+            return false;
+        }
+        exchangeState(fresh);
+        return true;
+    }
+    
+    /**
+     * Exchanges the entire state (cells, counters, free-cell index and region index) of this board
+     * with other, in constant time. The first-dig-safe, undo and region index settings of the boards
+     * are not exchanged; if this board is in first-dig-safe mode and other is not, indexing the new
+     * game takes linear time, and so does counting its regions if this board keeps a region index
+     * and other does not, and moving its cells into a VersionedCellStorage if undo is enabled on
+     * this board and not on other. The history of each board starts over with the game it receives.
+     * Requires other to have the same size as this board, and that no other thread uses other
+     * during the call.
+     * @param other board to exchange state with
+     */
+    private synchronized void exchangeState(GameBoard other) {
+        assert other != this && other.numCols == numCols && other.numRows == numRows;
+        synchronized (other) {
+            // each write lock is taken after the lock on its board, like every writer does
+            long stamp = stateLock.writeLock();
+            long otherStamp = other.stateLock.writeLock();
+            try {
+                CellStorage cellsTemp = cells;
+                cells = other.cells;
+                other.cells = cellsTemp;
+                int temp = safeRemaining;
+                safeRemaining = other.safeRemaining;
+                other.safeRemaining = temp;
+                temp = bombsRemaining;
+                bombsRemaining = other.bombsRemaining;
+                other.bombsRemaining = temp;
+                temp = flagCount;
+                flagCount = other.flagCount;
+                other.flagCount = temp;
+                temp = bombsHit;
+                bombsHit = other.bombsHit;
+                other.bombsHit = temp;
+                boolean dugTemp = anyDug;
+                anyDug = other.anyDug;
+                other.anyDug = dugTemp;
+                int[] indexTemp = freeCells;
+                freeCells = other.freeCells;
+                other.freeCells = indexTemp;
+                indexTemp = freeSlot;
+                freeSlot = other.freeSlot;
+                other.freeSlot = indexTemp;
+                temp = freeCount;
+                freeCount = other.freeCount;
+                other.freeCount = temp;
+                RegionIndex regionsTemp = regions;
+                regions = other.regions;
+                other.regions = regionsTemp;
+                other.indexRegions();
+                other.startHistory();
+                other.version++;
+                if (other.moveLog != null) {
+                    other.moveLog.newGame();
+                }
+                other.checkRep();
+                if (safeFirstDig && !anyDug && freeCells == null) {
+                    // other was not in first-dig-safe mode, so the new game needs an index
+                    buildFreeIndex();
+                }
+                indexRegions();
+                startHistory();
+                if (moveLog != null) {
+                    moveLog.newGame();
+                }
+                version++;
+                checkRep();
+            } finally {
+                other.stateLock.unlockWrite(otherStamp);
+                stateLock.unlockWrite(stamp);
+            }
+        }
+    }
+    
+    /**
+     * @param i column
+     * @param j row
+     * @return true iff (i,j) is a cell of this board
+     */
+    private boolean isCell(int i, int j) {
+        return i >= 0 && i < numCols && j >= 0 && j < numRows;
+    }
+    
+    /**
+     * @param i column of a cell, requires isCell(i, j)
+     * @param j row of a cell, requires isCell(i, j)
+     * @return index of cell (i,j) in cells
+     */
+    private int index(int i, int j) {
+        return j * numCols + i;
+    }
+    
+    /**
+     * @param index index of a cell
+     * @return true iff the cell contains a bomb
+     */
+    private boolean hasBomb(int index) {
+        return (cells.get(index) & BOMB) != 0;
+    }
+    
+    /**
+     * @param index index of a cell
+     * @param bomb true to put a bomb in the cell, false to remove it
+     */
+    private void setBomb(int index, boolean bomb) {
+        if (regions != null && hasBomb(index) != bomb) {
+            regions.add(index, RegionIndex.BOMBS, bomb ? 1 : -1);
+        }
+        cells.set(index, (byte) (bomb ? cells.get(index) | BOMB : cells.get(index) & ~BOMB));
+    }
+    
+    /**
+     * @param index index of a cell
+     * @return how many neighbors of the cell have a bomb
+     */
+    private int neighborCount(int index) {
+        return neighborCountOf(cells.get(index));
+    }
+    
+    /**
+     * @param cell byte of a cell
+     * @return how many neighbors of the cell have a bomb
+     */
+    private static int neighborCountOf(byte cell) {
+        return cell & NEIGHBOR_MASK;
+    }
+    
+    /**
+     * @param index index of a cell
+     * @return status of the cell: UNTOUCHED, FLAGGED or DUG
+     */
+    private int status(int index) {
+        return statusOf(cells.get(index));
+    }
+    
+    /**
+     * @param cell byte of a cell
+     * @return status of the cell: UNTOUCHED, FLAGGED or DUG
+     */
+    private static int statusOf(byte cell) {
+        return (cell & STATUS_MASK) >> STATUS_SHIFT;
+    }
+    
+    /**
+     * Reads the state of this board without taking the lock on it. If cells supports it, the read
+     * is made optimistically, without any lock, and is only made again under the read lock of
+     * stateLock if the board changed meanwhile; otherwise it is made under the read lock.
+     * Requires the calling thread not to hold the write lock.
+     * @param reader reads the cells it is given and the counters; may be run on a board that is
+     *               being changed, and its result is then thrown away
+     * @return the result of reader on the board as it was at some point during the call
+     */
+    private <T> T read(Function<CellStorage, T> reader) {
+        long stamp = stateLock.tryOptimisticRead();
+        // read the field once: restartIfCleared() may exchange the cells meanwhile
+        CellStorage storage = cells;
+        if (stamp != 0 && storage.supportsOptimisticReads()) {
+            T result = reader.apply(storage);
+            if (stateLock.validate(stamp)) {
+                return result;
+            }
+        }
+        stamp = stateLock.readLock();
+        try {
+            return reader.apply(cells);
+        } finally {
+            stateLock.unlockRead(stamp);
+        }
+    }
+    
+    /**
+     * Reads counters of this board without taking the lock on it, like read(), without boxing.
+     * @param reader reads the counters
+     * @return the result of reader on the board as it was at some point during the call
+     */
+    private int readCounters(IntSupplier reader) {
+        long stamp = stateLock.tryOptimisticRead();
+        int result = reader.getAsInt();
+        if (stateLock.validate(stamp)) {
+            return result;
+        }
+        stamp = stateLock.readLock();
+        try {
+            return reader.getAsInt();
+        } finally {
+            stateLock.unlockRead(stamp);
+        }
+    }
+    
+    /**
+     * @param index index of a cell
+     * @param status new status of the cell: UNTOUCHED, FLAGGED or DUG
+     */
+    private void setStatus(int index, int status) {
+        if (regions != null) {
+            indexStatus(index, status(index), -1);
+            indexStatus(index, status, 1);
+        }
+        cells.set(index, (byte) ((cells.get(index) & ~STATUS_MASK) | (status << STATUS_SHIFT)));
+    }
+    
+    /**
+     * Adds a cell to the region index under a status, or removes it. Requires regions not to be null.
+     * @param index index of a cell
+     * @param status status the cell takes or leaves: UNTOUCHED, FLAGGED or DUG
+     * @param delta 1 if the cell takes the status, -1 if it leaves it
+     */
+    private void indexStatus(int index, int status, int delta) {
+        if (status == FLAGGED) {
+            regions.add(index, RegionIndex.FLAGS, delta);
+        } else if (status == DUG) {
+            regions.add(index, RegionIndex.DUG, delta);
+        }
+    }
+    
     /**
      * Used for incrementing/decrementing the count of neighbors with bombs.
      * For the neighbors of cell (x,y), update the count-of-neighbors-with-bombs count 
@@ -143,22 +1121,55 @@ public class GameBoard {
      * @param delta how much to add to each neighbor's count-of-neighbors-with-bombs
      */
     private synchronized void updateNeighbors(int x, int y, int delta) {
+        if (isInterior(x, y)) {
+            int center = index(x, y);
+            for (int offset : neighborOffsets) {
+                byte cell = cells.get(center + offset);
+                int count = neighborCountOf(cell) + delta;
+                assert count <= MAX_NEIGHBOR_COUNT && count >= 0;
+                cells.set(center + offset, (byte) ((cell & ~NEIGHBOR_MASK) | count));
+            }
+            return;
+        }
         for (int i=x-1; i <= x+1; i++) {
             for (int j=y-1; j <= y+1; j++) {
-                if (!(i==x && j==y) && board.containsKey(i+","+j)) {
-                    board.get(i+","+j)[NEIGHBOR_COUNT] += delta;
-                    assert board.get(i+","+j)[NEIGHBOR_COUNT] <= MAX_NEIGHBOR_COUNT && board.get(i+","+j)[NEIGHBOR_COUNT] >= 0;
+                if (!(i==x && j==y) && isCell(i, j)) {
+                    int index = index(i, j);
+                    int count = neighborCount(index) + delta;
+                    assert count <= MAX_NEIGHBOR_COUNT && count >= 0;
+                    cells.set(index, (byte) ((cells.get(index) & ~NEIGHBOR_MASK) | count));
                 }
             }
         }
     }
     
+    /**
+     * Adds or removes a bomb just outside the board, as if this board were part of a larger board:
+     * the neighbor counts of the cells of this board next to (x,y) change by delta.
+     * @param x column of the bomb, relative to this board; requires (x,y) not to be a cell of this board
+     * @param y row of the bomb, relative to this board
+     * @param delta 1 to add the bomb, -1 to remove it
+     */
+    synchronized void changeOutsideBomb(int x, int y, int delta) {
+        assert !isCell(x, y) && (delta == 1 || delta == -1);
+        long stamp = stateLock.writeLock();
+        try {
+            updateNeighbors(x, y, delta);
+            version++;
+            checkRep();
+        } finally {
+            stateLock.unlockWrite(stamp);
+        }
+    }
+    
     /**
      * Digs cell (i,j) of the board.
      * If (i,j) is not a valid cell, nothing happens.
      * If (i,j) has been flagged or dug, nothing happens.
      * If (i,j) is untouched, the status of the cell becomes 'dug'.
-     * If (i,j) contains a bomb, the bomb is removed from the board.
+     * If (i,j) contains a bomb, the bomb is removed from the board; but if this is the first
+     * dig of the game and the board is in first-dig-safe mode, the bomb is moved elsewhere
+     * first, as described in setSafeFirstDig().
      * If none of the neighboring cells contain bombs, the status of untouched neighbors
      * will be changed to "dug" as well.
      * 
@@ -168,47 +1179,231 @@ public class GameBoard {
      * cell (i,j) contains a bomb.
      */
     public synchronized String dig(int i, int j) {
+        return dig(i, j, null);
+    }
+    
+    /**
+     * Digs cell (i,j) of the board, like dig(i, j), and reports the cells just outside the board
+     * that the dig would also have dug if the board were part of a larger board, i.e. the
+     * neighbors outside the board of every cell dug with no neighbor bombs.
+     * 
+     * @param i column of the cell to be dug
+     * @param j row of the cell to be dug
+     * @param offEdge receives the column and row, relative to this board, of each such cell
+     *                (possibly more than once), or null
+     * @return as for dig(i, j)
+     */
+    synchronized String dig(int i, int j, BiConsumer<Integer, Integer> offEdge) {
         // if not valid or not untouched, return BOARD
-        if (!board.containsKey(i+","+j) || board.get(i+","+j)[PLAYER_STATUS]!=0) {
+        if (!isCell(i, j) || status(index(i, j))!=UNTOUCHED) {
             checkRep();
             return "BOARD";
         }
-        int[] status = board.get(i+","+j);
-        // if untouched, change to dug
-        if (status[PLAYER_STATUS]==0) {
-            status[PLAYER_STATUS] = 2;      // change status to 2 for 'dug'
-        }
-        // if contains a bomb, return BOOM message, remove bomb, update count of neighbors
-        if (status[BOMB_STATUS]==1) {
-            status[BOMB_STATUS] = 0;
-            updateNeighbors(i, j, -1);
-            digUntouchedNeighbors(i, j);
+        int index = index(i, j);
+        long stamp = stateLock.writeLock();
+        try {
+            if (!anyDug) {
+                anyDug = true;
+                if (safeFirstDig) {
+                    moveBombsAwayFrom(i, j);
+                }
+            }
+            // if untouched, change to dug
+            setStatus(index, DUG);
+            version++;
+            // if contains a bomb, return BOOM message, remove bomb, update count of neighbors
+            if (hasBomb(index)) {
+                removeDugBomb(index);
+                digUntouchedNeighbors(i, j, offEdge);
+                // recorded once the dig is complete, so that a checkpoint never sees half a dig
+                if (moveLog != null) {
+                    moveLog.appendBoom(index);
+                }
+                recordMove();
+                checkRep();
+                return "BOOM";
+            }
+            safeRemaining -= 1;
+            // if has no neighbor cells with bombs, change untouched neighbors to dug, and repeat this step for those neighbors
+            digUntouchedNeighbors(i, j, offEdge);
+            if (moveLog != null) {
+                moveLog.append(MoveLog.DIG, index);
+            }
+            recordMove();
             checkRep();
-            return "BOOM";
+            return "BOARD";
+        } finally {
+            stateLock.unlockWrite(stamp);
         }
-        // if has no neighbor cells with bombs, change untouched neighbors to dug, and recurse this step for those neighbors
-        digUntouchedNeighbors(i, j);
-        checkRep();
-        return "BOARD";
     }
     
     /**
-     * Digs untouched neighbors if the cell (x,y) contains no neighbors
-     * with bombs. Recurses on untouched neighbors.
-     * @param x column of cell
-     * @param y row of cell
+     * Digs untouched neighbors if the cell (x,y) contains no neighbors with bombs, and so on
+     * for each of those that contains no neighbors with bombs either, i.e. digs the opening around
+     * (x,y). Uses a stack of cells rather than recursion, so that openings of any size can be dug.
+     * @param x column of a dug cell
+     * @param y row of a dug cell
+     * @param offEdge receives the neighbors that are not cells of the board, of every cell dug
+     *                with no neighbors with bombs, or null
      */
-    private synchronized void digUntouchedNeighbors(int x, int y) {
-        int[] status = board.get(x+","+y);
-        if (status[NEIGHBOR_COUNT]==0) {
-            for (int i=x-1; i <= x+1; i++) {
-                for (int j=y-1; j <= y+1; j++) {
-                    if (!(i==x && j==y) && board.containsKey(i+","+j) && board.get(i+","+j)[PLAYER_STATUS]==0) {
-                        board.get(i+","+j)[PLAYER_STATUS] = 2;
-                        digUntouchedNeighbors(i, j);
+    private void digUntouchedNeighbors(int x, int y, BiConsumer<Integer, Integer> offEdge) {
+        if (neighborCount(index(x, y)) == 0) {
+            digOpenings(new int[] { index(x, y) }, 1, offEdge);
+        }
+    }
+    
+    /**
+     * Digs the openings around several dug cells with no neighbors with bombs at once, as
+     * digUntouchedNeighbors() does for each of them.
+     * @param starts starts[0..count) are the indices of the cells; may be used as the stack
+     * @param count number of cells
+     * @param offEdge receives the neighbors that are not cells of the board, of every cell dug
+     *                with no neighbors with bombs, or null
+     */
+    private void digOpenings(int[] starts, int count, BiConsumer<Integer, Integer> offEdge) {
+        // cells dug with no neighbors with bombs, whose neighbors are still to be dug; a cell is
+        // pushed at most once, when it is dug
+        int[] stack = starts.length >= 16 ? starts : Arrays.copyOf(starts, 16);
+        int size = count;
+        while (size > 0) {
+            int index = stack[--size];
+            int col = index % numCols;
+            int row = index / numCols;
+            if (isInterior(col, row)) {
+                for (int offset : neighborOffsets) {
+                    if (digNeighbor(index + offset)) {
+                        if (size == stack.length) {
+                            stack = Arrays.copyOf(stack, size * 2);
+                        }
+                        stack[size++] = index + offset;
+                    }
+                }
+                continue;
+            }
+            for (int j = row - 1; j <= row + 1; j++) {
+                for (int i = col - 1; i <= col + 1; i++) {
+                    if (!isCell(i, j)) {
+                        if (offEdge != null) {
+                            offEdge.accept(i, j);
+                        }
+                    } else if (!(i == col && j == row) && digNeighbor(index(i, j))) {
+                        if (size == stack.length) {
+                            stack = Arrays.copyOf(stack, size * 2);
+                        }
+                        stack[size++] = index(i, j);
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Digs a neighbor of a dug cell that has no neighbors with bombs, if it is untouched.
+     * @param index index of the neighbor
+     * @return true iff the neighbor was dug and has no neighbors with bombs, so that its neighbors
+     *         are to be dug as well
+     */
+    private boolean digNeighbor(int index) {
+        byte cell = cells.get(index);
+        if (statusOf(cell) != UNTOUCHED) {
+            return false;
+        }
+        // its neighbor has no neighbors with bombs, so it is safe
+        assert (cell & BOMB) == 0;
+        cells.set(index, (byte) ((cell & ~STATUS_MASK) | DUG << STATUS_SHIFT));
+        if (regions != null) {
+            regions.add(index, RegionIndex.DUG, 1);
+        }
+        safeRemaining -= 1;
+        return neighborCountOf(cell) == 0;
+    }
+    
+    /**
+     * Removes the bomb from a cell that was just dug, and updates the counts of its neighbors.
+     * @param index index of a dug cell with a bomb
+     */
+    private void removeDugBomb(int index) {
+        assert status(index) == DUG && hasBomb(index);
+        cells.set(index, (byte) ((cells.get(index) & ~BOMB) | EXPLODED));
+        if (regions != null) {
+            regions.add(index, RegionIndex.BOMBS, -1);
+        }
+        bombsRemaining -= 1;
+        bombsHit += 1;
+        updateNeighbors(index % numCols, index / numCols, -1);
+    }
+    
+    /**
+     * Chords cell (i,j) of the board: if (i,j) is dug, and as many of its neighbors are flagged
+     * as have a bomb, digs all its untouched neighbors at once, as a single move.
+     * Otherwise, or if it has no untouched neighbors, nothing happens.
+     * Neighbors that contain a bomb (because a flag is wrong) have it removed, as by dig(); then
+     * the openings around all the neighbors dug are dug together, as by dig().
+     * 
+     * @param i column of the cell to chord
+     * @param j row of the cell to chord
+     * @return the type of message ("BOARD" or "BOOM"). "BOOM" is returned if a neighbor that was
+     * dug contains a bomb.
+     */
+    public synchronized String chord(int i, int j) {
+        if (!isCell(i, j) || status(index(i, j)) != DUG) {
+            checkRep();
+            return "BOARD";
+        }
+        int[] neighbors = new int[MAX_NEIGHBOR_COUNT];
+        int untouched = 0;
+        int flagged = 0;
+        for (int y = j - 1; y <= j + 1; y++) {
+            for (int x = i - 1; x <= i + 1; x++) {
+                if (isCell(x, y) && status(index(x, y)) == UNTOUCHED) {
+                    neighbors[untouched++] = index(x, y);
+                } else if (isCell(x, y) && status(index(x, y)) == FLAGGED) {
+                    flagged += 1;
+                }
+            }
+        }
+        if (untouched == 0 || flagged != neighborCount(index(i, j))) {
+            checkRep();
+            return "BOARD";
+        }
+        long stamp = stateLock.writeLock();
+        try {
+            version++;
+            boolean boom = false;
+            for (int n = 0; n < untouched; n++) {
+                setStatus(neighbors[n], DUG);
+                if (hasBomb(neighbors[n])) {
+                    removeDugBomb(neighbors[n]);
+                    boom = true;
+                } else {
+                    safeRemaining -= 1;
+                }
+            }
+            // once every bomb dug is removed, dig the openings of the neighbors left with no
+            // neighbors with bombs, in one flood fill
+            int[] openings = new int[MAX_NEIGHBOR_COUNT];
+            int openingCount = 0;
+            for (int n = 0; n < untouched; n++) {
+                if (neighborCount(neighbors[n]) == 0) {
+                    openings[openingCount++] = neighbors[n];
+                }
+            }
+            digOpenings(openings, openingCount, null);
+            // recorded once the chord is complete, as for dig(); the neighbors were untouched, so
+            // those marked exploded were exploded by this chord
+            if (moveLog != null) {
+                moveLog.append(MoveLog.CHORD, index(i, j));
+                for (int n = 0; n < untouched; n++) {
+                    if ((cells.get(neighbors[n]) & EXPLODED) != 0) {
+                        moveLog.append(MoveLog.BOOM, neighbors[n]);
                     }
                 }
-            } 
+            }
+            recordMove();
+            checkRep();
+            return boom ? "BOOM" : "BOARD";
+        } finally {
+            stateLock.unlockWrite(stamp);
         }
     }
     
@@ -219,8 +1414,19 @@ public class GameBoard {
      * @return "BOARD"
      */
     public synchronized String flag(int i, int j) {
-        if (board.containsKey(i+","+j) && board.get(i+","+j)[PLAYER_STATUS]==0) {
-            board.get(i+","+j)[PLAYER_STATUS] = 1;  // flag
+        if (isCell(i, j) && status(index(i, j))==UNTOUCHED) {
+            long stamp = stateLock.writeLock();
+            try {
+                setStatus(index(i, j), FLAGGED);
+                flagCount += 1;
+                version++;
+                if (moveLog != null) {
+                    moveLog.append(MoveLog.FLAG, index(i, j));
+                }
+                recordMove();
+            } finally {
+                stateLock.unlockWrite(stamp);
+            }
         }
         checkRep();
         return "BOARD";
@@ -233,8 +1439,19 @@ public class GameBoard {
      * @return "BOARD"
      */
     public synchronized String deflag(int i, int j) {
-        if (board.containsKey(i+","+j) && board.get(i+","+j)[PLAYER_STATUS]==1) {
-            board.get(i+","+j)[PLAYER_STATUS] = 0;  // untouched
+        if (isCell(i, j) && status(index(i, j))==FLAGGED) {
+            long stamp = stateLock.writeLock();
+            try {
+                setStatus(index(i, j), UNTOUCHED);
+                flagCount -= 1;
+                version++;
+                if (moveLog != null) {
+                    moveLog.append(MoveLog.DEFLAG, index(i, j));
+                }
+                recordMove();
+            } finally {
+                stateLock.unlockWrite(stamp);
+            }
         }
         checkRep();
         return "BOARD";
@@ -246,14 +1463,13 @@ public class GameBoard {
      * @param j row of the cell
      * @return "untouched", "flagged", or "dug", according to the specification for GameBoard
      */
-    public synchronized String getStatus(int i, int j) {
-        if (board.containsKey(i+","+j)) {
-            // 0 for untouched, 1 for flagged, 2 for dug
-            int status = board.get(i+","+j)[PLAYER_STATUS];
-            switch(status) {
-            case 0: return "untouched";
-            case 1: return "flagged";
-            case 2: return "dug";
+    public String getStatus(int i, int j) {
+        if (isCell(i, j)) {
+            int index = index(i, j);
+            switch(read(storage -> statusOf(storage.get(index)))) {
+            case UNTOUCHED: return "untouched";
+            case FLAGGED: return "flagged";
+            case DUG: return "dug";
             default: throw new AssertionError("status is not untouched, flagged, or dug; should never reach here");
             }
         } else {
@@ -261,6 +1477,186 @@ public class GameBoard {
         }
     }
     
+    /**
+     * Gets the number of cells without a bomb that have not been dug yet.
+     * Flagged cells without a bomb still count, since they must be dug to clear the board.
+     * @return number of safe cells left to dig
+     */
+    public int getSafeRemaining() {
+        return readCounters(() -> safeRemaining);
+    }
+    
+    /**
+     * Gets the number of bombs still on the board, i.e. bombs that have not been dug.
+     * @return number of bombs remaining
+     */
+    public int getBombsRemaining() {
+        return readCounters(() -> bombsRemaining);
+    }
+    
+    /**
+     * Gets the number of cells that are currently flagged.
+     * @return number of flags placed
+     */
+    public int getFlagCount() {
+        return readCounters(() -> flagCount);
+    }
+    
+    /**
+     * Gets the number of bombs that have been dug (and removed from the board) so far.
+     * @return number of bombs hit
+     */
+    public int getBombsHit() {
+        return readCounters(() -> bombsHit);
+    }
+    
+    /**
+     * Checks whether the board has been cleared, i.e. every cell without a bomb has been dug.
+     * @return true iff no safe cells are left to dig
+     */
+    public boolean isCleared() {
+        return readCounters(() -> safeRemaining) == 0;
+    }
+    
+    /**
+     * Gets a one-line summary of the progress of the game, taken atomically.
+     * @return "Safe cells remaining: S. Flags placed: F. Bombs hit: B." where S, F and B are
+     *         getSafeRemaining(), getFlagCount() and getBombsHit()
+     */
+    public String getStats() {
+        return read(storage -> "Safe cells remaining: " + safeRemaining + ". Flags placed: " + flagCount
+                + ". Bombs hit: " + bombsHit + ".");
+    }
+    
+    /**
+     * Counts the cells of a rectangle of the board, atomically, e.g. for bots and analytics. The
+     * corners may be given in any order, and the rectangle is clipped to the board. Takes time
+     * logarithmic in the size of the board if the board keeps a region index, see
+     * setRegionIndex(), and linear in the size of the rectangle otherwise.
+     * @param x1 column of a corner of the rectangle
+     * @param y1 row of a corner of the rectangle
+     * @param x2 column of the opposite corner
+     * @param y2 row of the opposite corner
+     * @return "Squares: N. Untouched: U. Flagged: F. Dug: D. Bombs: B." where N is the number of
+     *         cells of the rectangle on the board, U, F and D how many of them are untouched,
+     *         flagged and dug, and B how many contain a bomb
+     */
+    public String getRegionStats(int x1, int y1, int x2, int y2) {
+        int left = Math.max(0, Math.min(x1, x2));
+        int right = Math.min(numCols - 1, Math.max(x1, x2));
+        int top = Math.max(0, Math.min(y1, y2));
+        int bottom = Math.min(numRows - 1, Math.max(y1, y2));
+        int squares = left > right || top > bottom ? 0 : (right - left + 1) * (bottom - top + 1);
+        int[] counts = new int[3];
+        if (squares > 0) {
+            read(storage -> {
+                // read the field once, like cells: restartIfCleared() may exchange it meanwhile
+                RegionIndex index = regions;
+                if (index != null) {
+                    counts[RegionIndex.BOMBS] = index.count(RegionIndex.BOMBS, left, top, right, bottom);
+                    counts[RegionIndex.FLAGS] = index.count(RegionIndex.FLAGS, left, top, right, bottom);
+                    counts[RegionIndex.DUG] = index.count(RegionIndex.DUG, left, top, right, bottom);
+                    return counts;
+                }
+                Arrays.fill(counts, 0);
+                for (int row = top; row <= bottom; row++) {
+                    for (int col = left; col <= right; col++) {
+                        byte cell = storage.get(index(col, row));
+                        counts[RegionIndex.BOMBS] += (cell & BOMB) != 0 ? 1 : 0;
+                        counts[RegionIndex.FLAGS] += statusOf(cell) == FLAGGED ? 1 : 0;
+                        counts[RegionIndex.DUG] += statusOf(cell) == DUG ? 1 : 0;
+                    }
+                }
+                return counts;
+            });
+        }
+        int flagged = counts[RegionIndex.FLAGS];
+        int dug = counts[RegionIndex.DUG];
+        return "Squares: " + squares + ". Untouched: " + (squares - flagged - dug) + ". Flagged: " + flagged
+                + ". Dug: " + dug + ". Bombs: " + counts[RegionIndex.BOMBS] + ".";
+    }
+    
+    /**
+     * Copies what players can see of the board, atomically: the visible value of cell (i,j) is
+     * stored at index j*getCols() + i of visible, and is VISIBLE_UNTOUCHED for an untouched cell,
+     * VISIBLE_FLAGGED for a flagged cell, or the number of neighbors with a bomb (0 to 8) for a dug
+     * cell, matching toString().
+     * @param visible array to copy into, requires visible.length >= getCols() * getRows()
+     * @return version of the board that was copied, as given by getVersion()
+     */
+    public long snapshotVisible(byte[] visible) {
+        return snapshotVisible(0, visible, numCols * numRows);
+    }
+    
+    /**
+     * Copies what players can see of consecutive cells of the board, atomically, like
+     * snapshotVisible(visible), e.g. to export a large board a chunk at a time.
+     * @param from index of the first cell to copy, j*getCols() + i for cell (i,j)
+     * @param visible array to copy into, from its start: the visible value of cell from + k is
+     *                stored at index k; requires visible.length >= count
+     * @param count number of cells to copy, requires from >= 0, count >= 0 and
+     *              from + count <= getCols() * getRows()
+     * @return version of the board that was copied, as given by getVersion()
+     */
+    long snapshotVisible(int from, byte[] visible, int count) {
+        assert from >= 0 && count >= 0 && from + count <= numCols * numRows && visible.length >= count;
+        return read(storage -> {
+            for (int k = 0; k < count; k++) {
+                byte cell = storage.get(from + k);
+                switch (statusOf(cell)) {
+                case UNTOUCHED: visible[k] = VISIBLE_UNTOUCHED; break;
+                case FLAGGED: visible[k] = VISIBLE_FLAGGED; break;
+                default: visible[k] = (byte) neighborCountOf(cell); break;
+                }
+            }
+            return version;
+        });
+    }
+    
+    /**
+     * Copies which of consecutive cells of the board contain a bomb, atomically, like
+     * snapshotVisible(from, visible, count).
+     * @param from index of the first cell to copy, j*getCols() + i for cell (i,j)
+     * @param bombs array to copy into, from its start: bombs[k] is 1 if cell from + k contains a
+     *              bomb, and 0 otherwise; requires bombs.length >= count
+     * @param count number of cells to copy, requires from >= 0, count >= 0 and
+     *              from + count <= getCols() * getRows()
+     * @return version of the board that was copied, as given by getVersion()
+     */
+    long snapshotBombs(int from, byte[] bombs, int count) {
+        assert from >= 0 && count >= 0 && from + count <= numCols * numRows && bombs.length >= count;
+        return read(storage -> {
+            for (int k = 0; k < count; k++) {
+                bombs[k] = (byte) ((storage.get(from + k) & BOMB) != 0 ? 1 : 0);
+            }
+            return version;
+        });
+    }
+    
+    /**
+     * Copies the cells of the board, atomically, as stored by a GameBoard, so that
+     * GameBoard(getCols(), getRows(), storage) with a copy of them in storage plays on from the
+     * state the board is in now.
+     * @param target array to copy into, requires target.length == getCols() * getRows()
+     * @return version of the board that was copied, as given by getVersion()
+     */
+    long snapshotCells(byte[] target) {
+        return read(storage -> {
+            storage.copyTo(target);
+            return version;
+        });
+    }
+    
+    /**
+     * Gets the version of the board, which increases every time the board changes, i.e. every
+     * dig, flag, deflag and chord that changes a cell, every undo and redo, and every new game.
+     * Does not wait for the lock on the board.
+     * @return number of changes made to the board so far
+     */
+    public long getVersion() {
+        return version;
+    }
+    
     /**
      * Gets the number of rows (must be positive) in the board.
      * @return number of rows
@@ -289,32 +1685,34 @@ public class GameBoard {
      * @return string representation of the current state of the board
      */
     @Override
-    public synchronized String toString() {
-        String s = "";
-        
-        for (int row=0; row<numRows; row++) {
-            String line = "";
-            for (int col=0; col<numCols; col++) {
-                if (board.get(col+","+row)[PLAYER_STATUS]==0) {
-                    //untouched
-                    line = line.concat("- ");
-                } else if (board.get(col+","+row)[PLAYER_STATUS]==1) {
-                    //flagged
-                    line = line.concat("F ");
-                } else {
-                    // dug
-                    if (board.get(col+","+row)[NEIGHBOR_COUNT]==0) {
-                        line = line.concat("  ");
+    public String toString() {
+        return read(storage -> {
+            StringBuilder s = new StringBuilder(numCols * numRows * 2);
+            for (int row=0; row<numRows; row++) {
+                if (row > 0) {
+                    s.append('\n');
+                }
+                for (int col=0; col<numCols; col++) {
+                    if (col > 0) {
+                        s.append(' ');
+                    }
+                    byte cell = storage.get(index(col, row));
+                    if (statusOf(cell)==UNTOUCHED) {
+                        //untouched
+                        s.append('-');
+                    } else if (statusOf(cell)==FLAGGED) {
+                        //flagged
+                        s.append('F');
+                    } else if (neighborCountOf(cell)==0) {
+                        // dug, no neighbors with a bomb
+                        s.append(' ');
                     } else {
-                        line = line.concat(board.get(col+","+row)[NEIGHBOR_COUNT] + " ");
+                        // dug
+                        s.append(neighborCountOf(cell));
                     }
                 }
             }
-            line = line.substring(0, line.length()-1);
-            line = line.concat("\n");
-            s = s.concat(line);
-        }
-        s = s.substring(0, s.length()-1);
-        return s;
+            return s.toString();
+        });
     }
 }
@@ -2,24 +2,51 @@
  * Redistribution of original or derived work requires permission of course staff.
  */
 package minesweeper;
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.PrintWriter;
+import java.io.InterruptedIOException;
+import java.net.BindException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketOption;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.NetworkChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Optional;
 import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.regex.Pattern;
 
 /**
  * Multi-player Minesweeper server.
  * 
  * <p>PS4 instructions: you MUST NOT change the specs of main() or runGameServer(),
  *                      or the implementation of main().
+ *
+ * <p>Since PS4, this is relaxed for main() alone, whose command line is the only way to choose
+ * the server's options: main() also parses optional flags into ServerOptions, and so its spec and
+ * implementation grow with them. Its original usage, with only --port, --size and --file, and
+ * the spec of runGameServer(file, sizeX, sizeY, port) must keep working unchanged.
  */
 public class GameServer {
 
@@ -27,32 +54,163 @@ public class GameServer {
     private static final int DEFAULT_PORT = 4444;
     /** Default board size. */
     private static final int DEFAULT_SIZE = 12;
+    /** Number of boards generated ahead of time for new games. */
+    private static final int BOARD_POOL_SIZE = 4;
+    
+    /** Number of recent events that --record keeps in memory. */
+    private static final int RECORD_CAPACITY = 1 << 20;
 
     /** Socket for receiving client connections. */
     private final ServerSocket serverSocket;
     
+    /** Sockets on the same port for the other acceptor threads, if the system allows it. */
+    private final List<ServerSocket> acceptorSockets = new ArrayList<>();
+    
     /** Minesweeper board. */
     private final GameBoard board;
     
-    /** Number of clients playing at one time for a specific server */
-    private int numClients = 0;
+    /** Fresh boards for starting new games, or null if games are never restarted. */
+    private final BoardPool boardPool;
+    
+    /** Optional server settings. */
+    private final ServerOptions options;
+    
+    /** Players connected to this server. */
+    private final SessionRegistry sessions;
+    
+    /** Rendered frames of the board for spectators. */
+    private final SpectatorFeed spectatorFeed;
+    
+    /** Solver of the board, for hints. */
+    private final Solver solver;
+    
+    /** Record of every change to the board, or null if the server does not record. */
+    private final MoveLog moveLog;
+    
+    /** Compressed renderings of the board, for clients that asked for them. */
+    private final BoardCompressor compressor;
+    
+    /** Renderings of the board sent in answer to 'look' and moves, shared by clients looking at the same version. */
+    private final ResponseCache responses;
+    
+    /** Owner of the board that applies the text commands of every client, or null if each client applies its own. */
+    private final CommandBatcher batcher;
+    
+    /** Tracer of the phases of each text command, for the slow-request log and Flight Recorder events. */
+    private final CommandTracer tracer;
+    
+    /** Listener for a server taking over from this one, or null if there is none. */
+    private ServerSocketChannel handoffListener = null;
+    
+    /** Clients being served, and clients waiting in line while the server is full. */
+    private final AdmissionQueue admission;
     
-    private static final String HELP_MESSAGE = "Please type one of the following commands: 'look', 'dig', 'flag', 'deflag', or 'bye'. "
+    /** Message sent to the clients when the server stops, or null while it is running. */
+    private String goodbye = null;
+    
+    /** Released once the server has stopped. */
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    
+    private static final String HELP_MESSAGE = "Please type one of the following commands: 'look', 'dig', 'flag', 'deflag', 'chord', 'undo', 'redo', 'stats', 'count', 'hint', 'spectate', 'binary', 'compress', 'metrics', or 'bye'. "
                                                 + "Type 'look' to see the current board status, 'dig X Y' to uncover the square (X,Y), "
                                                 + "'flag X Y' to flag square (X,Y), and 'deflag X Y' to unflag square (X,Y). "
+                                                + "Type 'chord X Y' to uncover every unflagged square around the dug square (X,Y), if it has as many flags around it as its number. "
+                                                + "Type 'undo' or 'undo N' to take back the last move or N moves, and 'redo' or 'redo N' to make them again, where the server allows it. "
+                                                + "Type 'stats' to see the progress of the game. "
+                                                + "Type 'count X1 Y1 X2 Y2' to count the squares of each kind from (X1,Y1) to (X2,Y2), where the server allows it. "
+                                                + "Type 'hint' to be suggested a move. "
+                                                + "Type 'spectate' to stop playing and be sent the board whenever it changes. "
+                                                + "Type 'binary' to switch to the binary protocol. "
+                                                + "Type 'compress rle', 'compress deflate' or 'compress off' to choose how large boards are sent. "
+                                                + "Type 'metrics' to see how often the server answered with a board it had already drawn. "
                                                 + "Type 'bye' to quit.";
+    
+    private static final String CLEARED_MESSAGE = "Board cleared! Starting a new game.";
+    
+    private static final String NO_UNDO_MESSAGE = "Moves cannot be undone on this server.";
+    
+    private static final String NO_COUNT_MESSAGE = "Squares cannot be counted on this server.";
+    
+    private static final String SHUTDOWN_MESSAGE = "Server shutting down. Goodbye.";
+    
+    private static final String RESTART_MESSAGE = "Server restarting. Please reconnect.";
+    
+    private static final String FULL_MESSAGE = "Server full. Please try again later.";
+    
+    /** Commands of the text protocol; other input is answered with HELP_MESSAGE. */
+    private static final Pattern COMMAND = Pattern.compile(
+            "(look)|(help)|(bye)|(stats)|(hint)|(spectate)|(binary)|(compress (off|rle|deflate))|(metrics)|"
+            + "(undo( \\d{1,9})?)|(redo( \\d{1,9})?)|(count -?\\d+ -?\\d+ -?\\d+ -?\\d+)|"
+            + "(dig -?\\d+ -?\\d+)|(flag -?\\d+ -?\\d+)|(deflag -?\\d+ -?\\d+)|(chord -?\\d+ -?\\d+)");
+    
+    /** What a server taking over sends on the handoff socket, followed by a newline. */
+    private static final String HANDOFF_REQUEST = "HANDOFF";
+    
+    /** Milliseconds a connection to the handoff port has to send HANDOFF_REQUEST. */
+    private static final int HANDOFF_REQUEST_TIMEOUT = 5000;
 
     /*
      * Abstraction function:
-     *  AF(serverSocket, board): a client-server connection for a specific board
+     *  AF(serverSocket, acceptorSockets, board, boardPool, sessions, spectatorFeed, solver,
+     *     moveLog, compressor, responses, batcher, tracer, handoffListener, admission, goodbye,
+     *     stopped):
+     *      a client-server connection for a specific board, where
+     *      - clients are accepted on serverSocket and acceptorSockets
+     *      - the players in sessions play or watch the board
+     *      - the clients in line in admission wait to be admitted
+     *      - new games on the board are taken from boardPool
+     *      - spectators are sent frames from spectatorFeed
+     *      - hints are given by solver
+     *      - every change to the board is recorded in moveLog, if it is not null
+     *      - compressor renders the board for clients that asked for compression
+     *      - responses caches the renderings sent
+     *      - the text commands of every client are applied by batcher, if it is not null,
+     *        and otherwise by the client's own thread
+     *      - the commands of every client are traced by tracer
+     *      - a server taking over is waited for on handoffListener, if it is not null
+     *      - the server is running if goodbye is null, and otherwise stopping, and then says
+     *        goodbye to its clients
+     *      - stopped is released once the server has stopped
      * Rep invariant:
-     *  true
+     *  handoffListener == null if goodbye != null
+     *  admission.waiting() == 0 if goodbye != null
+     *  every player in sessions was admitted by admission, and not yet released
+     *  stopped is only released if goodbye != null
      * Rep exposure:
-     *  the server socket and the game board are private and final and are never 
+     *  the server sockets, the game board, the board pool, the admission queue, the sessions,
+     *  the spectator feed, the solver, the move log, the compressor, the response cache, the
+     *  batcher, the tracer, the handoff listener and the options are private and are never
      *  returned in any of the methods
      * Thread safety for instance of GameServer:
      *  Threads and data are kept safe because data are confined to each thread.
-     *  handleConnection() does not modify any shared variables within threads.
+     *  handleConnection() does not modify any shared variables within threads, except
+     *  sessions, which is thread-safe and does not need a global lock.
+     *  Each client's responses are written by the writer thread of its own OutputQueue,
+     *  which is thread-safe, and shared with no other client.
+     *  Spectators share the immutable frames of the thread-safe spectatorFeed, and each
+     *  writes them to its own socket.
+     *  Boards sent to clients are rendered through responses, which is thread-safe and
+     *  shared, so that clients looking at an unchanged board share one rendering.
+     *  compressor is thread-safe too.
+     *  Hints are given by solver, which is thread-safe and shared, so that each hint only
+     *  solves what changed on the board since the last hint of any player.
+     *  New games are started by GameBoard.restartIfCleared(), which is atomic, with a board
+     *  taken from the thread-safe boardPool that no other thread uses.
+     *  moveLog is only written by the board, under the board's lock.
+     *  If batcher is not null, every text command is applied on its owner thread, so the
+     *  board's lock is only contended by binary clients.
+     *  Each client's thread throttles its own commands before submitting them to batcher,
+     *  so that a slow client never holds up the owner.
+     *  tracer is thread-safe: each thread traces its own commands, and marks made on a
+     *  thread that did not begin a command, e.g. the owner of batcher, are ignored.
+     *  handoffListener, admission and goodbye are guarded by the lock on this server.
+     *  Clients are admitted and registered while holding it, so once goodbye is set no
+     *  client is registered or put in line any more, and every client that is can be stopped.
+     *  A client in line is told its position while holding it too, so that the thread that
+     *  admits it writes to it after.
+     *  The acceptor threads share nothing else.
+     *  Only the thread that set goodbye stops the server and releases stopped; others wait
+     *  for it.
      * Thread safety for system started by main():
      *  Any new client requests get inserted into a queue, so that the main is only
      *  ever handling one client request at a time. main() only calls runGameServer()
@@ -69,65 +227,585 @@ public class GameServer {
      * @throws IOException if an error occurs opening the server socket
      */
     public GameServer(int port, GameBoard board) throws IOException {
-        serverSocket = new ServerSocket(port);
+        this(port, board, new ServerOptions());
+    }
+    
+    /**
+     * Make a new game server that listens for connections on port.
+     * 
+     * @param port port number, requires 0 <= port <= 65535
+     * @param board the gameboard associated with this server
+     * @param options optional server settings; must not be changed afterwards
+     * @throws IOException if an error occurs opening the server socket
+     */
+    public GameServer(int port, GameBoard board, ServerOptions options) throws IOException {
+        this(listen(port, options), board, options);
+    }
+    
+    /**
+     * Make a new game server that accepts connections on a server socket.
+     * 
+     * @param serverSocket server socket made by listen(); owned by the server from now on
+     * @param board the gameboard associated with this server
+     * @param options optional server settings; must not be changed afterwards
+     * @throws IOException if an error occurs opening the move log
+     */
+    private GameServer(ServerSocket serverSocket, GameBoard board, ServerOptions options) throws IOException {
+        this.serverSocket = serverSocket;
         this.board = board;
+        this.options = options;
+        this.sessions = new SessionRegistry(options.getRateLimit(), options.getRateBurst(),
+                options.getIdleTimeoutMillis());
+        this.spectatorFeed = new SpectatorFeed(board, options.getSpectatorFrameRate());
+        this.solver = new Solver(board);
+        this.compressor = new BoardCompressor(board);
+        this.responses = new ResponseCache(board, compressor);
+        this.admission = new AdmissionQueue(options.getMaxConnections(), options.getMaxWaiting());
+        this.batcher = ! options.getBatching() ? null
+                : new CommandBatcher(this::applyBatch, options.getBatchTickMillis(), options.getBatchSize());
+        this.tracer = new CommandTracer(options.getSlowLogMillis(), options.getTraceEvents(), System.err::println);
+        if (options.getSafeFirstDig()) {
+            board.setSafeFirstDig(true, options.getSafeFirstArea());
+        }
+        if (options.getUndoDepth() > 0) {
+            board.setUndoDepth(options.getUndoDepth());
+        }
+        if (options.getRegionIndex()) {
+            board.setRegionIndex(true);
+        }
+        this.moveLog = options.getRecordFile() == null ? null
+                : new MoveLog(board, RECORD_CAPACITY, options.getRecordFile());
+        if ( ! options.getResetOnClear()) {
+            this.boardPool = null;
+        } else {
+            NoGuessGenerator generator = ! options.getNoGuess() ? null : new NoGuessGenerator(board.getCols(),
+                    board.getRows(), board.getCols() / 2, board.getRows() / 2);
+            // fresh boards are set up ahead of time, so that restarting the game stays constant-time
+            this.boardPool = new BoardPool(board.getCols(), board.getRows(), generator,
+                    fresh -> {
+                        fresh.setSafeFirstDig(options.getSafeFirstDig(), options.getSafeFirstArea());
+                        fresh.setUndoDepth(options.getUndoDepth());
+                        fresh.setRegionIndex(options.getRegionIndex());
+                    },
+                    BOARD_POOL_SIZE);
+        }
+        ServerSocketChannel channel = serverSocket.getChannel();
+        SocketOption<Boolean> reusePort = reusePort(channel);
+        if (reusePort != null && channel.getOption(reusePort)) {
+            // the system spreads new connections over the sockets, so the acceptors never contend
+            for (int acceptor = 1; acceptor < options.getAcceptors(); acceptor++) {
+                acceptorSockets.add(listen(serverSocket.getLocalPort(), options));
+            }
+        }
+    }
+
+    /**
+     * Opens the server socket of a server.
+     * 
+     * @param port port number, requires 0 <= port <= 65535
+     * @param options optional server settings, which give the accept backlog; if they give a
+     *                handoff port or more than one acceptor, other sockets may listen on the same
+     *                port, where the system allows it
+     * @return the server socket, bound to port
+     * @throws IOException if an error occurs opening the server socket
+     */
+    private static ServerSocket listen(int port, ServerOptions options) throws IOException {
+        // opened through a channel, so that every accepted socket has a channel for spectator frames
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        SocketOption<Boolean> reusePort = reusePort(channel);
+        if ((options.getHandoffPort() > 0 || options.getAcceptors() > 1) && reusePort != null) {
+            // a server taking over listens alongside this one, so that no connection is refused in
+            // between, and each acceptor thread listens on a socket of its own
+            channel.setOption(reusePort, true);
+        }
+        try {
+            channel.bind(new InetSocketAddress(port), options.getAcceptBacklog());
+        } catch (IOException ioe) {
+            channel.close();
+            throw ioe;
+        }
+        return channel.socket();
     }
 
     /**
-     * Run the server, listening for and handling client connections.
-     * Never returns, unless an exception is thrown.
+     * Finds SO_REUSEPORT among the options of a socket. StandardSocketOptions.SO_REUSEPORT is
+     * only defined from Java 9 on, so it is looked up by name, and the server runs without it
+     * on Java 8.
+     * 
+     * @param channel channel of the socket
+     * @return SO_REUSEPORT, or null if the runtime or the system does not support it
+     */
+    @SuppressWarnings("unchecked")
+    private static SocketOption<Boolean> reusePort(NetworkChannel channel) {
+        for (SocketOption<?> option : channel.supportedOptions()) {
+            if (option.name().equals("SO_REUSEPORT") && option.type() == Boolean.class) {
+                return (SocketOption<Boolean>) option;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Starts a server that takes over from the server that waits on the handoff port of options:
+     * the new server listens on port alongside the old one, where the system allows it, so that
+     * clients connecting meanwhile wait for the new server rather than being refused; the old
+     * server stops as shutdown() does, except that it tells its clients to reconnect, and hands
+     * over its board instead of saving it, through a connection to the handoff port on the
+     * loopback address; and the new server plays on from that board.
+     * 
+     * @param port port number of the old server, requires 0 <= port <= 65535
+     * @param options optional settings of the new server, requires options.getHandoffPort() > 0;
+     *                must not be changed afterwards
+     * @return the new server, which has the board and accepts connections once serve() is called,
+     *         or null if no server waits on the handoff port
+     * @throws IOException if an error occurs opening the server socket, or the old server stopped
+     *                     without handing over its board
+     */
+    public static GameServer takeOver(int port, ServerOptions options) throws IOException {
+        SocketChannel predecessor;
+        try {
+            predecessor = SocketChannel.open(handoffAddress(options));
+        } catch (ConnectException ce) {
+            // no server to take over from
+            return null;
+        }
+        ServerSocket socket = null;
+        try (SocketChannel handoff = predecessor) {
+            try {
+                socket = listen(port, options);
+            } catch (BindException be) {
+                // the system does not let two servers listen on the port: listen once the old one stopped
+            }
+            handoff.write(ByteBuffer.wrap((HANDOFF_REQUEST + "\n").getBytes(StandardCharsets.US_ASCII)));
+            GameBoard board = BoardSnapshot.read(handoff);
+            if (socket == null) {
+                socket = listen(port, options);
+            }
+            return new GameServer(socket, board, options);
+        } catch (IOException ioe) {
+            if (socket != null) {
+                socket.close();
+            }
+            throw ioe;
+        }
+    }
+
+    /**
+     * Run the server, listening for and handling client connections, and, if the options give a
+     * handoff port, for a server taking over. Returns once the server has stopped, after
+     * shutdown() was called or another server took over.
+     * 
+     * <p>If the options limit the number of connections, clients that connect while the server is
+     * full wait in line, and are sent "Server full, position N. Please wait." with their position
+     * N in line, until a client disconnects and they are served in turn; clients that connect
+     * while the line is full too are sent "Server full. Please try again later." and
+     * disconnected.
      * 
      * @throws IOException if an error occurs waiting for a connection
      *                     (IOExceptions from individual clients do *not* terminate serve())
      */
     public void serve() throws IOException {
+        if (options.getHandoffPort() > 0) {
+            awaitHandoff();
+        }
+        for (int acceptor = 1; acceptor < options.getAcceptors(); acceptor++) {
+            // on a socket of its own, or else sharing the server socket
+            ServerSocket listener = acceptor <= acceptorSockets.size() ? acceptorSockets.get(acceptor - 1) : serverSocket;
+            Thread thread = new Thread(() -> {
+                try {
+                    accept(listener);
+                } catch (IOException ioe) {
+                    ioe.printStackTrace(); // the other acceptors go on
+                }
+            }, "acceptor-" + acceptor);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        accept(serverSocket);
+        awaitStopped();
+    }
+
+    /**
+     * Body of an acceptor thread: accepts connections until the server stops, and admits each
+     * one, puts it in line or refuses it.
+     * 
+     * @param listener socket to accept connections on
+     * @throws IOException if an error occurs waiting for a connection
+     */
+    private void accept(ServerSocket listener) throws IOException {
         while (true) {
-            // block until a client connects
-            final Socket socket = serverSocket.accept();
-            
-            // create a thread for each client
-            Thread handler = new Thread(new Runnable() {
-                public void run() {
+            final Socket socket;
+            try {
+                // block until a client connects
+                socket = listener.accept();
+            } catch (IOException ioe) {
+                if (isStopping()) {
+                    return;
+                }
+                throw ioe;
+            }
+            int position;
+            synchronized (this) {
+                if (goodbye != null) {
+                    socket.close();
+                    return;
+                }
+                position = admission.offer(socket);
+                if (position > 0) {
+                    // a new connection's send buffer takes a line without blocking
+                    tell(socket, "Server full, position " + position + ". Please wait.");
+                }
+            }
+            if (position == 0) {
+                // create a thread for each client served at once
+                Thread handler = new Thread(() -> serveInTurn(socket));
+                handler.start();
+            } else if (position < 0) {
+                tell(socket, FULL_MESSAGE);
+                socket.close();
+            }
+        }
+    }
+
+    /**
+     * Body of a client's thread: serves an admitted client, and then, as long as clients wait in
+     * line, the first of them, so that a full server starts no new threads.
+     * 
+     * @param first socket of the admitted client
+     */
+    private void serveInTurn(Socket first) {
+        for (Socket socket = first; socket != null; socket = releaseConnection()) {
+            final PlayerSession session;
+            synchronized (this) {
+                if (goodbye != null) {
+                    tell(socket, goodbye);
+                    closeQuietly(socket);
+                    continue;
+                }
+                session = sessions.register(socket);
+            }
+            try {
+                try {
+                    handleConnection(socket, session);
+                } finally {
+                    sessions.unregister(session);
+                    socket.close();
+                }
+            } catch (IOException ioe) {
+                // both handleConnection and socket.close() can throw an IOException
+                if ( ! session.isClosed()) {
+                    ioe.printStackTrace(); // but do not stop serving
+                } // else the session was disconnected for being idle
+            }
+        }
+    }
+
+    /**
+     * Ends an admitted client's connection.
+     * 
+     * @return socket of the client admitted in its place, which the caller must serve, or null
+     */
+    private synchronized Socket releaseConnection() {
+        return admission.release();
+    }
+
+    /**
+     * Sends a line to a client that is not being served, if it is still connected.
+     * 
+     * @param socket the client's socket
+     * @param message line to send, without a newline
+     */
+    private static void tell(Socket socket, String message) {
+        try {
+            socket.getOutputStream().write((message + "\n").getBytes(StandardCharsets.US_ASCII));
+        } catch (IOException ioe) {
+            // the client is gone, and finds out nothing
+        }
+    }
+
+    /**
+     * Closes a client's socket, ignoring errors.
+     * 
+     * @param socket the client's socket
+     */
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ioe) {
+            // closed either way
+        }
+    }
+
+    /**
+     * Shuts the server down gracefully: stops accepting clients, handles the commands that clients
+     * have sent already, sends the clients still playing or watching a goodbye message and
+     * disconnects them, and saves the board to the snapshot file of the options, if any. Clients
+     * that are not done within the drain timeout of the options are disconnected without their
+     * last responses. Returns once the server has stopped, or, if it was stopping already, once
+     * it has stopped that way.
+     * 
+     * @throws IOException if the board could not be saved
+     */
+    public void shutdown() throws IOException {
+        if ( ! startStopping(SHUTDOWN_MESSAGE)) {
+            awaitStopped();
+            return;
+        }
+        try {
+            drain();
+            if (options.getSnapshotFile() != null) {
+                BoardSnapshot.write(board, options.getSnapshotFile());
+            }
+        } finally {
+            stopped.countDown();
+        }
+    }
+
+    /**
+     * Starts stopping the server, unless it is stopping already: it accepts no more clients, tells
+     * the clients waiting in line goodbye and disconnects them, and stops waiting for a server
+     * taking over.
+     * 
+     * @param message goodbye message for the clients
+     * @return true iff the caller started stopping the server, and must finish stopping it
+     */
+    private boolean startStopping(String message) {
+        ServerSocketChannel listener;
+        List<Socket> waiting;
+        synchronized (this) {
+            if (goodbye != null) {
+                return false;
+            }
+            goodbye = message;
+            listener = handoffListener;
+            handoffListener = null;
+            waiting = admission.clearWaiting();
+        }
+        for (Socket socket : waiting) {
+            tell(socket, message);
+            closeQuietly(socket);
+        }
+        try {
+            serverSocket.close();
+            for (ServerSocket socket : acceptorSockets) {
+                socket.close();
+            }
+            if (listener != null) {
+                listener.close();
+            }
+        } catch (IOException ioe) {
+            // no longer accepting either way
+        }
+        return true;
+    }
+
+    /**
+     * @return true iff the server is stopping or has stopped
+     */
+    private synchronized boolean isStopping() {
+        return goodbye != null;
+    }
+
+    /**
+     * @return message to send the clients because the server is stopping, or null if it is running
+     */
+    private synchronized String getGoodbye() {
+        return goodbye;
+    }
+
+    /**
+     * Waits until the server has stopped.
+     * 
+     * @throws InterruptedIOException if interrupted while waiting
+     */
+    private void awaitStopped() throws InterruptedIOException {
+        try {
+            stopped.await();
+        } catch (InterruptedException ie) {
+            throw new InterruptedIOException("interrupted while stopping");
+        }
+    }
+
+    /**
+     * Lets every client's commands that reached the server be handled and answered, and waits for
+     * the clients to be disconnected, at most for the drain timeout of the options; then stops
+     * every background thread of the server, and writes what the board and the move log hold in
+     * memory to their files, if any. Requires the server to be stopping.
+     * 
+     * @throws IOException if the move log could not be written
+     */
+    private void drain() throws IOException {
+        sessions.stopReadingAll();
+        try {
+            if ( ! sessions.awaitEmpty(options.getDrainTimeoutMillis())) {
+                sessions.closeAll();
+            }
+        } catch (InterruptedException ie) {
+            sessions.closeAll();
+            Thread.currentThread().interrupt();
+        }
+        sessions.close();
+        if (batcher != null) {
+            batcher.close();
+        }
+        spectatorFeed.close();
+        if (boardPool != null) {
+            boardPool.close();
+        }
+        if (moveLog != null) {
+            moveLog.close();
+        }
+        board.flush();
+    }
+
+    /**
+     * @param options optional server settings, requires options.getHandoffPort() > 0
+     * @return address on which a server waits for a server taking over: the handoff port of
+     *         options on the loopback address, so that only servers on the same host can connect
+     */
+    private static InetSocketAddress handoffAddress(ServerOptions options) {
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), options.getHandoffPort());
+    }
+
+    /**
+     * Listens on the handoff port of the options for a server taking over, and starts a thread
+     * that stops this server and hands over its board when one connects.
+     * 
+     * @throws IOException if an error occurs opening the handoff socket, e.g. if another
+     *                     process listens on the handoff port
+     */
+    private void awaitHandoff() throws IOException {
+        ServerSocketChannel listener = ServerSocketChannel.open();
+        // the connection over which this server was handed its board may linger on the port
+        listener.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        try {
+            listener.bind(handoffAddress(options));
+        } catch (IOException ioe) {
+            listener.close();
+            throw ioe;
+        }
+        synchronized (this) {
+            if (goodbye != null) {
+                listener.close();
+                return;
+            }
+            handoffListener = listener;
+        }
+        Thread thread = new Thread(() -> handOff(listener), "handoff");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Body of the handoff thread: waits for a server taking over, then stops this server and
+     * writes its board to the new server, as a BoardSnapshot. A connection that does not send
+     * HANDOFF_REQUEST within HANDOFF_REQUEST_TIMEOUT milliseconds, e.g. a port scanner, is closed,
+     * and the thread waits for the next one. Returns without a handoff if the server stops
+     * otherwise.
+     * 
+     * @param listener listener on the handoff port
+     */
+    private void handOff(ServerSocketChannel listener) {
+        byte[] expected = (HANDOFF_REQUEST + "\n").getBytes(StandardCharsets.US_ASCII);
+        try {
+            while (true) {
+                try (SocketChannel successor = listener.accept()) {
+                    // read through the socket, whose reads time out, unlike those of the channel
+                    successor.socket().setSoTimeout(HANDOFF_REQUEST_TIMEOUT);
+                    InputStream in = successor.socket().getInputStream();
+                    byte[] request = new byte[expected.length];
                     try {
-                        try {
-                            handleConnection(socket);
-                        } finally {
-                            socket.close();
-                            numClients -= 1;
+                        for (int length = 0, read; length < request.length
+                                && (read = in.read(request, length, request.length - length)) >= 0; length += read) {
+                            // read the whole request
                         }
-                    } catch (IOException ioe) {
-                        // both handleConnection and socket.close() can throw an IOException
-                        ioe.printStackTrace(); // but do not stop serving
+                    } catch (SocketTimeoutException ste) {
+                        // not a server taking over
+                        continue;
+                    }
+                    if ( ! Arrays.equals(request, expected)) {
+                        continue;
                     }
+                    if ( ! startStopping(RESTART_MESSAGE)) {
+                        // stopping otherwise: the new server sees the connection close
+                        return;
+                    }
+                    try {
+                        drain();
+                        BoardSnapshot.write(board, successor);
+                    } finally {
+                        stopped.countDown();
+                    }
+                    return;
                 }
-            });
-            handler.start();
+            }
+        } catch (AsynchronousCloseException ace) {
+            // the server is stopping otherwise
+        } catch (IOException ioe) {
+            ioe.printStackTrace();
         }
     }
 
     /**
-     * Handle a single client connection. Returns when client disconnects.
+     * Handle a single client connection. Returns when client disconnects, or when the server
+     * stops and the client has been answered and told goodbye.
      * 
      * @param socket socket where the client is connected
+     * @param session the client's session
      * @throws IOException if the connection encounters an error or terminates unexpectedly
      */
-    private void handleConnection(Socket socket) throws IOException {
-        numClients += 1;
+    private void handleConnection(Socket socket, PlayerSession session) throws IOException {
         BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-        PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
-        
-        out.println("Welcome to Minesweeper. Players: " + numClients + " including you. Board: "
-          + board.getCols() + " columns by " + board.getRows() + " rows. Type 'help' for help.");
+        // responses are queued, so that a slow client does not hold up the handling of its commands
+        OutputQueue out = new OutputQueue(socket.getChannel(), session, options.getOutputQueueBytes(),
+                options.getOutputQueueBlocks());
 
         try {
-            for (String line = in.readLine(); line != null; line = in.readLine()) {
-                String output = handleRequest(line);
-                if (output.equals("terminate")) {
+            out.send("Welcome to Minesweeper. Players: " + sessions.size() + " including you. Board: "
+              + board.getCols() + " columns by " + board.getRows() + " rows. Type 'help' for help.");
+            for (String line = readCommand(in, session); line != null; line = readCommand(in, session)) {
+                session.touch();
+                tracer.begin(line);
+                if ( ! throttle(line, session)) {
+                    break;
+                }
+                tracer.mark(CommandTracer.THROTTLED);
+                // the board owner answers 'look' and moves with the board already rendered, unless compressed
+                String output;
+                if (batcher == null) {
+                    output = handleRequest(line, session);
+                } else {
+                    output = batcher.submit(line, session);
+                    tracer.mark(CommandTracer.BATCHED);
+                }
+                if (output == null || output.equals("terminate")) {
+                    break;
+                }
+                else if (output.equals("spectate")) {
+                    out.flush();
+                    spectate(socket.getChannel(), session, in);
                     break;
                 }
+                else if (output.equals("board")) {
+                    sendBoard(out, session);
+                }
+                else if (output.equals("binary")) {
+                    // the client must wait for this reply before sending frames, so in has not buffered any
+                    out.send("BINARY");
+                    handleBinary(socket, out, session);
+                    return;
+                }
                 else {
-                    out.println(output);
+                    out.send(output);
                 }
+                tracer.mark(CommandTracer.WRITTEN);
+                tracer.end();
+            }
+            String message = getGoodbye();
+            if (message != null) {
+                // the server stopped reading, and every command the client sent has been answered
+                out.send(message);
             }
         } finally {
             out.close();
@@ -135,50 +813,418 @@ public class GameServer {
         }
     }
 
+    /**
+     * Reads the next command of a client, unless the server stopped reading from the client and
+     * the client has not sent one already.
+     * 
+     * @param in input from the client
+     * @param session the client's session
+     * @return the command, or null if the input ended or the server stopped reading
+     * @throws IOException if the connection encounters an error
+     */
+    private static String readCommand(BufferedReader in, PlayerSession session) throws IOException {
+        if ( ! session.waitForCommand() && ! in.ready()) {
+            return null;
+        }
+        try {
+            return in.readLine();
+        } finally {
+            session.doneWaitingForCommand();
+        }
+    }
+
+    /**
+     * Sends the board to a client, compressed if the client asked for it and the board is large
+     * enough, as specified by BoardCompressor.
+     * 
+     * @param out output to the client
+     * @param session the client's session
+     * @throws IOException if the connection encounters an error
+     */
+    private void sendBoard(OutputQueue out, PlayerSession session) throws IOException {
+        if ( ! sendsCompressed(session)) {
+            String text = responses.text();
+            tracer.mark(CommandTracer.RENDERED);
+            out.send(text);
+        } else if (session.getCompression().equals(BoardCompressor.RLE)) {
+            String rle = responses.rle();
+            tracer.mark(CommandTracer.RENDERED);
+            out.send(rle);
+        } else {
+            ByteBuffer deflated = responses.deflate();
+            tracer.mark(CommandTracer.RENDERED);
+            out.send(deflated);
+        }
+    }
+
+    /**
+     * @param session a client's session
+     * @return true iff the client is sent the board compressed: it asked for it, and the board
+     *         is large enough
+     */
+    private boolean sendsCompressed(PlayerSession session) {
+        return ! session.getCompression().equals(BoardCompressor.OFF)
+                && BoardCompressor.textLength(board.getCols(), board.getRows()) >= options.getCompressThreshold();
+    }
+
+    /**
+     * Sends a spectator every new frame of the board, until the spectator says 'bye' or disconnects,
+     * or the server stops.
+     * Slow spectators skip frames rather than fall behind.
+     * 
+     * @param channel channel of the spectator's socket, in blocking mode
+     * @param session the spectator's session
+     * @param in input from the spectator
+     * @throws IOException if the connection encounters an error or terminates unexpectedly
+     */
+    private void spectate(SocketChannel channel, PlayerSession session, BufferedReader in) throws IOException {
+        final long tickMillis = Math.max(1, (long) (1000 / options.getSpectatorFrameRate()));
+        session.startSpectating();
+        spectatorFeed.addSpectator();
+        try {
+            long version = -1;
+            while (true) {
+                SpectatorFeed.Frame frame = spectatorFeed.awaitFrame(version, tickMillis);
+                if (frame != null) {
+                    ByteBuffer bytes = frame.getBytes();
+                    while (bytes.hasRemaining()) {
+                        channel.write(bytes);
+                    }
+                    version = frame.getVersion();
+                }
+                // the only command a spectator can give is 'bye'
+                while (in.ready()) {
+                    String line = in.readLine();
+                    if (line == null || line.equals("bye")) {
+                        return;
+                    }
+                }
+                if (isStopping()) {
+                    return;
+                }
+            }
+        } catch (InterruptedException ie) {
+            return;
+        } finally {
+            spectatorFeed.removeSpectator();
+        }
+    }
+
+    /**
+     * Handles a client that switched to the binary protocol, as specified by BinaryProtocol.
+     * Returns when the client says BYE or disconnects, or when the server stops and the client's
+     * frames have been answered.
+     * 
+     * @param socket socket where the client is connected
+     * @param out output to the client, which queues each response frame like a line of text
+     * @param session the client's session
+     * @throws IOException if the connection encounters an error or terminates unexpectedly
+     */
+    private void handleBinary(Socket socket, OutputQueue out, PlayerSession session) throws IOException {
+        InputStream in = new BufferedInputStream(socket.getInputStream());
+        BinaryProtocol protocol = new BinaryProtocol(board);
+        while (true) {
+            byte[] request;
+            if ( ! session.waitForCommand() && in.available() == 0) {
+                // the server stopped reading, and every frame the client sent has been answered
+                return;
+            }
+            try {
+                request = BinaryProtocol.readFrame(in, BinaryProtocol.MAX_CLIENT_FRAME);
+            } catch (EOFException eofe) {
+                return;
+            } finally {
+                session.doneWaitingForCommand();
+            }
+            session.touch();
+            byte[] response;
+            try {
+                response = handleBinaryRequest(request, session, protocol);
+            } catch (IOException | IllegalArgumentException e) {
+                // malformed frame
+                response = new byte[] { (byte) BinaryProtocol.ERROR };
+            } catch (InterruptedException ie) {
+                return;
+            }
+            if (response == null) {
+                return;
+            }
+            out.send(BinaryProtocol.frame(response));
+        }
+    }
+
+    /**
+     * Handler for a binary client frame, performing requested operations and returning a response.
+     * 
+     * @param request payload of the client frame
+     * @param session the client's session
+     * @param protocol encoder of the board for the client
+     * @return payload of the response frame, or null if the client said BYE
+     * @throws IOException if the frame is malformed, in which case none of its moves were made
+     * @throws InterruptedException if interrupted while waiting for the rate limit
+     */
+    private byte[] handleBinaryRequest(byte[] request, PlayerSession session, BinaryProtocol protocol)
+            throws IOException, InterruptedException {
+        InputStream in = new ByteArrayInputStream(request);
+        int opcode = in.read();
+        if (opcode == BinaryProtocol.BYE) {
+            return null;
+        } else if (opcode == BinaryProtocol.LOOK) {
+            session.throttle();
+            return protocol.encodeBoard(BinaryProtocol.STATUS_BOARD, true);
+        }
+        int count = 1;
+        if (opcode == BinaryProtocol.BATCH) {
+            long batch = BinaryProtocol.readVarint(in);
+            // every move takes at least three bytes
+            if (batch < 0 || batch > request.length / 3) {
+                throw new IOException("batch of " + batch + " moves is longer than its frame");
+            }
+            count = (int) batch;
+            opcode = in.read();
+        }
+        // a malformed move anywhere in a batch rejects the whole batch, so decode it all first
+        String[] commands = new String[count];
+        int[] xs = new int[count];
+        int[] ys = new int[count];
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                opcode = in.read();
+            }
+            switch (opcode) {
+            case BinaryProtocol.DIG: commands[i] = "dig"; break;
+            case BinaryProtocol.FLAG: commands[i] = "flag"; break;
+            case BinaryProtocol.DEFLAG: commands[i] = "deflag"; break;
+            case BinaryProtocol.CHORD: commands[i] = "chord"; break;
+            default: throw new IOException("not a move: " + opcode);
+            }
+            xs[i] = BinaryProtocol.unzigzag(BinaryProtocol.readVarint(in));
+            ys[i] = BinaryProtocol.unzigzag(BinaryProtocol.readVarint(in));
+        }
+        int status = BinaryProtocol.STATUS_BOARD;
+        for (int i = 0; i < count; i++) {
+            session.throttle();
+            String result = move(commands[i], xs[i], ys[i], session);
+            if (result.equals("CLEARED")) {
+                status = BinaryProtocol.STATUS_CLEARED;
+            } else if (result.equals("BOOM") && status == BinaryProtocol.STATUS_BOARD) {
+                status = BinaryProtocol.STATUS_BOOM;
+            }
+        }
+        return protocol.encodeBoard(status, false);
+    }
+
+    /**
+     * Makes a move on the board, and starts a new game if the move cleared the board and the
+     * options say so.
+     * 
+     * @param command "dig", "flag", "deflag" or "chord"
+     * @param x column of the cell
+     * @param y row of the cell
+     * @param session the session of the client making the move
+     * @return "CLEARED" if a new game was started, else "BOOM" if the move dug a bomb, else "BOARD"
+     */
+    private String move(String command, int x, int y, PlayerSession session) {
+        session.countMove();
+        String message;
+        if ( ! tracer.isTracing()) {
+            message = moveOnBoard(command, x, y);
+        } else {
+            // the move takes the board's lock again, so waiting for it is traced apart from the move
+            synchronized (board) {
+                tracer.mark(CommandTracer.LOCKED);
+                message = moveOnBoard(command, x, y);
+            }
+        }
+        if ((command.equals("dig") || command.equals("chord")) && boardPool != null && board.isCleared()) {
+            startNewGame();
+            message = "CLEARED";
+        }
+        tracer.mark(CommandTracer.APPLIED);
+        return message;
+    }
+
+    /**
+     * Makes a move on the board.
+     * 
+     * @param command "dig", "flag", "deflag" or "chord"
+     * @param x column of the cell
+     * @param y row of the cell
+     * @return "BOOM" if the move dug a bomb, else "BOARD"
+     */
+    private String moveOnBoard(String command, int x, int y) {
+        if (command.equals("dig")) {
+            return board.dig(x, y);
+        } else if (command.equals("chord")) {
+            return board.chord(x, y);
+        } else if (command.equals("flag")) {
+            return board.flag(x, y);
+        } else if (command.equals("deflag")) {
+            return board.deflag(x, y);
+        }
+        throw new UnsupportedOperationException(command);
+    }
+
+    /**
+     * Waits for a client's rate limit before a command that uses the board.
+     * 
+     * @param input message from client
+     * @param session the client's session
+     * @return true, or false if interrupted while waiting
+     */
+    private static boolean throttle(String input, PlayerSession session) {
+        if ( ! COMMAND.matcher(input).matches()) {
+            // invalid input, answered with help
+            return true;
+        }
+        String command = input.split(" ")[0];
+        if (command.equals("help") || command.equals("bye") || command.equals("compress") || command.equals("metrics")) {
+            return true;
+        }
+        // every other command uses the board, so it counts against the rate limit
+        try {
+            session.throttle();
+            return true;
+        } catch (InterruptedException ie) {
+            return false;
+        }
+    }
+
+    /**
+     * Applies a batch of text commands, on the owner thread of the batcher, and answers each one:
+     * 'look' and moves are answered with the board as it is after the whole batch, rendered once,
+     * or, for clients that are sent it compressed, with "board", since the response cache renders
+     * each version once already.
+     * 
+     * @param batch commands of the batch, in order
+     */
+    private void applyBatch(List<CommandBatcher.Request> batch) {
+        String[] outputs = new String[batch.size()];
+        for (int i = 0; i < outputs.length; i++) {
+            CommandBatcher.Request request = batch.get(i);
+            outputs[i] = handleRequest(request.getCommand(), request.getSession());
+        }
+        String text = null;
+        for (int i = 0; i < outputs.length; i++) {
+            PlayerSession session = batch.get(i).getSession();
+            if ( ! outputs[i].equals("board") || sendsCompressed(session)) {
+                batch.get(i).respond(outputs[i]);
+            } else {
+                if (text == null) {
+                    text = responses.text();
+                }
+                batch.get(i).respond(text);
+            }
+        }
+    }
+
     /**
      * Handler for client input, performing requested operations and returning an output message.
+     * The client's rate limit must have been waited for with throttle().
      * 
      * @param input message from client
-     * @return message to client, or null if none
+     * @param session the client's session
+     * @return message to client; or "board" to send the board with sendBoard(), or "terminate",
+     *         "spectate" or "binary" to leave the text protocol
      */
-    private String handleRequest(String input) {
-        String regex = "(look)|(help)|(bye)|"
-                     + "(dig -?\\d+ -?\\d+)|(flag -?\\d+ -?\\d+)|(deflag -?\\d+ -?\\d+)";
-        if ( ! input.matches(regex)) {
+    private String handleRequest(String input, PlayerSession session) {
+        if ( ! COMMAND.matcher(input).matches()) {
             // invalid input
+            tracer.mark(CommandTracer.PARSED);
             return HELP_MESSAGE;
         }
         String[] tokens = input.split(" ");
+        tracer.mark(CommandTracer.PARSED);
         if (tokens[0].equals("look")) {
-            // 'look' request
-            return board.toString();
+            // 'look' request: the board is sent by sendBoard(), compressed if asked for
+            return "board";
+        } else if (tokens[0].equals("compress")) {
+            // 'compress' request
+            session.setCompression(tokens[1]);
+            return "COMPRESS " + tokens[1];
         } else if (tokens[0].equals("help")) {
             // 'help' request
             return HELP_MESSAGE;
+        } else if (tokens[0].equals("metrics")) {
+            // 'metrics' request
+            return responses.getMetrics();
         } else if (tokens[0].equals("bye")) {
             // 'bye' request
             return "terminate";
+        } else if (tokens[0].equals("binary")) {
+            // 'binary' request
+            return "binary";
+        } else if (tokens[0].equals("spectate")) {
+            // 'spectate' request
+            return "spectate";
+        } else if (tokens[0].equals("stats")) {
+            // 'stats' request
+            String stats = board.getStats() + " Players: " + sessions.size() + ". Your moves: " + session.getMoves() + ".";
+            tracer.mark(CommandTracer.APPLIED);
+            return stats;
+        } else if (tokens[0].equals("hint")) {
+            // 'hint' request
+            Solver.Analysis analysis = solver.analyze();
+            tracer.mark(CommandTracer.APPLIED);
+            Solver.Hint hint = analysis.getHint();
+            String time = String.format(" Solved in %.3f ms.", analysis.getSolveNanos() / 1e6);
+            return (hint == null ? "No hint: every cell has been dug." : "Hint: " + hint + ".") + time;
+        } else if (tokens[0].equals("undo") || tokens[0].equals("redo")) {
+            // 'undo [n]' or 'redo [n]' request
+            if (options.getUndoDepth() == 0) {
+                return NO_UNDO_MESSAGE;
+            }
+            int moves = tokens.length > 1 ? Integer.parseInt(tokens[1]) : 1;
+            if (tokens[0].equals("undo")) {
+                board.undo(moves);
+            } else {
+                board.redo(moves);
+            }
+            tracer.mark(CommandTracer.APPLIED);
+            return "board";
+        } else if (tokens[0].equals("count")) {
+            // 'count x1 y1 x2 y2' request
+            if ( ! options.getRegionIndex()) {
+                return NO_COUNT_MESSAGE;
+            }
+            String counts = board.getRegionStats(Integer.parseInt(tokens[1]), Integer.parseInt(tokens[2]),
+                    Integer.parseInt(tokens[3]), Integer.parseInt(tokens[4]));
+            tracer.mark(CommandTracer.APPLIED);
+            return counts;
         } else {
+            // 'dig x y', 'flag x y', 'deflag x y' or 'chord x y' request
             int x = Integer.parseInt(tokens[1]);
             int y = Integer.parseInt(tokens[2]);
-            if (tokens[0].equals("dig")) {
-                // 'dig x y' request
-                String message = board.dig(x, y);
-                if (message.equals("BOOM")) {
-                    return "BOOM!";
-                }
-                return board.toString();
-            } else if (tokens[0].equals("flag")) {
-                // 'flag x y' request
-                board.flag(x, y);
-                return board.toString();
-            } else if (tokens[0].equals("deflag")) {
-                // 'deflag x y' request
-                board.deflag(x, y);
-                return board.toString();
+            String message = move(tokens[0], x, y, session);
+            if (message.equals("CLEARED")) {
+                return CLEARED_MESSAGE;
+            } else if (message.equals("BOOM")) {
+                return "BOOM!";
             }
+            return "board";
         }
-        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Starts a new game with a fresh board from the pool, if the board is cleared and another
+     * client has not started a new game already.
+     */
+    private void startNewGame() {
+        GameBoard fresh;
+        try {
+            fresh = boardPool.take();
+        } catch (InterruptedException ie) {
+            // the client is being disconnected; the next dig on the cleared board tries again
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (options.getNoGuess()) {
+            // a board that needs no guess starts with its center dug
+            fresh.dig(fresh.getCols() / 2, fresh.getRows() / 2);
+        }
+        board.restartIfCleared(fresh);
+        // fresh now holds the cleared game, or is still unused; either way it goes back to the pool
+        boardPool.recycle(fresh);
     }
 
     /**
@@ -186,7 +1232,16 @@ public class GameServer {
      * 
      * <br> Usage:
      * <pre>
-     *      minesweeper.GameServer [--port PORT] [--size SIZE_X,SIZE_Y | --file FILE]
+     *      minesweeper.GameServer [--port PORT] [--size SIZE_X,SIZE_Y | --file FILE] [--reset-on-clear]
+     *                             [--rate-limit RATE[,BURST]] [--idle-timeout SECONDS] [--spectator-fps FPS]
+     *                             [--no-guess] [--safe-first-dig MODE] [--record FILE] [--shards COLS,ROWS]
+     *                             [--storage heap | off-heap | mapped:FILE | chunked | sparse]
+     *                             [--output-queue BYTES[,POLICY]] [--compress-threshold CHARS]
+     *                             [--snapshot FILE] [--handoff HANDOFF_PORT] [--drain-timeout SECONDS]
+     *                             [--undo MOVES] [--max-connections MAX[,WAITING]]
+     *                             [--accept-backlog CONNECTIONS] [--acceptors THREADS]
+     *                             [--batch MILLIS[,COMMANDS]] [--region-index]
+     *                             [--slow-log MILLIS] [--trace-events]
      * </pre>
      * 
      * <p>  PORT is an optional integer in the range 0 to 65535 inclusive, specifying the port the server
@@ -221,6 +1276,160 @@ public class GameServer {
      * 
      * <p>  Note that --file and --size may not be specified simultaneously.
      * 
+     * <p>  --reset-on-clear is an optional flag. If it is given, a new random board of the same size
+     *      replaces the board as soon as a dig clears it, i.e. every cell without a bomb has been dug.
+     * 
+     * <p>  RATE is an optional positive number of commands per second that each player may send, and
+     *      BURST an optional positive integer number of commands a player may send at once (default:
+     *      RATE rounded up). Players that send commands faster are slowed down. By default there is no limit.
+     * <br> E.g. "--rate-limit 20,5" lets each player send 20 commands per second, at most 5 at once.
+     * 
+     * <p>  SECONDS is an optional positive integer; players that send no command for SECONDS seconds
+     *      are disconnected. By default idle players stay connected.
+     * 
+     * <p>  FPS is an optional positive number of times per second that spectators may be sent the board
+     *      (default 4). Spectators are only sent the board when it has changed.
+     * 
+     * <p>  --no-guess is an optional flag. If it is given, every random board, whether from --size or
+     *      from --reset-on-clear, can be cleared by logic alone: its center cell and the cells next to it
+     *      have no bombs, the center cell is dug when the game starts, and from there on some cell is
+     *      always known to be safe. Such boards are searched for on every processor; if none is
+     *      found within NoGuessGenerator.DEFAULT_MAX_ATTEMPTS tries, the closest one is used.
+     * 
+     * <p>  MODE is an optional argument, "cell" or "area", that makes the first dig of every game safe:
+     *      a bomb in the first cell dug ("cell"), or in that cell and the cells next to it ("area"),
+     *      is moved to a random cell without a bomb, so the number of bombs stays the same.
+     * <br> E.g. "--safe-first-dig area" makes the first dig of every game uncover an opening.
+     * 
+     * <p>  --record FILE is an optional argument that records every change to the board in FILE
+     *      (replacing it), from which "java minesweeper.MoveReplayer FILE MOVE" prints the board as
+     *      it was after any move.
+     * 
+     * <p>  COLS and ROWS are optional positive integers that split a random board into COLS x ROWS
+     *      regions, each served by its own process on this host (see ShardServer), for boards too
+     *      large for one process. Players connect to PORT as usual, where a ShardRouter forwards
+     *      their commands to the regions. The 'chord', 'undo', 'redo', 'count', 'hint', 'spectate', 'binary',
+     *      'compress' and 'metrics' commands are not available, and --shards cannot be combined with --file,
+     *      --reset-on-clear, --no-guess, --safe-first-dig, --record, --undo or --region-index.
+     * <br> E.g. "--size 4000,4000 --shards 2,2" serves a 4000 x 4000 board from four processes.
+     * 
+     * <p>  --storage is an optional argument saying where the cells of a random board are kept: on
+     *      the Java heap ("heap", the default), in direct memory outside the heap ("off-heap"), or
+     *      in a board file mapped into memory ("mapped:FILE"), on the heap in chunks that are
+     *      allocated as they are first written ("chunked"), or only for the cells that players have
+     *      touched ("sparse"). Off-heap and mapped boards keep the garbage collector away from the
+     *      cells of boards of billions of cells. If FILE already holds a board, that board is played
+     *      on, with its size and in the state it was left in, and --size is ignored; otherwise FILE
+     *      is created. Off-heap boards count against -XX:MaxDirectMemorySize. A sparse board
+     *      computes its untouched cells from a seed when they are read, so it needs memory only for
+     *      the cells that were dug or flagged, but takes time in proportion to its size to start.
+     *      --storage other than "heap" cannot be combined with --file, --reset-on-clear, --no-guess,
+     *      --shards or --undo.
+     * <br> E.g. "--size 40000,40000 --storage mapped:big.board" keeps a board of 1.6 billion cells
+     *      in big.board, and "--size 40000,40000 --storage sparse" keeps one in a few megabytes
+     *      while it is mostly untouched.
+     * 
+     * <p>  BYTES is an optional positive integer, the most bytes of responses that may wait for a
+     *      client that reads them slowly (default ServerOptions.DEFAULT_OUTPUT_QUEUE_BYTES), though
+     *      a single response is always sent. Responses are written by a thread of their own, so a
+     *      slow client does not hold up its commands until it is BYTES behind. Then, if POLICY is
+     *      "disconnect" (the default), the client is disconnected; if it is "block", its commands
+     *      wait until it catches up. Frames of the binary protocol are responses too.
+     * <br> E.g. "--output-queue 1000000,block" lets a client fall a megabyte behind, then waits for it.
+     * 
+     * <p>  CHARS is an optional non-negative integer: clients that sent 'compress rle' or 'compress
+     *      deflate' are sent the board compressed, as specified by BoardCompressor, if its text has
+     *      at least CHARS characters (default ServerOptions.DEFAULT_COMPRESS_THRESHOLD).
+     * <br> E.g. "--compress-threshold 0" compresses the board of every size for such clients.
+     * 
+     * <p>  --snapshot FILE is an optional argument that saves the board in FILE when the server shuts
+     *      down, e.g. on Ctrl-C or SIGTERM, and plays on from the board in FILE when the server
+     *      starts, if FILE exists; --size, --file and --no-guess are then ignored. FILE is a board
+     *      file, as for --storage mapped:FILE.
+     * <br> E.g. "--snapshot game.board" plays on the same game after the server is restarted.
+     * 
+     * <p>  --handoff HANDOFF_PORT is an optional argument for restarting the server, e.g. to upgrade
+     *      it, without refusing connections. HANDOFF_PORT is an integer in the range 1 to 65535
+     *      inclusive, other than PORT. A server started with "--handoff HANDOFF_PORT" while a server
+     *      with the same option runs on the same port takes over from it: where the system and the
+     *      Java runtime (9 or later) allow it, the new server listens on PORT alongside the old one,
+     *      so that clients connecting meanwhile wait for it; the old server shuts down, telling its
+     *      clients to reconnect, and hands over its board through a connection to HANDOFF_PORT on
+     *      the loopback address; and the new server plays on from that board. Otherwise the server
+     *      starts as usual, and listens on HANDOFF_PORT, on the loopback address only, for a server
+     *      to take over from it. Any process on the same host can connect to that port, so it
+     *      should only be used on a host whose users are trusted with the board. --snapshot and
+     *      --handoff cannot be combined with --shards or with --storage other than "heap".
+     * <br> E.g. "--handoff 4445" on a running server and on its replacement.
+     * 
+     * <p>  A server shuts down gracefully: it stops accepting clients, answers every command its
+     *      clients have sent, tells them goodbye and disconnects them. --drain-timeout SECONDS is an
+     *      optional non-negative integer, how long it waits for its clients before it disconnects
+     *      them anyway (default ServerOptions.DEFAULT_DRAIN_TIMEOUT_MILLIS).
+     * 
+     * <p>  MOVES is an optional positive integer that lets players undo the last MOVES moves of each
+     *      game with 'undo' and 'undo N', and redo them with 'redo' and 'redo N', e.g. in a practice
+     *      room. Each move keeps only the parts of the board it changed, see
+     *      GameBoard.setUndoDepth(). --undo cannot be combined with --shards or with --storage
+     *      other than "heap".
+     * <br> E.g. "--undo 100" lets players take back up to 100 moves.
+     * 
+     * <p>  MAX is an optional positive integer, the most clients served at once; each client is
+     *      served by threads of its own, so MAX bounds the threads of the server, e.g. during a
+     *      storm of clients reconnecting after a restart. Clients that connect while the server is
+     *      full wait in line, without a thread, and are sent "Server full, position N. Please
+     *      wait.", until a client disconnects and they are served in turn. WAITING is an optional
+     *      non-negative integer, the most clients waiting in line (default MAX); clients beyond
+     *      those are sent "Server full. Please try again later." and disconnected. By default
+     *      there is no limit.
+     * <br> E.g. "--max-connections 1000,5000" serves 1000 clients at once, with 5000 more in line.
+     * 
+     * <p>  CONNECTIONS is an optional positive integer, the most connections the system keeps
+     *      waiting to be accepted, beyond which it refuses them (default: the system's default).
+     * 
+     * <p>  THREADS is an optional positive integer, the number of threads that accept connections
+     *      (default 1). Where the system and the Java runtime (9 or later) allow it, each one
+     *      listens on PORT with a socket of its own, with SO_REUSEPORT, and the system spreads new
+     *      connections over them.
+     *      --max-connections, --accept-backlog and --acceptors cannot be combined with --shards.
+     * <br> E.g. "--acceptors 4 --accept-backlog 4096" accepts a burst of connections on 4 threads.
+     * 
+     * <p>  --batch is an optional argument that applies the text commands of every client on one
+     *      thread, which owns the board, instead of on each client's own thread: commands wait in
+     *      a lock-free queue, and are applied in batches, once every MILLIS milliseconds, or as
+     *      soon as they arrive if MILLIS is 0, at most COMMANDS at a time (default: no limit).
+     *      Clients then never contend for the board, and the board is rendered once per batch:
+     *      'look' and moves are answered with the board as it is after the whole batch. Binary
+     *      clients still apply their own moves. --batch cannot be combined with --shards.
+     * <br> E.g. "--batch 0" applies whatever commands arrived while the last batch was applied,
+     *      and "--batch 10,1000" applies at most 1000 commands every 10 milliseconds.
+     * 
+     * <p>  --region-index is an optional flag that lets players count the squares of a rectangle with
+     *      'count X1 Y1 X2 Y2': how many are untouched, flagged and dug, and how many have a bomb,
+     *      e.g. for bots and analytics. It gives the game away: counting a single square, with
+     *      'count X Y X Y', tells any player whether it has a bomb before it is dug, so enable it
+     *      only on servers for bots or analytics, never on one where people play. The board keeps
+     *      the counts in an index, see GameBoard.setRegionIndex(), so a count takes the same time
+     *      however large the rectangle, at the cost of 12 bytes per square; boards of more than
+     *      RegionIndex.MAX_CELLS squares cannot keep one.
+     * 
+     * <p>  --slow-log MILLIS is an optional argument that traces each text command of every client,
+     *      from the moment it is read until its response is queued, and writes every command that
+     *      takes at least MILLIS milliseconds, a non-negative integer, to standard error, with the
+     *      time it spent in each phase: waiting for its rate limit, parsing, waiting for the lock
+     *      on the board, applying it, waiting for the board owner with --batch, rendering the
+     *      board and queuing the response; see CommandTracer. Tracing takes a few timestamps per
+     *      command, kept in a ring allocated once per thread.
+     * <br> E.g. "--slow-log 50" logs the commands that take 50 milliseconds or more.
+     * 
+     * <p>  --trace-events is an optional flag that traces each text command in the same way, and
+     *      commits it as a "minesweeper.Command" event for Java Flight Recorder, see CommandEvent,
+     *      for analysis offline. Events are recorded only while a recording runs, e.g. with
+     *      -XX:StartFlightRecording. Flight Recorder is part of Java 11 and later, and of Java 8
+     *      from update 262 on, and CommandEvent is built from src-jfr with it; on an older runtime,
+     *      or without CommandEvent, --trace-events is rejected. --slow-log and --trace-events
+     *      cannot be combined with --shards.
+     * 
      * @param args arguments as described
      */
     public static void main(String[] args) {
@@ -228,6 +1437,7 @@ public class GameServer {
         int sizeX = DEFAULT_SIZE;
         int sizeY = DEFAULT_SIZE;
         Optional<File> file = Optional.empty();
+        ServerOptions options = new ServerOptions();
 
         Queue<String> arguments = new LinkedList<>(Arrays.asList(args));
         try {
@@ -248,6 +1458,137 @@ public class GameServer {
                         if ( ! file.get().isFile()) {
                             throw new IllegalArgumentException("file not found: \"" + file.get() + "\"");
                         }
+                    } else if (flag.equals("--reset-on-clear")) {
+                        options.setResetOnClear(true);
+                    } else if (flag.equals("--rate-limit")) {
+                        String[] limit = arguments.remove().split(",");
+                        double rate = Double.parseDouble(limit[0]);
+                        int burst = limit.length > 1 ? Integer.parseInt(limit[1]) : (int) Math.ceil(rate);
+                        if ( ! (rate > 0) || burst < 1) {
+                            throw new IllegalArgumentException("rate limit must be positive: \"" + String.join(",", limit) + "\"");
+                        }
+                        options.setRateLimit(rate, burst);
+                    } else if (flag.equals("--idle-timeout")) {
+                        int seconds = Integer.parseInt(arguments.remove());
+                        if (seconds <= 0) {
+                            throw new IllegalArgumentException("idle timeout must be positive: \"" + seconds + "\"");
+                        }
+                        options.setIdleTimeoutMillis(seconds * 1000L);
+                    } else if (flag.equals("--no-guess")) {
+                        options.setNoGuess(true);
+                    } else if (flag.equals("--safe-first-dig")) {
+                        String mode = arguments.remove();
+                        if ( ! mode.equals("cell") && ! mode.equals("area")) {
+                            throw new IllegalArgumentException("safe first dig mode must be cell or area: \"" + mode + "\"");
+                        }
+                        options.setSafeFirstDig(true, mode.equals("area"));
+                    } else if (flag.equals("--record")) {
+                        options.setRecordFile(new File(arguments.remove()));
+                    } else if (flag.equals("--shards")) {
+                        String[] shards = arguments.remove().split(",");
+                        int cols = Integer.parseInt(shards[0]);
+                        int rows = Integer.parseInt(shards[1]);
+                        if (cols <= 0 || rows <= 0) {
+                            throw new IllegalArgumentException("number of shards must be positive: \"" + String.join(",", shards) + "\"");
+                        }
+                        options.setShards(cols, rows);
+                    } else if (flag.equals("--storage")) {
+                        String storage = arguments.remove();
+                        if (storage.startsWith(ServerOptions.MAPPED + ":")) {
+                            options.setStorage(ServerOptions.MAPPED, new File(storage.substring(ServerOptions.MAPPED.length() + 1)));
+                        } else if (storage.equals(ServerOptions.HEAP) || storage.equals(ServerOptions.OFF_HEAP)
+                                || storage.equals(ServerOptions.CHUNKED) || storage.equals(ServerOptions.SPARSE)) {
+                            options.setStorage(storage, null);
+                        } else {
+                            throw new IllegalArgumentException("storage must be heap, off-heap, mapped:FILE, chunked or sparse: \""
+                                    + storage + "\"");
+                        }
+                    } else if (flag.equals("--output-queue")) {
+                        String[] queue = arguments.remove().split(",");
+                        long bytes = Long.parseLong(queue[0]);
+                        String policy = queue.length > 1 ? queue[1] : "disconnect";
+                        if (bytes <= 0) {
+                            throw new IllegalArgumentException("output queue must be positive: \"" + bytes + "\"");
+                        }
+                        if ( ! policy.equals("disconnect") && ! policy.equals("block")) {
+                            throw new IllegalArgumentException("output queue policy must be disconnect or block: \"" + policy + "\"");
+                        }
+                        options.setOutputQueue(bytes, policy.equals("block"));
+                    } else if (flag.equals("--compress-threshold")) {
+                        long characters = Long.parseLong(arguments.remove());
+                        if (characters < 0) {
+                            throw new IllegalArgumentException("compress threshold must not be negative: \"" + characters + "\"");
+                        }
+                        options.setCompressThreshold(characters);
+                    } else if (flag.equals("--snapshot")) {
+                        options.setSnapshotFile(new File(arguments.remove()));
+                    } else if (flag.equals("--handoff")) {
+                        int handoffPort = Integer.parseInt(arguments.remove());
+                        if (handoffPort < 1 || handoffPort > 65535) {
+                            throw new IllegalArgumentException("handoff port must be between 1 and 65535: \"" + handoffPort + "\"");
+                        }
+                        options.setHandoffPort(handoffPort);
+                    } else if (flag.equals("--drain-timeout")) {
+                        int seconds = Integer.parseInt(arguments.remove());
+                        if (seconds < 0) {
+                            throw new IllegalArgumentException("drain timeout must not be negative: \"" + seconds + "\"");
+                        }
+                        options.setDrainTimeoutMillis(seconds * 1000L);
+                    } else if (flag.equals("--undo")) {
+                        int moves = Integer.parseInt(arguments.remove());
+                        if (moves <= 0) {
+                            throw new IllegalArgumentException("undo moves must be positive: \"" + moves + "\"");
+                        }
+                        options.setUndoDepth(moves);
+                    } else if (flag.equals("--max-connections")) {
+                        String[] limit = arguments.remove().split(",");
+                        int max = Integer.parseInt(limit[0]);
+                        int waiting = limit.length > 1 ? Integer.parseInt(limit[1]) : max;
+                        if (max <= 0 || waiting < 0) {
+                            throw new IllegalArgumentException("max connections must be positive: \"" + String.join(",", limit) + "\"");
+                        }
+                        options.setMaxConnections(max, waiting);
+                    } else if (flag.equals("--accept-backlog")) {
+                        int backlog = Integer.parseInt(arguments.remove());
+                        if (backlog <= 0) {
+                            throw new IllegalArgumentException("accept backlog must be positive: \"" + backlog + "\"");
+                        }
+                        options.setAcceptBacklog(backlog);
+                    } else if (flag.equals("--acceptors")) {
+                        int threads = Integer.parseInt(arguments.remove());
+                        if (threads <= 0) {
+                            throw new IllegalArgumentException("acceptors must be positive: \"" + threads + "\"");
+                        }
+                        options.setAcceptors(threads);
+                    } else if (flag.equals("--batch")) {
+                        String[] batch = arguments.remove().split(",");
+                        long millis = Long.parseLong(batch[0]);
+                        int commands = batch.length > 1 ? Integer.parseInt(batch[1]) : 0;
+                        if (millis < 0 || commands < 0) {
+                            throw new IllegalArgumentException("batch must not be negative: \"" + String.join(",", batch) + "\"");
+                        }
+                        options.setBatching(millis, commands);
+                    } else if (flag.equals("--region-index")) {
+                        options.setRegionIndex(true);
+                    } else if (flag.equals("--slow-log")) {
+                        long millis = Long.parseLong(arguments.remove());
+                        if (millis < 0) {
+                            throw new IllegalArgumentException("slow log threshold must not be negative: \"" + millis + "\"");
+                        }
+                        options.setSlowLog(millis);
+                    } else if (flag.equals("--trace-events")) {
+                        if ( ! CommandTracer.eventsSupported()) {
+                            throw new IllegalArgumentException("--trace-events needs Java Flight Recorder,"
+                                    + " which is part of Java 11 and later, and of Java 8 from update 262 on,"
+                                    + " and CommandEvent, built from src-jfr");
+                        }
+                        options.setTraceEvents(true);
+                    } else if (flag.equals("--spectator-fps")) {
+                        double fps = Double.parseDouble(arguments.remove());
+                        if ( ! (fps > 0)) {
+                            throw new IllegalArgumentException("spectator frame rate must be positive: \"" + fps + "\"");
+                        }
+                        options.setSpectatorFrameRate(fps);
                     } else {
                         throw new IllegalArgumentException("unknown option: \"" + flag + "\"");
                     }
@@ -257,14 +1598,57 @@ public class GameServer {
                     throw new IllegalArgumentException("unable to parse number for " + flag);
                 }
             }
+            if (options.getShardCols() > 0) {
+                if (file.isPresent() || options.getResetOnClear() || options.getNoGuess()
+                        || options.getSafeFirstDig() || options.getRecordFile() != null || options.getUndoDepth() > 0
+                        || options.getRegionIndex()) {
+                    throw new IllegalArgumentException("--shards cannot be combined with --file, --reset-on-clear,"
+                            + " --no-guess, --safe-first-dig, --record, --undo or --region-index");
+                }
+                if (options.getMaxConnections() > 0 || options.getAcceptBacklog() > 0 || options.getAcceptors() > 1
+                        || options.getBatching() || options.getSlowLogMillis() >= 0 || options.getTraceEvents()) {
+                    throw new IllegalArgumentException("--shards cannot be combined with --max-connections,"
+                            + " --accept-backlog, --acceptors, --batch, --slow-log or --trace-events");
+                }
+                if (options.getShardCols() > sizeX || options.getShardRows() > sizeY) {
+                    throw new IllegalArgumentException("more shards than columns or rows");
+                }
+            }
+            if ( ! options.getStorage().equals(ServerOptions.HEAP) && (file.isPresent() || options.getResetOnClear()
+                    || options.getNoGuess() || options.getShardCols() > 0 || options.getUndoDepth() > 0)) {
+                throw new IllegalArgumentException("--storage " + options.getStorage() + " cannot be combined with --file,"
+                        + " --reset-on-clear, --no-guess, --shards or --undo");
+            }
+            if (options.getHandoffPort() == port) {
+                throw new IllegalArgumentException("--handoff needs a port other than the server's");
+            }
+            if ((options.getSnapshotFile() != null || options.getHandoffPort() > 0)
+                    && (options.getShardCols() > 0 || ! options.getStorage().equals(ServerOptions.HEAP))) {
+                throw new IllegalArgumentException("--snapshot and --handoff cannot be combined with --shards or --storage "
+                        + options.getStorage());
+            }
+            if ((long) sizeX * sizeY > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("board too large: more than " + Integer.MAX_VALUE + " cells");
+            }
+            if (options.getRegionIndex() && (long) sizeX * sizeY > RegionIndex.MAX_CELLS) {
+                throw new IllegalArgumentException("board too large for --region-index: more than "
+                        + RegionIndex.MAX_CELLS + " cells");
+            }
         } catch (IllegalArgumentException iae) {
             System.err.println(iae.getMessage());
-            System.err.println("usage: GameServer [--port PORT] [--size SIZE_X,SIZE_Y | --file FILE]");
+            System.err.println("usage: GameServer [--port PORT] [--size SIZE_X,SIZE_Y | --file FILE] [--reset-on-clear]"
+                    + " [--rate-limit RATE[,BURST]] [--idle-timeout SECONDS] [--spectator-fps FPS] [--no-guess]"
+                    + " [--safe-first-dig MODE] [--record FILE] [--shards COLS,ROWS]"
+                    + " [--storage heap | off-heap | mapped:FILE | chunked | sparse] [--output-queue BYTES[,POLICY]]"
+                    + " [--compress-threshold CHARS] [--snapshot FILE] [--handoff HANDOFF_PORT] [--drain-timeout SECONDS]"
+                    + " [--undo MOVES] [--max-connections MAX[,WAITING]] [--accept-backlog CONNECTIONS]"
+                    + " [--acceptors THREADS] [--batch MILLIS[,COMMANDS]] [--region-index] [--slow-log MILLIS]"
+                    + " [--trace-events]");
             return;
         }
 
         try {
-            runGameServer(file, sizeX, sizeY, port);
+            runGameServer(file, sizeX, sizeY, port, options);
         } catch (IOException ioe) {
             throw new RuntimeException(ioe);
         }
@@ -284,19 +1668,98 @@ public class GameServer {
      * @throws IOException if a network error occurs
      */
     public static void runGameServer(Optional<File> file, int sizeX, int sizeY, int port) throws IOException {
+        runGameServer(file, sizeX, sizeY, port, new ServerOptions());
+    }
+    
+    /**
+     * Start a new GameServer running on the specified port, with either a random new board or a
+     * board loaded from a file, and the given optional settings.
+     * 
+     * @param file see runGameServer(file, sizeX, sizeY, port)
+     * @param sizeX see runGameServer(file, sizeX, sizeY, port)
+     * @param sizeY see runGameServer(file, sizeX, sizeY, port)
+     * @param port see runGameServer(file, sizeX, sizeY, port)
+     * @param options optional server settings
+     * @throws IOException if a network error occurs
+     */
+    public static void runGameServer(Optional<File> file, int sizeX, int sizeY, int port,
+            ServerOptions options) throws IOException {
+        if (options.getShardCols() > 0) {
+            // a sharded board has no GameBoard of its own: each shard builds its region
+            assert ! file.isPresent() && sizeX > 0 && sizeY > 0;
+            ShardLayout layout = new ShardLayout(sizeX, sizeY, options.getShardCols(), options.getShardRows(),
+                    new Random().nextLong());
+            ShardRouter router = ShardRouter.launch(port, layout, options);
+            router.serve();
+            return;
+        }
+        if (options.getHandoffPort() > 0) {
+            GameServer successor = takeOver(port, options);
+            if (successor != null) {
+                serveUntilShutdown(successor);
+                return;
+            }
+        }
         GameBoard board;
-        // If file is passed in as an argument
-        if (file.isPresent()) {
+        if (options.getSnapshotFile() != null && options.getSnapshotFile().isFile()) {
+            // play on where the last server left off
+            board = BoardSnapshot.read(options.getSnapshotFile());
+        } else if (file.isPresent()) {
+            // If file is passed in as an argument
             // pass file into GameBoard
             board = new GameBoard(file.get());
         } else {
             // Random new board
             assert sizeX > 0 && sizeY > 0;
-            board = new GameBoard(sizeX, sizeY);
+            if (options.getNoGuess()) {
+                NoGuessGenerator generator = new NoGuessGenerator(sizeX, sizeY, sizeX / 2, sizeY / 2);
+                try {
+                    board = generator.generate();
+                } catch (InterruptedException ie) {
+                    throw new InterruptedIOException("interrupted while generating the board");
+                } finally {
+                    generator.close();
+                }
+                board.dig(sizeX / 2, sizeY / 2);
+            } else if (options.getStorage().equals(ServerOptions.OFF_HEAP)) {
+                board = new GameBoard(sizeX, sizeY, new Random().nextLong(), OffHeapCellStorage.allocate(sizeX * sizeY));
+            } else if (options.getStorage().equals(ServerOptions.MAPPED)) {
+                OffHeapCellStorage storage = OffHeapCellStorage.map(options.getStorageFile(), sizeX, sizeY);
+                if (storage.isCreated()) {
+                    board = new GameBoard(storage.getCols(), storage.getRows(), new Random().nextLong(), storage);
+                } else {
+                    // play on where the last server left off
+                    board = new GameBoard(storage.getCols(), storage.getRows(), storage);
+                }
+                final GameBoard mapped = board;
+                Runtime.getRuntime().addShutdownHook(new Thread(mapped::flush));
+            } else if (options.getStorage().equals(ServerOptions.CHUNKED)) {
+                board = new GameBoard(sizeX, sizeY, new Random().nextLong(), new ChunkedCellStorage(sizeX * sizeY));
+            } else if (options.getStorage().equals(ServerOptions.SPARSE)) {
+                board = new GameBoard(sizeX, sizeY, new SparseCellStorage(sizeX, sizeY, new Random().nextLong()));
+            } else {
+                board = new GameBoard(sizeX, sizeY);
+            }
         }
         
         // Start server
-        GameServer server = new GameServer(port, board);
+        serveUntilShutdown(new GameServer(port, board, options));
+    }
+    
+    /**
+     * Runs a server until it is shut down, by Ctrl-C or SIGTERM, or another server takes over.
+     * 
+     * @param server server to run
+     * @throws IOException if a network error occurs
+     */
+    private static void serveUntilShutdown(GameServer server) throws IOException {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.shutdown();
+            } catch (IOException ioe) {
+                ioe.printStackTrace();
+            }
+        }, "shutdown"));
         server.serve();
     }
 }
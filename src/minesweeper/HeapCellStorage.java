@@ -0,0 +1,79 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import java.util.Arrays;
+
+/**
+ * Cell storage in a byte array on the Java heap: the fastest storage, and the default.
+ */
+class HeapCellStorage implements CellStorage {
+
+    private final byte[] bytes;
+
+    /*
+     * Abstraction function:
+     *  AF(bytes) = the bytes of bytes, in order
+     * Rep invariant:
+     *  true
+     * Rep exposure:
+     *  bytes is private and never returned; an array given to the constructor is owned by the storage
+     * Thread safety:
+     *  not thread-safe, see CellStorage; get() may race with set() and clear(), see
+     *  supportsOptimisticReads()
+     */
+
+    /**
+     * Makes storage of size bytes, all 0.
+     * @param size number of bytes, requires size >= 0
+     */
+    HeapCellStorage(int size) {
+        this(new byte[size]);
+    }
+
+    /**
+     * Makes storage with the bytes of an array.
+     * @param bytes the bytes; the caller must not use the array afterwards
+     */
+    HeapCellStorage(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    @Override
+    public int size() {
+        return bytes.length;
+    }
+
+    @Override
+    public byte get(int index) {
+        return bytes[index];
+    }
+
+    @Override
+    public void set(int index, byte value) {
+        bytes[index] = value;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(bytes, (byte) 0);
+    }
+
+    @Override
+    public void copyTo(byte[] target) {
+        assert target.length == bytes.length;
+        System.arraycopy(bytes, 0, target, 0, bytes.length);
+    }
+
+    @Override
+    public boolean supportsOptimisticReads() {
+        // the array never changes size
+        return true;
+    }
+
+    @Override
+    public void flush() {
+        // not backed by a file
+    }
+}
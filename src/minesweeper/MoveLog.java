@@ -0,0 +1,741 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import java.io.DataInput;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A record of every change made to a GameBoard, from which the board can be rebuilt as it was
+ * after any move, e.g. to settle a dispute between players.
+ *
+ * <p>Each change is recorded as one event: a dig, flag or deflag that changed the board (cells dug
+ * by a flood fill are not recorded, since replaying the dig digs them again), the removal of a bomb
+ * that was dug, the move of a bomb by a safe first dig, an undo or redo of moves, or the start of a
+ * new game. Move number m is the state of the board after the first m events. The most recent
+ * events are kept in a ring buffer of ints, together with periodic checkpoints of the whole board,
+ * so that rebuilding the board finds the closest checkpoint by binary search and replays only the
+ * events after it. An event takes one int, with its type in the top 4 bits and the index of its
+ * cell in the others, except a MOVE_BOMB, whose int is followed by the index of the cell the bomb
+ * was moved to; recording a move thus writes one int, which keeps the ring buffer small next to
+ * the board it records.
+ *
+ * <p>A log may also spill every event and checkpoint to an append-only file, which MoveReplayer
+ * reads back. The file is written by a background thread, straight from the ring buffer, so that
+ * the thread that changes the board never waits for the disk while it holds the board's lock,
+ * unless the writer falls a whole ring buffer behind. The events are handed over a quarter of the
+ * ring buffer at a time and at every checkpoint, so the file lags behind the board by less than a
+ * quarter of the ring buffer until close(); waking the writer that seldom keeps it from taking the
+ * processor away from the recording thread. The file has a header of four ints (MAGIC, FORMAT,
+ * number of columns, number of rows), then the ints of the events as they are in the ring buffer,
+ * and before the events that follow each checkpoint, a CHECKPOINT int (not an event) and the
+ * checkpoint: four ints (safe cells remaining, bombs remaining, flag count, bombs hit), a boolean
+ * (whether a cell has been dug), and the cells of the board.
+ */
+public class MoveLog {
+
+    /** Event type: a dig of an untouched cell. */
+    static final int DIG = 1;
+    /** Event type: a flag of an untouched cell. */
+    static final int FLAG = 2;
+    /** Event type: a deflag of a flagged cell. */
+    static final int DEFLAG = 3;
+    /** Event type: the bomb in the cell just dug (or dug by the chord just made) was removed. */
+    static final int BOOM = 4;
+    /** Event type: a bomb was moved from one cell to another. */
+    static final int MOVE_BOMB = 5;
+    /** Event type: a new game was started on the board. */
+    static final int NEW_GAME = 6;
+    /** Event type: a chord of a dug cell, which dug its untouched neighbors. */
+    static final int CHORD = 7;
+    /** Event type: moves were undone; the number of moves is in place of the cell. */
+    static final int UNDO = 8;
+    /** Event type: moves were redone; the number of moves is in place of the cell. */
+    static final int REDO = 9;
+    /** Spill file record type, not an event: a checkpoint follows. */
+    static final int CHECKPOINT = 0xF;
+    /** First int of a spill file. */
+    static final int MAGIC = 0x4D534C47;
+    /** Second int of a spill file. */
+    static final int FORMAT = 1;
+    // number of bits of a cell index in an event
+    private static final int CELL_BITS = 28;
+    /** Largest number of cells on a board that can be recorded. */
+    static final int MAX_CELLS = 1 << CELL_BITS;
+
+    // a checkpoint copies the whole board, so there is one every (number of cells) events at
+    // most, i.e. about one byte per event, and rebuilding a board replays as many events at most
+    private static final int MIN_CHECKPOINT_INTERVAL = 1024;
+    // number of events the writer thread writes at once
+    private static final int SPILL_CHUNK = 4096;
+    // number of ints staged before they are copied to the ring buffer
+    private static final int STAGE_SIZE = 1024;
+
+    private final GameBoard board;
+    private final int[] events;
+    private final int[] staged;
+    private final int mask;
+    private final int interval;
+    private final int chunk;
+    private final int handover;
+    // number of ints copied from staged to events, number of ints in staged after them, and how
+    // many of all these ints are the second int of a MOVE_BOMB
+    private long flushed = 0;
+    private int stagedCount = 0;
+    private long bombMoves = 0;
+    private long nextCheckpoint = 0;
+    private long nextHandover = Long.MAX_VALUE;
+    // stagedCount at which append() has work to do: when staged is nearly full, or earlier if
+    // nextCheckpoint or nextHandover comes first
+    private int stageLimit = 0;
+    private final ArrayDeque<Checkpoint> checkpoints = new ArrayDeque<>();
+    private Checkpoint spare = null;
+    // spilling, if spill is not null: the writer thread may write ints [0, published), and the
+    // checkpoints in pending, and has written ints [0, written)
+    private final FileChannel spill;
+    private final Thread writer;
+    private final ConcurrentLinkedQueue<Checkpoint> pending = new ConcurrentLinkedQueue<>();
+    private volatile long published = 0;
+    private volatile long written = 0;
+    private volatile boolean closed = false;
+    private volatile IOException spillError = null;
+
+    /*
+     * Abstraction function:
+     *  AF(board, events, staged, flushed, stagedCount, bombMoves, checkpoints, spill, written) =
+     *      the record of the first end - bombMoves events on board, which were recorded as
+     *      end = flushed + stagedCount ints, of which events[i & mask] holds int i for
+     *      max(0, flushed - events.length) <= i < flushed, and staged[i - flushed] holds int i for
+     *      flushed <= i < end, and each checkpoint c holds the state of board after c.move events,
+     *      which were recorded as c.slot ints; the first written ints, and the checkpoints among
+     *      them, have been written to spill, if it is not null
+     * Rep invariant:
+     *  events.length is a power of two, and mask = events.length - 1
+     *  0 < interval <= events.length / 2, 0 < chunk <= events.length / 2,
+     *      0 < handover <= events.length / 2
+     *  2 <= staged.length <= events.length
+     *  0 <= bombMoves <= end / 2
+     *  0 <= stagedCount < stageLimit <= staged.length - 1 between calls, so that a MOVE_BOMB still
+     *      fits in staged
+     *  checkpoints is not empty once the log is attached, and sorted by increasing move and slot
+     *  every checkpoint has move <= end - bombMoves and slot <= end, and the slot of a checkpoint
+     *      is the start of an event, or end
+     *  nextCheckpoint <= the slot of the last checkpoint + interval
+     *  flushed + stageLimit <= nextCheckpoint, flushed + stageLimit <= nextHandover, and
+     *      nextHandover is Long.MAX_VALUE if spill is null
+     *  written <= published <= flushed, and flushed + stageLimit + 1 - written <= events.length if
+     *      spill is not null, so that no int is overwritten before it is written, even by a
+     *      MOVE_BOMB that reaches stageLimit
+     *  pending holds the checkpoints with slot >= written, in order, and they are in checkpoints
+     * Rep exposure:
+     *  events, staged, checkpoints and their cells are never returned; boardAt() returns a new
+     *      board
+     * Thread safety:
+     *  every field but board, the constants and the volatile fields is guarded by the lock on board:
+     *      GameBoard only records events while holding its lock, and every public method takes it
+     *  the writer thread only reads events [written, published) and the checkpoints in pending,
+     *      which the recording thread published before it published their move in published, and
+     *      does not change or recycle until written has passed them
+     */
+
+    /**
+     * Makes a log that records every change to board from now on, keeping only the most recent events
+     * in memory.
+     *
+     * @param board board to record; requires that it has no log yet
+     * @param capacity number of ints of events kept in memory, rounded up to a power of two, which
+     *                 is the number of events but for bomb moves, which take two; requires
+     *                 capacity >= 2
+     */
+    public MoveLog(GameBoard board, int capacity) {
+        this(board, capacity, (FileChannel) null);
+    }
+
+    /**
+     * Makes a log that records every change to board from now on, keeping the most recent events in
+     * memory, and spilling every event to a file.
+     *
+     * @param board board to record; requires that it has no log yet
+     * @param capacity number of ints of events kept in memory, rounded up to a power of two, which
+     *                 is the number of events but for bomb moves, which take two; requires
+     *                 capacity >= 2
+     * @param file file to write the events to, for MoveReplayer; replaced if it exists
+     * @throws IOException if the file cannot be created
+     */
+    public MoveLog(GameBoard board, int capacity, File file) throws IOException {
+        this(board, capacity, new FileOutputStream(file).getChannel());
+    }
+
+    private MoveLog(GameBoard board, int capacity, FileChannel spill) {
+        assert capacity >= 2;
+        int cells = board.getCols() * board.getRows();
+        assert cells <= MAX_CELLS;
+        this.board = board;
+        this.events = new int[Integer.highestOneBit(capacity - 1) << 1];
+        this.staged = new int[Math.min(STAGE_SIZE, events.length)];
+        this.mask = events.length - 1;
+        this.interval = Math.min(events.length / 2, Math.max(MIN_CHECKPOINT_INTERVAL, cells));
+        this.chunk = Math.min(SPILL_CHUNK, events.length / 2);
+        this.handover = Math.max(1, events.length / 4);
+        this.spill = spill;
+        this.writer = spill == null ? null : new Thread(this::writeSpill, "move-log-writer");
+        synchronized (board) {
+            checkpoint();
+            board.attachMoveLog(this);
+        }
+        if (writer != null) {
+            writer.setDaemon(true);
+            writer.start();
+        }
+        checkRep();
+    }
+
+    private void checkRep() {
+        assert events.length == mask + 1 && (events.length & mask) == 0;
+        assert interval > 0 && interval <= events.length / 2;
+        assert chunk > 0 && chunk <= events.length / 2;
+        assert handover > 0 && handover <= events.length / 2;
+        assert staged.length >= 2 && staged.length <= events.length;
+    }
+
+    /**
+     * @param type event type
+     * @param first first cell of the event, or 0
+     * @param second second cell of the event, or 0
+     * @return the event as a long: type, then first and second in CELL_BITS bits each, which is
+     *         how events are replayed and described once read from the ring buffer or a file
+     */
+    static long encode(int type, int first, int second) {
+        return ((long) type << (2 * CELL_BITS)) | ((long) first << CELL_BITS) | second;
+    }
+
+    /**
+     * @param event an encoded event
+     * @return its type
+     */
+    static int type(long event) {
+        return (int) (event >>> (2 * CELL_BITS));
+    }
+
+    /**
+     * @param event an encoded event
+     * @return its first cell
+     */
+    static int first(long event) {
+        return (int) (event >>> CELL_BITS) & (MAX_CELLS - 1);
+    }
+
+    /**
+     * @param event an encoded event
+     * @return its second cell
+     */
+    static int second(long event) {
+        return (int) event & (MAX_CELLS - 1);
+    }
+
+    /**
+     * @param type event type, or CHECKPOINT
+     * @param cell index of the cell of the event, or 0
+     * @return the int that starts the record of the event in a spill file
+     */
+    static int fileRecord(int type, int cell) {
+        return (type << CELL_BITS) | cell;
+    }
+
+    /**
+     * @param record the int that starts a record in a spill file
+     * @return the event, or CHECKPOINT if the record is a checkpoint, with the second cell of a
+     *         MOVE_BOMB event still to be read
+     */
+    static long fromFileRecord(int record) {
+        return encode(record >>> CELL_BITS, record & (MAX_CELLS - 1), 0);
+    }
+
+    /**
+     * @param event an encoded event
+     * @return number of ints the event takes in the ring buffer and in a spill file
+     */
+    static int slots(long event) {
+        return type(event) == MOVE_BOMB ? 2 : 1;
+    }
+
+    /**
+     * Records an event. Requires the lock on board.
+     *
+     * @param type DIG, FLAG, DEFLAG, CHORD or BOOM
+     * @param cell index of the cell of the event
+     */
+    void append(int type, int cell) {
+        stage(fileRecord(type, cell));
+    }
+
+    /**
+     * Stages the int of an event that takes one. Kept apart from append(), so that each is small
+     * enough for the JIT to inline into the moves of GameBoard. Requires the lock on board.
+     *
+     * @param record the int of the event
+     */
+    private void stage(int record) {
+        staged[stagedCount] = record;
+        // one comparison on the common path
+        if (++stagedCount >= stageLimit) {
+            work();
+        }
+    }
+
+    /**
+     * Records a dig of a cell with a bomb: a DIG event and the BOOM event that follows it, staged
+     * at once. Requires the lock on board.
+     *
+     * @param cell index of the cell dug
+     */
+    void appendBoom(int cell) {
+        stage(fileRecord(DIG, cell), fileRecord(BOOM, cell));
+    }
+
+    /**
+     * Records the move of a bomb, as two ints. Requires the lock on board.
+     *
+     * @param from index of the cell the bomb was moved from
+     * @param to index of the cell the bomb was moved to
+     */
+    void moveBomb(int from, int to) {
+        bombMoves++;
+        stage(fileRecord(MOVE_BOMB, from), to);
+    }
+
+    /**
+     * Stages two ints at once, which stageLimit leaves room for. Requires the lock on board.
+     *
+     * @param first the first int
+     * @param second the int after it
+     */
+    private void stage(int first, int second) {
+        int count = stagedCount;
+        staged[count] = first;
+        staged[count + 1] = second;
+        stagedCount = count + 2;
+        if (count + 2 >= stageLimit) {
+            work();
+        }
+    }
+
+    /**
+     * Copies the staged ints to the ring buffer, then checkpoints the board or hands events over
+     * to the writer thread, if either is due, once stagedCount has reached stageLimit. Requires
+     * the lock on board.
+     */
+    private void work() {
+        flush();
+        if (flushed >= nextCheckpoint) {
+            checkpoint();
+        } else if (flushed >= nextHandover) {
+            publish();
+        } else {
+            schedule();
+        }
+    }
+
+    /**
+     * Copies the staged ints to the ring buffer. Writing the ring buffer an int at a time, as the
+     * board changes, would miss the processor's caches at every new line of it, which costs more
+     * than the rest of recording; staged stays in the caches, and copying it in bulk streams the
+     * ring buffer through them. Requires the lock on board.
+     */
+    private void flush() {
+        int at = (int) flushed & mask;
+        int first = Math.min(stagedCount, events.length - at);
+        System.arraycopy(staged, 0, events, at, first);
+        System.arraycopy(staged, first, events, 0, stagedCount - first);
+        flushed += stagedCount;
+        // flushed + stageLimit stays where it was
+        stageLimit -= stagedCount;
+        stagedCount = 0;
+    }
+
+    /**
+     * Sets stageLimit, once the staged ints are flushed. Requires the lock on board.
+     */
+    private void schedule() {
+        stageLimit = (int) Math.min(staged.length - 1, Math.min(nextCheckpoint, nextHandover) - flushed);
+    }
+
+    /**
+     * Records the start of a new game, and checkpoints the board, since the new game cannot be
+     * replayed from the old one. Requires the lock on board.
+     */
+    void newGame() {
+        staged[stagedCount++] = fileRecord(NEW_GAME, 0);
+        flush();
+        checkpoint();
+    }
+
+    /**
+     * Records an undo or redo, and checkpoints the board, since the state it went back or forward
+     * to cannot be replayed from the events before. Requires the lock on board.
+     *
+     * @param type UNDO or REDO
+     * @param moves number of moves undone or redone
+     */
+    void travel(int type, int moves) {
+        assert type == UNDO || type == REDO;
+        // an undo of more moves than fit is still an undo, and the checkpoint has its outcome
+        staged[stagedCount++] = fileRecord(type, Math.min(moves, MAX_CELLS - 1));
+        flush();
+        checkpoint();
+    }
+
+    /**
+     * Saves the state of board after the events recorded so far, dropping the checkpoints whose
+     * following events are no longer in memory. Requires the lock on board, and no staged ints.
+     */
+    private void checkpoint() {
+        long oldest = flushed - events.length;
+        while ( ! checkpoints.isEmpty() && checkpoints.peekFirst().slot < oldest) {
+            // the writer is past its events, so it is past the checkpoint as well
+            spare = checkpoints.removeFirst();
+        }
+        Checkpoint checkpoint = spare != null ? spare : new Checkpoint();
+        spare = null;
+        board.saveCheckpoint(checkpoint);
+        checkpoint.move = flushed - bombMoves;
+        checkpoint.slot = flushed;
+        checkpoints.addLast(checkpoint);
+        nextCheckpoint = flushed + interval;
+        if (spill != null) {
+            pending.add(checkpoint);
+        }
+        publish();
+    }
+
+    /**
+     * Hands the events recorded so far over to the writer thread, if there is one, waits until it
+     * has room for another handover of events, and sets nextWork. Requires the lock on board, and
+     * no staged ints.
+     */
+    private void publish() {
+        if (spill != null) {
+            published = flushed;
+            LockSupport.unpark(writer);
+            while (flushed + handover + 1 - written > events.length) {
+                // the writer thread is a whole ring buffer behind
+                Thread.yield();
+            }
+            nextHandover = flushed + handover;
+        }
+        schedule();
+    }
+
+    /**
+     * Body of the writer thread: writes the header of the spill file, then the events and
+     * checkpoints as they are published, until the log is closed and everything is written.
+     * If a write fails, the error is kept for close(), and the rest is skipped.
+     */
+    private void writeSpill() {
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES * chunk + Checkpoint.size(0) + Integer.BYTES);
+        long position = 0;
+        try {
+            buffer.putInt(MAGIC).putInt(FORMAT).putInt(board.getCols()).putInt(board.getRows());
+            write(buffer);
+            while (true) {
+                long until = published;
+                Checkpoint checkpoint = pending.peek();
+                if (checkpoint != null && checkpoint.slot <= until) {
+                    until = checkpoint.slot;
+                } else {
+                    checkpoint = null;
+                }
+                while (position < until) {
+                    long to = Math.min(until, position + chunk);
+                    for (long slot = position; slot < to; slot++) {
+                        buffer.putInt(events[(int) slot & mask]);
+                    }
+                    write(buffer);
+                    position = to;
+                    written = position;
+                }
+                if (checkpoint != null) {
+                    buffer.putInt(fileRecord(CHECKPOINT, 0));
+                    buffer.putInt(checkpoint.safeRemaining).putInt(checkpoint.bombsRemaining)
+                            .putInt(checkpoint.flagCount).putInt(checkpoint.bombsHit)
+                            .put((byte) (checkpoint.anyDug ? 1 : 0));
+                    write(buffer);
+                    ByteBuffer cells = ByteBuffer.wrap(checkpoint.cells);
+                    while (cells.hasRemaining()) {
+                        spill.write(cells);
+                    }
+                    pending.poll();
+                } else if (position == published) {
+                    if (closed && position == published) {
+                        break;
+                    }
+                    LockSupport.park(this);
+                }
+            }
+        } catch (IOException ioe) {
+            spillError = ioe;
+            // keep the recording thread from waiting for the writer
+            while ( ! closed || written < published) {
+                written = published;
+                pending.clear();
+                LockSupport.park(this);
+            }
+        } finally {
+            try {
+                spill.close();
+            } catch (IOException ioe) {
+                if (spillError == null) {
+                    spillError = ioe;
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the contents of a buffer to the spill file, and clears it. Only called by the writer thread.
+     *
+     * @param buffer buffer that has been filled
+     * @throws IOException if the write fails
+     */
+    private void write(ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            spill.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * @return number of events recorded so far, which is the move number of the board's current state
+     */
+    public long getMoveCount() {
+        synchronized (board) {
+            return flushed + stagedCount - bombMoves;
+        }
+    }
+
+    /**
+     * @return the lowest move number that boardAt() can still rebuild from memory
+     */
+    public long getOldestMove() {
+        synchronized (board) {
+            flush();
+            return oldestCheckpoint().move;
+        }
+    }
+
+    /**
+     * @return the oldest checkpoint whose following events are all in memory; requires no staged
+     *         ints
+     */
+    private Checkpoint oldestCheckpoint() {
+        long oldest = flushed - events.length;
+        for (Checkpoint checkpoint : checkpoints) {
+            if (checkpoint.slot >= oldest) {
+                return checkpoint;
+            }
+        }
+        throw new AssertionError("the last checkpoint is always in range");
+    }
+
+    /**
+     * @param move a move number, requires getOldestMove() <= move < getMoveCount()
+     * @return the event that took the board from move number move to move + 1, as "dig X Y",
+     *         "flag X Y", "deflag X Y", "chord X Y", "boom X Y", "move X1 Y1 X2 Y2", "undo N",
+     *         "redo N" or "new game"
+     */
+    public String getEvent(long move) {
+        synchronized (board) {
+            flush();
+            if (move < oldestCheckpoint().move || move >= flushed - bombMoves) {
+                throw new IllegalArgumentException("move " + move + " is not in memory");
+            }
+            return describe(eventAt(slotOf(move)), board.getCols());
+        }
+    }
+
+    /**
+     * @param move a move number, requires oldestCheckpoint().move <= move < flushed - bombMoves,
+     *             and no staged ints
+     * @return the index of the first int of the event that took the board from move to move + 1,
+     *         found from the last checkpoint at or before move
+     */
+    private long slotOf(long move) {
+        Checkpoint start = floor(move);
+        long slot = start.slot;
+        for (long skipped = start.move; skipped < move; skipped++) {
+            slot += slots(eventAt(slot));
+        }
+        return slot;
+    }
+
+    /**
+     * @param slot index of the first int of an event in memory
+     * @return the event, encoded
+     */
+    private long eventAt(long slot) {
+        long event = fromFileRecord(events[(int) slot & mask]);
+        if (type(event) == MOVE_BOMB) {
+            event = encode(MOVE_BOMB, first(event), events[(int) (slot + 1) & mask]);
+        }
+        return event;
+    }
+
+    /**
+     * @param event an encoded event
+     * @param cols number of columns of the board
+     * @return the event in the form described by getEvent()
+     */
+    static String describe(long event, int cols) {
+        int first = first(event);
+        int second = second(event);
+        String cell = (first % cols) + " " + (first / cols);
+        switch (type(event)) {
+        case DIG: return "dig " + cell;
+        case FLAG: return "flag " + cell;
+        case DEFLAG: return "deflag " + cell;
+        case CHORD: return "chord " + cell;
+        case BOOM: return "boom " + cell;
+        case MOVE_BOMB: return "move " + cell + " " + (second % cols) + " " + (second / cols);
+        case NEW_GAME: return "new game";
+        case UNDO: return "undo " + first;
+        case REDO: return "redo " + first;
+        default: throw new IllegalArgumentException("not an event: " + Long.toHexString(event));
+        }
+    }
+
+    /**
+     * Rebuilds the board as it was at a move number, from the closest checkpoint before it.
+     *
+     * @param move a move number, requires getOldestMove() <= move <= getMoveCount()
+     * @return a new board in the state the recorded board had after move events, with no log
+     * @throws IllegalArgumentException if move is not in that range
+     */
+    public GameBoard boardAt(long move) {
+        Checkpoint start;
+        long[] replay;
+        GameBoard rebuilt;
+        synchronized (board) {
+            flush();
+            if (move > flushed - bombMoves || move < oldestCheckpoint().move) {
+                throw new IllegalArgumentException("move " + move + " is not in memory");
+            }
+            start = floor(move);
+            // copy the state under the lock, and replay outside it
+            rebuilt = new GameBoard(board.getCols(), board.getRows(), start);
+            replay = new long[(int) (move - start.move)];
+            long slot = start.slot;
+            for (int i = 0; i < replay.length; i++) {
+                replay[i] = eventAt(slot);
+                slot += slots(replay[i]);
+            }
+        }
+        for (long event : replay) {
+            rebuilt.replay(event);
+        }
+        return rebuilt;
+    }
+
+    /**
+     * @param move a move number, requires oldestCheckpoint().move <= move
+     * @return the last checkpoint at or before move, found by binary search
+     */
+    private Checkpoint floor(long move) {
+        Checkpoint[] sorted = checkpoints.toArray(new Checkpoint[0]);
+        int low = 0;
+        int high = sorted.length - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (sorted[middle].move <= move) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return sorted[low];
+    }
+
+    /**
+     * Stops recording, and if there is a spill file, waits until everything recorded is written to
+     * it, and closes it. The events in memory can still be read.
+     *
+     * @throws IOException if writing to the spill file failed
+     * @throws InterruptedIOException if interrupted while waiting for the spill file to be written
+     */
+    public void close() throws IOException {
+        long count;
+        synchronized (board) {
+            count = flushed + stagedCount - bombMoves;
+            board.attachMoveLog(null);
+            if (spill == null || closed) {
+                return;
+            }
+            flush();
+            publish();
+            closed = true;
+            LockSupport.unpark(writer);
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException ie) {
+            throw new InterruptedIOException("interrupted while writing " + count + " events");
+        }
+        if (spillError != null) {
+            throw spillError;
+        }
+    }
+
+    /**
+     * The state of a board after a number of events: its cells and counters.
+     */
+    static final class Checkpoint {
+        long move;
+        // number of ints recorded before the checkpoint, in a MoveLog
+        long slot;
+        byte[] cells;
+        int safeRemaining;
+        int bombsRemaining;
+        int flagCount;
+        int bombsHit;
+        boolean anyDug;
+
+        /**
+         * Reads a checkpoint written to a spill file, as described by MoveLog.
+         *
+         * @param in stream to read from
+         * @param move move number of the checkpoint
+         * @param cells number of cells of the board
+         * @return the checkpoint
+         * @throws IOException if the stream fails or ends
+         */
+        static Checkpoint read(DataInput in, long move, int cells) throws IOException {
+            Checkpoint checkpoint = new Checkpoint();
+            checkpoint.move = move;
+            checkpoint.safeRemaining = in.readInt();
+            checkpoint.bombsRemaining = in.readInt();
+            checkpoint.flagCount = in.readInt();
+            checkpoint.bombsHit = in.readInt();
+            checkpoint.anyDug = in.readBoolean();
+            checkpoint.cells = new byte[cells];
+            in.readFully(checkpoint.cells);
+            return checkpoint;
+        }
+
+        /**
+         * @param cells number of cells of the board
+         * @return number of bytes of a checkpoint in a spill file, after its CHECKPOINT int
+         */
+        static int size(int cells) {
+            return 4 * Integer.BYTES + 1 + cells;
+        }
+    }
+}
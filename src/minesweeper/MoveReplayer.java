@@ -0,0 +1,259 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Rebuilds a board from the file spilled by a MoveLog, as it was after any move, for offline
+ * analysis of a game.
+ *
+ * <p>Opening a file reads it once to index its checkpoints. Rebuilding the board at a move then
+ * finds the closest checkpoint before it by binary search, and reads only that checkpoint and the
+ * events after it. A file that ends in the middle of a record, e.g. because the recording process
+ * died, is read up to its last complete record; a new game, undo or redo only counts once the
+ * checkpoint written after it is complete, since it can only be rebuilt from that checkpoint.
+ */
+public class MoveReplayer {
+
+    // size of the file header: MAGIC, FORMAT, columns and rows
+    private static final int HEADER_SIZE = 4 * Integer.BYTES;
+
+    private final File file;
+    private final int numCols;
+    private final int numRows;
+    private long moveCount = 0;
+    private int checkpointCount = 0;
+    private long[] checkpointMoves = new long[16];
+    private long[] checkpointOffsets = new long[16];
+
+    /*
+     * Abstraction function:
+     *  AF(file, numCols, numRows, moveCount, checkpointMoves, checkpointOffsets, checkpointCount) =
+     *      the game recorded in file on a numCols x numRows board, with moveCount complete events,
+     *      where the state after checkpointMoves[i] events is stored at offset checkpointOffsets[i]
+     *      of file, for 0 <= i < checkpointCount
+     * Rep invariant:
+     *  numCols > 0, numRows > 0
+     *  checkpointCount > 0, and checkpointMoves[0..checkpointCount) is sorted, with values in [0, moveCount]
+     * Rep exposure:
+     *  all fields are private; boards are returned as new objects
+     * Thread safety:
+     *  the fields are only written by the constructor; boardAt() reads the file with its own stream
+     */
+
+    /**
+     * Opens a file spilled by a MoveLog, and indexes its checkpoints.
+     *
+     * @param file file written by MoveLog(board, capacity, file)
+     * @throws IOException if the file cannot be read, or was not written by a MoveLog
+     */
+    public MoveReplayer(File file) throws IOException {
+        this.file = file;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MoveLog.MAGIC || in.readInt() != MoveLog.FORMAT) {
+                throw new IOException("not a move log: " + file);
+            }
+            numCols = in.readInt();
+            numRows = in.readInt();
+            if (numCols <= 0 || numRows <= 0 || (long) numCols * numRows > MoveLog.MAX_CELLS) {
+                throw new IOException("bad board size " + numCols + "x" + numRows + " in " + file);
+            }
+            int checkpointSize = MoveLog.Checkpoint.size(numCols * numRows);
+            long offset = HEADER_SIZE;
+            long length = file.length();
+            // whether the last event read is a new game, undo or redo still waiting for its checkpoint
+            boolean awaitingCheckpoint = false;
+            while (offset + Integer.BYTES <= length) {
+                int type = MoveLog.type(MoveLog.fromFileRecord(in.readInt()));
+                offset += Integer.BYTES;
+                if (awaitingCheckpoint && type != MoveLog.CHECKPOINT) {
+                    throw new IOException("no checkpoint after event " + moveCount + " in " + file);
+                }
+                if (type == MoveLog.MOVE_BOMB) {
+                    if (offset + Integer.BYTES > length) {
+                        break;
+                    }
+                    in.readInt();
+                    offset += Integer.BYTES;
+                    moveCount++;
+                } else if (type == MoveLog.NEW_GAME || type == MoveLog.UNDO || type == MoveLog.REDO) {
+                    awaitingCheckpoint = true;
+                } else if (type != MoveLog.CHECKPOINT) {
+                    moveCount++;
+                } else if (offset + checkpointSize <= length) {
+                    if (awaitingCheckpoint) {
+                        moveCount++;
+                        awaitingCheckpoint = false;
+                    }
+                    addCheckpoint(moveCount, offset);
+                    skipFully(in, checkpointSize);
+                    offset += checkpointSize;
+                } else {
+                    break;
+                }
+            }
+        } catch (EOFException eofe) {
+            throw new IOException("not a move log: " + file, eofe);
+        }
+        if (checkpointCount == 0) {
+            throw new IOException("no checkpoint in " + file);
+        }
+        checkRep();
+    }
+
+    private void checkRep() {
+        assert numCols > 0 && numRows > 0;
+        assert checkpointCount > 0 && checkpointMoves[checkpointCount - 1] <= moveCount;
+    }
+
+    /**
+     * Adds a checkpoint to the index.
+     */
+    private void addCheckpoint(long move, long offset) {
+        if (checkpointCount == checkpointMoves.length) {
+            checkpointMoves = Arrays.copyOf(checkpointMoves, 2 * checkpointCount);
+            checkpointOffsets = Arrays.copyOf(checkpointOffsets, 2 * checkpointCount);
+        }
+        checkpointMoves[checkpointCount] = move;
+        checkpointOffsets[checkpointCount] = offset;
+        checkpointCount++;
+    }
+
+    /**
+     * @return number of columns of the recorded board
+     */
+    public int getCols() {
+        return numCols;
+    }
+
+    /**
+     * @return number of rows of the recorded board
+     */
+    public int getRows() {
+        return numRows;
+    }
+
+    /**
+     * @return number of events in the file, which is the move number of the last recorded state
+     */
+    public long getMoveCount() {
+        return moveCount;
+    }
+
+    /**
+     * @return the lowest move number that boardAt() can rebuild, which is the move at which
+     *         recording started
+     */
+    public long getFirstMove() {
+        return checkpointMoves[0];
+    }
+
+    /**
+     * Rebuilds the board as it was at a move number, from the closest checkpoint before it.
+     *
+     * @param move a move number, requires getFirstMove() <= move <= getMoveCount()
+     * @return a new board in the state the recorded board had after move events
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if move is not in that range
+     */
+    public GameBoard boardAt(long move) throws IOException {
+        if (move < getFirstMove() || move > moveCount) {
+            throw new IllegalArgumentException("move " + move + " is not in " + file);
+        }
+        // the last checkpoint at or before move
+        int found = Arrays.binarySearch(checkpointMoves, 0, checkpointCount, move);
+        int index;
+        if (found < 0) {
+            index = -found - 2;
+        } else {
+            // several checkpoints can have the same move number; take the last
+            index = found;
+            while (index + 1 < checkpointCount && checkpointMoves[index + 1] == move) {
+                index++;
+            }
+        }
+        try (FileInputStream stream = new FileInputStream(file)) {
+            stream.getChannel().position(checkpointOffsets[index]);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+            MoveLog.Checkpoint checkpoint = MoveLog.Checkpoint.read(in, checkpointMoves[index], numCols * numRows);
+            GameBoard board = new GameBoard(numCols, numRows, checkpoint);
+            int checkpointSize = MoveLog.Checkpoint.size(numCols * numRows);
+            for (long replayed = checkpoint.move; replayed < move; ) {
+                long event = MoveLog.fromFileRecord(in.readInt());
+                if (MoveLog.type(event) == MoveLog.CHECKPOINT) {
+                    skipFully(in, checkpointSize);
+                } else {
+                    if (MoveLog.type(event) == MoveLog.MOVE_BOMB) {
+                        event = MoveLog.encode(MoveLog.MOVE_BOMB, MoveLog.first(event), in.readInt());
+                    }
+                    board.replay(event);
+                    replayed++;
+                }
+            }
+            return board;
+        }
+    }
+
+    /**
+     * Skips bytes of a stream, e.g. a checkpoint that is not needed.
+     *
+     * @param in stream to skip bytes of
+     * @param bytes number of bytes to skip, requires bytes >= 0
+     * @throws EOFException if the stream ends before bytes bytes are skipped
+     * @throws IOException if the stream cannot be read
+     */
+    private static void skipFully(DataInputStream in, int bytes) throws IOException {
+        for (int remaining = bytes; remaining > 0; ) {
+            int skipped = (int) in.skip(remaining);
+            if (skipped > 0) {
+                remaining -= skipped;
+            } else if (in.read() >= 0) {
+                // skip() may skip nothing before the end of the stream; read() tells which
+                remaining--;
+            } else {
+                throw new EOFException("checkpoint cut short");
+            }
+        }
+    }
+
+    /**
+     * Prints a recorded board as a player would have seen it after a move, or exports it.
+     *
+     * <br> Usage:
+     * <pre>
+     *      minesweeper.MoveReplayer FILE [MOVE [FORMAT]]
+     * </pre>
+     * FILE is a file spilled by a MoveLog, e.g. by a GameServer started with --record FILE, and MOVE
+     * the move number to rebuild (default: the last one). FORMAT is "text" (the default), to print
+     * the progress of the game and the board, or "bombs" or "pgm", to print only the board as a
+     * board file or as a PGM image, as written by BoardExporter. The board is streamed, so even a
+     * huge board is printed without building its text in memory.
+     *
+     * @param args arguments as described
+     * @throws IOException if the file cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        String format = args.length > 2 ? args[2] : BoardExporter.TEXT;
+        if (args.length < 1 || args.length > 3 || ! (format.equals(BoardExporter.TEXT)
+                || format.equals(BoardExporter.BOMBS) || format.equals(BoardExporter.PGM))) {
+            System.err.println("usage: MoveReplayer FILE [MOVE [text | bombs | pgm]]");
+            return;
+        }
+        MoveReplayer replayer = new MoveReplayer(new File(args[0]));
+        long move = args.length > 1 ? Long.parseLong(args[1]) : replayer.getMoveCount();
+        GameBoard board = replayer.boardAt(move);
+        if (format.equals(BoardExporter.TEXT)) {
+            System.out.println("Move " + move + " of " + replayer.getMoveCount() + ". " + board.getStats());
+        }
+        BoardExporter.write(board, format, System.out);
+        System.out.flush();
+    }
+}
@@ -0,0 +1,260 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates random boards that can be cleared by logic alone, starting from a given first dig.
+ *
+ * <p>Candidate boards are random boards with no bombs in or next to the start cell, as by
+ * GameBoard(sizeX, sizeY, seed, startX, startY). A candidate is accepted if, after digging the start
+ * cell, repeatedly digging every cell that a Solver finds certainly safe clears the board. Candidates
+ * are validated in parallel on a pool of worker threads, and the search stops at the first success.
+ *
+ * <p>Candidates are numbered from 0, and the search returns the lowest numbered candidate that is
+ * accepted, so that the result only depends on the base seed, not on the number of threads or on
+ * scheduling.
+ */
+public class NoGuessGenerator {
+
+    /** Default number of candidates tried before giving up on a board that needs no guess. */
+    public static final int DEFAULT_MAX_ATTEMPTS = 10_000;
+
+    private final int numCols;
+    private final int numRows;
+    private final int startX;
+    private final int startY;
+    private final int maxAttempts;
+    private final int threads;
+    private final ExecutorService workers;
+    private final AtomicLong attempts = new AtomicLong();
+
+    /*
+     * Abstraction function:
+     *  AF(numCols, numRows, startX, startY, maxAttempts, threads, attempts) =
+     *      a generator of numCols x numRows boards that can be cleared by logic alone after digging
+     *      (startX,startY), which tries up to maxAttempts candidates per board on threads threads,
+     *      and has tried attempts candidates in total
+     * Rep invariant:
+     *  numCols > 0, numRows > 0, 0 <= startX < numCols, 0 <= startY < numRows
+     *  maxAttempts > 0, threads > 0, attempts >= 0
+     * Rep exposure:
+     *  all fields are private; boards are returned as new objects
+     * Thread safety:
+     *  fields are final or atomic; each search keeps its state in its own Search object, shared
+     *  only by the workers of that search through atomic fields and its lock
+     */
+
+    /**
+     * Makes a generator that uses one worker thread per processor.
+     *
+     * @param sizeX number of columns of the boards, requires sizeX > 0
+     * @param sizeY number of rows of the boards, requires sizeY > 0
+     * @param startX column of the first dig, requires 0 <= startX < sizeX
+     * @param startY row of the first dig, requires 0 <= startY < sizeY
+     */
+    public NoGuessGenerator(int sizeX, int sizeY, int startX, int startY) {
+        this(sizeX, sizeY, startX, startY, Runtime.getRuntime().availableProcessors(), DEFAULT_MAX_ATTEMPTS);
+    }
+
+    /**
+     * Makes a generator.
+     *
+     * @param sizeX number of columns of the boards, requires sizeX > 0
+     * @param sizeY number of rows of the boards, requires sizeY > 0
+     * @param startX column of the first dig, requires 0 <= startX < sizeX
+     * @param startY row of the first dig, requires 0 <= startY < sizeY
+     * @param threads number of worker threads, requires threads > 0
+     * @param maxAttempts number of candidates to try for each board, requires maxAttempts > 0
+     */
+    public NoGuessGenerator(int sizeX, int sizeY, int startX, int startY, int threads, int maxAttempts) {
+        assert sizeX > 0 && sizeY > 0 && threads > 0 && maxAttempts > 0;
+        assert 0 <= startX && startX < sizeX && 0 <= startY && startY < sizeY;
+        this.numCols = sizeX;
+        this.numRows = sizeY;
+        this.startX = startX;
+        this.startY = startY;
+        this.threads = threads;
+        this.maxAttempts = maxAttempts;
+        AtomicInteger count = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "no-guess-generator-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return column of the first dig
+     */
+    public int getStartX() {
+        return startX;
+    }
+
+    /**
+     * @return row of the first dig
+     */
+    public int getStartY() {
+        return startY;
+    }
+
+    /**
+     * @return number of candidate boards tried so far, by every search of this generator
+     */
+    public long getAttempts() {
+        return attempts.get();
+    }
+
+    /**
+     * Generates a new board, untouched.
+     *
+     * @return a new board that can be cleared by logic alone after digging (getStartX(), getStartY()),
+     *         or if none was found within the maximum number of attempts, the candidate that logic
+     *         alone got closest to clearing
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    public GameBoard generate() throws InterruptedException {
+        return new GameBoard(numCols, numRows, findSeed(new Random().nextLong()), startX, startY);
+    }
+
+    /**
+     * Searches for a board that can be cleared by logic alone.
+     *
+     * @param baseSeed seed of the search; searches with the same base seed find the same board
+     * @return seed such that GameBoard(sizeX, sizeY, seed, startX, startY) can be cleared by logic
+     *         alone after digging (startX,startY); or if none was found within the maximum number of
+     *         attempts, the seed of the candidate that logic alone got closest to clearing
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    public long findSeed(long baseSeed) throws InterruptedException {
+        Search search = new Search(baseSeed);
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            tasks.add(() -> {
+                search.run();
+                return null;
+            });
+        }
+        for (Future<Void> future : workers.invokeAll(tasks)) {
+            try {
+                future.get();
+            } catch (ExecutionException ee) {
+                throw new RuntimeException(ee.getCause());
+            }
+        }
+        return search.result();
+    }
+
+    /**
+     * @param baseSeed seed of a search
+     * @param attempt number of a candidate in that search
+     * @return seed of the candidate
+     */
+    private static long candidateSeed(long baseSeed, long attempt) {
+        return baseSeed + attempt * 0x9E3779B97F4A7C15L;
+    }
+
+    /**
+     * Plays a candidate board with logic alone.
+     *
+     * @param seed seed of the candidate
+     * @return number of safe cells left when logic alone can go no further; 0 iff the candidate
+     *         can be cleared by logic alone
+     */
+    public int safeCellsLeftByLogic(long seed) {
+        GameBoard board = new GameBoard(numCols, numRows, seed, startX, startY);
+        board.dig(startX, startY);
+        Solver solver = new Solver(board);
+        while ( ! board.isCleared()) {
+            int[] safe = solver.analyze().getSafeCells();
+            if (safe.length == 0) {
+                break;
+            }
+            for (int index : safe) {
+                board.dig(index % numCols, index / numCols);
+            }
+        }
+        return board.getSafeRemaining();
+    }
+
+    /**
+     * State of one search, shared by its workers.
+     */
+    private final class Search {
+        private final long baseSeed;
+        private final AtomicLong next = new AtomicLong();
+        private final AtomicLong accepted = new AtomicLong(Long.MAX_VALUE);
+        private long closest = -1;
+        private int closestLeft = Integer.MAX_VALUE;
+
+        /*
+         * Abstraction function:
+         *  AF(baseSeed, next, accepted, closest, closestLeft) = a search from baseSeed that has
+         *      handed out candidates below next, whose lowest accepted candidate so far is accepted
+         *      (MAX_VALUE if none), and whose best rejected candidate so far is closest, which left
+         *      closestLeft safe cells (-1 and MAX_VALUE if none)
+         * Rep invariant:
+         *  accepted is MAX_VALUE or < next
+         * Thread safety:
+         *  next and accepted are atomic; closest and closestLeft are guarded by the lock on this
+         */
+
+        private Search(long baseSeed) {
+            this.baseSeed = baseSeed;
+        }
+
+        /**
+         * Body of a worker: validates candidates until one is accepted, and every candidate before it
+         * has been validated, or until there are no candidates left.
+         */
+        private void run() {
+            while (true) {
+                long attempt = next.getAndIncrement();
+                if (attempt >= maxAttempts || attempt > accepted.get()) {
+                    return;
+                }
+                attempts.incrementAndGet();
+                int left = safeCellsLeftByLogic(candidateSeed(baseSeed, attempt));
+                if (left == 0) {
+                    accepted.accumulateAndGet(attempt, Math::min);
+                } else {
+                    reject(attempt, left);
+                }
+            }
+        }
+
+        private synchronized void reject(long attempt, int left) {
+            if (left < closestLeft || (left == closestLeft && attempt < closest)) {
+                closest = attempt;
+                closestLeft = left;
+            }
+        }
+
+        /**
+         * @return seed of the lowest accepted candidate, or of the closest one if none was accepted;
+         *         requires every worker to have returned
+         */
+        private synchronized long result() {
+            long attempt = accepted.get() != Long.MAX_VALUE ? accepted.get() : closest;
+            return candidateSeed(baseSeed, attempt);
+        }
+    }
+
+    /**
+     * Stops the worker threads. A closed generator cannot generate boards.
+     */
+    public void close() {
+        workers.shutdownNow();
+    }
+}
@@ -0,0 +1,178 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Cell storage outside the Java heap, in a direct ByteBuffer or in a memory-mapped file, so that
+ * the garbage collector never scans, copies or accounts for the cells of a very large board.
+ *
+ * <p>Direct storage counts against -XX:MaxDirectMemorySize (by default the maximum heap size), and
+ * is freed when the storage is garbage-collected. Mapped storage does not; its bytes live in the
+ * page cache of the operating system, which writes them back to the file, so a board in a mapped
+ * file outlives the process that plays it. A board file is:
+ * <pre>
+ *      MAGIC FORMAT COLS ROWS CELLS
+ * </pre>
+ * where the first four are big-endian ints, and CELLS is COLS*ROWS bytes as stored by GameBoard.
+ */
+class OffHeapCellStorage implements CellStorage {
+
+    static final int MAGIC = 0x4D53424F;
+    static final int FORMAT = 1;
+    // size of the file header: MAGIC, FORMAT, columns and rows
+    static final int HEADER_SIZE = 4 * Integer.BYTES;
+    // bytes cleared by one bulk put in clear()
+    private static final int CLEAR_CHUNK = 1 << 16;
+
+    private final ByteBuffer bytes;
+    private final int cols;
+    private final int rows;
+    private final boolean created;
+
+    /*
+     * Abstraction function:
+     *  AF(bytes, cols, rows, created) = the bytes of bytes from 0 to its capacity, for a board of
+     *      cols x rows cells if the storage is mapped, where created says whether the board file
+     *      was new
+     * Rep invariant:
+     *  bytes is direct or mapped, with position 0 and limit == capacity
+     *  if mapped, bytes.capacity() == cols * rows
+     * Rep exposure:
+     *  bytes is private and never returned
+     * Thread safety:
+     *  not thread-safe, see CellStorage; only absolute gets and puts are used, so the position of
+     *  bytes never changes
+     */
+
+    private OffHeapCellStorage(ByteBuffer bytes, int cols, int rows, boolean created) {
+        this.bytes = bytes;
+        this.cols = cols;
+        this.rows = rows;
+        this.created = created;
+    }
+
+    /**
+     * Makes direct storage of size bytes, all 0.
+     * @param size number of bytes, requires size >= 0
+     * @return the storage
+     * @throws OutOfMemoryError if the direct memory limit does not allow size more bytes
+     */
+    static OffHeapCellStorage allocate(int size) {
+        return new OffHeapCellStorage(ByteBuffer.allocateDirect(size), 0, 0, true);
+    }
+
+    /**
+     * Maps the cells of a board file into memory. If the file does not exist, or is empty, it is
+     * created for a cols x rows board whose cells are all 0; otherwise its own size is used, and
+     * the board it holds can be reloaded with GameBoard(getCols(), getRows(), storage), without
+     * reading the file: the pages of the file are read when the cells are first used.
+     * @param file board file
+     * @param cols number of columns of a new board, requires cols > 0
+     * @param rows number of rows of a new board, requires rows > 0 and cols*rows <= Integer.MAX_VALUE
+     * @return storage for the cells in the file
+     * @throws IOException if the file cannot be opened or mapped, or is not a board file
+     */
+    static OffHeapCellStorage map(File file, int cols, int rows) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            boolean created = channel.size() == 0;
+            if (created) {
+                header.putInt(MAGIC).putInt(FORMAT).putInt(cols).putInt(rows).flip();
+                channel.write(header, 0);
+            } else {
+                if (channel.read(header, 0) != HEADER_SIZE) {
+                    throw new IOException("not a board file: " + file);
+                }
+                header.flip();
+                if (header.getInt() != MAGIC || header.getInt() != FORMAT) {
+                    throw new IOException("not a board file: " + file);
+                }
+                cols = header.getInt();
+                rows = header.getInt();
+                if (cols <= 0 || rows <= 0 || (long) cols * rows > Integer.MAX_VALUE
+                        || channel.size() != HEADER_SIZE + (long) cols * rows) {
+                    throw new IOException("bad board size " + cols + "x" + rows + " in " + file);
+                }
+            }
+            // the mapping stays valid after the channel is closed; mapping past the end grows the file with 0s
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE, (long) cols * rows);
+            return new OffHeapCellStorage(bytes, cols, rows, created);
+        }
+    }
+
+    /**
+     * @return number of columns of the board in the mapped file, or 0 if the storage is not mapped
+     */
+    int getCols() {
+        return cols;
+    }
+
+    /**
+     * @return number of rows of the board in the mapped file, or 0 if the storage is not mapped
+     */
+    int getRows() {
+        return rows;
+    }
+
+    /**
+     * @return true iff the storage is direct, or mapped from a file that map() created
+     */
+    boolean isCreated() {
+        return created;
+    }
+
+    @Override
+    public int size() {
+        return bytes.capacity();
+    }
+
+    @Override
+    public byte get(int index) {
+        return bytes.get(index);
+    }
+
+    @Override
+    public void set(int index, byte value) {
+        bytes.put(index, value);
+    }
+
+    @Override
+    public void clear() {
+        byte[] zeros = new byte[Math.min(CLEAR_CHUNK, bytes.capacity())];
+        // relative puts on a view of its own, so that the position of bytes is never used
+        ByteBuffer view = bytes.duplicate();
+        while (view.hasRemaining()) {
+            view.put(zeros, 0, Math.min(zeros.length, view.remaining()));
+        }
+    }
+
+    @Override
+    public void copyTo(byte[] target) {
+        assert target.length == bytes.capacity();
+        ByteBuffer view = bytes.duplicate();
+        view.get(target);
+    }
+
+    @Override
+    public boolean supportsOptimisticReads() {
+        // absolute gets of a buffer that is never unmapped or freed while the storage is in use
+        return true;
+    }
+
+    @Override
+    public void flush() {
+        // direct buffers are MappedByteBuffers too, but only mapped storage has a size
+        if (cols > 0) {
+            ((MappedByteBuffer) bytes).force();
+        }
+    }
+}
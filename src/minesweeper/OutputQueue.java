@@ -0,0 +1,215 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+
+/**
+ * A bounded queue of responses to one client, written to the client's socket by a writer thread
+ * of its own, so that the thread handling the client's commands never waits for a slow client
+ * and does not hold on to the responses it rendered.
+ *
+ * <p>Responses are encoded as they are queued. The writer sends every response queued at the
+ * time in one gathering write, so that a client that sends several commands at once usually gets
+ * the responses in one system call. At most maxBytes may be queued or being written at a time,
+ * except that a single response is always accepted by an empty queue; when a response does not
+ * fit, the client has fallen too far behind, and is either disconnected or, if the queue blocks,
+ * waited for.
+ */
+public class OutputQueue {
+
+    // most responses sent by one gathering write
+    private static final int MAX_GATHER = 64;
+
+    private final SocketChannel channel;
+    private final PlayerSession session;
+    private final long maxBytes;
+    private final boolean blockWhenFull;
+    private final Queue<ByteBuffer> frames = new ArrayDeque<>();
+    private final Thread writer;
+    private long queuedBytes = 0;
+    private boolean closed = false;
+    private IOException failure = null;
+
+    /*
+     * Abstraction function:
+     *  AF(channel, session, maxBytes, blockWhenFull, frames, queuedBytes, closed, failure) =
+     *      the responses to the client of session that have not been written to channel yet:
+     *      frames, and the frames the writer is writing, queuedBytes bytes in all; where a client
+     *      behind by more than maxBytes is waited for if blockWhenFull and otherwise disconnected,
+     *      closed says whether the handler is done sending, and failure is why writing stopped,
+     *      or null if it did not
+     * Rep invariant:
+     *  maxBytes > 0
+     *  queuedBytes >= the bytes remaining in frames, and == 0 if failure != null
+     *  frames is empty if failure != null
+     * Rep exposure:
+     *  channel and session are shared with the handler of the client, which only uses the channel
+     *  for writing after flush(); frames are copies that are never returned
+     * Thread safety:
+     *  frames, queuedBytes, closed and failure are guarded by the lock on this queue;
+     *  only the writer thread writes to channel, with no lock held, while the handler thread
+     *  queues more responses
+     */
+
+    /**
+     * Makes a new queue and starts its writer thread.
+     *
+     * @param channel channel of the client's socket, in blocking mode
+     * @param session the client's session, closed if the client falls too far behind
+     * @param maxBytes most bytes that may wait for the client, requires maxBytes > 0
+     * @param blockWhenFull true to wait for the client when it is maxBytes behind, false to
+     *                      disconnect it
+     */
+    public OutputQueue(SocketChannel channel, PlayerSession session, long maxBytes, boolean blockWhenFull) {
+        assert maxBytes > 0;
+        this.channel = channel;
+        this.session = session;
+        this.maxBytes = maxBytes;
+        this.blockWhenFull = blockWhenFull;
+        this.writer = new Thread(this::write, "output-" + session.getId());
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queues a line of text for the client, as PrintWriter.println() would write it.
+     *
+     * @param line the line, without a line separator
+     * @throws IOException if writing to the client failed, or the client fell too far behind
+     *                     and was disconnected
+     * @throws InterruptedIOException if interrupted while waiting for a slow client
+     */
+    public void send(String line) throws IOException {
+        send(ByteBuffer.wrap((line + System.lineSeparator()).getBytes()));
+    }
+
+    /**
+     * Queues bytes for the client.
+     *
+     * @param bytes the bytes from position to limit, which the caller must not change afterwards
+     * @throws IOException if writing to the client failed, or the client fell too far behind
+     *                     and was disconnected
+     * @throws InterruptedIOException if interrupted while waiting for a slow client
+     */
+    public synchronized void send(ByteBuffer bytes) throws IOException {
+        assert ! closed;
+        int size = bytes.remaining();
+        while (failure == null && queuedBytes > 0 && queuedBytes + size > maxBytes) {
+            if ( ! blockWhenFull) {
+                session.close();
+                throw new IOException("client fell behind by more than " + maxBytes + " bytes");
+            }
+            try {
+                wait();
+            } catch (InterruptedException ie) {
+                throw new InterruptedIOException("interrupted while waiting for a slow client");
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        frames.add(bytes);
+        queuedBytes += size;
+        notifyAll();
+    }
+
+    /**
+     * Waits until every queued byte has been written, e.g. before the handler writes to the
+     * channel itself.
+     *
+     * @throws IOException if writing to the client failed
+     * @throws InterruptedIOException if interrupted while waiting
+     */
+    public synchronized void flush() throws IOException {
+        while (failure == null && queuedBytes > 0) {
+            try {
+                wait();
+            } catch (InterruptedException ie) {
+                throw new InterruptedIOException("interrupted while flushing");
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Lets the writer write what is queued, and waits for it to finish. Nothing may be sent
+     * afterwards.
+     */
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Body of the writer thread: writes queued responses until the queue is closed and empty, or
+     * writing fails.
+     */
+    private void write() {
+        ByteBuffer[] batch = new ByteBuffer[MAX_GATHER];
+        try {
+            while (true) {
+                int count = 0;
+                long bytes = 0;
+                synchronized (this) {
+                    while (frames.isEmpty() && ! closed) {
+                        wait();
+                    }
+                    if (frames.isEmpty()) {
+                        return;
+                    }
+                    while (count < MAX_GATHER && ! frames.isEmpty()) {
+                        batch[count] = frames.remove();
+                        bytes += batch[count].remaining();
+                        count++;
+                    }
+                }
+                // consecutive responses go out together, with no lock held
+                int first = 0;
+                while (first < count) {
+                    channel.write(batch, first, count - first);
+                    while (first < count && ! batch[first].hasRemaining()) {
+                        first++;
+                    }
+                }
+                Arrays.fill(batch, 0, count, null);
+                synchronized (this) {
+                    queuedBytes -= bytes;
+                    notifyAll();
+                }
+            }
+        } catch (IOException ioe) {
+            fail(ioe);
+        } catch (InterruptedException ie) {
+            fail(new InterruptedIOException("writer interrupted"));
+        }
+    }
+
+    /**
+     * Stops writing, and drops what is queued.
+     *
+     * @param cause why writing stopped
+     */
+    private synchronized void fail(IOException cause) {
+        failure = cause;
+        frames.clear();
+        queuedBytes = 0;
+        notifyAll();
+    }
+}
@@ -0,0 +1,203 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The state of one player connected to a GameServer: its connection, how many moves it has made,
+ * when it was last active, and its rate limit.
+ */
+public class PlayerSession {
+
+    private final long id;
+    private final Socket socket;
+    private final TokenBucket rateLimit;
+    private final AtomicLong moves = new AtomicLong();
+    private volatile long lastActive = System.nanoTime();
+    private volatile boolean closed = false;
+    private volatile boolean spectating = false;
+    private volatile String compression = BoardCompressor.OFF;
+    private boolean waitingForCommand = false;
+    private boolean stoppedReading = false;
+
+    /*
+     * Abstraction function:
+     *  AF(id, socket, rateLimit, moves, lastActive, closed, spectating, compression,
+     *     waitingForCommand, stoppedReading) =
+     *      player number id connected through socket, who has made moves dig/flag/deflag moves,
+     *      last sent a command at time lastActive (System.nanoTime()), may send commands as fast
+     *      as rateLimit allows (or without limit if rateLimit is null), only watches the board
+     *      if spectating, and is sent large boards compressed as compression says; the player's
+     *      thread is blocked reading the next command if waitingForCommand, and the server stopped
+     *      reading commands from the player if stoppedReading
+     * Rep invariant:
+     *  moves >= 0
+     *  compression is BoardCompressor.OFF, RLE or DEFLATE
+     *  if stoppedReading and waitingForCommand, the input of socket is shut down, or had bytes
+     *      to read when stoppedReading was set
+     * Rep exposure:
+     *  socket is only used to close the connection, or its input, and is never returned
+     * Thread safety:
+     *  the session is read by the reaper and by other players' threads, but only changed by
+     *  the player's own thread; moves is atomic, lastActive, closed, spectating and compression
+     *  are volatile, and rateLimit is thread-safe; waitingForCommand and stoppedReading are
+     *  guarded by the lock on this session, so that the input is only shut down while nothing
+     *  is left to read but commands that were sent after the server stopped reading
+     */
+
+    /**
+     * Makes a session for a newly connected player.
+     *
+     * @param id number identifying the player, unique within a server
+     * @param socket connection to the player
+     * @param rateLimit limit on the rate of commands from the player, or null for no limit
+     */
+    public PlayerSession(long id, Socket socket, TokenBucket rateLimit) {
+        this.id = id;
+        this.socket = socket;
+        this.rateLimit = rateLimit;
+    }
+
+    /**
+     * @return number identifying the player, unique within a server
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Records that the player sent a command now.
+     */
+    public void touch() {
+        lastActive = System.nanoTime();
+    }
+
+    /**
+     * @return time at which the player last sent a command, as given by System.nanoTime()
+     */
+    public long getLastActive() {
+        return lastActive;
+    }
+
+    /**
+     * Waits until the player's rate limit allows another command that uses the board.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void throttle() throws InterruptedException {
+        if (rateLimit != null) {
+            rateLimit.acquire();
+        }
+    }
+
+    /**
+     * Records that the player made a dig, flag or deflag move.
+     */
+    public void countMove() {
+        moves.incrementAndGet();
+    }
+
+    /**
+     * @return number of dig, flag and deflag moves the player has made
+     */
+    public long getMoves() {
+        return moves.get();
+    }
+
+    /**
+     * Records that the player became a spectator, who only watches the board. Spectators are not
+     * expected to send commands, so they are never disconnected for being idle.
+     */
+    public void startSpectating() {
+        spectating = true;
+    }
+
+    /**
+     * @return true iff the player is a spectator
+     */
+    public boolean isSpectating() {
+        return spectating;
+    }
+
+    /**
+     * Sets how the board is sent to the player, when it is large enough to be compressed.
+     *
+     * @param mode BoardCompressor.OFF, RLE or DEFLATE
+     */
+    public void setCompression(String mode) {
+        assert mode.equals(BoardCompressor.OFF) || mode.equals(BoardCompressor.RLE)
+                || mode.equals(BoardCompressor.DEFLATE);
+        compression = mode;
+    }
+
+    /**
+     * @return how the board is sent to the player when it is large: BoardCompressor.OFF, RLE or
+     *         DEFLATE (default OFF)
+     */
+    public String getCompression() {
+        return compression;
+    }
+
+    /**
+     * Records that the player's thread is about to block reading the next command, unless the
+     * server stopped reading from the player. Must be followed by doneWaitingForCommand() once
+     * the thread is done reading.
+     *
+     * @return false if stopReading() was called, so that the thread should only read what the
+     *         player sent already, if anything
+     */
+    public synchronized boolean waitForCommand() {
+        waitingForCommand = ! stoppedReading;
+        return waitingForCommand;
+    }
+
+    /**
+     * Records that the player's thread is no longer blocked reading a command, e.g. because it
+     * read one, or the input ended.
+     */
+    public synchronized void doneWaitingForCommand() {
+        waitingForCommand = false;
+    }
+
+    /**
+     * Stops reading commands from the player, e.g. when the server shuts down. The player's thread
+     * still reads the commands the player sent already, see waitForCommand(); if it is blocked
+     * reading and nothing has arrived, it sees the end of the input at once. The player can still
+     * be sent responses.
+     */
+    public synchronized void stopReading() {
+        stoppedReading = true;
+        try {
+            // if something arrived, the blocked thread is about to read it, and then stops by itself
+            if (waitingForCommand && socket.getInputStream().available() == 0) {
+                // later reads see the end of the input, and drop whatever the player sends now
+                socket.shutdownInput();
+            }
+        } catch (IOException ioe) {
+            // already disconnected
+        }
+    }
+
+    /**
+     * Disconnects the player. Blocked reads and writes on the connection fail with an IOException.
+     */
+    public void close() {
+        closed = true;
+        try {
+            socket.close();
+        } catch (IOException ioe) {
+            // already disconnected
+        }
+    }
+
+    /**
+     * @return true iff close() has been called
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+}
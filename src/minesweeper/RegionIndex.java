@@ -0,0 +1,151 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Counts of the cells of a board that contain a bomb, are flagged or are dug, in any rectangle of
+ * the board, kept in 2D Fenwick trees: changing the count of a cell and counting the cells of a
+ * rectangle both take O(log cols * log rows) time, however large the rectangle.
+ *
+ * Cells are identified by their index in the board, j*cols + i for cell (i,j), like in GameBoard.
+ */
+class RegionIndex {
+
+    /** Kind of cells: cells that contain a bomb. */
+    static final int BOMBS = 0;
+    /** Kind of cells: flagged cells. */
+    static final int FLAGS = 1;
+    /** Kind of cells: dug cells. */
+    static final int DUG = 2;
+    private static final int KINDS = 3;
+    /** Most cells of a board that can be indexed. */
+    static final int MAX_CELLS = Integer.MAX_VALUE / KINDS;
+
+    private final int cols;
+    private final int rows;
+    private final int[] tree;
+
+    /*
+     * Abstraction function:
+     *  AF(cols, rows, tree) = for each kind and each cell of a cols x rows board, whether the cell
+     *      is of that kind, where node (x,y), for 1 <= x <= cols and 1 <= y <= rows, of the Fenwick
+     *      tree of the kind is tree[((y-1)*cols + x-1)*KINDS + kind], and is the number of cells
+     *      (i,j) of the kind with x - lowbit(x) <= i < x and y - lowbit(y) <= j < y
+     * Rep invariant:
+     *  cols > 0, rows > 0, cols * rows <= MAX_CELLS
+     *  tree.length = cols * rows * KINDS
+     *  0 <= node (x,y) of each tree <= lowbit(x) * lowbit(y)
+     * Rep exposure:
+     *  tree is private and never returned
+     * Thread safety:
+     *  not thread-safe; a GameBoard only changes its index while holding its lock and the write
+     *  lock of its state, and reads it optimistically like the cells
+     */
+
+    /**
+     * Makes an index of a board with no bombs, no flags and nothing dug.
+     * @param cols number of columns of the board, requires cols > 0
+     * @param rows number of rows of the board, requires rows > 0 and cols * rows <= MAX_CELLS
+     */
+    RegionIndex(int cols, int rows) {
+        assert cols > 0 && rows > 0 && (long) cols * rows <= MAX_CELLS;
+        this.cols = cols;
+        this.rows = rows;
+        this.tree = new int[cols * rows * KINDS];
+    }
+
+    /**
+     * @param x column of a node, 1 to cols
+     * @param y row of a node, 1 to rows
+     * @return index in tree of the count of BOMBS at node (x,y); the other kinds follow it
+     */
+    private int node(int x, int y) {
+        return ((y - 1) * cols + x - 1) * KINDS;
+    }
+
+    /**
+     * Counts every cell of the board again, in time linear in the size of the board.
+     * @param kinds gives, for the index of each cell, the kinds of the cell as a bit mask, with
+     *              bit 1 << kind set for each kind the cell is of
+     */
+    void rebuild(IntUnaryOperator kinds) {
+        Arrays.fill(tree, 0);
+        for (int index = 0; index < cols * rows; index++) {
+            int mask = kinds.applyAsInt(index);
+            for (int kind = 0; kind < KINDS; kind++) {
+                tree[index * KINDS + kind] = (mask >> kind) & 1;
+            }
+        }
+        // each node adds itself into its parent, first along the rows, then along the columns
+        for (int y = 1; y <= rows; y++) {
+            for (int x = 1; x <= cols; x++) {
+                int parent = x + (x & -x);
+                if (parent <= cols) {
+                    for (int kind = 0; kind < KINDS; kind++) {
+                        tree[node(parent, y) + kind] += tree[node(x, y) + kind];
+                    }
+                }
+            }
+        }
+        for (int y = 1; y <= rows; y++) {
+            int parent = y + (y & -y);
+            if (parent <= rows) {
+                for (int x = 1; x <= cols; x++) {
+                    for (int kind = 0; kind < KINDS; kind++) {
+                        tree[node(x, parent) + kind] += tree[node(x, y) + kind];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds a cell to the cells of a kind, or removes it.
+     * @param index index of the cell
+     * @param kind BOMBS, FLAGS or DUG
+     * @param delta 1 if the cell has just become of that kind, -1 if it has just stopped being
+     */
+    void add(int index, int kind, int delta) {
+        assert index >= 0 && index < cols * rows && kind >= 0 && kind < KINDS && (delta == 1 || delta == -1);
+        for (int y = index / cols + 1; y <= rows; y += y & -y) {
+            for (int x = index % cols + 1; x <= cols; x += x & -x) {
+                tree[node(x, y) + kind] += delta;
+            }
+        }
+    }
+
+    /**
+     * @param kind BOMBS, FLAGS or DUG
+     * @param x number of columns, 0 to cols
+     * @param y number of rows, 0 to rows
+     * @return number of cells of the kind in the first x columns of the first y rows
+     */
+    private int prefix(int kind, int x, int y) {
+        int sum = 0;
+        for (int j = y; j > 0; j -= j & -j) {
+            for (int i = x; i > 0; i -= i & -i) {
+                sum += tree[node(i, j) + kind];
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Counts the cells of a kind in a rectangle of the board.
+     * @param kind BOMBS, FLAGS or DUG
+     * @param x1 first column of the rectangle
+     * @param y1 first row of the rectangle
+     * @param x2 last column of the rectangle, requires 0 <= x1 <= x2 < cols
+     * @param y2 last row of the rectangle, requires 0 <= y1 <= y2 < rows
+     * @return number of cells (i,j) of the kind with x1 <= i <= x2 and y1 <= j <= y2
+     */
+    int count(int kind, int x1, int y1, int x2, int y2) {
+        assert 0 <= x1 && x1 <= x2 && x2 < cols && 0 <= y1 && y1 <= y2 && y2 < rows;
+        return prefix(kind, x2 + 1, y2 + 1) - prefix(kind, x1, y2 + 1) - prefix(kind, x2 + 1, y1)
+                + prefix(kind, x1, y1);
+    }
+}
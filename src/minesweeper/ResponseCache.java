@@ -0,0 +1,236 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * Renderings of a GameBoard sent in answer to 'look' and moves, cached by the version of the board
+ * they show and their format: the text of 'look', or the RLE or DEFLATE rendering of a
+ * BoardCompressor. Any number of clients that look at an unchanged board share one rendering.
+ * This is the only cache of renderings: BoardCompressor makes a new one every time it is asked.
+ *
+ * <p>Renderings are single-flight: the first client that asks for a version in a format renders
+ * it, without holding up clients that ask for other versions or formats, and clients that ask
+ * for it meanwhile wait for that rendering rather than making it again.
+ *
+ * <p>Since the version of a board only increases, and clients always ask for the current one,
+ * a rendering is evicted as soon as a rendering of a later version in the same format is made;
+ * so the cache holds at most one rendering per format, besides those being made, and adapts to
+ * how often the board changes without any setting.
+ */
+public class ResponseCache {
+
+    /** Format: the text of 'look'. */
+    public static final String TEXT = "text";
+
+    /**
+     * Format and version of a rendering.
+     */
+    private static final class Key {
+        private final String format;
+        private final long version;
+
+        /*
+         * Abstraction function:
+         *  AF(format, version) = the rendering of the board at version in format
+         * Rep invariant:
+         *  format is TEXT, BoardCompressor.RLE or BoardCompressor.DEFLATE; version >= 0
+         * Rep exposure:
+         *  all fields are private and immutable
+         * Thread safety:
+         *  immutable
+         */
+
+        private Key(String format, long version) {
+            this.format = format;
+            this.version = version;
+        }
+
+        @Override
+        public boolean equals(Object that) {
+            return that instanceof Key && ((Key) that).format.equals(format) && ((Key) that).version == version;
+        }
+
+        @Override
+        public int hashCode() {
+            return format.hashCode() * 31 + Long.hashCode(version);
+        }
+    }
+
+    private final GameBoard board;
+    private final BoardCompressor compressor;
+    private final Map<Key, CompletableFuture<Object>> renderings = new HashMap<>();
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /*
+     * Abstraction function:
+     *  AF(board, compressor, renderings, hits, misses, evictions) =
+     *      renderings of board, made or being made, where renderings.get(key) is the rendering of
+     *      board in key.format at key.version or later, made by board.toString() for TEXT and by
+     *      compressor otherwise; of the renderings asked for so far, hits were already made or
+     *      being made, misses were made for the asker, and evictions renderings were dropped
+     * Rep invariant:
+     *  hits, misses, evictions >= 0
+     *  a complete rendering in renderings has the greatest version of its format in renderings
+     * Rep exposure:
+     *  board and compressor are shared with the server, which is fine since both are
+     *  thread-safe; renderings are Strings, which are immutable, or ByteBuffers, which are
+     *  only returned as read-only duplicates
+     * Thread safety:
+     *  renderings, hits, misses and evictions are guarded by the lock on this cache, which is
+     *  never held while rendering; each rendering is made by the one thread that put its future
+     *  in renderings, and the future publishes it safely to the threads that wait for it
+     */
+
+    /**
+     * Makes an empty cache of renderings of a board.
+     *
+     * @param board board to render
+     * @param compressor compressor that renders board for RLE and DEFLATE
+     */
+    public ResponseCache(GameBoard board, BoardCompressor compressor) {
+        this.board = board;
+        this.compressor = compressor;
+    }
+
+    /**
+     * @return the text of 'look', at the version of the board current when called or later
+     */
+    public String text() {
+        return (String) get(TEXT, board::toString);
+    }
+
+    /**
+     * @return the RLE rendering of the board, as BoardCompressor.rle() makes it, at the version
+     *         current when called or later
+     */
+    public String rle() {
+        return (String) get(BoardCompressor.RLE, compressor::rle);
+    }
+
+    /**
+     * @return the DEFLATE rendering of the board, as BoardCompressor.deflate() makes it, at the
+     *         version current when called or later, as a new read-only view of bytes that are
+     *         shared with other callers
+     */
+    public ByteBuffer deflate() {
+        return ((ByteBuffer) get(BoardCompressor.DEFLATE, compressor::deflate)).duplicate();
+    }
+
+    /**
+     * @return number of renderings asked for that were already made, or being made
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return number of renderings asked for that were made for the asker
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return number of renderings dropped from the cache
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return a summary of the cache for operators, e.g. "Response cache: 93 hits, 7 misses
+     *         (93.0% hit rate), 6 evictions."
+     */
+    public synchronized String getMetrics() {
+        double rate = hits + misses == 0 ? 0 : 100.0 * hits / (hits + misses);
+        return String.format("Response cache: %d hits, %d misses (%.1f%% hit rate), %d evictions.",
+                hits, misses, rate, evictions);
+    }
+
+    /**
+     * Gets a rendering from the cache, or renders it.
+     *
+     * @param format format of the rendering
+     * @param render makes the rendering at the version of the board current when called or later
+     * @return the rendering in format, at the version of the board current when called or later
+     */
+    private Object get(String format, Supplier<Object> render) {
+        Key key = new Key(format, board.getVersion());
+        CompletableFuture<Object> rendering;
+        boolean renders = false;
+        synchronized (this) {
+            rendering = renderings.get(key);
+            if (rendering != null) {
+                hits++;
+            } else {
+                misses++;
+                rendering = new CompletableFuture<>();
+                renderings.put(key, rendering);
+                renders = true;
+            }
+        }
+        if ( ! renders) {
+            try {
+                return rendering.join();
+            } catch (CompletionException ce) {
+                // the rendering failed on the thread that made it
+                if (ce.getCause() instanceof Error) {
+                    throw (Error) ce.getCause();
+                }
+                throw (RuntimeException) ce.getCause();
+            }
+        }
+        Object made;
+        try {
+            made = render.get();
+        } catch (RuntimeException | Error e) {
+            // the clients waiting for it fail too; the next client to ask renders it again
+            synchronized (this) {
+                renderings.remove(key);
+            }
+            rendering.completeExceptionally(e);
+            throw e;
+        }
+        rendering.complete(made);
+        evict(key);
+        return made;
+    }
+
+    /**
+     * Evicts the complete renderings in the format of a rendering just made that it replaces,
+     * i.e. of earlier versions, or the rendering itself, if one of a later version was made first.
+     *
+     * @param made format and version of a rendering just made
+     */
+    private synchronized void evict(Key made) {
+        boolean superseded = false;
+        for (Iterator<Map.Entry<Key, CompletableFuture<Object>>> entries = renderings.entrySet().iterator();
+                entries.hasNext(); ) {
+            Map.Entry<Key, CompletableFuture<Object>> entry = entries.next();
+            Key key = entry.getKey();
+            if ( ! key.format.equals(made.format) || ! entry.getValue().isDone()) {
+                continue;
+            }
+            if (key.version < made.version) {
+                entries.remove();
+                evictions++;
+            } else if (key.version > made.version) {
+                superseded = true;
+            }
+        }
+        if (superseded && renderings.remove(made) != null) {
+            evictions++;
+        }
+    }
+}
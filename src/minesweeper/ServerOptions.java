@@ -0,0 +1,623 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import java.io.File;
+
+/**
+ * Mutable set of optional settings for a GameServer, beyond its port and board.
+ * Every setting starts at its default value; setters return this options object so that
+ * calls can be chained. Options must be fully configured before they are passed to a GameServer.
+ */
+public class ServerOptions {
+
+    private boolean resetOnClear = false;
+    private double rateLimit = 0;
+    private int rateBurst = 1;
+    private long idleTimeoutMillis = 0;
+    private double spectatorFrameRate = 4;
+    private boolean noGuess = false;
+    private boolean safeFirstDig = false;
+    private boolean safeFirstArea = false;
+    private int undoDepth = 0;
+    private boolean regionIndex = false;
+    private File recordFile = null;
+    private int shardCols = 0;
+    private int shardRows = 0;
+    private String storage = HEAP;
+    private File storageFile = null;
+    private long outputQueueBytes = DEFAULT_OUTPUT_QUEUE_BYTES;
+    private boolean outputQueueBlocks = false;
+    private long compressThreshold = DEFAULT_COMPRESS_THRESHOLD;
+    private File snapshotFile = null;
+    private int handoffPort = 0;
+    private long drainTimeoutMillis = DEFAULT_DRAIN_TIMEOUT_MILLIS;
+    private int maxConnections = 0;
+    private int maxWaiting = 0;
+    private int acceptBacklog = 0;
+    private int acceptors = 1;
+    private boolean batching = false;
+    private long batchTickMillis = 0;
+    private int batchSize = 0;
+    private long slowLogMillis = -1;
+    private boolean traceEvents = false;
+
+    /** Default number of bytes of responses that may wait for a slow client. */
+    public static final long DEFAULT_OUTPUT_QUEUE_BYTES = 16 << 20;
+    /** Default size of the smallest board text that is compressed for clients that asked for it. */
+    public static final long DEFAULT_COMPRESS_THRESHOLD = 4096;
+    /** Default milliseconds that a server shutting down waits for its clients' last commands. */
+    public static final long DEFAULT_DRAIN_TIMEOUT_MILLIS = 10_000;
+
+    /** Cell storage in a byte array on the Java heap. */
+    public static final String HEAP = "heap";
+    /** Cell storage in direct memory, outside the Java heap. */
+    public static final String OFF_HEAP = "off-heap";
+    /** Cell storage in a memory-mapped board file. */
+    public static final String MAPPED = "mapped";
+    /** Cell storage in chunks on the Java heap, allocated as they are first written. */
+    public static final String CHUNKED = "chunked";
+    /** Cell storage of only the cells that were touched, on the Java heap. */
+    public static final String SPARSE = "sparse";
+
+    /*
+     * Abstraction function:
+     *  AF(resetOnClear, rateLimit, rateBurst, idleTimeoutMillis, spectatorFrameRate, noGuess,
+     *     safeFirstDig, safeFirstArea, undoDepth, regionIndex, recordFile, shardCols, shardRows, storage,
+     *     storageFile, outputQueueBytes, outputQueueBlocks, compressThreshold, snapshotFile,
+     *     handoffPort, drainTimeoutMillis, maxConnections, maxWaiting, acceptBacklog, acceptors,
+     *     batching, batchTickMillis, batchSize, slowLogMillis, traceEvents) =
+     *      settings for a GameServer, where resetOnClear says whether a cleared board is replaced by
+     *      a new random board of the same size, each player may send rateLimit commands per second
+     *      (no limit if 0) in bursts of up to rateBurst, and players are disconnected after
+     *      idleTimeoutMillis without commands (never if 0), spectators are sent at most
+     *      spectatorFrameRate frames per second, and noGuess says whether new random boards can be
+     *      cleared by logic alone from their center, and safeFirstDig and safeFirstArea say whether
+     *      the first dig of each game moves the bombs in the cell, or in the cell and its neighbors,
+     *      and players may undo the last undoDepth moves of each game (none if 0), and count the
+     *      squares of a rectangle, by a region index of the board, if regionIndex, and every
+     *      change to the board is recorded in recordFile, unless it is null, and the
+     *      board is split into shardCols x shardRows regions served by separate processes, unless
+     *      both are 0, and the cells of a random board are kept in storage, in storageFile if
+     *      storage is MAPPED, and a client may fall outputQueueBytes behind on its responses,
+     *      after which it is waited for if outputQueueBlocks, and otherwise disconnected, and
+     *      boards of at least compressThreshold characters are compressed for clients that asked,
+     *      and the board is saved to snapshotFile when the server shuts down, unless it is null,
+     *      and handed to a server that takes over through handoffPort on the loopback address,
+     *      unless it is 0, after the clients' last commands were handled or drainTimeoutMillis passed,
+     *      and at most maxConnections clients are served at once (no limit if 0), while up to
+     *      maxWaiting more wait in line, and up to acceptBacklog connections wait to be accepted
+     *      (the system's default if 0), by acceptors threads, and if batching, the text commands
+     *      of every client are applied by one thread, in batches of at most batchSize commands
+     *      (no limit if 0) once every batchTickMillis (as soon as they arrive if 0), and text
+     *      commands that take at least slowLogMillis are logged with the time of each phase
+     *      (none if -1), and committed as Flight Recorder events if traceEvents
+     * Rep invariant:
+     *  rateLimit >= 0, rateBurst >= 1, idleTimeoutMillis >= 0, spectatorFrameRate > 0, undoDepth >= 0
+     *  outputQueueBytes > 0, compressThreshold >= 0, drainTimeoutMillis >= 0
+     *  0 <= handoffPort <= 65535
+     *  maxConnections >= 0, maxWaiting >= 0, maxWaiting == 0 if maxConnections == 0
+     *  acceptBacklog >= 0, acceptors >= 1
+     *  batchTickMillis >= 0, batchSize >= 0, and both are 0 unless batching
+     *  slowLogMillis >= -1
+     *  safeFirstArea implies safeFirstDig
+     *  shardCols == 0 iff shardRows == 0, and both are >= 0
+     *  storage is HEAP, OFF_HEAP, MAPPED, CHUNKED or SPARSE, and storageFile != null iff storage is MAPPED
+     * Rep exposure:
+     *  all fields are private, and primitive or immutable
+     * Thread safety:
+     *  not thread-safe; a GameServer only reads its options after they have been configured
+     */
+
+    /**
+     * Sets whether a board is replaced by a new random board of the same size as soon as it is cleared.
+     * @param enabled true to start a new game automatically when the board is cleared
+     * @return this options object
+     */
+    public ServerOptions setResetOnClear(boolean enabled) {
+        resetOnClear = enabled;
+        return this;
+    }
+
+    /**
+     * @return true iff a cleared board is replaced by a new random board (default false)
+     */
+    public boolean getResetOnClear() {
+        return resetOnClear;
+    }
+
+    /**
+     * Sets how fast each player may send commands that use the board.
+     * A player that sends commands faster is slowed down to this rate.
+     * @param perSecond average number of commands per second, or 0 for no limit; requires perSecond >= 0
+     * @param burst number of commands a player may send at once, requires burst >= 1
+     * @return this options object
+     */
+    public ServerOptions setRateLimit(double perSecond, int burst) {
+        assert perSecond >= 0 && burst >= 1;
+        rateLimit = perSecond;
+        rateBurst = burst;
+        return this;
+    }
+
+    /**
+     * @return average number of commands per second allowed for each player, or 0 for no limit (default 0)
+     */
+    public double getRateLimit() {
+        return rateLimit;
+    }
+
+    /**
+     * @return number of commands a player may send at once (default 1)
+     */
+    public int getRateBurst() {
+        return rateBurst;
+    }
+
+    /**
+     * Sets how long a player may go without sending a command before being disconnected.
+     * @param millis idle timeout in milliseconds, or 0 to never disconnect idle players;
+     *               requires millis >= 0
+     * @return this options object
+     */
+    public ServerOptions setIdleTimeoutMillis(long millis) {
+        assert millis >= 0;
+        idleTimeoutMillis = millis;
+        return this;
+    }
+
+    /**
+     * @return idle timeout in milliseconds, or 0 if idle players are never disconnected (default 0)
+     */
+    public long getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    /**
+     * Sets how often spectators are sent the board. A frame is only sent when the board has changed.
+     * @param framesPerSecond maximum number of frames per second, requires framesPerSecond > 0
+     * @return this options object
+     */
+    public ServerOptions setSpectatorFrameRate(double framesPerSecond) {
+        assert framesPerSecond > 0;
+        spectatorFrameRate = framesPerSecond;
+        return this;
+    }
+
+    /**
+     * @return maximum number of frames per second sent to spectators (default 4)
+     */
+    public double getSpectatorFrameRate() {
+        return spectatorFrameRate;
+    }
+
+    /**
+     * Sets whether new random boards must be clearable by logic alone. Such a board has no bombs in or
+     * next to its center cell, which is dug when the game starts.
+     * @param enabled true to generate boards that need no guess
+     * @return this options object
+     */
+    public ServerOptions setNoGuess(boolean enabled) {
+        noGuess = enabled;
+        return this;
+    }
+
+    /**
+     * @return true iff new random boards can be cleared by logic alone from their center (default false)
+     */
+    public boolean getNoGuess() {
+        return noGuess;
+    }
+
+    /**
+     * Sets whether the first dig of each game is safe, as by GameBoard.setSafeFirstDig().
+     * @param enabled true to move a bomb away from the first cell dug
+     * @param wholeArea true to also move the bombs next to the first cell dug, if enabled
+     * @return this options object
+     */
+    public ServerOptions setSafeFirstDig(boolean enabled, boolean wholeArea) {
+        safeFirstDig = enabled;
+        safeFirstArea = enabled && wholeArea;
+        return this;
+    }
+
+    /**
+     * @return true iff the first dig of each game is safe (default false)
+     */
+    public boolean getSafeFirstDig() {
+        return safeFirstDig;
+    }
+
+    /**
+     * @return true iff the first dig of each game also moves the bombs next to it (default false)
+     */
+    public boolean getSafeFirstArea() {
+        return safeFirstArea;
+    }
+
+    /**
+     * Sets how many moves of each game players may undo, as by GameBoard.setUndoDepth().
+     * @param depth number of moves, or 0 to disable undo; requires depth >= 0
+     * @return this options object
+     */
+    public ServerOptions setUndoDepth(int depth) {
+        assert depth >= 0;
+        undoDepth = depth;
+        return this;
+    }
+
+    /**
+     * @return number of moves of each game that players may undo, or 0 if they may not (default 0)
+     */
+    public int getUndoDepth() {
+        return undoDepth;
+    }
+
+    /**
+     * Sets whether players may count the squares of a rectangle of the board with 'count', which
+     * the board then answers from a region index, as set by GameBoard.setRegionIndex().
+     * @param enabled true to keep a region index and allow 'count'
+     * @return this options object
+     */
+    public ServerOptions setRegionIndex(boolean enabled) {
+        regionIndex = enabled;
+        return this;
+    }
+
+    /**
+     * @return true iff the board keeps a region index and players may count the squares of a
+     *         rectangle (default false)
+     */
+    public boolean getRegionIndex() {
+        return regionIndex;
+    }
+
+    /**
+     * Sets the file to record every change to the board in, with a MoveLog.
+     * @param file file to record in, replaced if it exists; or null not to record
+     * @return this options object
+     */
+    public ServerOptions setRecordFile(File file) {
+        recordFile = file;
+        return this;
+    }
+
+    /**
+     * @return file to record every change to the board in, or null not to record (default null)
+     */
+    public File getRecordFile() {
+        return recordFile;
+    }
+
+    /**
+     * Sets whether the board is split into regions, each served by its own ShardServer process,
+     * behind a ShardRouter.
+     * @param cols number of column strips, requires cols >= 1; or 0, with rows 0, not to split the board
+     * @param rows number of row strips, requires rows >= 1; or 0, with cols 0
+     * @return this options object
+     */
+    public ServerOptions setShards(int cols, int rows) {
+        assert (cols == 0) == (rows == 0) && cols >= 0 && rows >= 0;
+        shardCols = cols;
+        shardRows = rows;
+        return this;
+    }
+
+    /**
+     * @return number of column strips the board is split into, or 0 if it is not split (default 0)
+     */
+    public int getShardCols() {
+        return shardCols;
+    }
+
+    /**
+     * @return number of row strips the board is split into, or 0 if it is not split (default 0)
+     */
+    public int getShardRows() {
+        return shardRows;
+    }
+
+    /**
+     * Sets where the cells of a random board are kept. Storage outside the heap keeps the garbage
+     * collector away from the cells of very large boards, and a mapped board file keeps the board
+     * when the server stops: a server started with the same file plays on where it left off.
+     * Chunked storage needs no single huge array, and sparse storage only keeps the cells that
+     * players touched, for boards far larger than the memory of the server.
+     * @param kind HEAP, OFF_HEAP, MAPPED, CHUNKED or SPARSE
+     * @param file board file to map, requires file != null iff kind is MAPPED
+     * @return this options object
+     */
+    public ServerOptions setStorage(String kind, File file) {
+        assert (kind.equals(HEAP) || kind.equals(OFF_HEAP) || kind.equals(MAPPED) || kind.equals(CHUNKED)
+                || kind.equals(SPARSE)) && (file != null) == kind.equals(MAPPED);
+        storage = kind;
+        storageFile = file;
+        return this;
+    }
+
+    /**
+     * @return where the cells of a random board are kept: HEAP, OFF_HEAP, MAPPED, CHUNKED or SPARSE
+     *         (default HEAP)
+     */
+    public String getStorage() {
+        return storage;
+    }
+
+    /**
+     * @return board file mapped for the cells, or null if the storage is not MAPPED (default null)
+     */
+    public File getStorageFile() {
+        return storageFile;
+    }
+
+    /**
+     * Sets how far a client may fall behind on reading its responses, and what happens then.
+     * Responses are queued for each client and written by a thread of its own, so a slow client
+     * never holds up the handling of its commands until it is maxBytes behind.
+     * @param maxBytes most bytes of responses that may wait for a client, requires maxBytes > 0;
+     *                 a single response is always accepted
+     * @param block true to stop handling the client's commands until it catches up, false to
+     *              disconnect it
+     * @return this options object
+     */
+    public ServerOptions setOutputQueue(long maxBytes, boolean block) {
+        assert maxBytes > 0;
+        outputQueueBytes = maxBytes;
+        outputQueueBlocks = block;
+        return this;
+    }
+
+    /**
+     * @return most bytes of responses that may wait for a client (default DEFAULT_OUTPUT_QUEUE_BYTES)
+     */
+    public long getOutputQueueBytes() {
+        return outputQueueBytes;
+    }
+
+    /**
+     * @return true iff a client that falls too far behind is waited for, rather than disconnected
+     *         (default false)
+     */
+    public boolean getOutputQueueBlocks() {
+        return outputQueueBlocks;
+    }
+
+    /**
+     * Sets how large the board must be before it is sent compressed to clients that asked for
+     * compression with 'compress'. Smaller boards are sent as plain text, which costs less to make
+     * than it saves.
+     * @param characters number of characters of the text of 'look' from which on the board is
+     *                   compressed, requires characters >= 0
+     * @return this options object
+     */
+    public ServerOptions setCompressThreshold(long characters) {
+        assert characters >= 0;
+        compressThreshold = characters;
+        return this;
+    }
+
+    /**
+     * @return number of characters of the board text from which on it is compressed for clients
+     *         that asked (default DEFAULT_COMPRESS_THRESHOLD)
+     */
+    public long getCompressThreshold() {
+        return compressThreshold;
+    }
+
+    /**
+     * Sets a file where the board is saved when the server shuts down, and from which it is
+     * played on when a server starts with this option, if the file exists. The file is a board
+     * file, as specified by OffHeapCellStorage.
+     * @param file snapshot file, or null to not save the board
+     * @return this options object
+     */
+    public ServerOptions setSnapshotFile(File file) {
+        snapshotFile = file;
+        return this;
+    }
+
+    /**
+     * @return file where the board is saved when the server shuts down, or null if it is not
+     *         saved (default null)
+     */
+    public File getSnapshotFile() {
+        return snapshotFile;
+    }
+
+    /**
+     * Sets the port through which a new server takes over from a running one: the running one
+     * listens on it, on the loopback address, and when the new server connects, it stops
+     * accepting clients and hands it the board, while the new server listens on the same port
+     * as the running one, see GameServer.takeOver().
+     * @param port port number, requires 1 <= port <= 65535, or 0 to not hand over
+     * @return this options object
+     */
+    public ServerOptions setHandoffPort(int port) {
+        assert port >= 0 && port <= 65535;
+        handoffPort = port;
+        return this;
+    }
+
+    /**
+     * @return port through which a new server takes over, or 0 if servers do not hand over
+     *         (default 0)
+     */
+    public int getHandoffPort() {
+        return handoffPort;
+    }
+
+    /**
+     * Sets how long a server that is shutting down waits for its clients. Each client's commands
+     * that reached the server are still handled and answered; clients that are not done by then,
+     * e.g. because they read their responses too slowly, are disconnected.
+     * @param millis milliseconds to wait, requires millis >= 0
+     * @return this options object
+     */
+    public ServerOptions setDrainTimeoutMillis(long millis) {
+        assert millis >= 0;
+        drainTimeoutMillis = millis;
+        return this;
+    }
+
+    /**
+     * @return milliseconds that a server shutting down waits for its clients (default
+     *         DEFAULT_DRAIN_TIMEOUT_MILLIS)
+     */
+    public long getDrainTimeoutMillis() {
+        return drainTimeoutMillis;
+    }
+
+    /**
+     * Sets how many clients a server serves at once. Each client is served by threads of its own,
+     * so this bounds the threads of the server; clients that connect while it is full wait in
+     * line, without a thread, and are told their position, until a client disconnects.
+     * @param max most clients served at once, or 0 for no limit; requires max >= 0
+     * @param waiting most clients waiting in line, beyond which clients are told the server is
+     *                full and disconnected; requires waiting >= 0, and waiting == 0 if max == 0
+     * @return this options object
+     */
+    public ServerOptions setMaxConnections(int max, int waiting) {
+        assert max >= 0 && waiting >= 0 && (max > 0 || waiting == 0);
+        maxConnections = max;
+        maxWaiting = waiting;
+        return this;
+    }
+
+    /**
+     * @return most clients served at once, or 0 for no limit (default 0)
+     */
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * @return most clients waiting in line while the server is full (default 0)
+     */
+    public int getMaxWaiting() {
+        return maxWaiting;
+    }
+
+    /**
+     * Sets how many connections the system keeps for a server before it accepts them, beyond
+     * which the system refuses or drops connections, see ServerSocketChannel.bind().
+     * @param backlog most connections waiting to be accepted, or 0 for the system's default;
+     *                requires backlog >= 0
+     * @return this options object
+     */
+    public ServerOptions setAcceptBacklog(int backlog) {
+        assert backlog >= 0;
+        acceptBacklog = backlog;
+        return this;
+    }
+
+    /**
+     * @return most connections waiting to be accepted, or 0 for the system's default (default 0)
+     */
+    public int getAcceptBacklog() {
+        return acceptBacklog;
+    }
+
+    /**
+     * Sets how many threads of a server accept connections. Where the system and the Java runtime
+     * (9 or later) allow it, each thread accepts on a socket of its own, bound to the same port
+     * with SO_REUSEPORT, so that the system spreads new connections over them; otherwise they
+     * share one socket.
+     * @param threads number of threads, requires threads >= 1
+     * @return this options object
+     */
+    public ServerOptions setAcceptors(int threads) {
+        assert threads >= 1;
+        acceptors = threads;
+        return this;
+    }
+
+    /**
+     * @return number of threads that accept connections (default 1)
+     */
+    public int getAcceptors() {
+        return acceptors;
+    }
+
+    /**
+     * Makes a server apply the text commands of every client on one thread, the board owner, in
+     * batches, see CommandBatcher, rather than on each client's own thread. The board's lock is
+     * then never contended by text clients, and the board is rendered once per batch; 'look' and
+     * moves are answered with the board as it is after the whole batch.
+     * @param tickMillis milliseconds between batches, or 0 to apply commands as soon as they
+     *                   arrive; requires tickMillis >= 0
+     * @param size most commands per batch, or 0 for no limit; requires size >= 0
+     * @return this options object
+     */
+    public ServerOptions setBatching(long tickMillis, int size) {
+        assert tickMillis >= 0 && size >= 0;
+        batching = true;
+        batchTickMillis = tickMillis;
+        batchSize = size;
+        return this;
+    }
+
+    /**
+     * @return true iff the text commands of every client are applied in batches by one thread
+     *         (default false)
+     */
+    public boolean getBatching() {
+        return batching;
+    }
+
+    /**
+     * @return milliseconds between batches, or 0 if commands are applied as soon as they arrive
+     *         (default 0)
+     */
+    public long getBatchTickMillis() {
+        return batchTickMillis;
+    }
+
+    /**
+     * @return most commands per batch, or 0 for no limit (default 0)
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Makes a server log every text command that takes at least a threshold, from the moment it
+     * was read until its response was queued, with the time it spent in each phase, see
+     * CommandTracer. The log is written to System.err.
+     * @param millis threshold in milliseconds, 0 to log every command, or -1 for no log;
+     *               requires millis >= -1
+     * @return this options object
+     */
+    public ServerOptions setSlowLog(long millis) {
+        assert millis >= -1;
+        slowLogMillis = millis;
+        return this;
+    }
+
+    /**
+     * @return milliseconds from which a text command is logged as slow, or -1 for no log (default -1)
+     */
+    public long getSlowLogMillis() {
+        return slowLogMillis;
+    }
+
+    /**
+     * Sets whether a server commits every text command as a CommandEvent for Java Flight Recorder,
+     * with the time it spent in each phase. Events are only recorded while a recording that
+     * enables them runs.
+     * @param enabled true to commit an event for every text command; requires
+     *                CommandTracer.eventsSupported() if true
+     * @return this options object
+     */
+    public ServerOptions setTraceEvents(boolean enabled) {
+        traceEvents = enabled;
+        return this;
+    }
+
+    /**
+     * @return true iff every text command is committed as a Flight Recorder event (default false)
+     */
+    public boolean getTraceEvents() {
+        return traceEvents;
+    }
+}
@@ -0,0 +1,175 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import java.net.Socket;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The players connected to a GameServer. Gives each new player a session with its own rate limit,
+ * and optionally disconnects players that have been idle for too long.
+ */
+public class SessionRegistry {
+
+    private final ConcurrentMap<Long, PlayerSession> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final double ratePerSecond;
+    private final int burst;
+    private final long idleTimeoutNanos;
+    private final ScheduledExecutorService reaper;
+
+    /*
+     * Abstraction function:
+     *  AF(sessions, ...) = the players connected to a server, where each player sessions.get(id) has
+     *                      its own rate limit of ratePerSecond commands per second (with bursts of
+     *                      burst commands; no limit if ratePerSecond is 0), and is disconnected after
+     *                      idleTimeoutNanos without commands (never if idleTimeoutNanos is 0)
+     * Rep invariant:
+     *  sessions.get(id).getId() == id for every id in sessions
+     *  every id in sessions is < nextId
+     *  ratePerSecond >= 0, burst >= 1, idleTimeoutNanos >= 0
+     *  reaper != null iff idleTimeoutNanos > 0
+     * Rep exposure:
+     *  sessions is never returned; the sessions in it are shared with the threads that
+     *  handle them, and are thread-safe
+     * Thread safety:
+     *  sessions is a concurrent map and nextId is atomic, so players connect and disconnect
+     *  without a global lock; the reaper only reads sessions and closes them; the lock on the
+     *  registry is only used to wait in awaitEmpty() until unregister() empties sessions
+     */
+
+    /**
+     * Makes an empty registry, and starts a background thread to disconnect idle players if
+     * idleTimeoutMillis > 0.
+     *
+     * @param ratePerSecond commands per second allowed for each player, or 0 for no limit;
+     *                      requires ratePerSecond >= 0
+     * @param burst number of commands each player may send at once, requires burst >= 1
+     * @param idleTimeoutMillis milliseconds without commands after which a player is
+     *                          disconnected, or 0 to never disconnect idle players;
+     *                          requires idleTimeoutMillis >= 0
+     */
+    public SessionRegistry(double ratePerSecond, int burst, long idleTimeoutMillis) {
+        assert ratePerSecond >= 0 && burst >= 1 && idleTimeoutMillis >= 0;
+        this.ratePerSecond = ratePerSecond;
+        this.burst = burst;
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        if (idleTimeoutMillis > 0) {
+            reaper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "session-reaper");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long period = Math.max(1, idleTimeoutMillis / 2);
+            reaper.scheduleWithFixedDelay(() -> reapIdle(System.nanoTime()), period, period, TimeUnit.MILLISECONDS);
+        } else {
+            reaper = null;
+        }
+    }
+
+    /**
+     * Adds a newly connected player.
+     *
+     * @param socket connection to the player
+     * @return the player's new session
+     */
+    public PlayerSession register(Socket socket) {
+        TokenBucket rateLimit = ratePerSecond > 0 ? new TokenBucket(ratePerSecond, burst) : null;
+        PlayerSession session = new PlayerSession(nextId.getAndIncrement(), socket, rateLimit);
+        sessions.put(session.getId(), session);
+        return session;
+    }
+
+    /**
+     * Removes a player that has disconnected. Does nothing if the player was already removed.
+     *
+     * @param session the player's session
+     */
+    public void unregister(PlayerSession session) {
+        if (sessions.remove(session.getId(), session) && sessions.isEmpty()) {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * @return number of players currently connected
+     */
+    public int size() {
+        return sessions.size();
+    }
+
+    /**
+     * Stops reading commands from every player, see PlayerSession.stopReading(), so that each
+     * player's thread handles the commands the player sent already, and then lets the player go.
+     */
+    public void stopReadingAll() {
+        for (PlayerSession session : sessions.values()) {
+            session.stopReading();
+        }
+    }
+
+    /**
+     * Waits until every player has been unregistered.
+     *
+     * @param timeoutMillis most milliseconds to wait, requires timeoutMillis >= 0
+     * @return true iff no player is registered
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized boolean awaitEmpty(long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        for (long remaining = deadline - System.nanoTime(); ! sessions.isEmpty() && remaining > 0;
+                remaining = deadline - System.nanoTime()) {
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return sessions.isEmpty();
+    }
+
+    /**
+     * Disconnects every player. The players stay registered until their own threads unregister them.
+     */
+    public void closeAll() {
+        for (PlayerSession session : sessions.values()) {
+            session.close();
+        }
+    }
+
+    /**
+     * Disconnects every player, other than spectators, whose last command was more than the idle
+     * timeout before now.
+     * The players stay registered until their own threads unregister them.
+     *
+     * @param now current time, as given by System.nanoTime()
+     * @return number of players disconnected
+     */
+    int reapIdle(long now) {
+        int reaped = 0;
+        if (idleTimeoutNanos == 0) {
+            return reaped;
+        }
+        for (PlayerSession session : sessions.values()) {
+            if ( ! session.isClosed() && ! session.isSpectating()
+                    && now - session.getLastActive() > idleTimeoutNanos) {
+                session.close();
+                reaped++;
+            }
+        }
+        return reaped;
+    }
+
+    /**
+     * Stops the background thread that disconnects idle players, if there is one.
+     */
+    public void close() {
+        if (reaper != null) {
+            reaper.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+/**
+ * Immutable description of a sharded board: a board of cols x rows cells, split into a grid of
+ * shardCols x shardRows rectangular regions, each owned by one ShardServer.
+ *
+ * <p>Shards are numbered row by row: shard s covers column strip s % shardCols and row strip
+ * s / shardCols. Strip k of n over a side of length size covers [k*size/n, (k+1)*size/n).
+ *
+ * <p>Whether a cell has a bomb is a function of the seed and the cell alone, with the same density
+ * as a random GameBoard, so that each shard finds the bombs of its region and of the cells
+ * around it without asking the other shards.
+ */
+public class ShardLayout {
+
+    private static final double BOMB_PROBABILITY = 0.25;
+
+    private final int cols;
+    private final int rows;
+    private final int shardCols;
+    private final int shardRows;
+    private final long seed;
+
+    /*
+     * Abstraction function:
+     *  AF(cols, rows, shardCols, shardRows, seed) = a cols x rows board split into shardCols column
+     *      strips and shardRows row strips, with a bomb in cell (x,y) iff hasBomb(x, y) for seed
+     * Rep invariant:
+     *  1 <= shardCols <= cols, 1 <= shardRows <= rows, so every region has at least one cell
+     * Rep exposure:
+     *  all fields are private, final and primitive
+     * Thread safety:
+     *  immutable
+     */
+
+    /**
+     * Makes a layout.
+     *
+     * @param cols number of columns of the board, requires cols > 0
+     * @param rows number of rows of the board, requires rows > 0
+     * @param shardCols number of column strips, requires 1 <= shardCols <= cols
+     * @param shardRows number of row strips, requires 1 <= shardRows <= rows
+     * @param seed seed for placing the bombs
+     */
+    public ShardLayout(int cols, int rows, int shardCols, int shardRows, long seed) {
+        this.cols = cols;
+        this.rows = rows;
+        this.shardCols = shardCols;
+        this.shardRows = shardRows;
+        this.seed = seed;
+        checkRep();
+    }
+
+    private void checkRep() {
+        assert 1 <= shardCols && shardCols <= cols;
+        assert 1 <= shardRows && shardRows <= rows;
+    }
+
+    /**
+     * @return number of columns of the whole board
+     */
+    public int getCols() {
+        return cols;
+    }
+
+    /**
+     * @return number of rows of the whole board
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * @return number of column strips
+     */
+    public int getShardCols() {
+        return shardCols;
+    }
+
+    /**
+     * @return number of row strips
+     */
+    public int getShardRows() {
+        return shardRows;
+    }
+
+    /**
+     * @return number of shards, shardCols * shardRows
+     */
+    public int getShardCount() {
+        return shardCols * shardRows;
+    }
+
+    /**
+     * @return seed for placing the bombs
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @param shard a shard, requires 0 <= shard < getShardCount()
+     * @return leftmost column of the shard's region
+     */
+    public int left(int shard) {
+        return stripStart(shard % shardCols, shardCols, cols);
+    }
+
+    /**
+     * @param shard a shard, requires 0 <= shard < getShardCount()
+     * @return top row of the shard's region
+     */
+    public int top(int shard) {
+        return stripStart(shard / shardCols, shardRows, rows);
+    }
+
+    /**
+     * @param shard a shard, requires 0 <= shard < getShardCount()
+     * @return number of columns of the shard's region
+     */
+    public int width(int shard) {
+        int strip = shard % shardCols;
+        return stripStart(strip + 1, shardCols, cols) - stripStart(strip, shardCols, cols);
+    }
+
+    /**
+     * @param shard a shard, requires 0 <= shard < getShardCount()
+     * @return number of rows of the shard's region
+     */
+    public int height(int shard) {
+        int strip = shard / shardCols;
+        return stripStart(strip + 1, shardRows, rows) - stripStart(strip, shardRows, rows);
+    }
+
+    /**
+     * @param x column
+     * @param y row
+     * @return true iff (x,y) is a cell of the board
+     */
+    public boolean isCell(int x, int y) {
+        return x >= 0 && x < cols && y >= 0 && y < rows;
+    }
+
+    /**
+     * @param x column of a cell, requires isCell(x, y)
+     * @param y row of a cell, requires isCell(x, y)
+     * @return the shard whose region contains (x,y)
+     */
+    public int shardAt(int x, int y) {
+        return stripAt(y, shardRows, rows) * shardCols + stripAt(x, shardCols, cols);
+    }
+
+    /**
+     * @param x column of a cell, requires isCell(x, y)
+     * @param y row of a cell, requires isCell(x, y)
+     * @return true iff cell (x,y) starts with a bomb
+     */
+    public boolean hasBomb(int x, int y) {
+        // SplitMix64 of the cell index, so that nearby cells are independent
+        long z = seed + ((long) y * cols + x + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z = z ^ (z >>> 31);
+        return (z >>> 11) * 0x1.0p-53 < BOMB_PROBABILITY;
+    }
+
+    /**
+     * Finds the bombs of a rectangle of the board.
+     *
+     * @param left leftmost column of the rectangle
+     * @param top top row of the rectangle
+     * @param width number of columns, requires the rectangle to be inside the board
+     * @param height number of rows
+     * @return array where index j*width + i is true iff cell (left+i, top+j) starts with a bomb,
+     *         as expected by GameBoard(width, height, bombs)
+     */
+    public boolean[] bombs(int left, int top, int width, int height) {
+        boolean[] bombs = new boolean[width * height];
+        for (int j = 0; j < height; j++) {
+            for (int i = 0; i < width; i++) {
+                bombs[j * width + i] = hasBomb(left + i, top + j);
+            }
+        }
+        return bombs;
+    }
+
+    /**
+     * @return first position of strip k of n over a side of length size
+     */
+    private static int stripStart(int k, int n, int size) {
+        return (int) ((long) k * size / n);
+    }
+
+    /**
+     * @return the strip of n over a side of length size that contains position
+     */
+    private static int stripAt(int position, int n, int size) {
+        // the largest k with k*size/n <= position
+        return (int) (((long) (position + 1) * n - 1) / size);
+    }
+}
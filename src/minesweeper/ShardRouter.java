@@ -0,0 +1,450 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Multi-player Minesweeper server for a board that is too large for one process: the board is
+ * split as described by a ShardLayout, each region is served by a ShardServer process, and this
+ * router speaks the text protocol of GameServer to the players and forwards each command to the
+ * shards.
+ *
+ * <p>A dig goes to the shard that owns the cell. If it digs a bomb, the shards next to the cell
+ * remove the bomb from their neighbor counts; then, while flood fills reach across the edges of
+ * regions, the router hands the cells across the edges off to the shards that own them, until no
+ * flood fill reaches further. Flags go to the owner of the cell. 'look' and 'stats' gather the
+ * regions of all shards in parallel and join them.
+ *
+ * <p>Every shard request is atomic on its shard, but a command that uses several shards is not
+ * atomic as a whole: players may see a flood fill that is still being handed off, and concurrent
+ * digs across the same edge may briefly see neighbor counts that still include a removed bomb.
+ * With a single player, the board behaves exactly like a GameBoard with the same bombs.
+ */
+public class ShardRouter {
+
+    private static final String HELP_MESSAGE = "Please type one of the following commands: 'look', 'dig', 'flag', 'deflag', 'stats', or 'bye'. "
+                                                + "Type 'look' to see the current board status, 'dig X Y' to uncover the square (X,Y), "
+                                                + "'flag X Y' to flag square (X,Y), and 'deflag X Y' to unflag square (X,Y). "
+                                                + "Type 'stats' to see the progress of the game. "
+                                                + "Type 'bye' to quit.";
+
+    private static final String UNAVAILABLE_MESSAGE = "Not available on a sharded board.";
+
+    private final ServerSocket serverSocket;
+    private final ShardLayout layout;
+    private final Shard[] shards;
+    private final List<Process> processes;
+    private final SessionRegistry sessions;
+    private final ExecutorService gatherer;
+    private final ServerOptions options;
+
+    /*
+     * Abstraction function:
+     *  AF(serverSocket, layout, shards, processes, sessions, gatherer, options) =
+     *      a server for the board of layout, played by the players in sessions, where the region of
+     *      shard s is served at the other end of shards[s], by one of processes if this router
+     *      launched them, gatherer asks the shards for their regions in parallel, and options
+     *      limit the players
+     * Rep invariant:
+     *  shards.length == layout.getShardCount()
+     * Rep exposure:
+     *  all fields are private and final, and none is returned
+     * Thread safety:
+     *  each player is handled by its own thread. The threads share the connections in shards,
+     *  each of which sends one request at a time (see Shard), and sessions, which is thread-safe.
+     *  The threads share no other mutable state: a command keeps its handoffs in local variables.
+     */
+
+    /**
+     * A connection to one shard, shared by all players: requests are sent one at a time, each
+     * waiting for its answer.
+     */
+    private static class Shard {
+        private final Socket socket;
+        private final BufferedReader in;
+        private final PrintWriter out;
+
+        Shard(int port) throws IOException {
+            socket = new Socket(InetAddress.getLoopbackAddress(), port);
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            out = new PrintWriter(socket.getOutputStream(), true);
+        }
+
+        /**
+         * @param request request of the shard protocol
+         * @return the shard's answer
+         * @throws IOException if the shard is disconnected
+         */
+        synchronized String request(String request) throws IOException {
+            out.println(request);
+            String answer = in.readLine();
+            if (answer == null) {
+                throw new IOException("shard disconnected");
+            }
+            return answer;
+        }
+
+        void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    /**
+     * Make a router that listens for players on port, for shards that are already running.
+     *
+     * @param port port number, requires 0 <= port <= 65535
+     * @param layout layout of the sharded board
+     * @param shardPorts shardPorts[s] is the port on this host where shard s of layout is served;
+     *                   requires shardPorts.length == layout.getShardCount()
+     * @param options optional server settings; only the rate limit, the idle timeout and the
+     *                output queue apply
+     * @throws IOException if an error occurs opening the server socket or connecting to a shard
+     */
+    public ShardRouter(int port, ShardLayout layout, int[] shardPorts, ServerOptions options) throws IOException {
+        this(port, layout, shardPorts, options, Collections.emptyList());
+    }
+
+    private ShardRouter(int port, ShardLayout layout, int[] shardPorts, ServerOptions options,
+            List<Process> processes) throws IOException {
+        assert shardPorts.length == layout.getShardCount();
+        this.layout = layout;
+        this.processes = processes;
+        this.shards = new Shard[shardPorts.length];
+        for (int s = 0; s < shards.length; s++) {
+            shards[s] = new Shard(shardPorts[s]);
+        }
+        this.sessions = new SessionRegistry(options.getRateLimit(), options.getRateBurst(),
+                options.getIdleTimeoutMillis());
+        this.options = options;
+        this.gatherer = Executors.newFixedThreadPool(shards.length, runnable -> {
+            Thread thread = new Thread(runnable, "shard-gatherer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // opened through a channel, so that every accepted socket has a channel for its output queue
+        serverSocket = ServerSocketChannel.open().socket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(port));
+        checkRep();
+    }
+
+    private void checkRep() {
+        assert shards.length == layout.getShardCount();
+    }
+
+    /**
+     * Launches one ShardServer process per shard of layout on this host, with the same Java
+     * runtime and class path as this process, and makes a router for them that listens on port.
+     * The shards exit when this process exits, or when the router is closed.
+     *
+     * @param port port number, requires 0 <= port <= 65535
+     * @param layout layout of the sharded board
+     * @param options optional server settings; only the rate limit, the idle timeout and the
+     *                output queue apply
+     * @return a router for the launched shards
+     * @throws IOException if a shard cannot be launched, or an error occurs opening the server socket
+     */
+    public static ShardRouter launch(int port, ShardLayout layout, ServerOptions options) throws IOException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<Process> processes = new ArrayList<>();
+        int[] shardPorts = new int[layout.getShardCount()];
+        try {
+            // all shards start at once, then each reports its port
+            for (int s = 0; s < shardPorts.length; s++) {
+                ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                        ShardServer.class.getName(),
+                        "--size", layout.getCols() + "," + layout.getRows(),
+                        "--shards", layout.getShardCols() + "," + layout.getShardRows(),
+                        "--index", Integer.toString(s),
+                        "--seed", Long.toString(layout.getSeed()),
+                        "--until-eof");
+                builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+                processes.add(builder.start());
+            }
+            for (int s = 0; s < shardPorts.length; s++) {
+                BufferedReader in = new BufferedReader(new InputStreamReader(processes.get(s).getInputStream()));
+                String line = in.readLine();
+                String prefix = "Shard " + s + " listening on port ";
+                if (line == null || ! line.startsWith(prefix)) {
+                    throw new IOException("shard " + s + " did not start");
+                }
+                shardPorts[s] = Integer.parseInt(line.substring(prefix.length()));
+            }
+            return new ShardRouter(port, layout, shardPorts, options, processes);
+        } catch (IOException | RuntimeException e) {
+            for (Process process : processes) {
+                process.destroy();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return port the router listens on
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Run the router, listening for and handling player connections.
+     * Never returns, unless an exception is thrown, e.g. because the router was closed.
+     *
+     * @throws IOException if an error occurs waiting for a connection
+     *                     (IOExceptions from individual players do *not* terminate serve())
+     */
+    public void serve() throws IOException {
+        while (true) {
+            final Socket socket = serverSocket.accept();
+            final PlayerSession session = sessions.register(socket);
+            Thread handler = new Thread(() -> {
+                try {
+                    try {
+                        handleConnection(socket, session);
+                    } finally {
+                        sessions.unregister(session);
+                        socket.close();
+                    }
+                } catch (IOException ioe) {
+                    if ( ! session.isClosed()) {
+                        ioe.printStackTrace(); // but do not stop serving
+                    } // else the session was disconnected for being idle
+                }
+            });
+            handler.start();
+        }
+    }
+
+    /**
+     * Stops listening for players, disconnects from the shards, and stops the shards launched by
+     * launch(), if any.
+     *
+     * @throws IOException if an error occurs closing a connection
+     */
+    public void close() throws IOException {
+        serverSocket.close();
+        gatherer.shutdown();
+        for (Shard shard : shards) {
+            shard.close();
+        }
+        for (Process process : processes) {
+            process.destroy();
+        }
+    }
+
+    /**
+     * Handle a single player connection. Returns when the player disconnects.
+     *
+     * @param socket socket where the player is connected
+     * @param session the player's session
+     * @throws IOException if the connection or a shard connection encounters an error
+     */
+    private void handleConnection(Socket socket, PlayerSession session) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        OutputQueue out = new OutputQueue(socket.getChannel(), session, options.getOutputQueueBytes(),
+                options.getOutputQueueBlocks());
+
+        try {
+            out.send("Welcome to Minesweeper. Players: " + sessions.size() + " including you. Board: "
+              + layout.getCols() + " columns by " + layout.getRows() + " rows. Type 'help' for help.");
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+                session.touch();
+                String output = handleRequest(line, session);
+                if (output.equals("terminate")) {
+                    break;
+                }
+                out.send(output);
+            }
+        } finally {
+            out.close();
+            in.close();
+        }
+    }
+
+    /**
+     * Handler for player input, performing requested operations and returning an output message.
+     *
+     * @param input message from player
+     * @param session the player's session
+     * @return message to player, or "terminate" if the player said bye
+     * @throws IOException if a shard connection encounters an error
+     */
+    private String handleRequest(String input, PlayerSession session) throws IOException {
+        String regex = "(look)|(help)|(bye)|(stats)|(hint)|(spectate)|(binary)|(compress (off|rle|deflate))|"
+                     + "(dig -?\\d+ -?\\d+)|(flag -?\\d+ -?\\d+)|(deflag -?\\d+ -?\\d+)";
+        if ( ! input.matches(regex)) {
+            // invalid input
+            return HELP_MESSAGE;
+        }
+        String[] tokens = input.split(" ");
+        if (tokens[0].equals("help")) {
+            return HELP_MESSAGE;
+        } else if (tokens[0].equals("bye")) {
+            return "terminate";
+        } else if (tokens[0].equals("hint") || tokens[0].equals("spectate") || tokens[0].equals("binary")
+                || tokens[0].equals("compress")) {
+            return UNAVAILABLE_MESSAGE;
+        }
+        // every other command uses the board, so it counts against the rate limit
+        try {
+            session.throttle();
+        } catch (InterruptedException ie) {
+            return "terminate";
+        }
+        if (tokens[0].equals("look")) {
+            return look();
+        } else if (tokens[0].equals("stats")) {
+            int[] stats = new int[3];
+            for (String answer : gather("stats")) {
+                String[] counts = answer.split(" ");
+                for (int k = 0; k < stats.length; k++) {
+                    stats[k] += Integer.parseInt(counts[k]);
+                }
+            }
+            return "Safe cells remaining: " + stats[0] + ". Flags placed: " + stats[1] + ". Bombs hit: "
+                    + stats[2] + ". Players: " + sessions.size() + ". Your moves: " + session.getMoves() + ".";
+        }
+        // 'dig x y', 'flag x y' or 'deflag x y' request
+        int x = Integer.parseInt(tokens[1]);
+        int y = Integer.parseInt(tokens[2]);
+        session.countMove();
+        if (layout.isCell(x, y)) {
+            if (tokens[0].equals("dig")) {
+                if (dig(x, y)) {
+                    return "BOOM!";
+                }
+            } else {
+                shards[layout.shardAt(x, y)].request(tokens[0] + " " + x + " " + y);
+            }
+        }
+        return look();
+    }
+
+    /**
+     * Digs a cell, and hands its flood fill off from shard to shard until it is complete.
+     *
+     * @param x column of a cell of the board
+     * @param y row of a cell of the board
+     * @return true iff the cell had a bomb
+     * @throws IOException if a shard connection encounters an error
+     */
+    private boolean dig(int x, int y) throws IOException {
+        int owner = layout.shardAt(x, y);
+        String answer = shards[owner].request("dig " + x + " " + y);
+        boolean boom = answer.startsWith("BOOM");
+        if (boom) {
+            // the other shards next to the cell count the bomb as a neighbor; they must forget it
+            // before the flood fill from the cell reaches them
+            boolean[] told = new boolean[shards.length];
+            told[owner] = true;
+            for (int i = x - 1; i <= x + 1; i++) {
+                for (int j = y - 1; j <= y + 1; j++) {
+                    if (layout.isCell(i, j) && ! told[layout.shardAt(i, j)]) {
+                        told[layout.shardAt(i, j)] = true;
+                        shards[layout.shardAt(i, j)].request("unbomb " + x + " " + y);
+                    }
+                }
+            }
+        }
+        // cells handed off to each shard, as the arguments of its next dig request
+        Map<Integer, StringBuilder> handoffs = new LinkedHashMap<>();
+        addHandoffs(answer, handoffs);
+        while ( ! handoffs.isEmpty()) {
+            int shard = handoffs.keySet().iterator().next();
+            String cells = handoffs.remove(shard).toString();
+            addHandoffs(shards[shard].request("dig" + cells), handoffs);
+        }
+        return boom;
+    }
+
+    /**
+     * Adds the cells handed off by the answer to a dig request to the cells to dig next.
+     *
+     * @param answer answer to a dig request
+     * @param handoffs map from shard to the cells it must dig next, as " X Y" for each cell; mutated
+     */
+    private void addHandoffs(String answer, Map<Integer, StringBuilder> handoffs) {
+        String[] tokens = answer.split(" ");
+        for (int k = 1; k + 1 < tokens.length; k += 2) {
+            int x = Integer.parseInt(tokens[k]);
+            int y = Integer.parseInt(tokens[k + 1]);
+            handoffs.computeIfAbsent(layout.shardAt(x, y), shard -> new StringBuilder())
+                    .append(' ').append(x).append(' ').append(y);
+        }
+    }
+
+    /**
+     * Sends a request to every shard at once, and waits for all the answers.
+     *
+     * @param request request of the shard protocol
+     * @return the answer of each shard, in order of shard
+     * @throws IOException if a shard connection encounters an error
+     */
+    private List<String> gather(String request) throws IOException {
+        List<Future<String>> futures = new ArrayList<>();
+        for (Shard shard : shards) {
+            futures.add(gatherer.submit(() -> shard.request(request)));
+        }
+        List<String> answers = new ArrayList<>();
+        try {
+            for (Future<String> future : futures) {
+                answers.add(future.get());
+            }
+        } catch (InterruptedException ie) {
+            throw new InterruptedIOException("interrupted while waiting for the shards");
+        } catch (ExecutionException ee) {
+            throw new IOException("shard request failed", ee.getCause());
+        }
+        return answers;
+    }
+
+    /**
+     * @return the whole board, in the format of GameBoard.toString(), joined from the regions of
+     *         all shards
+     * @throws IOException if a shard connection encounters an error
+     */
+    private String look() throws IOException {
+        List<String> regions = gather("look");
+        StringBuilder board = new StringBuilder(2 * layout.getCols() * layout.getRows());
+        for (int y = 0; y < layout.getRows(); y++) {
+            if (y > 0) {
+                board.append('\n');
+            }
+            for (int x = 0; x < layout.getCols(); ) {
+                int shard = layout.shardAt(x, y);
+                String region = regions.get(shard);
+                int width = layout.width(shard);
+                int start = (y - layout.top(shard)) * width;
+                for (int i = 0; i < width; i++, x++) {
+                    char cell = region.charAt(start + i);
+                    board.append(cell == '0' ? ' ' : cell);
+                    if (x < layout.getCols() - 1) {
+                        board.append(' ');
+                    }
+                }
+            }
+        }
+        return board.toString();
+    }
+}
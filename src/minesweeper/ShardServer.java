@@ -0,0 +1,341 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Set;
+
+/**
+ * Server for one region of a sharded board, as described by a ShardLayout. Players do not connect
+ * to shards: a ShardRouter does, and forwards their commands to the shard that owns each cell.
+ *
+ * <p>The shard keeps its region in a GameBoard whose neighbor counts also count the bombs just
+ * outside the region, so that every count it shows is the count on the whole board. A dig whose
+ * flood fill reaches the edge of the region reports the cells across the edge, and the router
+ * hands them off to the shards that own them.
+ *
+ * <p>Shard protocol: one request per line, answered by exactly one line; X and Y are coordinates on
+ * the whole board.
+ * <pre>
+ *      dig X Y (X Y)*  digs the cells, which must be in the region; answers "BOOM" if one of them
+ *                      had a bomb, else "BOARD", followed by " X Y" for each cell of another shard
+ *                      that the flood fill handed off
+ *      flag X Y        flags the cell; answers "BOARD"
+ *      deflag X Y      deflags the cell; answers "BOARD"
+ *      unbomb X Y      removes the bomb from (X,Y), a cell of another shard next to the region,
+ *                      from the neighbor counts; answers "OK"
+ *      look            answers one character per cell of the region, row by row: '-' untouched,
+ *                      'F' flagged, or the neighbor bomb count '0' to '8' of a dug cell
+ *      stats           answers "S F B": safe cells remaining, flags placed and bombs hit in the region
+ *      bye             closes the connection
+ * </pre>
+ * Any other request, or coordinates outside the region, is answered "ERROR".
+ */
+public class ShardServer {
+
+    private final ServerSocket serverSocket;
+    private final ShardLayout layout;
+    private final int shard;
+    private final int left;
+    private final int top;
+    private final GameBoard board;
+
+    /*
+     * Abstraction function:
+     *  AF(serverSocket, layout, shard, left, top, board) = the region of shard in layout, listening
+     *      for routers on serverSocket, where cell (x,y) of the whole board is cell (x-left, y-top)
+     *      of board
+     * Rep invariant:
+     *  left == layout.left(shard), top == layout.top(shard)
+     *  board has layout.width(shard) columns and layout.height(shard) rows
+     * Rep exposure:
+     *  all fields are private and final, and none is returned
+     * Thread safety:
+     *  each connection is handled by its own thread; they only share board, which is thread-safe,
+     *  and every request uses at most one board method, so it is atomic
+     */
+
+    /**
+     * Makes a shard server that listens on port, with the region of shard in its initial state.
+     *
+     * @param port port number, requires 0 <= port <= 65535; 0 picks a free port
+     * @param layout layout of the sharded board
+     * @param shard the shard to serve, requires 0 <= shard < layout.getShardCount()
+     * @throws IOException if an error occurs opening the server socket
+     */
+    public ShardServer(int port, ShardLayout layout, int shard) throws IOException {
+        this.layout = layout;
+        this.shard = shard;
+        this.left = layout.left(shard);
+        this.top = layout.top(shard);
+        int width = layout.width(shard);
+        int height = layout.height(shard);
+        this.board = new GameBoard(width, height, layout.bombs(left, top, width, height));
+        // the bombs in the ring of cells around the region count as neighbors too
+        for (int x = left - 1; x <= left + width; x++) {
+            for (int y = top - 1; y <= top + height; y++) {
+                boolean inRegion = x >= left && x < left + width && y >= top && y < top + height;
+                if ( ! inRegion && layout.isCell(x, y) && layout.hasBomb(x, y)) {
+                    board.changeOutsideBomb(x - left, y - top, 1);
+                }
+            }
+        }
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(port));
+        checkRep();
+    }
+
+    private void checkRep() {
+        assert left == layout.left(shard) && top == layout.top(shard);
+        assert board.getCols() == layout.width(shard) && board.getRows() == layout.height(shard);
+    }
+
+    /**
+     * @return port the server listens on
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Run the server, handling each router connection in its own thread.
+     * Never returns, unless an exception is thrown.
+     *
+     * @throws IOException if an error occurs waiting for a connection
+     */
+    public void serve() throws IOException {
+        while (true) {
+            final Socket socket = serverSocket.accept();
+            Thread handler = new Thread(() -> {
+                try {
+                    try {
+                        handleConnection(socket);
+                    } finally {
+                        socket.close();
+                    }
+                } catch (IOException ioe) {
+                    ioe.printStackTrace(); // but do not stop serving
+                }
+            });
+            handler.start();
+        }
+    }
+
+    /**
+     * Handle a single router connection. Returns when the router disconnects.
+     *
+     * @param socket socket where the router is connected
+     * @throws IOException if the connection encounters an error
+     */
+    private void handleConnection(Socket socket) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+        try {
+            for (String line = in.readLine(); line != null && ! line.equals("bye"); line = in.readLine()) {
+                out.println(handleRequest(line));
+            }
+        } finally {
+            out.close();
+            in.close();
+        }
+    }
+
+    /**
+     * Handler for a request from a router.
+     *
+     * @param input request, as described by the shard protocol
+     * @return answer, as described by the shard protocol
+     */
+    String handleRequest(String input) {
+        String[] tokens = input.split(" ");
+        try {
+            if (tokens[0].equals("look") && tokens.length == 1) {
+                return look();
+            } else if (tokens[0].equals("stats") && tokens.length == 1) {
+                return board.getSafeRemaining() + " " + board.getFlagCount() + " " + board.getBombsHit();
+            } else if (tokens.length < 3 || tokens.length % 2 == 0) {
+                return "ERROR";
+            }
+            int x = Integer.parseInt(tokens[1]);
+            int y = Integer.parseInt(tokens[2]);
+            if (tokens[0].equals("dig")) {
+                return dig(tokens);
+            } else if (tokens.length != 3) {
+                return "ERROR";
+            } else if (tokens[0].equals("unbomb")) {
+                boolean outside = x < left || x >= left + board.getCols() || y < top || y >= top + board.getRows();
+                boolean adjacent = x >= left - 1 && x <= left + board.getCols() && y >= top - 1 && y <= top + board.getRows();
+                if ( ! outside || ! adjacent || ! layout.isCell(x, y)) {
+                    return "ERROR";
+                }
+                board.changeOutsideBomb(x - left, y - top, -1);
+                return "OK";
+            } else if ( ! isInRegion(x, y)) {
+                return "ERROR";
+            } else if (tokens[0].equals("flag")) {
+                return board.flag(x - left, y - top);
+            } else if (tokens[0].equals("deflag")) {
+                return board.deflag(x - left, y - top);
+            }
+        } catch (NumberFormatException nfe) {
+            // fall through
+        }
+        return "ERROR";
+    }
+
+    /**
+     * Digs cells of the region, and collects the cells of other shards that their flood fills reach.
+     *
+     * @param tokens "dig" followed by the column and row of each cell
+     * @return answer to the dig request
+     */
+    private String dig(String[] tokens) {
+        // cells across the edge, as indices on the whole board, without duplicates
+        Set<Long> handoffs = new LinkedHashSet<>();
+        boolean boom = false;
+        for (int k = 1; k < tokens.length; k += 2) {
+            int x = Integer.parseInt(tokens[k]);
+            int y = Integer.parseInt(tokens[k + 1]);
+            if ( ! isInRegion(x, y)) {
+                return "ERROR";
+            }
+            String message = board.dig(x - left, y - top, (i, j) -> {
+                if (layout.isCell(left + i, top + j)) {
+                    handoffs.add((long) (top + j) * layout.getCols() + left + i);
+                }
+            });
+            boom |= message.equals("BOOM");
+        }
+        StringBuilder answer = new StringBuilder(boom ? "BOOM" : "BOARD");
+        for (long index : handoffs) {
+            answer.append(' ').append(index % layout.getCols()).append(' ').append(index / layout.getCols());
+        }
+        return answer.toString();
+    }
+
+    /**
+     * @return the region as described by the look request
+     */
+    private String look() {
+        byte[] visible = new byte[board.getCols() * board.getRows()];
+        board.snapshotVisible(visible);
+        char[] chars = new char[visible.length];
+        for (int index = 0; index < visible.length; index++) {
+            switch (visible[index]) {
+            case GameBoard.VISIBLE_UNTOUCHED: chars[index] = '-'; break;
+            case GameBoard.VISIBLE_FLAGGED: chars[index] = 'F'; break;
+            default: chars[index] = (char) ('0' + visible[index]); break;
+            }
+        }
+        return new String(chars);
+    }
+
+    /**
+     * @return true iff (x,y) is a cell of this shard's region
+     */
+    private boolean isInRegion(int x, int y) {
+        return x >= left && x < left + board.getCols() && y >= top && y < top + board.getRows();
+    }
+
+    /**
+     * Start a shard server, normally as a process launched by ShardRouter.launch().
+     *
+     * <br> Usage:
+     * <pre>
+     *      minesweeper.ShardServer --size SIZE_X,SIZE_Y --shards COLS,ROWS --index SHARD --seed SEED
+     *                              [--port PORT] [--until-eof]
+     * </pre>
+     *
+     * <p>  SIZE_X, SIZE_Y, COLS, ROWS and SEED describe the ShardLayout of the whole board, and SHARD
+     *      is the shard to serve. PORT is the port to listen on (default: any free port). Once the
+     *      server listens, it prints "Shard SHARD listening on port PORT" on standard output.
+     *
+     * <p>  With --until-eof, the server exits when its standard input reaches end of file: the
+     *      router that launched it holds the other end of the pipe, which the system closes when
+     *      the router exits, so that shards do not outlive it.
+     *
+     * @param args arguments as described
+     */
+    public static void main(String[] args) {
+        int port = 0;
+        int[] size = null;
+        int[] shards = null;
+        int shard = -1;
+        Long seed = null;
+        boolean untilEof = false;
+        Queue<String> arguments = new LinkedList<>(Arrays.asList(args));
+        try {
+            while ( ! arguments.isEmpty()) {
+                String flag = arguments.remove();
+                try {
+                    if (flag.equals("--port")) {
+                        port = Integer.parseInt(arguments.remove());
+                    } else if (flag.equals("--size")) {
+                        size = Arrays.stream(arguments.remove().split(",")).mapToInt(Integer::parseInt).toArray();
+                    } else if (flag.equals("--shards")) {
+                        shards = Arrays.stream(arguments.remove().split(",")).mapToInt(Integer::parseInt).toArray();
+                    } else if (flag.equals("--index")) {
+                        shard = Integer.parseInt(arguments.remove());
+                    } else if (flag.equals("--seed")) {
+                        seed = Long.parseLong(arguments.remove());
+                    } else if (flag.equals("--until-eof")) {
+                        untilEof = true;
+                    } else {
+                        throw new IllegalArgumentException("unknown option: \"" + flag + "\"");
+                    }
+                } catch (NoSuchElementException nsee) {
+                    throw new IllegalArgumentException("missing argument for " + flag);
+                } catch (NumberFormatException nfe) {
+                    throw new IllegalArgumentException("unable to parse number for " + flag);
+                }
+            }
+            if (size == null || size.length != 2 || shards == null || shards.length != 2 || seed == null
+                    || size[0] <= 0 || size[1] <= 0 || shards[0] <= 0 || shards[0] > size[0]
+                    || shards[1] <= 0 || shards[1] > size[1] || shard < 0 || shard >= shards[0] * shards[1]) {
+                throw new IllegalArgumentException("missing or invalid layout");
+            }
+        } catch (IllegalArgumentException iae) {
+            System.err.println(iae.getMessage());
+            System.err.println("usage: ShardServer --size SIZE_X,SIZE_Y --shards COLS,ROWS --index SHARD --seed SEED"
+                    + " [--port PORT] [--until-eof]");
+            return;
+        }
+
+        if (untilEof) {
+            Thread watcher = new Thread(() -> {
+                try {
+                    while (System.in.read() >= 0) {
+                        // the router never writes to the pipe; wait for it to close
+                    }
+                } catch (IOException ioe) {
+                    // the pipe is broken, which means the router is gone too
+                }
+                System.exit(0);
+            }, "router-watcher");
+            watcher.setDaemon(true);
+            watcher.start();
+        }
+
+        try {
+            ShardServer server = new ShardServer(port, new ShardLayout(size[0], size[1], shards[0], shards[1], seed), shard);
+            System.out.println("Shard " + shard + " listening on port " + server.getPort());
+            System.out.flush();
+            server.serve();
+        } catch (IOException ioe) {
+            throw new RuntimeException(ioe);
+        }
+    }
+}
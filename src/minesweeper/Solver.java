@@ -0,0 +1,1082 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * A constraint solver for what players can see of a GameBoard, used for hints and automated players.
+ *
+ * <p>The solver only uses the numbers on dug cells. Flags are treated like untouched cells, since
+ * players may place them wrongly. The frontier (untouched or flagged cells next to a dug cell) is
+ * split into connected components, cells that share no dug neighbor being independent. Each
+ * component is solved by:
+ * <ul>
+ * <li> single-cell deduction: a number whose bombs are all accounted for makes its other cells safe,
+ *      and a number with as many bombs left as unknown cells makes them all bombs;
+ * <li> subset deduction: if the unknown cells of one number are a subset of another's, the
+ *      difference holds the difference of their bombs;
+ * <li> enumeration of every bomb layout of what is left, counted by number of bombs, which gives
+ *      the probability of a bomb in each cell, if each cell had a bomb independently with the
+ *      density of bombs on the rest of the board.
+ * </ul>
+ * Enumeration is only done when needed: when deduction finds no certain move, or when asked for
+ * probabilities.
+ *
+ * <p>Solving is incremental: components are cached by their cells and numbers, so after a move only
+ * the components it changed are solved again. When many cells need solving, their components are
+ * solved in parallel.
+ */
+public class Solver {
+
+    /** A cell that is not known to be safe or a bomb. */
+    private static final byte UNDETERMINED = 0;
+    /** A cell that is certainly safe. */
+    private static final byte SAFE = 1;
+    /** A cell that certainly has a bomb. */
+    private static final byte BOMB = 2;
+    /** Largest piece of undetermined cells whose layouts are enumerated exactly. */
+    private static final int MAX_ENUMERATION_CELLS = 40;
+    /** Largest number of partial layouts tried when enumerating one piece. */
+    private static final long MAX_ENUMERATION_STEPS = 2_000_000;
+    /** Smallest number of frontier cells to be solved that are worth solving in parallel. */
+    private static final int PARALLEL_THRESHOLD = 256;
+
+    /**
+     * A move suggested by the solver.
+     */
+    public static final class Hint {
+        private final String command;
+        private final int x;
+        private final int y;
+        private final double bombProbability;
+
+        /*
+         * Abstraction function:
+         *  AF(command, x, y, bombProbability) = the move "command x y", on a cell that has a bomb
+         *                                       with probability bombProbability
+         * Rep invariant:
+         *  command is "dig", "flag" or "deflag"; 0 <= bombProbability <= 1
+         * Rep exposure, thread safety:
+         *  immutable
+         */
+
+        private Hint(String command, int x, int y, double bombProbability) {
+            this.command = command;
+            this.x = x;
+            this.y = y;
+            this.bombProbability = bombProbability;
+        }
+
+        /** @return "dig", "flag" or "deflag" */
+        public String getCommand() {
+            return command;
+        }
+
+        /** @return column of the cell */
+        public int getX() {
+            return x;
+        }
+
+        /** @return row of the cell */
+        public int getY() {
+            return y;
+        }
+
+        /** @return probability that the cell has a bomb: 0 if certainly safe, 1 if certainly a bomb */
+        public double getBombProbability() {
+            return bombProbability;
+        }
+
+        /**
+         * @return true iff the move is certain, i.e. the cell is certainly safe or certainly a bomb
+         */
+        public boolean isCertain() {
+            return bombProbability == 0 || bombProbability == 1;
+        }
+
+        /**
+         * @return e.g. "dig 3 4 (safe)", "flag 2 2 (bomb)" or "dig 5 5 (bomb probability 0.21)"
+         */
+        @Override
+        public String toString() {
+            String reason = bombProbability == 0 ? "safe"
+                    : bombProbability == 1 ? "bomb"
+                    : String.format("bomb probability %.2f", bombProbability);
+            return command + " " + x + " " + y + " (" + reason + ")";
+        }
+    }
+
+    /**
+     * What the solver knows about a board at one version.
+     */
+    public static final class Analysis {
+        private final int numCols;
+        private final byte[] visible;
+        private final List<Component> components;
+        private final double density;
+        private final int componentsSolved;
+        private long solveNanos;
+        private boolean enumerated = false;
+
+        /*
+         * Abstraction function:
+         *  AF(numCols, visible, components, density, ...) = the knowledge about a board with numCols
+         *      columns whose visible cells are visible: each frontier cell is described by a
+         *      component, and every other untouched or flagged cell has a bomb with probability
+         *      density; componentsSolved of the components were solved rather than cached, and
+         *      analyzing the board has taken solveNanos so far, including the enumeration of every
+         *      component if enumerated
+         * Rep invariant:
+         *  0 <= density <= 1, 0 <= componentsSolved <= components.size()
+         * Rep exposure:
+         *  visible is a private copy; components are never returned
+         * Thread safety:
+         *  numCols, visible, components, density and componentsSolved are never changed;
+         *  components enumerate themselves under their own locks;
+         *  solveNanos and enumerated are guarded by the lock on this analysis
+         */
+
+        private Analysis(int numCols, byte[] visible, List<Component> components, double density,
+                int componentsSolved, long solveNanos) {
+            this.numCols = numCols;
+            this.visible = visible;
+            this.components = components;
+            this.density = density;
+            this.componentsSolved = componentsSolved;
+            this.solveNanos = solveNanos;
+        }
+
+        /** @return number of frontier components */
+        public int getComponents() {
+            return components.size();
+        }
+
+        /** @return number of frontier components that were solved, rather than found in the cache */
+        public int getComponentsSolved() {
+            return componentsSolved;
+        }
+
+        /** @return time spent analyzing the board so far, in nanoseconds */
+        public synchronized long getSolveNanos() {
+            return solveNanos;
+        }
+
+        /**
+         * @param x column of a cell
+         * @param y row of a cell
+         * @return probability that cell (x,y) has a bomb: 0 if it is certainly safe or dug, 1 if it
+         *         certainly has a bomb
+         */
+        public double getBombProbability(int x, int y) {
+            int index = y * numCols + x;
+            if (visible[index] < GameBoard.VISIBLE_UNTOUCHED) {
+                return 0;
+            }
+            for (Component component : components) {
+                int position = Arrays.binarySearch(component.unknowns, index);
+                if (position >= 0) {
+                    return component.bombProbability(position, density);
+                }
+            }
+            return density;
+        }
+
+        /**
+         * @return cells that are certainly safe and still untouched or flagged, as indices y*cols + x:
+         *         every such cell found by deduction, or if deduction finds none, every such cell
+         */
+        public int[] getSafeCells() {
+            return cellsIn(SAFE);
+        }
+
+        /**
+         * @return cells that certainly have a bomb, as indices y*cols + x: every such cell found by
+         *         deduction, or if deduction finds none, every such cell
+         */
+        public int[] getBombCells() {
+            return cellsIn(BOMB);
+        }
+
+        private int[] cellsIn(byte state) {
+            List<Integer> cells = new ArrayList<>();
+            for (Component component : components) {
+                for (int position = 0; position < component.unknowns.length; position++) {
+                    if (component.deduced[position] == state) {
+                        cells.add(component.unknowns[position]);
+                    }
+                }
+            }
+            if ( ! cells.isEmpty()) {
+                return toArray(cells, false);
+            }
+            enumerateAll();
+            for (Component component : components) {
+                for (int position = 0; position < component.unknowns.length; position++) {
+                    if (component.state(position) == state) {
+                        cells.add(component.unknowns[position]);
+                    }
+                }
+            }
+            return toArray(cells, false);
+        }
+
+        /**
+         * Suggests a move: digging a certainly safe untouched cell if there is one, else deflagging a
+         * certainly safe flagged cell, else flagging an untouched cell that certainly has a bomb, else
+         * digging the untouched cell least likely to have a bomb.
+         *
+         * @return the suggested move, or null if there are no untouched cells
+         */
+        public Hint getHint() {
+            for (Component component : components) {
+                for (int position = 0; position < component.unknowns.length; position++) {
+                    int index = component.unknowns[position];
+                    if (component.deduced[position] == SAFE && visible[index] == GameBoard.VISIBLE_UNTOUCHED) {
+                        // found by deduction alone, no need to enumerate
+                        return hint("dig", index, 0);
+                    }
+                }
+            }
+            enumerateAll();
+            Hint deflag = null;
+            Hint flag = null;
+            Hint guess = null;
+            for (Component component : components) {
+                for (int position = 0; position < component.unknowns.length; position++) {
+                    int index = component.unknowns[position];
+                    boolean untouched = visible[index] == GameBoard.VISIBLE_UNTOUCHED;
+                    byte state = component.state(position);
+                    if (state == SAFE && untouched) {
+                        return hint("dig", index, 0);
+                    } else if (state == SAFE && deflag == null) {
+                        deflag = hint("deflag", index, 0);
+                    } else if (state == BOMB && untouched && flag == null) {
+                        flag = hint("flag", index, 1);
+                    } else if (state == UNDETERMINED && untouched) {
+                        double probability = component.bombProbability(position, density);
+                        if (guess == null || probability < guess.getBombProbability()) {
+                            guess = hint("dig", index, probability);
+                        }
+                    }
+                }
+            }
+            if (deflag != null) {
+                return deflag;
+            } else if (flag != null) {
+                return flag;
+            }
+            if (guess == null || density < guess.getBombProbability()) {
+                // an untouched cell off the frontier is a better guess
+                int offFrontier = firstUntouchedOffFrontier();
+                if (offFrontier >= 0) {
+                    guess = hint("dig", offFrontier, density);
+                }
+            }
+            return guess;
+        }
+
+        /**
+         * Enumerates every component that is not enumerated yet, in parallel if there are many cells.
+         */
+        private synchronized void enumerateAll() {
+            if (enumerated) {
+                return;
+            }
+            long start = System.nanoTime();
+            int cells = 0;
+            for (Component component : components) {
+                cells += component.unknowns.length;
+            }
+            if (isWorthParallel(cells, components.size())) {
+                ForkJoinPool.commonPool().invoke(new ParallelTask(i -> components.get(i).enumerate(), 0, components.size()));
+            } else {
+                for (Component component : components) {
+                    component.enumerate();
+                }
+            }
+            enumerated = true;
+            solveNanos += System.nanoTime() - start;
+        }
+
+        private Hint hint(String command, int index, double probability) {
+            return new Hint(command, index % numCols, index / numCols, probability);
+        }
+
+        /**
+         * @return index of the first untouched cell in no component, or -1 if there is none
+         */
+        private int firstUntouchedOffFrontier() {
+            boolean[] frontier = new boolean[visible.length];
+            for (Component component : components) {
+                for (int index : component.unknowns) {
+                    frontier[index] = true;
+                }
+            }
+            for (int index = 0; index < visible.length; index++) {
+                if (visible[index] == GameBoard.VISIBLE_UNTOUCHED && ! frontier[index]) {
+                    return index;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * The solution of one connected component of the frontier: deduced when the component is
+     * solved, and enumerated only when deduction is not enough.
+     */
+    private static final class Component {
+        private final int[] unknowns;
+        private final byte[] deduced;
+        private int[][] cells;
+        private int[][] constraintsOf;
+        private int[] needed;
+        private int[] unassigned;
+        private byte[] states = null;
+        private List<Piece> pieces = null;
+        private int[] pieceOf = null;
+        private int[] positionInPiece = null;
+
+        /*
+         * Abstraction function:
+         *  AF(unknowns, deduced, states, pieces, ...) = the frontier cells unknowns, where deduction
+         *      found unknowns[i] to be deduced[i]; if states is null, the component is not enumerated
+         *      yet, and constraint c says that the cells cells[c] hold needed[c] more bombs among their
+         *      unassigned[c] undetermined cells; else enumeration found unknowns[i] to be states[i],
+         *      and undetermined cells belong to piece pieces.get(pieceOf[i]), at position
+         *      positionInPiece[i]
+         * Rep invariant:
+         *  unknowns is sorted
+         *  states, pieces, pieceOf and positionInPiece are all null, or else cells, constraintsOf,
+         *      needed and unassigned are all null
+         *  if states is not null: pieceOf[i] = -1 iff states[i] != UNDETERMINED, and
+         *      states[i] = deduced[i] wherever deduced[i] != UNDETERMINED
+         * Rep exposure:
+         *  never returned
+         * Thread safety:
+         *  unknowns and deduced are never changed after construction; the other fields are guarded
+         *  by the lock on this component, since cached components are shared by analyses
+         */
+
+        private Component(int[] unknowns, byte[] deduced, int[][] cells, int[][] constraintsOf,
+                int[] needed, int[] unassigned) {
+            this.unknowns = unknowns;
+            this.deduced = deduced;
+            this.cells = cells;
+            this.constraintsOf = constraintsOf;
+            this.needed = needed;
+            this.unassigned = unassigned;
+        }
+
+        /**
+         * Splits the undetermined cells into pieces that share no constraint, and enumerates each
+         * piece, unless that has been done already.
+         */
+        private synchronized void enumerate() {
+            if (states != null) {
+                return;
+            }
+            byte[] enumerated = deduced.clone();
+            int[] pieceOfCell = new int[unknowns.length];
+            int[] positionOfCell = new int[unknowns.length];
+            Arrays.fill(pieceOfCell, -1);
+            List<Piece> allPieces = new ArrayList<>();
+            for (int start = 0; start < unknowns.length; start++) {
+                if (enumerated[start] != UNDETERMINED || pieceOfCell[start] >= 0) {
+                    continue;
+                }
+                List<Integer> piece = new ArrayList<>();
+                pieceOfCell[start] = allPieces.size();
+                piece.add(start);
+                for (int next = 0; next < piece.size(); next++) {
+                    for (int c : constraintsOf[piece.get(next)]) {
+                        for (int position : cells[c]) {
+                            if (enumerated[position] == UNDETERMINED && pieceOfCell[position] < 0) {
+                                pieceOfCell[position] = allPieces.size();
+                                piece.add(position);
+                            }
+                        }
+                    }
+                }
+                for (int i = 0; i < piece.size(); i++) {
+                    positionOfCell[piece.get(i)] = i;
+                }
+                allPieces.add(Solver.enumerate(piece, constraintsOf, needed, unassigned));
+            }
+
+            // enumeration may find cells that are safe or bombs in every layout
+            for (int position = 0; position < unknowns.length; position++) {
+                if (pieceOfCell[position] < 0) {
+                    continue;
+                }
+                Piece piece = allPieces.get(pieceOfCell[position]);
+                if (piece.layouts == null) {
+                    continue;
+                }
+                double[] bombLayouts = piece.bombLayouts[positionOfCell[position]];
+                if (Arrays.stream(bombLayouts).sum() == 0) {
+                    enumerated[position] = SAFE;
+                    pieceOfCell[position] = -1;
+                } else if (Arrays.equals(bombLayouts, piece.layouts)) {
+                    enumerated[position] = BOMB;
+                    pieceOfCell[position] = -1;
+                }
+            }
+            states = enumerated;
+            pieces = allPieces;
+            pieceOf = pieceOfCell;
+            positionInPiece = positionOfCell;
+            cells = null;
+            constraintsOf = null;
+            needed = null;
+            unassigned = null;
+        }
+
+        /**
+         * @param position position of a cell in unknowns
+         * @return state of the cell, found by deduction and enumeration
+         */
+        private synchronized byte state(int position) {
+            enumerate();
+            return states[position];
+        }
+
+        /**
+         * @param position position of a cell in unknowns
+         * @param density probability of a bomb in a cell, before looking at the numbers
+         * @return probability that the cell has a bomb
+         */
+        private synchronized double bombProbability(int position, double density) {
+            enumerate();
+            if (states[position] == SAFE) {
+                return 0;
+            } else if (states[position] == BOMB) {
+                return 1;
+            }
+            return pieces.get(pieceOf[position]).bombProbability(positionInPiece[position], density);
+        }
+    }
+
+    /**
+     * Bomb layouts of a set of undetermined cells that share numbers, counted by number of bombs.
+     */
+    private static final class Piece {
+        private final double[] layouts;
+        private final double[][] bombLayouts;
+        private final double[] estimates;
+
+        /*
+         * Abstraction function:
+         *  AF(layouts, bombLayouts, estimates) = if estimates is null, a piece with layouts[m] layouts
+         *      with m bombs, of which bombLayouts[i][m] have a bomb in cell i; else a piece too large
+         *      to enumerate, where cell i has a bomb with probability about estimates[i]
+         * Rep invariant:
+         *  exactly one of layouts and estimates is null; bombLayouts is null iff layouts is
+         * Rep exposure, thread safety:
+         *  never changed after construction, and never returned
+         */
+
+        private Piece(double[] layouts, double[][] bombLayouts, double[] estimates) {
+            this.layouts = layouts;
+            this.bombLayouts = bombLayouts;
+            this.estimates = estimates;
+        }
+
+        private double bombProbability(int cell, double density) {
+            if (estimates != null) {
+                return estimates[cell];
+            }
+            // weight a layout with m bombs by density^m * (1-density)^(cells-m), up to a constant
+            double ratio = density / (1 - density);
+            double weight = 1;
+            double bombs = 0;
+            double total = 0;
+            for (int m = 0; m < layouts.length; m++) {
+                bombs += bombLayouts[cell][m] * weight;
+                total += layouts[m] * weight;
+                weight *= ratio;
+            }
+            return bombs / total;
+        }
+    }
+
+    /**
+     * A component of the frontier to be solved: its sorted unknown cells, and its numbered cells
+     * with their numbers. Two components with equal keys have the same solution.
+     */
+    private static final class Key {
+        private final int[] unknowns;
+        private final int[] numbered;
+        private final int[] numbers;
+        private final int hash;
+
+        private Key(int[] unknowns, int[] numbered, int[] numbers) {
+            this.unknowns = unknowns;
+            this.numbered = numbered;
+            this.numbers = numbers;
+            this.hash = 31 * (31 * Arrays.hashCode(unknowns) + Arrays.hashCode(numbered)) + Arrays.hashCode(numbers);
+        }
+
+        @Override
+        public boolean equals(Object that) {
+            if ( ! (that instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) that;
+            return hash == other.hash && Arrays.equals(unknowns, other.unknowns)
+                    && Arrays.equals(numbered, other.numbered) && Arrays.equals(numbers, other.numbers);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private final GameBoard board;
+    private final int numCols;
+    private final int numRows;
+    private byte[] visible;
+    private int[] visited;
+    private int generation = 0;
+    private Map<Key, Component> cache = new HashMap<>();
+
+    /*
+     * Abstraction function:
+     *  AF(board, cache) = a solver for board, that remembers the solutions of the components in cache
+     * Rep invariant:
+     *  visible and visited are null, or have one element per cell of the board
+     *  visited[i] <= generation for every i
+     * Rep exposure:
+     *  board is shared with the server, which is fine since GameBoard is thread-safe;
+     *  everything else is private; analyses hold copies, and components that are thread-safe
+     * Thread safety:
+     *  analyze() and hint() are synchronized, so only one thread uses visible, visited and cache
+     *  at a time; the components solved in parallel only share immutable inputs, and cached
+     *  components shared by several analyses enumerate themselves under their own locks
+     */
+
+    /**
+     * Makes a solver for a board.
+     *
+     * @param board the board to solve
+     */
+    public Solver(GameBoard board) {
+        this.board = board;
+        this.numCols = board.getCols();
+        this.numRows = board.getRows();
+    }
+
+    /**
+     * Analyzes the current state of the board.
+     *
+     * @return what can be deduced from the visible cells of the board
+     */
+    public synchronized Analysis analyze() {
+        long start = System.nanoTime();
+        if (visible == null) {
+            visible = new byte[numCols * numRows];
+            visited = new int[numCols * numRows];
+        }
+        board.snapshotVisible(visible);
+        int unknownCells = 0;
+        for (byte cell : visible) {
+            if (cell >= GameBoard.VISIBLE_UNTOUCHED) {
+                unknownCells++;
+            }
+        }
+        double density = unknownCells == 0 ? 0
+                : Math.min(1, Math.max(0, board.getBombsRemaining() / (double) unknownCells));
+        density = Math.min(1 - 1e-9, Math.max(1e-9, density));
+
+        List<Key> keys = findComponents();
+        Map<Key, Component> solved = new HashMap<>();
+        List<Key> toSolve = new ArrayList<>();
+        for (Key key : keys) {
+            Component cached = cache.get(key);
+            if (cached != null) {
+                solved.put(key, cached);
+            } else {
+                toSolve.add(key);
+            }
+        }
+        Component[] results = new Component[toSolve.size()];
+        int cellsToSolve = 0;
+        for (Key key : toSolve) {
+            cellsToSolve += key.unknowns.length;
+        }
+        if (isWorthParallel(cellsToSolve, toSolve.size())) {
+            ForkJoinPool.commonPool().invoke(new ParallelTask(
+                    i -> results[i] = solve(toSolve.get(i), numCols, numRows), 0, results.length));
+        } else {
+            for (int i = 0; i < results.length; i++) {
+                results[i] = solve(toSolve.get(i), numCols, numRows);
+            }
+        }
+        for (int i = 0; i < results.length; i++) {
+            solved.put(toSolve.get(i), results[i]);
+        }
+        // only keep the components of this version of the board
+        cache = solved;
+
+        List<Component> components = new ArrayList<>();
+        for (Key key : keys) {
+            components.add(solved.get(key));
+        }
+        return new Analysis(numCols, visible.clone(), components, density, toSolve.size(),
+                System.nanoTime() - start);
+    }
+
+    /**
+     * Suggests a move on the current state of the board.
+     *
+     * @return the suggested move, as by Analysis.getHint(), or null if there are no untouched cells
+     */
+    public Hint hint() {
+        return analyze().getHint();
+    }
+
+    /**
+     * @param cells number of frontier cells to work on
+     * @param tasks number of components they are in
+     * @return true iff the work is worth splitting between the threads of the common ForkJoinPool
+     */
+    private static boolean isWorthParallel(int cells, int tasks) {
+        return cells >= PARALLEL_THRESHOLD && tasks > 1 && ForkJoinPool.getCommonPoolParallelism() > 1;
+    }
+
+    /**
+     * Runs an action on every index in [lo..hi), in parallel.
+     */
+    private static final class ParallelTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final IntConsumer action;
+        private final int lo;
+        private final int hi;
+
+        private ParallelTask(IntConsumer action, int lo, int hi) {
+            this.action = action;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo == 1) {
+                action.accept(lo);
+            } else {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new ParallelTask(action, lo, mid), new ParallelTask(action, mid, hi));
+            }
+        }
+    }
+
+    /**
+     * Finds the connected components of the frontier of visible.
+     *
+     * @return the keys of the components, ordered by their first numbered cell
+     */
+    private List<Key> findComponents() {
+        generation++;
+        List<Key> keys = new ArrayList<>();
+        int[] stack = new int[16];
+        for (int start = 0; start < visible.length; start++) {
+            if (visited[start] == generation || ! isNumberOnFrontier(start)) {
+                continue;
+            }
+            // depth-first search, alternating between numbered cells and unknown cells
+            List<Integer> unknowns = new ArrayList<>();
+            List<Integer> numbered = new ArrayList<>();
+            int size = 0;
+            stack[size++] = start;
+            visited[start] = generation;
+            while (size > 0) {
+                int index = stack[--size];
+                boolean isUnknown = visible[index] >= GameBoard.VISIBLE_UNTOUCHED;
+                if (isUnknown) {
+                    unknowns.add(index);
+                } else {
+                    numbered.add(index);
+                }
+                int x = index % numCols;
+                int y = index / numCols;
+                for (int j = Math.max(0, y - 1); j <= Math.min(numRows - 1, y + 1); j++) {
+                    for (int i = Math.max(0, x - 1); i <= Math.min(numCols - 1, x + 1); i++) {
+                        int neighbor = j * numCols + i;
+                        if (visited[neighbor] == generation) {
+                            continue;
+                        }
+                        boolean neighborUnknown = visible[neighbor] >= GameBoard.VISIBLE_UNTOUCHED;
+                        if (isUnknown != neighborUnknown && (neighborUnknown || isNumberOnFrontier(neighbor))) {
+                            visited[neighbor] = generation;
+                            if (size == stack.length) {
+                                stack = Arrays.copyOf(stack, size * 2);
+                            }
+                            stack[size++] = neighbor;
+                        }
+                    }
+                }
+            }
+            int[] sortedUnknowns = toArray(unknowns, true);
+            int[] sortedNumbered = toArray(numbered, true);
+            int[] numbers = new int[sortedNumbered.length];
+            for (int i = 0; i < numbers.length; i++) {
+                numbers[i] = visible[sortedNumbered[i]];
+            }
+            keys.add(new Key(sortedUnknowns, sortedNumbered, numbers));
+        }
+        return keys;
+    }
+
+    /**
+     * @param index a cell
+     * @return true iff the cell is dug and has an untouched or flagged neighbor
+     */
+    private boolean isNumberOnFrontier(int index) {
+        if (visible[index] >= GameBoard.VISIBLE_UNTOUCHED) {
+            return false;
+        }
+        int x = index % numCols;
+        int y = index / numCols;
+        for (int j = Math.max(0, y - 1); j <= Math.min(numRows - 1, y + 1); j++) {
+            for (int i = Math.max(0, x - 1); i <= Math.min(numCols - 1, x + 1); i++) {
+                if (visible[j * numCols + i] >= GameBoard.VISIBLE_UNTOUCHED) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Solves one component of the frontier by deduction, leaving enumeration for later.
+     *
+     * @param key the component
+     * @param numCols number of columns of the board
+     * @param numRows number of rows of the board
+     * @return the solution of the component
+     */
+    private static Component solve(Key key, int numCols, int numRows) {
+        int[] unknowns = key.unknowns;
+        int numConstraints = key.numbered.length;
+        // constraint c says that the cells cells[c] hold key.numbers[c] bombs
+        int[][] cells = new int[numConstraints][];
+        int[] constraintCounts = new int[unknowns.length];
+        int[] positions = new int[9];
+        for (int c = 0; c < numConstraints; c++) {
+            int x = key.numbered[c] % numCols;
+            int y = key.numbered[c] / numCols;
+            int count = 0;
+            for (int j = Math.max(0, y - 1); j <= Math.min(numRows - 1, y + 1); j++) {
+                for (int i = Math.max(0, x - 1); i <= Math.min(numCols - 1, x + 1); i++) {
+                    int position = Arrays.binarySearch(unknowns, j * numCols + i);
+                    if (position >= 0) {
+                        positions[count++] = position;
+                        constraintCounts[position]++;
+                    }
+                }
+            }
+            cells[c] = Arrays.copyOf(positions, count);
+        }
+        // constraintsOf[p] are the constraints with position p
+        int[][] constraintsOf = new int[unknowns.length][];
+        for (int position = 0; position < unknowns.length; position++) {
+            constraintsOf[position] = new int[constraintCounts[position]];
+            constraintCounts[position] = 0;
+        }
+        for (int c = 0; c < numConstraints; c++) {
+            for (int position : cells[c]) {
+                constraintsOf[position][constraintCounts[position]++] = c;
+            }
+        }
+
+        byte[] states = new byte[unknowns.length];
+        deduce(cells, key.numbers, constraintsOf, states);
+
+        // bombs still needed, and undetermined cells still unassigned, for each constraint
+        int[] needed = new int[numConstraints];
+        int[] unassigned = new int[numConstraints];
+        for (int c = 0; c < numConstraints; c++) {
+            needed[c] = key.numbers[c];
+            for (int position : cells[c]) {
+                if (states[position] == BOMB) {
+                    needed[c]--;
+                } else if (states[position] == UNDETERMINED) {
+                    unassigned[c]++;
+                }
+            }
+        }
+
+        return new Component(unknowns, states, cells, constraintsOf, needed, unassigned);
+    }
+
+    /**
+     * Applies single-cell and subset deduction until nothing more can be deduced.
+     *
+     * @param cells cells[c] are the positions of the cells of constraint c
+     * @param numbers numbers[c] is the number of bombs in the cells of constraint c
+     * @param constraintsOf constraintsOf[p] are the constraints with position p
+     * @param states modified to the deduced state of each position
+     */
+    private static void deduce(int[][] cells, int[] numbers, int[][] constraintsOf, byte[] states) {
+        // constraints to check, because one of their cells was deduced since they were last checked;
+        // a ring buffer, since each constraint is listed at most once
+        Worklist worklist = new Worklist(cells.length);
+        for (int c = 0; c < cells.length; c++) {
+            worklist.add(c);
+        }
+        while ( ! worklist.isEmpty()) {
+            int c = worklist.poll();
+            int undetermined = 0;
+            int bombsLeft = numbers[c];
+            for (int position : cells[c]) {
+                if (states[position] == UNDETERMINED) {
+                    undetermined++;
+                } else if (states[position] == BOMB) {
+                    bombsLeft--;
+                }
+            }
+            if (undetermined == 0) {
+                continue;
+            }
+            if (bombsLeft == 0 || bombsLeft == undetermined) {
+                byte state = bombsLeft == 0 ? SAFE : BOMB;
+                for (int position : cells[c]) {
+                    if (states[position] == UNDETERMINED) {
+                        states[position] = state;
+                    }
+                }
+                worklist.addNeighbors(cells[c], constraintsOf);
+                continue;
+            }
+            // subset deduction, with each constraint that shares a cell
+            for (int position : cells[c]) {
+                if (states[position] != UNDETERMINED) {
+                    continue;
+                }
+                for (int b : constraintsOf[position]) {
+                    if (b != c && deduceSubset(cells[c], numbers[c], cells[b], numbers[b], states)) {
+                        worklist.addNeighbors(cells[b], constraintsOf);
+                    } else if (b != c && deduceSubset(cells[b], numbers[b], cells[c], numbers[c], states)) {
+                        worklist.addNeighbors(cells[c], constraintsOf);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Queue of constraints, each listed at most once.
+     */
+    private static final class Worklist {
+        private final int[] queue;
+        private final boolean[] listed;
+        private int head = 0;
+        private int size = 0;
+
+        private Worklist(int constraints) {
+            this.queue = new int[constraints];
+            this.listed = new boolean[constraints];
+        }
+
+        private boolean isEmpty() {
+            return size == 0;
+        }
+
+        private void add(int c) {
+            if ( ! listed[c]) {
+                listed[c] = true;
+                queue[(head + size++) % queue.length] = c;
+            }
+        }
+
+        /**
+         * Lists every constraint that has one of the given cells.
+         */
+        private void addNeighbors(int[] cells, int[][] constraintsOf) {
+            for (int position : cells) {
+                for (int c : constraintsOf[position]) {
+                    add(c);
+                }
+            }
+        }
+
+        private int poll() {
+            int c = queue[head];
+            head = (head + 1) % queue.length;
+            size--;
+            listed[c] = false;
+            return c;
+        }
+    }
+
+    /**
+     * If the undetermined cells of constraint a are a subset of those of constraint b, deduces the
+     * cells of b that are not in a, if they are all safe or all bombs.
+     *
+     * @return true iff a cell was deduced
+     */
+    private static boolean deduceSubset(int[] cellsA, int numberA, int[] cellsB, int numberB, byte[] states) {
+        int bombsA = numberA;
+        for (int position : cellsA) {
+            if (states[position] == BOMB) {
+                bombsA--;
+            } else if (states[position] == UNDETERMINED && ! contains(cellsB, position)) {
+                return false;
+            }
+        }
+        int bombsB = numberB;
+        int onlyInB = 0;
+        for (int position : cellsB) {
+            if (states[position] == BOMB) {
+                bombsB--;
+            } else if (states[position] == UNDETERMINED && ! contains(cellsA, position)) {
+                onlyInB++;
+            }
+        }
+        int bombsOnlyInB = bombsB - bombsA;
+        if (onlyInB == 0 || (bombsOnlyInB != 0 && bombsOnlyInB != onlyInB)) {
+            return false;
+        }
+        byte state = bombsOnlyInB == 0 ? SAFE : BOMB;
+        for (int position : cellsB) {
+            if (states[position] == UNDETERMINED && ! contains(cellsA, position)) {
+                states[position] = state;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param list list of numbers
+     * @param sorted true to sort the array
+     * @return the numbers in list, as an array, sorted if sorted is true
+     */
+    private static int[] toArray(List<Integer> list, boolean sorted) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        if (sorted) {
+            Arrays.sort(array);
+        }
+        return array;
+    }
+
+    private static boolean contains(int[] array, int value) {
+        for (int element : array) {
+            if (element == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Counts the bomb layouts of a piece of undetermined cells, by number of bombs, or estimates the
+     * probability of a bomb in each cell if the piece is too large to enumerate.
+     *
+     * @param piece positions of the undetermined cells of the piece
+     * @param constraintsOf constraintsOf[p] are the constraints with position p
+     * @param needed needed[c] is the number of bombs in the undetermined cells of constraint c;
+     *               unchanged when this method returns
+     * @param unassigned unassigned[c] is the number of undetermined cells of constraint c;
+     *                   unchanged when this method returns
+     * @return the piece
+     */
+    private static Piece enumerate(List<Integer> piece, int[][] constraintsOf,
+            int[] needed, int[] unassigned) {
+        if (piece.size() <= MAX_ENUMERATION_CELLS) {
+            Enumeration enumeration = new Enumeration(piece, constraintsOf, needed, unassigned);
+            if (enumeration.run()) {
+                return new Piece(enumeration.layouts, enumeration.bombLayouts, null);
+            }
+        }
+        double[] estimates = new double[piece.size()];
+        for (int i = 0; i < piece.size(); i++) {
+            for (int c : constraintsOf[piece.get(i)]) {
+                if (unassigned[c] > 0) {
+                    estimates[i] = Math.max(estimates[i], needed[c] / (double) unassigned[c]);
+                }
+            }
+        }
+        return new Piece(null, null, estimates);
+    }
+
+    /**
+     * Backtracking enumeration of the bomb layouts of one piece.
+     */
+    private static final class Enumeration {
+        private final List<Integer> piece;
+        private final int[][] constraintsOf;
+        private final int[] needed;
+        private final int[] unassigned;
+        private final boolean[] bomb;
+        private final double[] layouts;
+        private final double[][] bombLayouts;
+        private long steps = 0;
+
+        private Enumeration(List<Integer> piece, int[][] constraintsOf, int[] needed, int[] unassigned) {
+            this.piece = piece;
+            this.constraintsOf = constraintsOf;
+            this.needed = needed;
+            this.unassigned = unassigned;
+            this.bomb = new boolean[piece.size()];
+            this.layouts = new double[piece.size() + 1];
+            this.bombLayouts = new double[piece.size()][piece.size() + 1];
+        }
+
+        /**
+         * @return true iff every layout was counted within MAX_ENUMERATION_STEPS
+         */
+        private boolean run() {
+            return assign(0, 0);
+        }
+
+        private boolean assign(int i, int bombs) {
+            if (++steps > MAX_ENUMERATION_STEPS) {
+                return false;
+            }
+            if (i == piece.size()) {
+                layouts[bombs]++;
+                for (int k = 0; k < bomb.length; k++) {
+                    if (bomb[k]) {
+                        bombLayouts[k][bombs]++;
+                    }
+                }
+                return true;
+            }
+            int[] constraints = constraintsOf[piece.get(i)];
+            for (int value = 0; value <= 1; value++) {
+                boolean possible = true;
+                for (int c : constraints) {
+                    unassigned[c]--;
+                    needed[c] -= value;
+                    if (needed[c] < 0 || needed[c] > unassigned[c]) {
+                        possible = false;
+                    }
+                }
+                bomb[i] = value == 1;
+                boolean finished = ! possible || assign(i + 1, bombs + value);
+                for (int c : constraints) {
+                    unassigned[c]++;
+                    needed[c] += value;
+                }
+                if ( ! finished) {
+                    return false;
+                }
+            }
+            bomb[i] = false;
+            return true;
+        }
+    }
+}
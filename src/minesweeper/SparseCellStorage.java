@@ -0,0 +1,213 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import java.util.Arrays;
+
+/**
+ * Cell storage that only keeps the bytes that were set, in an open-addressing hash table on the
+ * Java heap; every other byte has its initial value. For huge boards of which players only ever
+ * touch a small part.
+ *
+ * <p>Storage made by SparseCellStorage(size) starts with every byte 0, like any CellStorage, and
+ * is filled in by GameBoard, which writes every cell with a bomb or next to one. Storage made by
+ * SparseCellStorage(cols, rows, seed) instead starts with the cells of a new board, with bombs as
+ * in a ShardLayout with the same size and seed, which are computed when they are read: a board
+ * reloaded from it with GameBoard(cols, rows, storage) takes memory in proportion to the cells
+ * that were dug or flagged, whatever its size.
+ */
+class SparseCellStorage implements CellStorage {
+
+    private static final int EMPTY = -1;
+    private static final int INITIAL_CAPACITY = 1 << 10;
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private final int size;
+    private final int cols;
+    private final int rows;
+    // bombs of the initial board, or null if every initial byte is 0
+    private ShardLayout initial;
+    // hash table of the bytes that were set: keys[slot] is an index or EMPTY, values[slot] its byte
+    private int[] keys;
+    private byte[] values;
+    private int count;
+
+    /*
+     * Abstraction function:
+     *  AF(size, cols, rows, initial, keys, values, count) = size bytes, where the byte at index
+     *      is values[slot] if keys[slot] == index for some slot, and otherwise 0 if initial is
+     *      null, or else the new cell (index % cols, index / cols) of the cols x rows board whose
+     *      bombs are given by initial
+     * Rep invariant:
+     *  size >= 0
+     *  if initial != null: cols > 0, rows > 0, size = cols * rows, and initial has cols columns
+     *      and rows rows
+     *  keys.length == values.length, a power of two, and count * 2 <= keys.length
+     *  count = number of slots whose key is not EMPTY, each key is in [0, size) and appears in at
+     *      most one slot, and is found by linear probing from slot(key) without meeting an EMPTY slot
+     * Rep exposure:
+     *  all fields are private, and keys, values and initial are never returned
+     * Thread safety:
+     *  not thread-safe, see CellStorage; unlike the other storage, get() must not race with set()
+     *  or clear()
+     */
+
+    /**
+     * Makes storage of size bytes, all 0.
+     * @param size number of bytes, requires size >= 0
+     */
+    SparseCellStorage(int size) {
+        assert size >= 0;
+        this.size = size;
+        this.cols = 0;
+        this.rows = 0;
+        this.initial = null;
+        clear();
+    }
+
+    /**
+     * Makes storage holding the cells of a new cols x rows board, where cell (x,y) has a bomb
+     * iff new ShardLayout(cols, rows, 1, 1, seed).hasBomb(x, y). Play on it with
+     * GameBoard(cols, rows, storage).
+     * @param cols number of columns, requires cols > 0
+     * @param rows number of rows, requires rows > 0 and cols * rows <= Integer.MAX_VALUE
+     * @param seed seed for the bombs
+     */
+    SparseCellStorage(int cols, int rows, long seed) {
+        assert cols > 0 && rows > 0 && (long) cols * rows <= Integer.MAX_VALUE;
+        this.size = cols * rows;
+        this.cols = cols;
+        this.rows = rows;
+        this.keys = new int[INITIAL_CAPACITY];
+        this.values = new byte[INITIAL_CAPACITY];
+        Arrays.fill(keys, EMPTY);
+        this.initial = new ShardLayout(cols, rows, 1, 1, seed);
+    }
+
+    /**
+     * @return number of bytes that were set and are kept in the table
+     */
+    int storedCount() {
+        return count;
+    }
+
+    /**
+     * @param index index of a byte
+     * @return first slot to probe for index
+     */
+    private int slot(int index) {
+        // Fibonacci hashing: the top bits of the product, so that neighboring indices spread out
+        return (int) ((index * 0x9E3779B9L & 0xFFFFFFFFL) >>> (32 - Integer.numberOfTrailingZeros(keys.length)));
+    }
+
+    /**
+     * @param index index of a byte
+     * @return slot holding index, or the EMPTY slot where it would be inserted
+     */
+    private int find(int index) {
+        int mask = keys.length - 1;
+        int slot = slot(index);
+        while (keys[slot] != index && keys[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * @param index index of a byte that is not in the table
+     * @return initial value of the byte
+     */
+    private byte initialByte(int index) {
+        if (initial == null) {
+            return 0;
+        }
+        int x = index % cols;
+        int y = index / cols;
+        int neighborBombs = 0;
+        for (int dy = -1; dy <= 1; dy++) {
+            for (int dx = -1; dx <= 1; dx++) {
+                if ((dx != 0 || dy != 0) && initial.isCell(x + dx, y + dy) && initial.hasBomb(x + dx, y + dy)) {
+                    neighborBombs += 1;
+                }
+            }
+        }
+        return GameBoard.newCell(initial.hasBomb(x, y), neighborBombs);
+    }
+
+    /**
+     * Doubles the size of the table.
+     * @throws OutOfMemoryError if the table cannot grow any further
+     */
+    private void grow() {
+        if (keys.length == MAX_CAPACITY) {
+            throw new OutOfMemoryError("sparse cell storage is full");
+        }
+        int[] oldKeys = keys;
+        byte[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new byte[oldKeys.length * 2];
+        Arrays.fill(keys, EMPTY);
+        for (int old = 0; old < oldKeys.length; old++) {
+            if (oldKeys[old] != EMPTY) {
+                int slot = find(oldKeys[old]);
+                keys[slot] = oldKeys[old];
+                values[slot] = oldValues[old];
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public byte get(int index) {
+        int slot = find(index);
+        return keys[slot] == EMPTY ? initialByte(index) : values[slot];
+    }
+
+    @Override
+    public void set(int index, byte value) {
+        int slot = find(index);
+        if (keys[slot] == EMPTY) {
+            if ((count + 1) * 2 > keys.length) {
+                grow();
+                slot = find(index);
+            }
+            keys[slot] = index;
+            count += 1;
+        }
+        values[slot] = value;
+    }
+
+    @Override
+    public void clear() {
+        // every byte becomes 0, even of storage that started with a board, and the table shrinks
+        initial = null;
+        keys = new int[INITIAL_CAPACITY];
+        values = new byte[INITIAL_CAPACITY];
+        Arrays.fill(keys, EMPTY);
+        count = 0;
+    }
+
+    @Override
+    public void copyTo(byte[] target) {
+        assert target.length == size;
+        for (int index = 0; index < size; index++) {
+            target[index] = get(index);
+        }
+    }
+
+    @Override
+    public boolean supportsOptimisticReads() {
+        // a lookup during grow() or clear() may see a new table before it is filled, and probe forever
+        return false;
+    }
+
+    @Override
+    public void flush() {
+        // not backed by a file
+    }
+}
@@ -0,0 +1,173 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A feed of rendered frames of a GameBoard for spectators.
+ *
+ * A background thread renders the board at most once per tick, and only if the board has changed
+ * and someone is watching. Every spectator is sent the same frame: a read-only direct buffer that is
+ * written to each spectator's channel without copying.
+ */
+public class SpectatorFeed {
+
+    /**
+     * An immutable rendered frame of the board.
+     */
+    public static final class Frame {
+        private final long version;
+        private final ByteBuffer bytes;
+
+        /*
+         * Abstraction function:
+         *  AF(version, bytes) = the text of the board at version, as sent by 'look', followed by a newline
+         * Rep invariant:
+         *  bytes is read-only, with position 0
+         * Rep exposure:
+         *  bytes is read-only, and getBytes() only returns duplicates of it
+         * Thread safety:
+         *  immutable
+         */
+
+        private Frame(long version, ByteBuffer bytes) {
+            this.version = version;
+            this.bytes = bytes;
+        }
+
+        /**
+         * @return version of the board in this frame, as given by GameBoard.getVersion()
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * @return a new read-only view of the bytes of this frame, from the start; sharing the
+         *         bytes with every other view, so that it costs no copy
+         */
+        public ByteBuffer getBytes() {
+            return bytes.duplicate();
+        }
+    }
+
+    private final GameBoard board;
+    private final long tickNanos;
+    private final AtomicInteger spectators = new AtomicInteger();
+    private final Thread renderer;
+    private Frame latest = null;
+
+    /*
+     * Abstraction function:
+     *  AF(board, tickNanos, spectators, latest) = a feed of frames of board, rendered at most once
+     *                                             every tickNanos while spectators > 0, where latest
+     *                                             is the most recent frame, or null if there is none
+     * Rep invariant:
+     *  tickNanos > 0, spectators >= 0
+     *  the versions of the frames in latest never decrease
+     * Rep exposure:
+     *  board is shared with the server, which is fine since GameBoard is thread-safe;
+     *  frames are immutable
+     * Thread safety:
+     *  latest is guarded by the lock on this feed; spectators is atomic;
+     *  only the renderer thread renders and publishes frames
+     */
+
+    /**
+     * Makes a new feed and starts its renderer thread.
+     *
+     * @param board board to render
+     * @param framesPerSecond maximum number of frames rendered per second, requires framesPerSecond > 0
+     */
+    public SpectatorFeed(GameBoard board, double framesPerSecond) {
+        assert framesPerSecond > 0;
+        this.board = board;
+        this.tickNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / framesPerSecond));
+        this.renderer = new Thread(this::render, "spectator-feed");
+        this.renderer.setDaemon(true);
+        this.renderer.start();
+    }
+
+    /**
+     * Body of the renderer thread: once per tick, renders a new frame if the board changed and
+     * someone is watching.
+     */
+    private void render() {
+        long rendered = -1;
+        try {
+            while (true) {
+                TimeUnit.NANOSECONDS.sleep(tickNanos);
+                long version = board.getVersion();
+                if (spectators.get() == 0 || version == rendered) {
+                    continue;
+                }
+                // if the board changes while rendering, the frame is newer than version, and is
+                // simply rendered again on the next tick
+                byte[] text = (board.toString() + "\n").getBytes(StandardCharsets.UTF_8);
+                ByteBuffer bytes = ByteBuffer.allocateDirect(text.length);
+                bytes.put(text).flip();
+                publish(new Frame(version, bytes.asReadOnlyBuffer()));
+                rendered = version;
+            }
+        } catch (InterruptedException ie) {
+            // feed was closed
+        }
+    }
+
+    /**
+     * Publishes a new frame and wakes up all spectators waiting for it.
+     *
+     * @param frame the new frame
+     */
+    private synchronized void publish(Frame frame) {
+        latest = frame;
+        notifyAll();
+    }
+
+    /**
+     * Records that a spectator started watching; frames are only rendered while someone watches.
+     */
+    public void addSpectator() {
+        spectators.incrementAndGet();
+    }
+
+    /**
+     * Records that a spectator stopped watching.
+     */
+    public void removeSpectator() {
+        spectators.decrementAndGet();
+    }
+
+    /**
+     * Waits for a frame that is newer than the one a spectator already has.
+     *
+     * @param afterVersion version of the frame the spectator already has, or -1 if none
+     * @param timeoutMillis maximum time to wait in milliseconds, requires timeoutMillis > 0
+     * @return the latest frame, if its version is greater than afterVersion; or null if there was
+     *         no such frame within the timeout
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized Frame awaitFrame(long afterVersion, long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (latest == null || latest.getVersion() <= afterVersion) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return null;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return latest;
+    }
+
+    /**
+     * Stops the renderer thread.
+     */
+    public void close() {
+        renderer.interrupt();
+    }
+}
@@ -0,0 +1,81 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free token bucket that lets through at most ratePerSecond requests per second on average,
+ * with bursts of up to burst requests.
+ *
+ * The bucket is kept as a single "theoretical arrival time" (the time at which the bucket would be
+ * full again), which is equivalent to counting tokens but can be updated with one compare-and-set.
+ */
+public class TokenBucket {
+
+    private final long nanosPerToken;
+    private final long burstNanos;
+    private final AtomicLong fullAt;
+
+    /*
+     * Abstraction function:
+     *  AF(nanosPerToken, burstNanos, fullAt) = a bucket holding up to burstNanos / nanosPerToken
+     *                                          tokens, that gains one token every nanosPerToken
+     *                                          nanoseconds, and that currently holds
+     *                                          (burstNanos - max(0, fullAt - now)) / nanosPerToken
+     *                                          tokens, where now is System.nanoTime()
+     * Rep invariant:
+     *  nanosPerToken > 0
+     *  burstNanos >= nanosPerToken
+     * Rep exposure:
+     *  all fields are private; nanosPerToken and burstNanos are final and primitive
+     * Thread safety:
+     *  fullAt is only changed by compare-and-set, so concurrent acquires never lose tokens
+     */
+
+    /**
+     * Makes a full token bucket.
+     *
+     * @param ratePerSecond average number of tokens per second, requires ratePerSecond > 0
+     * @param burst maximum number of tokens in the bucket, requires burst >= 1
+     */
+    public TokenBucket(double ratePerSecond, int burst) {
+        assert ratePerSecond > 0 && burst >= 1;
+        this.nanosPerToken = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond));
+        this.burstNanos = nanosPerToken * burst;
+        this.fullAt = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Takes a token from the bucket if there is one.
+     *
+     * @return 0 if a token was taken, or else how many nanoseconds to wait before a token
+     *         will be available
+     */
+    public long tryAcquire() {
+        while (true) {
+            long now = System.nanoTime();
+            long current = fullAt.get();
+            long next = Math.max(current, now) + nanosPerToken;
+            if (next - now > burstNanos) {
+                return next - now - burstNanos;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Takes a token from the bucket, waiting until one is available.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void acquire() throws InterruptedException {
+        for (long wait = tryAcquire(); wait > 0; wait = tryAcquire()) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+/**
+ * Bounded history of the states of a game, for undo and redo: a list of states, the oldest of
+ * which are evicted once there are more than the capacity, and a cursor at the current state.
+ * Moving the cursor any number of states back or forward takes constant time; recording a new
+ * state after moving back drops the states that could have been redone.
+ *
+ * @param <T> type of the states, which should be immutable
+ */
+class UndoHistory<T> {
+
+    private final Object[] states;
+    private long first;
+    private long current;
+    private long last;
+
+    /*
+     * Abstraction function:
+     *  AF(states, first, current, last) = the list of states numbered first..last, where state n is
+     *      states[n % states.length], and the current state is number current
+     * Rep invariant:
+     *  states.length >= 1
+     *  0 <= first <= current <= last < first + states.length
+     *  states[n % states.length] != null for first <= n <= last, and null for the other slots
+     * Rep exposure:
+     *  states is private and never returned; the states themselves are shared with the caller,
+     *      and should be immutable
+     * Thread safety:
+     *  not thread-safe; a GameBoard only uses its history while holding its lock
+     */
+
+    /**
+     * Makes a history with one state.
+     * @param capacity most states kept, requires capacity >= 1
+     * @param initial the current state
+     */
+    UndoHistory(int capacity, T initial) {
+        assert capacity >= 1 && initial != null;
+        states = new Object[capacity];
+        states[0] = initial;
+        checkRep();
+    }
+
+    /**
+     * Checks that the cursor is within the states kept.
+     */
+    private void checkRep() {
+        assert 0 <= first && first <= current && current <= last && last < first + states.length;
+    }
+
+    /**
+     * @param n number of a state, requires first <= n <= last
+     * @return state n
+     */
+    @SuppressWarnings("unchecked")
+    private T state(long n) {
+        return (T) states[(int) (n % states.length)];
+    }
+
+    /**
+     * Records a new current state after the current one, dropping the states after the current
+     * one, and the oldest state if the history is full.
+     * @param state new current state, not null
+     */
+    void record(T state) {
+        assert state != null;
+        // dropped in turn, so that the garbage collector can free what only they use
+        for (long n = current + 1; n <= last; n++) {
+            states[(int) (n % states.length)] = null;
+        }
+        current++;
+        last = current;
+        if (last - first == states.length) {
+            // the slot of the oldest state is taken by the new one
+            first++;
+        }
+        states[(int) (current % states.length)] = state;
+        checkRep();
+    }
+
+    /**
+     * Moves the cursor back, at most to the oldest state kept.
+     * @param steps number of states to move back, requires steps >= 0
+     * @return the new current state, or null if the cursor did not move
+     */
+    T undo(int steps) {
+        assert steps >= 0;
+        long target = Math.max(first, current - steps);
+        return moveTo(target);
+    }
+
+    /**
+     * Moves the cursor forward, at most to the newest state kept.
+     * @param steps number of states to move forward, requires steps >= 0
+     * @return the new current state, or null if the cursor did not move
+     */
+    T redo(int steps) {
+        assert steps >= 0;
+        long target = Math.min(last, current + steps);
+        return moveTo(target);
+    }
+
+    /**
+     * @param target number of a state kept
+     * @return state target, now the current state, or null if it already was
+     */
+    private T moveTo(long target) {
+        if (target == current) {
+            return null;
+        }
+        current = target;
+        checkRep();
+        return state(current);
+    }
+
+    /**
+     * @return number of states before the current one that undo() can go back to
+     */
+    int undoable() {
+        return (int) (current - first);
+    }
+
+    /**
+     * @return number of states after the current one that redo() can go forward to
+     */
+    int redoable() {
+        return (int) (last - current);
+    }
+}
@@ -0,0 +1,238 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import java.util.Arrays;
+
+/**
+ * Cell storage with versions: snapshot() freezes the bytes as they are in constant time, and
+ * restore() brings back any frozen version in constant time, for undo and redo of moves.
+ *
+ * <p>The bytes are kept in tiles of TILE_SIZE consecutive indices, the leaves of a persistent
+ * tree with FANOUT children per node. Versions share their tiles and nodes: after a snapshot, the
+ * first set() of a byte copies its tile and the nodes on the path to it, and later sets of the
+ * same tile change the copy in place, until the next snapshot. A version thus costs memory in
+ * proportion to the number of tiles changed since the last one, times the depth of the tree
+ * (logarithmic in the size), however large the board. Like ChunkedCellStorage, a tile of
+ * consecutive indices holds part of a row rather than a square, so that finding it takes shifts.
+ * Subtrees whose bytes are all 0 are null, so that clear() takes constant time as well.
+ */
+class VersionedCellStorage implements CellStorage {
+
+    // bytes per tile, a power of two
+    private static final int TILE_BITS = 6;
+    private static final int TILE_SIZE = 1 << TILE_BITS;
+    private static final int TILE_MASK = TILE_SIZE - 1;
+    // children per node, a power of two
+    private static final int FANOUT_BITS = 5;
+    private static final int FANOUT = 1 << FANOUT_BITS;
+    private static final int FANOUT_MASK = FANOUT - 1;
+
+    /**
+     * Immutable frozen state of a VersionedCellStorage, made by snapshot().
+     */
+    static final class Version {
+        private final Node root;
+
+        /**
+         * @param root root of the frozen tree, which is never changed again, or null
+         */
+        private Version(Node root) {
+            this.root = root;
+        }
+    }
+
+    /**
+     * Node of the tree: an inner node with FANOUT children, or a tile of TILE_SIZE bytes.
+     */
+    private static final class Node {
+        // the node may only be changed in place while the storage's edit is still this
+        private final long edit;
+        // children of an inner node, each null if all its bytes are 0; null for a tile
+        private final Node[] children;
+        // bytes of a tile; null for an inner node
+        private final byte[] tile;
+
+        /**
+         * @param edit edit of the storage that makes the node
+         * @param children children of an inner node, or null
+         * @param tile bytes of a tile, or null
+         */
+        private Node(long edit, Node[] children, byte[] tile) {
+            this.edit = edit;
+            this.children = children;
+            this.tile = tile;
+        }
+    }
+
+    private final int size;
+    private final int levels;
+    private Node root = null;
+    private long edit = 0;
+    private long nodesCopied = 0;
+
+    /*
+     * Abstraction function:
+     *  AF(size, levels, root) = size bytes, where the byte at index is found from root by taking,
+     *      at each of the levels inner nodes, child (index >>> shift(level)) & FANOUT_MASK, and
+     *      then byte index & TILE_MASK of the tile reached; or 0 if a null node is reached
+     *  the versions made by snapshot() are the trees whose roots they hold
+     * Rep invariant:
+     *  size >= 0, levels >= 1, and size <= 1 << shift(levels + 1), so that every index has a path
+     *  the nodes at the levels levels are inner nodes and their children at level 0 are tiles
+     *  every node reachable from a Version has edit < edit, and is never changed
+     * Rep exposure:
+     *  size and levels are final and primitive; root and the nodes are private, and only handed
+     *      out inside a Version, which has no methods
+     * Thread safety:
+     *  not thread-safe, see CellStorage; get() may race with set(), clear() and restore(), see
+     *  supportsOptimisticReads(). Versions are immutable, and may be kept by any thread.
+     */
+
+    /**
+     * Makes storage of size bytes, all 0, with no tile allocated yet.
+     * @param size number of bytes, requires size >= 0
+     */
+    VersionedCellStorage(int size) {
+        assert size >= 0;
+        this.size = size;
+        int levels = 1;
+        while (levels * FANOUT_BITS + TILE_BITS < 31 && (long) size > 1L << (levels * FANOUT_BITS + TILE_BITS)) {
+            levels++;
+        }
+        this.levels = levels;
+    }
+
+    /**
+     * @param level level of an inner node, 1 for the parents of tiles
+     * @return how far an index is shifted to find its child in a node at that level
+     */
+    private static int shift(int level) {
+        return TILE_BITS + (level - 1) * FANOUT_BITS;
+    }
+
+    /**
+     * Freezes the bytes as they are now, in constant time: from now on, set() copies each tile,
+     * and the nodes on the path to it, before it first changes it.
+     * @return the bytes as they are now, for restore()
+     */
+    Version snapshot() {
+        edit++;
+        return new Version(root);
+    }
+
+    /**
+     * Sets every byte as it was in a version, in constant time.
+     * @param version version made by snapshot() of this storage
+     */
+    void restore(Version version) {
+        root = version.root;
+        // the nodes of the old tree that are not in version are dropped, so no node of this
+        // edit is reachable any more; a new edit keeps version frozen all the same
+        edit++;
+    }
+
+    /**
+     * @return number of tiles and inner nodes allocated by set() so far, including the copies
+     *         made for versions
+     */
+    long nodesCopied() {
+        return nodesCopied;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public byte get(int index) {
+        Node node = root;
+        for (int level = levels; level >= 1 && node != null; level--) {
+            node = node.children[(index >>> shift(level)) & FANOUT_MASK];
+        }
+        return node == null ? 0 : node.tile[index & TILE_MASK];
+    }
+
+    /**
+     * @param node a node or null
+     * @param tile true if node is at level 0
+     * @return node, if it may be changed in place, or else a new copy of it (all 0 if null)
+     */
+    private Node owned(Node node, boolean tile) {
+        if (node != null && node.edit == edit) {
+            return node;
+        }
+        nodesCopied++;
+        if (tile) {
+            return new Node(edit, null, node == null ? new byte[TILE_SIZE] : node.tile.clone());
+        }
+        return new Node(edit, node == null ? new Node[FANOUT] : node.children.clone(), null);
+    }
+
+    @Override
+    public void set(int index, byte value) {
+        if (get(index) == value) {
+            // neither copies a tile of a version nor allocates one for a 0
+            return;
+        }
+        root = owned(root, false);
+        Node node = root;
+        for (int level = levels; level >= 1; level--) {
+            int slot = (index >>> shift(level)) & FANOUT_MASK;
+            Node child = owned(node.children[slot], level == 1);
+            node.children[slot] = child;
+            node = child;
+        }
+        node.tile[index & TILE_MASK] = value;
+    }
+
+    @Override
+    public void clear() {
+        root = null;
+    }
+
+    @Override
+    public void copyTo(byte[] target) {
+        assert target.length == size;
+        Arrays.fill(target, (byte) 0);
+        copyTo(root, levels, 0, target);
+    }
+
+    /**
+     * Copies the tiles under a node.
+     * @param node node, or null if its bytes are all 0
+     * @param level level of node
+     * @param start index of the first byte under node
+     * @param target array to copy into
+     */
+    private void copyTo(Node node, int level, int start, byte[] target) {
+        if (node == null) {
+            return;
+        }
+        if (level == 0) {
+            System.arraycopy(node.tile, 0, target, start, Math.min(TILE_SIZE, size - start));
+            return;
+        }
+        for (int slot = 0; slot < FANOUT; slot++) {
+            long first = start + ((long) slot << shift(level));
+            if (first >= size) {
+                break;
+            }
+            copyTo(node.children[slot], level - 1, (int) first, target);
+        }
+    }
+
+    @Override
+    public boolean supportsOptimisticReads() {
+        // a node is either still null, which reads as 0, or whole: its arrays are final fields,
+        // copied before the node is published
+        return true;
+    }
+
+    @Override
+    public void flush() {
+        // not backed by a file
+    }
+}
@@ -0,0 +1,88 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.Test;
+
+/**
+ * Tests CommandEvent, as committed by a CommandTracer with events on. Built with CommandEvent from
+ * src-jfr, since it needs jdk.jfr too.
+ */
+public class CommandEventTest {
+    /*
+     * Testing Strategy:
+     *  tracing: events only
+     *  recording: none running; running --> one event per command, with its phases
+     */
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // covers events only, with no recording running
+    @Test
+    public void testNoRecording() {
+        assertTrue(CommandTracer.eventsSupported());
+        CommandTracer tracer = new CommandTracer(-1, true, null);
+        assertTrue(tracer.isTracing());
+        tracer.begin("dig 3 4");
+        tracer.mark(CommandTracer.APPLIED);
+        tracer.end();
+        assertEquals(1, tracer.recent().size());
+    }
+
+    // covers events only, with a recording running
+    @Test
+    public void testEvents() throws IOException, InterruptedException {
+        CommandTracer tracer = new CommandTracer(-1, true, null);
+        Path file = Files.createTempFile("commands", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("minesweeper.Command");
+            recording.start();
+            tracer.begin("dig 3 4");
+            tracer.mark(CommandTracer.PARSED);
+            tracer.mark(CommandTracer.LOCKED);
+            Thread.sleep(5);
+            tracer.mark(CommandTracer.APPLIED);
+            tracer.mark(CommandTracer.RENDERED);
+            tracer.end();
+            tracer.begin("look");
+            tracer.mark(CommandTracer.RENDERED);
+            tracer.end();
+            recording.stop();
+            recording.dump(file);
+            List<RecordedEvent> events = new ArrayList<>();
+            for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+                if (event.getEventType().getName().equals("minesweeper.Command")) {
+                    events.add(event);
+                }
+            }
+            assertEquals(2, events.size());
+            RecordedEvent dig = events.get(0).getString("command").equals("dig 3 4") ? events.get(0) : events.get(1);
+            assertEquals("dig 3 4", dig.getString("command"));
+            assertTrue("apply took the sleep", dig.getDuration("apply").compareTo(Duration.ofMillis(5)) >= 0);
+            assertEquals("skipped phase", Duration.ZERO, dig.getDuration("batch"));
+            Duration sum = dig.getDuration("parse").plus(dig.getDuration("lock")).plus(dig.getDuration("apply"))
+                    .plus(dig.getDuration("render"));
+            assertEquals("phases add up to the total", dig.getDuration("total"), sum);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.net.Socket;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Tests AdmissionQueue.
+ */
+public class AdmissionQueueTest {
+    /*
+     * Testing Strategy:
+     *  max connections: 0 (no limit), > 0
+     *  max waiting: 0, > 0
+     *  offer: below the max --> admitted; at the max --> in line, position 1, > 1; line full --> refused
+     *  release: nobody in line --> null; someone in line --> first in line, in order
+     *  clearWaiting: empty line, several in line
+     */
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // covers no limit, empty line cleared
+    @Test
+    public void testNoLimit() {
+        AdmissionQueue admission = new AdmissionQueue(0, 0);
+        for (int connection = 0; connection < 1000; connection++) {
+            assertEquals(0, admission.offer(new Socket()));
+        }
+        assertEquals(1000, admission.admitted());
+        assertNull(admission.release());
+        assertEquals(999, admission.admitted());
+        assertEquals(Arrays.asList(), admission.clearWaiting());
+    }
+
+    // covers max waiting 0: refused at once when full
+    @Test
+    public void testNoLine() {
+        AdmissionQueue admission = new AdmissionQueue(2, 0);
+        assertEquals(0, admission.offer(new Socket()));
+        assertEquals(0, admission.offer(new Socket()));
+        assertEquals(-1, admission.offer(new Socket()));
+        assertNull(admission.release());
+        assertEquals(0, admission.offer(new Socket()));
+        assertEquals(2, admission.admitted());
+    }
+
+    // covers positions 1 and > 1, line full, release in order
+    @Test
+    public void testLine() {
+        AdmissionQueue admission = new AdmissionQueue(1, 2);
+        assertEquals(0, admission.offer(new Socket()));
+        Socket second = new Socket();
+        Socket third = new Socket();
+        assertEquals(1, admission.offer(second));
+        assertEquals(2, admission.offer(third));
+        assertEquals(-1, admission.offer(new Socket()));
+        assertSame(second, admission.release());
+        assertEquals(1, admission.waiting());
+        assertEquals(2, admission.offer(new Socket()));
+        assertSame(third, admission.release());
+        assertEquals(1, admission.admitted());
+    }
+
+    // covers clearing several in line
+    @Test
+    public void testClearWaiting() {
+        AdmissionQueue admission = new AdmissionQueue(1, 5);
+        admission.offer(new Socket());
+        Socket second = new Socket();
+        Socket third = new Socket();
+        admission.offer(second);
+        admission.offer(third);
+        assertEquals(Arrays.asList(second, third), admission.clearWaiting());
+        assertEquals(0, admission.waiting());
+        assertNull(admission.release());
+        assertEquals(0, admission.admitted());
+    }
+}
@@ -0,0 +1,143 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compares a GameServer that applies each client's commands on the client's own thread, under the
+ * board's lock, with one that applies every command on the board owner's thread in batches
+ * (--batch), at 1 000 to 10 000 clients. Not a JUnit test: run main() directly, with assertions
+ * disabled.
+ *
+ * <p>The clients run on one thread with non-blocking sockets. Each client sends a random 'flag'
+ * or 'deflag' on a SIZE x SIZE board, waits for the board in answer, and sends the next, for
+ * MEASURE_MILLIS after WARMUP_MILLIS. For each number of clients and server, prints:
+ * <pre>
+ *      cmds/s     commands answered per second
+ *      p50 ms     median milliseconds from sending a command to reading its whole answer
+ *      p99 ms     99th percentile of the same
+ *      max ms     longest wait for an answer
+ * </pre>
+ */
+public class BatchBenchmark {
+
+    private static final InetSocketAddress ADDRESS = new InetSocketAddress("127.0.0.1", 4032);
+    private static final int[] CLIENTS = { 1000, 3000, 10000 };
+    private static final int SIZE = 16;
+    private static final long WARMUP_MILLIS = 2000;
+    private static final long MEASURE_MILLIS = 5000;
+    private static final int MAX_SAMPLES = 1 << 22;
+
+    /** A client, and the answer it waits for. */
+    private static class Client {
+        private SocketChannel channel;
+        // lines of the answer still to read
+        private int lines = 0;
+        private long sent = 0;
+    }
+
+    /**
+     * Runs clients against a server, and prints a line.
+     *
+     * @param label first column of the line
+     * @param clients number of clients
+     */
+    private static void measure(String label, int clients) throws IOException {
+        Random random = new Random(clients);
+        Selector selector = Selector.open();
+        for (int i = 0; i < clients; i++) {
+            Client client = new Client();
+            client.channel = SocketChannel.open(ADDRESS);
+            // the welcome line is read as the answer to a first command
+            client.lines = 1;
+            client.channel.configureBlocking(false);
+            client.channel.register(selector, SelectionKey.OP_READ, client);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        long[] samples = new long[MAX_SAMPLES];
+        int count = 0;
+        long answered = 0;
+        long start = System.nanoTime();
+        long measureStart = start + WARMUP_MILLIS * 1_000_000;
+        long end = measureStart + MEASURE_MILLIS * 1_000_000;
+        while (System.nanoTime() < end) {
+            selector.select(10);
+            for (SelectionKey key : selector.selectedKeys()) {
+                Client client = (Client) key.attachment();
+                buffer.clear();
+                int read = client.channel.read(buffer);
+                if (read < 0) {
+                    throw new IOException("server disconnected a client");
+                }
+                for (int i = 0; i < read; i++) {
+                    if (buffer.get(i) != '\n' || --client.lines > 0) {
+                        continue;
+                    }
+                    long now = System.nanoTime();
+                    if (client.sent >= measureStart) {
+                        answered++;
+                        if (count < samples.length) {
+                            samples[count++] = now - client.sent;
+                        }
+                    }
+                    String command = (random.nextBoolean() ? "flag " : "deflag ") + random.nextInt(SIZE) + " "
+                            + random.nextInt(SIZE) + "\n";
+                    client.lines = SIZE;
+                    client.sent = now;
+                    client.channel.write(ByteBuffer.wrap(command.getBytes(StandardCharsets.US_ASCII)));
+                }
+            }
+            selector.selectedKeys().clear();
+        }
+        for (SelectionKey key : selector.keys()) {
+            key.channel().close();
+        }
+        selector.close();
+        Arrays.sort(samples, 0, count);
+        System.out.printf("%7d %-14s %10.0f %10.2f %10.2f %10.2f%n", clients, label,
+                answered / (MEASURE_MILLIS / 1e3), count == 0 ? 0 : samples[count / 2] / 1e6,
+                count == 0 ? 0 : samples[(int) (count * 0.99)] / 1e6, count == 0 ? 0 : samples[count - 1] / 1e6);
+    }
+
+    /**
+     * Runs the benchmark and prints a table.
+     *
+     * @param args unused
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        System.out.printf("%7s %-14s %10s %10s %10s %10s%n", "clients", "server", "cmds/s", "p50 ms", "p99 ms",
+                "max ms");
+        for (int clients : CLIENTS) {
+            for (String mode : new String[] { "synchronized", "batch 0", "batch 5ms" }) {
+                ServerOptions options = new ServerOptions().setAcceptBacklog(clients).setDrainTimeoutMillis(0);
+                if (mode.equals("batch 0")) {
+                    options.setBatching(0, 0);
+                } else if (mode.equals("batch 5ms")) {
+                    options.setBatching(5, 0);
+                }
+                GameServer server = new GameServer(ADDRESS.getPort(), new GameBoard(SIZE, SIZE, 6031), options);
+                Thread serving = new Thread(() -> {
+                    try {
+                        server.serve();
+                    } catch (IOException ioe) {
+                        ioe.printStackTrace();
+                    }
+                });
+                serving.start();
+                measure(mode, clients);
+                server.shutdown();
+                serving.join();
+            }
+        }
+    }
+}
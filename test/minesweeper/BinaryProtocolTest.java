@@ -0,0 +1,146 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+/**
+ * Tests the BinaryProtocol class.
+ */
+public class BinaryProtocolTest {
+    
+    /* Testing strategy
+     * writeVarint(), readVarint():
+     *  value: 0, 1 byte, >1 byte, largest long
+     * zigzag(), unzigzag():
+     *  value: 0, positive, negative, Integer.MIN_VALUE, Integer.MAX_VALUE
+     * writeFrame(), readFrame():
+     *  payload: empty, non-empty; frame: within maxLength, too large
+     * frame():
+     *  payload: empty, longer than one byte of length prefix
+     * encodeBoard(), decodeBoard():
+     *  first encoding, full requested --> FULL
+     *  few changes --> DELTA; no changes --> DELTA with no changes; many changes --> FULL
+     *  number of cells: even, odd
+     */
+    
+    // covers values of 0, 1 byte, >1 byte, largest long
+    @Test
+    public void testVarint() throws IOException {
+        long[] values = { 0, 1, 127, 128, 300, 1L << 35, Long.MAX_VALUE, -1 };
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (long value : values) {
+            BinaryProtocol.writeVarint(out, value);
+        }
+        assertEquals("small values take one byte", 1 + 1 + 1 + 2 + 2 + 6 + 9 + 10, out.size());
+        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+        for (long value : values) {
+            assertEquals(value, BinaryProtocol.readVarint(in));
+        }
+    }
+    
+    // covers 0, positive, negative, extremes
+    @Test
+    public void testZigzag() {
+        int[] values = { 0, 1, -1, 2, -2, Integer.MAX_VALUE, Integer.MIN_VALUE };
+        long[] encoded = { 0, 2, 1, 4, 3, 0xFFFFFFFEL, 0xFFFFFFFFL };
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(encoded[i], BinaryProtocol.zigzag(values[i]));
+            assertEquals(values[i], BinaryProtocol.unzigzag(encoded[i]));
+        }
+    }
+    
+    // covers empty and non-empty payloads within maxLength
+    @Test
+    public void testFrames() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryProtocol.writeFrame(out, new byte[0]);
+        BinaryProtocol.writeFrame(out, new byte[] { 1, 2, 3 });
+        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+        assertArrayEquals(new byte[0], BinaryProtocol.readFrame(in, 3));
+        assertArrayEquals(new byte[] { 1, 2, 3 }, BinaryProtocol.readFrame(in, 3));
+    }
+    
+    // covers frame() of empty payload, and of a payload whose length takes two bytes
+    @Test
+    public void testFrameBuffer() throws IOException {
+        for (byte[] payload : new byte[][] { new byte[0], new byte[200] }) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            BinaryProtocol.writeFrame(out, payload);
+            ByteBuffer frame = BinaryProtocol.frame(payload);
+            assertEquals(0, frame.position());
+            byte[] bytes = new byte[frame.remaining()];
+            frame.get(bytes);
+            assertArrayEquals(out.toByteArray(), bytes);
+            assertArrayEquals(payload, BinaryProtocol.readFrame(new ByteArrayInputStream(bytes), 200));
+        }
+    }
+    
+    // covers frame larger than maxLength
+    @Test(expected=IOException.class)
+    public void testFrameTooLarge() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryProtocol.writeFrame(out, new byte[4]);
+        BinaryProtocol.readFrame(new ByteArrayInputStream(out.toByteArray()), 3);
+    }
+    
+    // covers first encoding, few changes, no changes, full requested, odd number of cells
+    @Test
+    public void testEncodeBoardFullAndDelta() throws IOException {
+        GameBoard board = new GameBoard(new File("test/minesweeper/boards/test_board_5"));
+        BinaryProtocol protocol = new BinaryProtocol(board);
+        byte[] client = new byte[49];
+        byte[] expected = new byte[49];
+        
+        byte[] payload = protocol.encodeBoard(BinaryProtocol.STATUS_BOARD, false);
+        assertEquals("first encoding is FULL", BinaryProtocol.FULL, payload[0] & 0xFF);
+        assertEquals("FULL packs two cells per byte", 2 + 1 + 1 + 1 + 25, payload.length);
+        BinaryProtocol.decodeBoard(payload, client);
+        board.snapshotVisible(expected);
+        assertArrayEquals(expected, client);
+        
+        board.dig(3, 1);
+        payload = protocol.encodeBoard(BinaryProtocol.STATUS_BOARD, false);
+        assertEquals("one change is a DELTA", BinaryProtocol.DELTA, payload[0] & 0xFF);
+        assertEquals("one change takes two bytes", 2 + 1 + 1 + 2, payload.length);
+        BinaryProtocol.decodeBoard(payload, client);
+        board.snapshotVisible(expected);
+        assertArrayEquals(expected, client);
+        assertEquals("dug cell has 1 neighbor with a bomb", 1, client[1 * 7 + 3]);
+        
+        payload = protocol.encodeBoard(BinaryProtocol.STATUS_BOARD, false);
+        assertEquals("no changes is an empty DELTA", BinaryProtocol.DELTA, payload[0] & 0xFF);
+        assertEquals("empty DELTA", 0, payload[3]);
+        
+        payload = protocol.encodeBoard(BinaryProtocol.STATUS_BOARD, true);
+        assertEquals("full requested", BinaryProtocol.FULL, payload[0] & 0xFF);
+    }
+    
+    // covers many changes, status
+    @Test
+    public void testEncodeBoardManyChanges() throws IOException {
+        GameBoard board = new GameBoard(new File("test/minesweeper/boards/test_board_5"));
+        BinaryProtocol protocol = new BinaryProtocol(board);
+        byte[] client = new byte[49];
+        BinaryProtocol.decodeBoard(protocol.encodeBoard(BinaryProtocol.STATUS_BOARD, false), client);
+        
+        board.dig(4, 1);
+        byte[] payload = protocol.encodeBoard(BinaryProtocol.STATUS_BOOM, false);
+        assertEquals("flood fill of the whole board is FULL", BinaryProtocol.FULL, payload[0] & 0xFF);
+        assertEquals("status is sent", BinaryProtocol.STATUS_BOOM, BinaryProtocol.decodeBoard(payload, client));
+        byte[] expected = new byte[49];
+        board.snapshotVisible(expected);
+        assertArrayEquals(expected, client);
+        assertEquals("bomb at (0,6) is untouched", GameBoard.VISIBLE_UNTOUCHED, client[6 * 7]);
+    }
+}
@@ -0,0 +1,148 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.junit.Test;
+
+/**
+ * Tests BoardCompressor.
+ */
+public class BoardCompressorTest {
+    /*
+     * Testing Strategy:
+     *  board: 1x1, one row, one column, several rows; larger than one text chunk
+     *  cells: untouched, flagged, dug 0, dug 1-8; runs of 1 and >1, across rows
+     *  rendering: RLE, DEFLATE --> decodes to board.toString()
+     *  renderings: unchanged board --> new, equal rendering; changed board --> shows the change
+     */
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    /**
+     * Decodes an RLE rendering into the text of 'look'.
+     *
+     * @param rle the RLE rendering
+     * @return the text it encodes
+     */
+    static String decodeRle(String rle) {
+        String[] lines = rle.split("\n");
+        String[] header = lines[0].split(" ");
+        assertEquals("RLE", header[0]);
+        int cols = Integer.parseInt(header[1]);
+        StringBuilder text = new StringBuilder();
+        int index = 0;
+        for (String run : lines[1].split(" ")) {
+            char symbol = run.charAt(run.length() - 1);
+            int count = run.length() == 1 ? 1 : Integer.parseInt(run.substring(0, run.length() - 1));
+            for (int i = 0; i < count; i++, index++) {
+                if (index > 0) {
+                    text.append(index % cols == 0 ? '\n' : ' ');
+                }
+                text.append(symbol == '0' ? ' ' : symbol);
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Decodes a DEFLATE rendering into the text of 'look'.
+     *
+     * @param frame the DEFLATE rendering
+     * @return the text it encodes
+     */
+    static String decodeDeflate(ByteBuffer frame) throws DataFormatException {
+        byte[] bytes = new byte[frame.remaining()];
+        frame.get(bytes);
+        int newline = 0;
+        while (bytes[newline] != '\n') {
+            newline++;
+        }
+        String header = new String(bytes, 0, newline, StandardCharsets.US_ASCII);
+        assertTrue(header.startsWith("DEFLATE "));
+        int length = Integer.parseInt(header.substring("DEFLATE ".length()));
+        assertEquals(bytes.length, newline + 1 + length);
+        Inflater inflater = new Inflater();
+        inflater.setInput(bytes, newline + 1, length);
+        StringBuilder text = new StringBuilder();
+        byte[] buffer = new byte[1 << 16];
+        while ( ! inflater.finished()) {
+            int n = inflater.inflate(buffer);
+            text.append(new String(buffer, 0, n, StandardCharsets.US_ASCII));
+        }
+        inflater.end();
+        return text.toString();
+    }
+
+    /**
+     * Checks both renderings of a board after random moves.
+     */
+    private static void checkBoard(int cols, int rows, int moves) throws DataFormatException {
+        GameBoard board = new GameBoard(cols, rows, cols * 31 + rows);
+        BoardCompressor compressor = new BoardCompressor(board);
+        Random random = new Random(rows);
+        for (int move = 0; move < moves; move++) {
+            int x = random.nextInt(cols);
+            int y = random.nextInt(rows);
+            if (random.nextInt(4) == 0) {
+                board.flag(x, y);
+            } else {
+                board.dig(x, y);
+            }
+        }
+        assertEquals(board.toString(), decodeRle(compressor.rle()));
+        assertEquals(board.toString(), decodeDeflate(compressor.deflate()));
+    }
+
+    @Test
+    public void testRenderings() throws DataFormatException {
+        checkBoard(1, 1, 0);
+        checkBoard(1, 1, 1);
+        checkBoard(17, 1, 5);
+        checkBoard(1, 13, 5);
+        checkBoard(12, 12, 0);
+        checkBoard(12, 12, 20);
+        checkBoard(40, 30, 300);
+        // more than one chunk of text
+        checkBoard(300, 250, 4000);
+    }
+
+    @Test
+    public void testRle() {
+        GameBoard board = new GameBoard(4, 3, 1);
+        BoardCompressor compressor = new BoardCompressor(board);
+        assertEquals("RLE 4 3\n12-", compressor.rle());
+        board.flag(3, 0);
+        board.flag(0, 1);
+        assertEquals("RLE 4 3\n3- 2F 7-", compressor.rle());
+    }
+
+    @Test
+    public void testRerender() throws DataFormatException {
+        GameBoard board = new GameBoard(50, 50, 6031);
+        BoardCompressor compressor = new BoardCompressor(board);
+        String rle = compressor.rle();
+        ByteBuffer deflated = compressor.deflate();
+        String again = compressor.rle();
+        assertNotSame("new rendering", rle, again);
+        assertEquals(rle, again);
+        assertEquals(deflated, compressor.deflate());
+
+        board.flag(3, 3);
+        assertEquals(board.toString(), decodeRle(compressor.rle()));
+        assertEquals(board.toString(), decodeDeflate(compressor.deflate()));
+    }
+}
@@ -0,0 +1,152 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import org.junit.Test;
+
+/**
+ * Tests BoardExporter.
+ */
+public class BoardExporterTest {
+    /*
+     * Testing Strategy:
+     *  format: text, bombs, pgm, unknown --> IllegalArgumentException
+     *  board: 1 x 1, smaller than a chunk, several chunks with rows split across them; new, after
+     *      digs (openings and a bomb) and flags
+     *  output: channel, stream
+     *  board changes during the export --> -1; does not --> its version
+     */
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    /**
+     * @param board board to export
+     * @param format export format
+     * @return the bytes exported
+     */
+    private static byte[] export(GameBoard board, String format) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        assertEquals("unchanged board", board.getVersion(), BoardExporter.write(board, format, bytes));
+        return bytes.toByteArray();
+    }
+
+    // covers text of a 1 x 1 board, a small played board, and a board of several chunks
+    @Test
+    public void testText() throws IOException {
+        GameBoard one = new GameBoard(1, 1, 1);
+        assertEquals(one.toString(), new String(export(one, BoardExporter.TEXT), StandardCharsets.US_ASCII));
+        GameBoard small = new GameBoard(new File("test/minesweeper/boards/test_board_5"));
+        small.flag(4, 1);
+        small.dig(0, 0);
+        assertEquals(small.toString(), new String(export(small, BoardExporter.TEXT), StandardCharsets.US_ASCII));
+        GameBoard large = new GameBoard(301, 250, 6031);
+        for (int x = 0; x < 301; x += 37) {
+            large.dig(x, x % 250);
+            large.flag(x + 1, 200);
+        }
+        assertEquals(large.toString(), new String(export(large, BoardExporter.TEXT), StandardCharsets.US_ASCII));
+    }
+
+    // covers bombs of a board of several chunks, read back by GameBoard(File), after a bomb is dug
+    @Test
+    public void testBombs() throws IOException {
+        GameBoard board = new GameBoard(230, 300, 42);
+        File file = File.createTempFile("export", ".txt");
+        try {
+            try (OutputStream out = new FileOutputStream(file)) {
+                BoardExporter.write(board, BoardExporter.BOMBS, out);
+            }
+            GameBoard loaded = new GameBoard(file);
+            assertEquals(board.getBombsRemaining(), loaded.getBombsRemaining());
+            assertEquals(board.toString(), loaded.toString());
+            for (int x = 0; x < 230; x += 3) {
+                for (int y = 0; y < 300; y += 7) {
+                    assertEquals("same bombs", board.dig(x, y), loaded.dig(x, y));
+                }
+            }
+            assertEquals(board.toString(), loaded.toString());
+        } finally {
+            file.delete();
+        }
+        GameBoard small = new GameBoard(new File("test/minesweeper/boards/test_board_5"));
+        small.dig(4, 1);
+        String expected = "7 7\n" + String.join("", Collections.nCopies(6, "0 0 0 0 0 0 0\n")) + "1 0 0 0 0 0 0\n";
+        assertEquals("dug bomb is gone", expected, new String(export(small, BoardExporter.BOMBS),
+                StandardCharsets.US_ASCII));
+    }
+
+    // covers pgm of a played board
+    @Test
+    public void testPgm() throws IOException {
+        GameBoard small = new GameBoard(new File("test/minesweeper/boards/test_board_5"));
+        small.flag(4, 1);
+        small.dig(0, 0);
+        byte[] image = export(small, BoardExporter.PGM);
+        byte[] header = "P5\n7 7\n255\n".getBytes(StandardCharsets.US_ASCII);
+        assertEquals(header.length + 49, image.length);
+        for (int i = 0; i < header.length; i++) {
+            assertEquals(header[i], image[i]);
+        }
+        // row 0 is "      1 - 1  " and row 6 is "- 1          "
+        assertEquals("dug, no bombs next to it", (byte) 255, image[header.length]);
+        assertEquals("dug, 1 bomb next to it", (byte) 224, image[header.length + 3]);
+        assertEquals("untouched", 64, image[header.length + 4]);
+        assertEquals("flagged", 0, image[header.length + 7 + 4]);
+        assertEquals("untouched", 64, image[header.length + 6 * 7]);
+    }
+
+    // covers unknown format
+    @Test(expected=IllegalArgumentException.class)
+    public void testUnknownFormat() throws IOException {
+        BoardExporter.write(new GameBoard(3, 3, 1), "png", new ByteArrayOutputStream());
+    }
+
+    // covers a board changed during the export, written to a channel
+    @Test
+    public void testChangedDuringExport() throws IOException {
+        GameBoard board = new GameBoard(400, 200, 1);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        WritableByteChannel stream = Channels.newChannel(bytes);
+        WritableByteChannel changing = new WritableByteChannel() {
+            private int writes = 0;
+            @Override
+            public int write(ByteBuffer src) throws IOException {
+                if (++writes == 2) {
+                    // while the second chunk is written, flag a cell of the last one
+                    board.flag(399, 199);
+                }
+                return stream.write(src);
+            }
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+            @Override
+            public void close() {
+            }
+        };
+        assertEquals("board changed", -1, BoardExporter.write(board, BoardExporter.TEXT, changing));
+        byte[] text = bytes.toByteArray();
+        assertEquals("last chunk shows the flag", 'F', text[text.length - 1]);
+        assertArrayEquals("text of the board after the flag", board.toString().getBytes(StandardCharsets.US_ASCII),
+                text);
+    }
+}
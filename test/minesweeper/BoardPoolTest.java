@@ -0,0 +1,91 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests methods of the BoardPool class.
+ */
+public class BoardPoolTest {
+    
+    /* Testing strategy
+     * take():
+     *  pool: filled by the background thread, empty
+     *  output: fresh board of the pool's size
+     * 
+     * recycle():
+     *  board: played, cleared
+     *  pool: has room, full
+     * 
+     * generator: none, NoGuessGenerator
+     */
+    
+    /**
+     * @param board board to check
+     * @return true iff every cell of board is untouched and no bombs were hit
+     */
+    private static boolean isFresh(GameBoard board) {
+        for (int x = 0; x < board.getCols(); x++) {
+            for (int y = 0; y < board.getRows(); y++) {
+                if ( ! board.getStatus(x, y).equals("untouched")) {
+                    return false;
+                }
+            }
+        }
+        return board.getBombsHit() == 0 && board.getFlagCount() == 0;
+    }
+    
+    // covers take() from a pool that is filled or empty
+    @Test
+    public void testTake() throws InterruptedException {
+        BoardPool pool = new BoardPool(6, 4, 2);
+        for (int i = 0; i < 10; i++) {
+            GameBoard board = pool.take();
+            assertEquals("board has the pool's columns", 6, board.getCols());
+            assertEquals("board has the pool's rows", 4, board.getRows());
+            assertTrue("board is fresh", isFresh(board));
+        }
+        pool.close();
+    }
+    
+    // covers recycle() of played and cleared boards, into a pool with room or full
+    @Test
+    public void testRecycle() throws InterruptedException {
+        BoardPool pool = new BoardPool(6, 4, 2);
+        for (int i = 0; i < 10; i++) {
+            GameBoard board = pool.take();
+            board.flag(0, 0);
+            for (int x = 0; x < 6; x++) {
+                for (int y = 0; y < 4; y++) {
+                    board.dig(x, y);
+                }
+            }
+            pool.recycle(board);
+        }
+        Thread.sleep(100);
+        for (int i = 0; i < 10; i++) {
+            assertTrue("recycled board is fresh", isFresh(pool.take()));
+        }
+        pool.close();
+    }
+    
+    // covers take() and recycle() with a NoGuessGenerator
+    @Test
+    public void testNoGuess() throws InterruptedException {
+        NoGuessGenerator generator = new NoGuessGenerator(8, 8, 4, 4, 2, 1000);
+        BoardPool pool = new BoardPool(8, 8, generator, 2);
+        for (int i = 0; i < 4; i++) {
+            GameBoard board = pool.take();
+            assertTrue("board is fresh", isFresh(board));
+            assertEquals("start cell is an opening", "BOARD", board.dig(4, 4));
+            assertEquals("start cell has no neighboring bombs", " ", board.toString().split("\n")[4].substring(8, 9));
+            pool.recycle(board);
+        }
+        pool.close();
+    }
+}
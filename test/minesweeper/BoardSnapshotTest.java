@@ -0,0 +1,131 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests BoardSnapshot.
+ */
+public class BoardSnapshotTest {
+    /*
+     * Testing Strategy:
+     *  board: new, after digs, flags and booms; 1x1, larger
+     *  snapshot: to a channel, to a file (new, replaced) --> read back: same board and stats, and
+     *      further moves give the same results; file --> playable as mapped storage
+     *  bad snapshots: not a snapshot, truncated --> IOException
+     */
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    /**
+     * @param cols number of columns
+     * @param rows number of rows
+     * @param moves number of random moves to make
+     * @return a board played with random moves
+     */
+    private static GameBoard playedBoard(int cols, int rows, int moves) {
+        GameBoard board = new GameBoard(cols, rows, cols * 31 + rows);
+        Random random = new Random(moves);
+        for (int move = 0; move < moves; move++) {
+            int x = random.nextInt(cols);
+            int y = random.nextInt(rows);
+            switch (random.nextInt(3)) {
+            case 0: board.dig(x, y); break;
+            case 1: board.flag(x, y); break;
+            default: board.deflag(x, y); break;
+            }
+        }
+        return board;
+    }
+
+    /**
+     * Checks that two boards are in the same state, and play on the same.
+     */
+    private static void assertSameGame(GameBoard expected, GameBoard actual) {
+        assertEquals(expected.getCols(), actual.getCols());
+        assertEquals(expected.getRows(), actual.getRows());
+        assertEquals(expected.toString(), actual.toString());
+        assertEquals(expected.getStats(), actual.getStats());
+        assertEquals(expected.getBombsRemaining(), actual.getBombsRemaining());
+        for (int x = 0; x < expected.getCols(); x++) {
+            assertEquals(expected.dig(x, 0), actual.dig(x, 0));
+        }
+        assertEquals(expected.toString(), actual.toString());
+    }
+
+    @Test
+    public void testChannel() throws IOException {
+        for (GameBoard board : Arrays.asList(new GameBoard(1, 1, 1), playedBoard(12, 12, 0),
+                playedBoard(40, 30, 300))) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            assertEquals(board.getVersion(), BoardSnapshot.write(board, Channels.newChannel(bytes)));
+            assertEquals(OffHeapCellStorage.HEADER_SIZE + board.getCols() * board.getRows(), bytes.size());
+            GameBoard copy = BoardSnapshot.read(Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray())));
+            assertSameGame(board, copy);
+        }
+    }
+
+    @Test
+    public void testFile() throws IOException {
+        File file = File.createTempFile("snapshot", ".board");
+        try {
+            GameBoard first = playedBoard(20, 10, 100);
+            BoardSnapshot.write(first, file);
+            GameBoard second = playedBoard(30, 20, 200);
+            BoardSnapshot.write(second, file);
+            assertSameGame(second, BoardSnapshot.read(file));
+            assertTrue("no temporary file left", ! new File(file.getPath() + ".tmp").exists());
+
+            // a snapshot is a board file
+            OffHeapCellStorage storage = OffHeapCellStorage.map(file, 1, 1);
+            assertEquals(30, storage.getCols());
+            assertSameGame(BoardSnapshot.read(file), new GameBoard(30, 20, storage));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testBadSnapshots() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BoardSnapshot.write(playedBoard(10, 10, 20), Channels.newChannel(bytes));
+        byte[] truncated = Arrays.copyOf(bytes.toByteArray(), bytes.size() - 1);
+        try {
+            BoardSnapshot.read(Channels.newChannel(new ByteArrayInputStream(truncated)));
+            throw new AssertionError("expected IOException");
+        } catch (IOException ioe) {
+            // expected
+        }
+
+        File file = File.createTempFile("snapshot", ".board");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            // a board file for GameBoard(File), not a snapshot
+            out.write("4 4\n0 0 0 0\n0 1 0 0\n0 0 0 0\n0 0 0 0\n".getBytes());
+        }
+        try {
+            BoardSnapshot.read(file);
+            throw new AssertionError("expected IOException");
+        } catch (IOException ioe) {
+            // expected
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import java.util.Random;
+
+/**
+ * Measures digs that uncover large openings, on boards with few bombs, and a sweep that digs
+ * every cell of a board with the usual density of bombs.
+ * Not a JUnit test: run main() directly, with assertions disabled.
+ *
+ * <p>For each board size and density of bombs, prints:
+ * <pre>
+ *      cascade    one dig of a cell with no neighboring bombs, which digs the whole opening
+ *      sweep      a dig of every cell, in order, of which most dig nothing or hit a bomb
+ *      dug        cells dug by the cascade
+ *      ns/cell    nanoseconds per cell dug by the cascade, or per dig of the sweep
+ * </pre>
+ */
+public class CascadeBenchmark {
+
+    private static final int[] SIZES = { 300, 1000, 3000 };
+    private static final double[] DENSITIES = { 0.0, 0.02, 0.10, 0.25 };
+    private static final int RUNS = 5;
+
+    /**
+     * @param size number of columns and rows
+     * @param density probability of a bomb in each cell
+     * @return bombs of a random size x size board, as for GameBoard(size, size, bombs)
+     */
+    private static boolean[] bombs(int size, double density) {
+        Random random = new Random(6031);
+        boolean[] bombs = new boolean[size * size];
+        for (int index = 0; index < bombs.length; index++) {
+            bombs[index] = random.nextDouble() < density;
+        }
+        return bombs;
+    }
+
+    /**
+     * @param size number of columns and rows
+     * @param bombs bombs of the board
+     * @return index of the cell with no bomb and no neighboring bombs nearest the middle, or -1
+     */
+    private static int openingCell(int size, boolean[] bombs) {
+        int best = -1;
+        long bestDistance = Long.MAX_VALUE;
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                boolean open = true;
+                for (int j = Math.max(0, y - 1); j <= Math.min(size - 1, y + 1); j++) {
+                    for (int i = Math.max(0, x - 1); i <= Math.min(size - 1, x + 1); i++) {
+                        open &= ! bombs[j * size + i];
+                    }
+                }
+                long distance = (long) (x - size / 2) * (x - size / 2) + (long) (y - size / 2) * (y - size / 2);
+                if (open && distance < bestDistance) {
+                    best = y * size + x;
+                    bestDistance = distance;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Runs the benchmark and prints a table.
+     *
+     * @param args unused
+     */
+    public static void main(String[] args) {
+        System.out.printf("%9s %7s %10s %12s %12s %12s %12s%n", "board", "bombs", "dug", "cascade ms",
+                "ns/cell", "sweep ms", "ns/dig");
+        for (int size : SIZES) {
+            for (double density : DENSITIES) {
+                boolean[] bombs = bombs(size, density);
+                int start = openingCell(size, bombs);
+                long cascadeNanos = Long.MAX_VALUE;
+                long sweepNanos = Long.MAX_VALUE;
+                int dug = 0;
+                String failure = null;
+                for (int run = 0; run < RUNS && failure == null; run++) {
+                    if (start >= 0) {
+                        GameBoard board = new GameBoard(size, size, bombs);
+                        int safe = board.getSafeRemaining();
+                        long begin = System.nanoTime();
+                        try {
+                            board.dig(start % size, start / size);
+                        } catch (StackOverflowError soe) {
+                            failure = "StackOverflowError";
+                            break;
+                        }
+                        cascadeNanos = Math.min(cascadeNanos, System.nanoTime() - begin);
+                        dug = safe - board.getSafeRemaining();
+                    }
+                    GameBoard board = new GameBoard(size, size, bombs);
+                    long begin = System.nanoTime();
+                    try {
+                        for (int y = 0; y < size; y++) {
+                            for (int x = 0; x < size; x++) {
+                                board.dig(x, y);
+                            }
+                        }
+                    } catch (StackOverflowError soe) {
+                        failure = "StackOverflowError";
+                        break;
+                    }
+                    sweepNanos = Math.min(sweepNanos, System.nanoTime() - begin);
+                }
+                if (failure != null) {
+                    System.out.printf("%4dx%-4d %6.0f%% %s%n", size, size, density * 100, failure);
+                } else {
+                    System.out.printf("%4dx%-4d %6.0f%% %10d %12.2f %12.1f %12.2f %12.1f%n", size, size,
+                            density * 100, dug, cascadeNanos / 1e6, dug == 0 ? 0 : (double) cascadeNanos / dug,
+                            sweepNanos / 1e6, (double) sweepNanos / size / size);
+                }
+            }
+        }
+    }
+}
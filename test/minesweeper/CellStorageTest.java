@@ -0,0 +1,200 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests ChunkedCellStorage, SparseCellStorage and VersionedCellStorage against HeapCellStorage,
+ * and the versions of VersionedCellStorage, and GameBoard on a
+ * SparseCellStorage that starts with a board. (GameBoard on every kind of storage is tested by
+ * the subclasses of GameBoardTest.)
+ */
+public class CellStorageTest {
+    /*
+     * Testing Strategy:
+     *  storage: chunked, sparse, versioned
+     *  size: 0, within one chunk or tile, several chunks and a partial last chunk, several levels
+     *      of tiles
+     *  operations: get, set (to 0 and not), clear, copyTo; enough sets to grow the sparse table
+     *  chunked: bytes set to 0 allocate no chunk, clear keeps the chunks
+     *  versioned: snapshot, then sets, clear --> restore gives back the snapshot, other versions
+     *      unchanged; a set after a snapshot copies one tile and its path, later sets of the same
+     *      tile none, whatever the size
+     *  sparse starting with a board: same cells as GameBoard(cols, rows, ShardLayout bombs), same
+     *      play, memory in proportion to the cells touched; clear --> every byte 0
+     */
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    /**
+     * Sets random bytes of storage and of heap storage of the same size, and checks that they
+     * agree, before and after clear().
+     */
+    private static void checkAgainstHeap(CellStorage storage) {
+        int size = storage.size();
+        HeapCellStorage heap = new HeapCellStorage(size);
+        Random random = new Random(size);
+        for (int set = 0; set < 3 * size / 4; set++) {
+            int index = random.nextInt(size);
+            byte value = random.nextInt(4) == 0 ? 0 : (byte) random.nextInt(256);
+            storage.set(index, value);
+            heap.set(index, value);
+            assertEquals(heap.get(index), storage.get(index));
+        }
+        byte[] expected = new byte[size];
+        byte[] actual = new byte[size];
+        heap.copyTo(expected);
+        storage.copyTo(actual);
+        assertArrayEquals(expected, actual);
+        storage.clear();
+        storage.copyTo(actual);
+        assertArrayEquals(new byte[size], actual);
+        storage.set(size - 1, (byte) 5);
+        assertEquals(5, storage.get(size - 1));
+        storage.flush();
+    }
+
+    @Test
+    public void testChunked() {
+        assertEquals(0, new ChunkedCellStorage(0).size());
+        checkAgainstHeap(new ChunkedCellStorage(1000));
+        checkAgainstHeap(new ChunkedCellStorage(3 * 65536 + 17));
+    }
+
+    @Test
+    public void testChunkedAllocation() {
+        ChunkedCellStorage storage = new ChunkedCellStorage(10 * 65536);
+        assertEquals(0, storage.allocatedBytes());
+        storage.set(5, (byte) 0);
+        assertEquals(0, storage.allocatedBytes());
+        storage.set(65536 * 4 + 1, (byte) 3);
+        storage.set(65536 * 4 + 2, (byte) 3);
+        assertEquals(65536, storage.allocatedBytes());
+        assertEquals(0, storage.get(65536 * 4));
+        assertEquals(0, storage.get(65536 * 9));
+        storage.clear();
+        assertEquals(0, storage.get(65536 * 4 + 1));
+        assertEquals(65536, storage.allocatedBytes());
+    }
+
+    @Test
+    public void testVersioned() {
+        assertEquals(0, new VersionedCellStorage(0).size());
+        checkAgainstHeap(new VersionedCellStorage(50));
+        checkAgainstHeap(new VersionedCellStorage(3 * 65536 + 17));
+    }
+
+    @Test
+    public void testVersions() {
+        int size = 100_000;
+        VersionedCellStorage storage = new VersionedCellStorage(size);
+        Random random = new Random(5);
+        byte[][] expected = new byte[10][size];
+        VersionedCellStorage.Version[] versions = new VersionedCellStorage.Version[10];
+        for (int v = 0; v < versions.length; v++) {
+            for (int set = 0; set < 1000; set++) {
+                storage.set(random.nextInt(size), (byte) random.nextInt(256));
+            }
+            if (v == 5) {
+                storage.clear();
+                storage.set(size - 1, (byte) 1);
+            }
+            versions[v] = storage.snapshot();
+            storage.copyTo(expected[v]);
+        }
+        byte[] actual = new byte[size];
+        for (int v : new int[] { 3, 9, 0, 5, 6, 3 }) {
+            storage.restore(versions[v]);
+            storage.copyTo(actual);
+            assertArrayEquals("version " + v, expected[v], actual);
+            // changes after a restore leave the version as it was
+            storage.set(random.nextInt(size), (byte) 7);
+        }
+    }
+
+    @Test
+    public void testVersionsShareTiles() {
+        // sizes, and the number of nodes on the path to a byte: its tile of 64 bytes, and one node
+        // per 32 times as many bytes
+        int[][] cases = { { 1000, 2 }, { 1_000_000, 4 }, { 1 << 30, 6 } };
+        for (int[] c : cases) {
+            int size = c[0];
+            int path = c[1];
+            VersionedCellStorage storage = new VersionedCellStorage(size);
+            storage.set(size / 2, (byte) 1);
+            storage.snapshot();
+            long copied = storage.nodesCopied();
+            storage.set(size / 2 + 1, (byte) 2);
+            assertEquals("copies one tile and its path", path, storage.nodesCopied() - copied);
+            storage.set(size / 2 + 2, (byte) 2);
+            storage.set(size / 2 + 1, (byte) 3);
+            assertEquals("later sets of the tile copy nothing", copied + path, storage.nodesCopied());
+            assertEquals(1, storage.get(size / 2));
+        }
+    }
+
+    @Test
+    public void testSparse() {
+        assertEquals(0, new SparseCellStorage(0).size());
+        checkAgainstHeap(new SparseCellStorage(10));
+        SparseCellStorage storage = new SparseCellStorage(100_000);
+        checkAgainstHeap(storage);
+        assertEquals(1, storage.storedCount());
+    }
+
+    @Test
+    public void testSparseBoard() {
+        long seed = 6031;
+        ShardLayout layout = new ShardLayout(60, 40, 1, 1, seed);
+        GameBoard reference = new GameBoard(60, 40, layout.bombs(0, 0, 60, 40));
+        SparseCellStorage storage = new SparseCellStorage(60, 40, seed);
+        GameBoard sparse = new GameBoard(60, 40, storage);
+        assertEquals(0, storage.storedCount());
+        assertEquals(reference.getStats(), sparse.getStats());
+        assertEquals(reference.getBombsRemaining(), sparse.getBombsRemaining());
+        Random random = new Random(3);
+        for (int move = 0; move < 400; move++) {
+            int x = random.nextInt(60);
+            int y = random.nextInt(40);
+            switch (random.nextInt(3)) {
+            case 0: assertEquals(reference.dig(x, y), sparse.dig(x, y)); break;
+            case 1: reference.flag(x, y); sparse.flag(x, y); break;
+            default: reference.deflag(x, y); sparse.deflag(x, y); break;
+            }
+        }
+        assertEquals(reference.toString(), sparse.toString());
+        assertEquals(reference.getStats(), sparse.getStats());
+        sparse.reset(9);
+        assertEquals(new GameBoard(60, 40, 9).toString(), sparse.toString());
+    }
+
+    @Test
+    public void testSparseHugeBoard() {
+        // 2^30 cells, of which only the ones touched are stored
+        SparseCellStorage storage = new SparseCellStorage(1 << 15, 1 << 15, 42);
+        ShardLayout layout = new ShardLayout(1 << 15, 1 << 15, 1, 1, 42);
+        for (int y = 1000; y < 1003; y++) {
+            for (int x = 5000; x < 5003; x++) {
+                byte cell = storage.get(y * (1 << 15) + x);
+                assertEquals(layout.hasBomb(x, y), (cell & GameBoard.newCell(true, 0)) != 0);
+            }
+        }
+        assertEquals(0, storage.storedCount());
+        for (int index = 0; index < 5000; index++) {
+            storage.set(index * 7919, (byte) 0x40);
+        }
+        assertEquals(5000, storage.storedCount());
+        assertEquals(0x40, storage.get(7919 * 4999));
+        assertEquals(1 << 30, storage.size());
+    }
+}
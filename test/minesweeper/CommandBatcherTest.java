@@ -0,0 +1,122 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests CommandBatcher.
+ */
+public class CommandBatcherTest {
+    /*
+     * Testing Strategy:
+     *  tick: 0 (as commands arrive), > 0
+     *  max batch: 0 (no limit), 1, > 1
+     *  clients: 1, many at once
+     *  handler: answers every command, throws --> commands answered "terminate"
+     *  close: commands submitted before --> answered; submitted after --> null
+     */
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    /**
+     * @return handler that answers each command with itself in upper case, and records the size
+     *         of each batch in sizes
+     */
+    private static CommandBatcher.Handler upperCase(List<Integer> sizes) {
+        return batch -> {
+            sizes.add(batch.size());
+            for (CommandBatcher.Request request : batch) {
+                request.respond(request.getCommand().toUpperCase());
+            }
+        };
+    }
+
+    /**
+     * Submits commands from many threads at once.
+     * @param batcher batcher to submit to
+     * @param clients number of threads, each submitting commands commands
+     * @param commands number of commands per thread
+     * @return true iff every command was answered correctly
+     */
+    private static boolean submitAll(CommandBatcher batcher, int clients, int commands) throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        List<Boolean> results = Collections.synchronizedList(new ArrayList<>());
+        for (int client = 0; client < clients; client++) {
+            final String name = "client" + client;
+            Thread thread = new Thread(() -> {
+                for (int command = 0; command < commands; command++) {
+                    results.add(batcher.submit(name + " look " + command, null).equals((name + " LOOK " + command).toUpperCase()));
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return results.size() == clients * commands && ! results.contains(false);
+    }
+
+    // covers tick 0, no limit, 1 client
+    @Test(timeout = 5000)
+    public void testOneClient() {
+        List<Integer> sizes = Collections.synchronizedList(new ArrayList<>());
+        CommandBatcher batcher = new CommandBatcher(upperCase(sizes), 0, 0);
+        assertEquals("DIG 1 2", batcher.submit("dig 1 2", null));
+        assertEquals("LOOK", batcher.submit("look", null));
+        batcher.close();
+        assertEquals(2, batcher.commands());
+        assertEquals(2, batcher.batches());
+    }
+
+    // covers tick 0, max batch 1, many clients
+    @Test(timeout = 10000)
+    public void testMaxBatch() throws InterruptedException {
+        List<Integer> sizes = Collections.synchronizedList(new ArrayList<>());
+        CommandBatcher batcher = new CommandBatcher(upperCase(sizes), 0, 1);
+        assertTrue(submitAll(batcher, 8, 200));
+        batcher.close();
+        assertEquals(1600, batcher.commands());
+        assertEquals(Collections.nCopies(1600, 1), sizes);
+    }
+
+    // covers tick > 0, max batch > 1, many clients
+    @Test(timeout = 10000)
+    public void testTick() throws InterruptedException {
+        List<Integer> sizes = Collections.synchronizedList(new ArrayList<>());
+        CommandBatcher batcher = new CommandBatcher(upperCase(sizes), 20, 5);
+        assertTrue(submitAll(batcher, 10, 5));
+        batcher.close();
+        assertEquals(50, batcher.commands());
+        for (int size : sizes) {
+            assertTrue("at most 5 commands per batch, got " + size, size <= 5);
+        }
+        // each client waits for its answer, so it has a command in at most one batch per tick
+        assertTrue("expected commands of several clients per batch, got " + sizes, sizes.contains(5));
+    }
+
+    // covers a handler that throws, and commands submitted after close
+    @Test(timeout = 5000)
+    public void testFailureAndClose() {
+        CommandBatcher batcher = new CommandBatcher(batch -> {
+            throw new IllegalStateException("expected by the test");
+        }, 0, 0);
+        assertEquals("terminate", batcher.submit("look", null));
+        batcher.close();
+        assertNull(batcher.submit("look", null));
+        assertEquals(1, batcher.commands());
+    }
+}
@@ -0,0 +1,161 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+/**
+ * Tests CommandTracer.
+ */
+public class CommandTracerTest {
+    /*
+     * Testing Strategy:
+     *  tracing: off, slow log only; events only, see CommandEventTest
+     *  marks: none, some phases skipped, every phase; made on a thread that began no command
+     *  command: faster than the threshold, as slow as it, threshold 0
+     *  ring: fewer commands than RING_SIZE, more
+     */
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    /** Phase times of a trace, e.g. "parse 0.002". */
+    private static final Pattern PHASE = Pattern.compile("(\\w+) (\\d+\\.\\d{3})");
+
+    /**
+     * @param trace a trace, as written to the slow-request log
+     * @return the names of the phases in trace, in order
+     */
+    private static List<String> phases(String trace) {
+        List<String> names = new ArrayList<>();
+        Matcher matcher = PHASE.matcher(trace.substring(trace.indexOf('(')));
+        while (matcher.find()) {
+            names.add(matcher.group(1));
+        }
+        return names;
+    }
+
+    // covers tracing off
+    @Test
+    public void testOff() {
+        List<String> log = Collections.synchronizedList(new ArrayList<>());
+        CommandTracer tracer = new CommandTracer(-1, false, log::add);
+        assertFalse(tracer.isTracing());
+        tracer.begin("look");
+        tracer.mark(CommandTracer.RENDERED);
+        tracer.end();
+        assertEquals(0, tracer.getSlowCommands());
+        assertTrue("no log", log.isEmpty());
+        assertTrue("no trace", tracer.recent().isEmpty());
+    }
+
+    // covers threshold 0, every phase, some phases skipped, no marks
+    @Test
+    public void testSlowLog() {
+        List<String> log = Collections.synchronizedList(new ArrayList<>());
+        CommandTracer tracer = new CommandTracer(0, false, log::add);
+        assertTrue(tracer.isTracing());
+        tracer.begin("dig 1 2");
+        for (int mark = CommandTracer.THROTTLED; mark <= CommandTracer.WRITTEN; mark++) {
+            tracer.mark(mark);
+        }
+        tracer.end();
+        tracer.begin("look");
+        tracer.mark(CommandTracer.THROTTLED);
+        tracer.mark(CommandTracer.PARSED);
+        tracer.mark(CommandTracer.RENDERED);
+        tracer.mark(CommandTracer.WRITTEN);
+        tracer.end();
+        tracer.begin("help");
+        tracer.end();
+        assertEquals(3, tracer.getSlowCommands());
+        assertEquals(3, log.size());
+        assertTrue(log.get(0), log.get(0).startsWith("slow command \"dig 1 2\": "));
+        assertEquals(Arrays.asList("throttle", "parse", "lock", "apply", "batch", "render", "write"), phases(log.get(0)));
+        assertTrue(log.get(1), log.get(1).startsWith("slow command \"look\": "));
+        assertEquals(Arrays.asList("throttle", "parse", "render", "write"), phases(log.get(1)));
+        assertEquals("slow command \"help\": 0.000 ms ()", log.get(2));
+    }
+
+    // covers a command faster than the threshold, and one as slow as it
+    @Test
+    public void testThreshold() throws InterruptedException {
+        List<String> log = Collections.synchronizedList(new ArrayList<>());
+        CommandTracer tracer = new CommandTracer(20, false, log::add);
+        tracer.begin("flag 0 0");
+        tracer.mark(CommandTracer.APPLIED);
+        tracer.mark(CommandTracer.WRITTEN);
+        tracer.end();
+        assertEquals(0, tracer.getSlowCommands());
+        tracer.begin("hint");
+        tracer.mark(CommandTracer.PARSED);
+        Thread.sleep(30);
+        tracer.mark(CommandTracer.APPLIED);
+        tracer.mark(CommandTracer.WRITTEN);
+        tracer.end();
+        assertEquals(1, tracer.getSlowCommands());
+        assertEquals(1, log.size());
+        Matcher apply = Pattern.compile("apply (\\d+\\.\\d{3})").matcher(log.get(0));
+        assertTrue(log.get(0), log.get(0).startsWith("slow command \"hint\": ") && apply.find());
+        assertTrue("the slow phase is apply", Double.parseDouble(apply.group(1)) >= 30);
+    }
+
+    // covers marks made on a thread that began no command, and commands of another thread
+    @Test
+    public void testOtherThread() throws InterruptedException {
+        List<String> log = Collections.synchronizedList(new ArrayList<>());
+        CommandTracer tracer = new CommandTracer(0, false, log::add);
+        tracer.begin("look");
+        Thread owner = new Thread(() -> {
+            tracer.mark(CommandTracer.APPLIED);
+            tracer.end();
+        });
+        owner.start();
+        owner.join();
+        assertEquals("owner's marks are ignored", 0, log.size());
+        tracer.mark(CommandTracer.BATCHED);
+        tracer.end();
+        assertEquals(1, log.size());
+        assertEquals(Arrays.asList("batch"), phases(log.get(0)));
+        assertEquals(1, tracer.recent().size());
+    }
+
+    // covers fewer commands than RING_SIZE, and more
+    @Test
+    public void testRing() {
+        CommandTracer tracer = new CommandTracer(60_000, false, log -> { });
+        for (int command = 0; command < 3; command++) {
+            tracer.begin("dig " + command + " 0");
+            tracer.mark(CommandTracer.WRITTEN);
+            tracer.end();
+        }
+        List<String> recent = tracer.recent();
+        assertEquals(3, recent.size());
+        assertTrue(recent.get(0), recent.get(0).startsWith("\"dig 0 0\": "));
+        assertTrue(recent.get(2), recent.get(2).startsWith("\"dig 2 0\": "));
+        for (int command = 3; command < CommandTracer.RING_SIZE + 5; command++) {
+            tracer.begin("dig " + command + " 0");
+            tracer.mark(CommandTracer.WRITTEN);
+            tracer.end();
+        }
+        recent = tracer.recent();
+        assertEquals(CommandTracer.RING_SIZE, recent.size());
+        assertTrue(recent.get(0), recent.get(0).startsWith("\"dig 5 0\": "));
+        assertTrue(recent.get(CommandTracer.RING_SIZE - 1),
+                recent.get(CommandTracer.RING_SIZE - 1).startsWith("\"dig " + (CommandTracer.RING_SIZE + 4) + " 0\": "));
+    }
+}
@@ -0,0 +1,97 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Compares the size and cost of sending the board of 'look' as text, RLE and DEFLATE.
+ * Not a JUnit test: run main() directly, with assertions disabled.
+ *
+ * <p>For each board size, on a new board and on one where a random tenth of the cells were dug
+ * or flagged, measures the bytes and time of:
+ * <pre>
+ *      text       board.toString(), as sent without compression
+ *      rle        a new RLE rendering, after the board changed
+ *      deflate    a new DEFLATE rendering, after the board changed
+ *      cached     a DEFLATE rendering of an unchanged board from a ResponseCache, as for every
+ *                 further 'look'
+ * </pre>
+ */
+public class CompressionBenchmark {
+
+    private static final int[] SIZES = { 100, 300, 1000 };
+    private static final long SEED = 6031;
+
+    /**
+     * @param warmup iterations to run first, untimed
+     * @param iterations iterations to time
+     * @param task code to time
+     * @return average nanoseconds per iteration
+     */
+    private static double time(int warmup, int iterations, Runnable task) {
+        for (int i = 0; i < warmup; i++) {
+            task.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            task.run();
+        }
+        return (System.nanoTime() - start) / (double) iterations;
+    }
+
+    /**
+     * Runs the benchmark and prints a table.
+     *
+     * @param args unused
+     */
+    public static void main(String[] args) {
+        System.out.printf("%9s %7s %11s %10s %10s %10s %10s %10s %10s%n", "board", "played", "text bytes",
+                "rle bytes", "defl bytes", "text us", "rle us", "deflate us", "cached us");
+        for (int size : SIZES) {
+            for (boolean played : new boolean[] { false, true }) {
+                GameBoard board = new GameBoard(size, size, SEED);
+                if (played) {
+                    Random random = new Random(1);
+                    for (int move = 0; move < size * size / 10; move++) {
+                        if (random.nextInt(4) == 0) {
+                            board.flag(random.nextInt(size), random.nextInt(size));
+                        } else {
+                            board.dig(random.nextInt(size), random.nextInt(size));
+                        }
+                    }
+                }
+                BoardCompressor compressor = new BoardCompressor(board);
+                ResponseCache cache = new ResponseCache(board, compressor);
+                int iterations = Math.max(5, 2_000_000 / (size * size));
+                // a change that keeps the board the same: flag and deflag a cell that is not untouched
+                Runnable change = () -> {
+                    board.flag(size - 1, size - 1);
+                    board.deflag(size - 1, size - 1);
+                };
+
+                int textBytes = board.toString().getBytes(StandardCharsets.UTF_8).length;
+                int rleBytes = compressor.rle().length() + 1;
+                int deflateBytes = compressor.deflate().remaining();
+                double textNanos = time(iterations / 10 + 1, iterations / 10 + 1,
+                        () -> board.toString().getBytes(StandardCharsets.UTF_8));
+                double changeNanos = time(iterations, iterations, change);
+                double rleNanos = time(iterations, iterations, () -> {
+                    change.run();
+                    compressor.rle();
+                }) - changeNanos;
+                double deflateNanos = time(iterations, iterations, () -> {
+                    change.run();
+                    compressor.deflate();
+                }) - changeNanos;
+                double cachedNanos = time(iterations, iterations * 100, cache::deflate);
+
+                System.out.printf("%4dx%-4d %7s %11d %10d %10d %10.1f %10.1f %10.1f %10.3f%n", size, size,
+                        played ? "yes" : "no", textBytes, rleBytes, deflateBytes, textNanos / 1000,
+                        rleNanos / 1000, deflateNanos / 1000, cachedNanos / 1000);
+            }
+        }
+    }
+}
@@ -0,0 +1,277 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures a reconnect storm: many clients connecting to a GameServer at once, as after a
+ * restart, with and without admission control.
+ * Not a JUnit test: run main() directly, with assertions disabled.
+ *
+ * <p>CLIENTS clients connect at once, from one thread with non-blocking sockets, so that the
+ * threads of the process are the server's. Each client that is served waits HOLD_MILLIS, as a
+ * player would, sends 'stats', and says 'bye' once answered; a client told to try again later,
+ * whose connection fails, or that hears nothing for TIMEOUT_MILLIS after connecting (e.g. because
+ * a full accept backlog dropped its connection), reconnects after RETRY_MILLIS. For each setting
+ * of the server, prints:
+ * <pre>
+ *      threads    most threads of the process at once, sampled every millisecond
+ *      done ms    milliseconds until every client was answered
+ *      slowest    longest time from a client's first connection to its answer, in milliseconds
+ *      in line    connections told their position in line
+ *      refused    connections told to try again later
+ *      failed     connections that failed or timed out, e.g. dropped by a full accept backlog
+ * </pre>
+ */
+public class ConnectionStormBenchmark {
+
+    private static final InetSocketAddress ADDRESS = new InetSocketAddress("127.0.0.1", 4031);
+    private static final int CLIENTS = 2000;
+    private static final long HOLD_MILLIS = 50;
+    private static final long RETRY_MILLIS = 100;
+    private static final long TIMEOUT_MILLIS = 2000;
+    private static final int MAX = 100;
+
+    /** A client of the storm, and its connection. */
+    private static class Client {
+        private final long start = System.nanoTime();
+        private SocketChannel channel;
+        private final StringBuilder line = new StringBuilder();
+        // what to do at System.nanoTime() due, if not NOTHING
+        private int next = NOTHING;
+        private long due = 0;
+    }
+
+    // what a client does next
+    private static final int NOTHING = 0;
+    private static final int STATS = 1;
+    private static final int RECONNECT = 2;
+    private static final int TIMEOUT = 3;
+
+    /** What happened to the clients of one storm. */
+    private static class Storm {
+        private final Selector selector;
+        private final List<Client> clients = new ArrayList<>();
+        private int remaining = CLIENTS;
+        private long slowest = 0;
+        private int inLine = 0;
+        private int refused = 0;
+        private int failed = 0;
+
+        /**
+         * Connects every client.
+         */
+        Storm() throws IOException {
+            selector = Selector.open();
+            for (int i = 0; i < CLIENTS; i++) {
+                Client client = new Client();
+                clients.add(client);
+                connect(client);
+            }
+        }
+
+        /**
+         * Starts connecting a client.
+         *
+         * @param client client whose last connection, if any, is closed
+         */
+        private void connect(Client client) throws IOException {
+            client.line.setLength(0);
+            later(client, TIMEOUT, TIMEOUT_MILLIS);
+            client.channel = SocketChannel.open();
+            client.channel.configureBlocking(false);
+            if (client.channel.connect(ADDRESS)) {
+                client.channel.register(selector, SelectionKey.OP_READ, client);
+            } else {
+                client.channel.register(selector, SelectionKey.OP_CONNECT, client);
+            }
+        }
+
+        /**
+         * Sets what a client does next.
+         *
+         * @param client the client
+         * @param next what it does: NOTHING, STATS, RECONNECT or TIMEOUT
+         * @param millis milliseconds from now until it does it
+         */
+        private static void later(Client client, int next, long millis) {
+            client.next = next;
+            client.due = System.nanoTime() + millis * 1_000_000;
+        }
+
+        /**
+         * Closes a client's connection, and reconnects it after RETRY_MILLIS.
+         *
+         * @param client client to retry
+         */
+        private static void retry(Client client) throws IOException {
+            client.channel.close();
+            later(client, RECONNECT, RETRY_MILLIS);
+        }
+
+        /**
+         * Sends a line to a client's server; the line is short enough to never fill the socket.
+         *
+         * @param client client to send from
+         * @param text line to send, with its newline
+         */
+        private static void send(Client client, String text) throws IOException {
+            client.channel.write(ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII)));
+        }
+
+        /**
+         * Handles a line from a client's server.
+         *
+         * @param client client that received the line
+         * @param text the line, without its newline
+         */
+        private void received(Client client, String text) throws IOException {
+            if (text.startsWith("Welcome")) {
+                later(client, STATS, HOLD_MILLIS);
+            } else if (text.startsWith("Server full, position")) {
+                // waits as long as it takes
+                client.next = NOTHING;
+                inLine++;
+            } else if (text.startsWith("Server full")) {
+                refused++;
+                retry(client);
+            } else if (text.startsWith("Safe")) {
+                client.next = NOTHING;
+                slowest = Math.max(slowest, System.nanoTime() - client.start);
+                remaining--;
+                send(client, "bye\n");
+                client.channel.close();
+            }
+        }
+
+        /**
+         * Runs the storm until every client was answered.
+         */
+        void run() throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 12);
+            while (remaining > 0) {
+                long now = System.nanoTime();
+                for (Client client : clients) {
+                    if (client.next == NOTHING || client.due > now) {
+                        continue;
+                    }
+                    int next = client.next;
+                    client.next = NOTHING;
+                    if (next == STATS) {
+                        send(client, "stats\n");
+                    } else if (next == RECONNECT) {
+                        connect(client);
+                    } else {
+                        failed++;
+                        retry(client);
+                    }
+                }
+                selector.select(1);
+                for (SelectionKey key : selector.selectedKeys()) {
+                    Client client = (Client) key.attachment();
+                    try {
+                        if (key.isConnectable()) {
+                            client.channel.finishConnect();
+                            key.interestOps(SelectionKey.OP_READ);
+                            continue;
+                        }
+                        buffer.clear();
+                        int read = client.channel.read(buffer);
+                        if (read < 0) {
+                            failed++;
+                            retry(client);
+                            continue;
+                        }
+                        for (int i = 0; i < read; i++) {
+                            char c = (char) buffer.get(i);
+                            if (c == '\n') {
+                                String text = client.line.toString();
+                                client.line.setLength(0);
+                                received(client, text);
+                                if ( ! client.channel.isOpen()) {
+                                    break;
+                                }
+                            } else {
+                                client.line.append(c);
+                            }
+                        }
+                    } catch (IOException ioe) {
+                        failed++;
+                        retry(client);
+                    }
+                }
+                selector.selectedKeys().clear();
+            }
+            selector.close();
+        }
+    }
+
+    /**
+     * Runs one storm against a server, and prints a line.
+     *
+     * @param label first column of the line
+     * @param options options of the server
+     */
+    private static void storm(String label, ServerOptions options) throws IOException, InterruptedException {
+        GameServer server = new GameServer(ADDRESS.getPort(), new GameBoard(100, 100, 6031),
+                options.setDrainTimeoutMillis(0));
+        Thread serving = new Thread(() -> {
+            try {
+                server.serve();
+            } catch (IOException ioe) {
+                ioe.printStackTrace();
+            }
+        });
+        serving.start();
+        int[] peak = { 0 };
+        Thread sampler = new Thread(() -> {
+            while ( ! Thread.currentThread().isInterrupted()) {
+                peak[0] = Math.max(peak[0], Thread.activeCount());
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            }
+        });
+        sampler.start();
+
+        long start = System.nanoTime();
+        Storm storm = new Storm();
+        storm.run();
+        long doneNanos = System.nanoTime() - start;
+        sampler.interrupt();
+        sampler.join();
+        server.shutdown();
+        serving.join();
+        System.out.printf("%-22s %8d %10.0f %10.0f %8d %8d %8d%n", label, peak[0], doneNanos / 1e6,
+                storm.slowest / 1e6, storm.inLine, storm.refused, storm.failed);
+    }
+
+    /**
+     * Runs the benchmark and prints a table.
+     *
+     * @param args unused
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        System.out.printf("%-22s %8s %10s %10s %8s %8s %8s%n", "server", "threads", "done ms", "slowest ms",
+                "in line", "refused", "failed");
+        storm("no limit", new ServerOptions());
+        storm("max " + MAX, new ServerOptions().setMaxConnections(MAX, CLIENTS));
+        storm("max " + MAX + ", line " + MAX * 5, new ServerOptions().setMaxConnections(MAX, MAX * 5));
+        storm("max " + MAX + ", backlog " + CLIENTS, new ServerOptions().setMaxConnections(MAX, CLIENTS)
+                .setAcceptBacklog(CLIENTS));
+        storm("max " + MAX + ", 4 acceptors", new ServerOptions().setMaxConnections(MAX, CLIENTS)
+                .setAcceptBacklog(CLIENTS).setAcceptors(4));
+    }
+}
@@ -0,0 +1,100 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compares writing a board out from its toString() with streaming it with BoardExporter, on boards
+ * of growing size. Not a JUnit test: run main() directly, with assertions disabled, and a heap
+ * large enough for the text of the largest board, e.g. -Xmx3g.
+ *
+ * <p>Each board is written to a channel that throws the bytes away, so only making them is
+ * measured. For each board size and way of writing it, prints:
+ * <pre>
+ *      ms         milliseconds to write the board, best of ROUNDS
+ *      MB alloc   megabytes allocated by the writing thread, i.e. garbage made per export
+ *      MB out     megabytes written
+ * </pre>
+ */
+public class ExportBenchmark {
+
+    private static final int[] SIZES = { 1000, 4000, 10000 };
+    private static final int ROUNDS = 3;
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /** A channel that counts the bytes written to it, and throws them away. */
+    private static class NullChannel implements WritableByteChannel {
+        private long written = 0;
+
+        @Override
+        public int write(ByteBuffer src) {
+            int length = src.remaining();
+            src.position(src.limit());
+            written += length;
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Writes a board in one way, and prints a line.
+     *
+     * @param board board to write
+     * @param way "toString", or a BoardExporter format
+     */
+    private static void measure(GameBoard board, String way) throws IOException {
+        long best = Long.MAX_VALUE;
+        long allocated = 0;
+        long written = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            NullChannel out = new NullChannel();
+            long allocatedBefore = THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+            long start = System.nanoTime();
+            if (way.equals("toString")) {
+                ByteBuffer text = ByteBuffer.wrap(board.toString().getBytes(StandardCharsets.US_ASCII));
+                out.write(text);
+            } else {
+                BoardExporter.write(board, way, out);
+            }
+            best = Math.min(best, System.nanoTime() - start);
+            allocated = THREADS.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocatedBefore;
+            written = out.written;
+        }
+        System.out.printf("%5dx%-5d %-10s %10.0f %10.1f %10.1f%n", board.getCols(), board.getRows(), way,
+                best / 1e6, allocated / 1e6, written / 1e6);
+    }
+
+    /**
+     * Runs the benchmark and prints a table.
+     *
+     * @param args unused
+     */
+    public static void main(String[] args) throws IOException {
+        System.out.printf("%11s %-10s %10s %10s %10s%n", "board", "way", "ms", "MB alloc", "MB out");
+        for (int size : SIZES) {
+            GameBoard board = new GameBoard(size, size, 6031);
+            for (int x = 0; x < size; x += 97) {
+                board.dig(x, x);
+                board.flag(size - 1 - x, x);
+            }
+            for (String way : new String[] { "toString", BoardExporter.TEXT, BoardExporter.BOMBS, BoardExporter.PGM }) {
+                measure(board, way);
+            }
+        }
+    }
+}
@@ -4,10 +4,13 @@
 package minesweeper;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.Test;
 
@@ -33,6 +36,8 @@ public class GameBoardTest {
      *          dug
      *          flagged
      *          untouched, no bomb
+     *          untouched, no bomb, no neighbors with bombs: small opening, opening of almost a
+     *              whole large board
      *          untouched, with bomb
      *  outputs:
      *      "BOMB"
@@ -58,6 +63,15 @@ public class GameBoardTest {
      *  outputs:
      *      "BOARD"
      * 
+     * chord():
+     *  inputs:
+     *      invalid cell, untouched cell, flagged cell
+     *      dug cell: fewer flags than its number, as many, no untouched neighbors
+     *      neighbors dug: with and without openings, with a bomb (wrong flag)
+     *  outputs:
+     *      "BOARD" (board unchanged, or neighbors dug)
+     *      "BOOM"
+     * 
      * getStatus():
      *  inputs:
      *      invalid cell
@@ -76,6 +90,44 @@ public class GameBoardTest {
      *  
      * getRows():
      *  input: valid GameBoard
+     * 
+     * getSafeRemaining(), getFlagCount(), getBombsHit(), getBombsRemaining(), isCleared(), getStats():
+     *  board: new, after digging a safe cell, after flood fill, after digging a bomb,
+     *         after flagging/deflagging, cleared, cleared with a flag still on a bomb
+     * 
+     * gameBoard(sizeX, sizeY, seed), reset():
+     *  same seed, different seed; reset of a new board, reset of a played board
+     * 
+     * gameBoard(sizeX, sizeY, seed, safeX, safeY), reset(seed, safeX, safeY):
+     *  safe cell in the middle, in a corner; new board, reset of a played board
+     * 
+     * restartIfCleared():
+     *  board: cleared, not cleared
+     * 
+     * setSafeFirstDig():
+     *  mode: cell, whole area
+     *  first dig: on a bomb, next to a bomb; later dig on a bomb
+     *  game: new board, after reset, after restartIfCleared() with a board not in the mode
+     * 
+     * setUndoDepth(), undo(), redo():
+     *  undo disabled; moves: 0, 1, more than can be undone or redone
+     *  history: within the depth, longer than the depth; new move after undo --> no redo
+     *  game: after reset, after restartIfCleared() with a board without undo; first-dig-safe mode
+     *      with the first dig undone
+     * 
+     * setRegionIndex(), getRegionStats():
+     *  index: none, kept, dropped
+     *  rectangle: whole board, corners in any order, partly and wholly off the board
+     *  board: new, after digs (with openings and bombs), flags, deflags, chords, undo, redo,
+     *      reset, safe first dig; after restartIfCleared() with a board without an index
+     * 
+     * getVersion():
+     *  change: dig, flag, deflag, reset, restart, undo, redo; no change: invalid cell, dug cell,
+     *      flagged cell
+     * 
+     * reads (getStatus(), the counters, getStats(), toString(), snapshotVisible()):
+     *  while another thread holds the lock on the board --> do not wait for it
+     *  while another thread makes moves --> each read sees the board between two moves
      */
     
     @Test(expected=AssertionError.class)
@@ -180,6 +232,103 @@ public class GameBoardTest {
         }
     }
     
+    // covers valid cell that does not have a bomb or neighbors with bombs, in an opening of almost
+    // the whole board
+    @Test
+    public void testDigLargeOpening() {
+        final int cols = 600;
+        final int rows = 500;
+        boolean[] bombs = new boolean[cols * rows];
+        bombs[200 * cols + 300] = true;
+        GameBoard g = new GameBoard(cols, rows, bombs);
+        assertEquals("BOARD", g.dig(0, rows - 1));
+        assertTrue("every safe cell is dug", g.isCleared());
+        assertEquals("untouched", g.getStatus(300, 200));
+        assertEquals("dug", g.getStatus(299, 199));
+        assertEquals("dug", g.getStatus(cols - 1, 0));
+        String[] lines = g.toString().split("\n");
+        assertEquals("1 1 1", lines[199].substring(2 * 299, 2 * 302 - 1));
+        assertEquals("1 - 1", lines[200].substring(2 * 299, 2 * 302 - 1));
+        assertEquals("1 1 1", lines[201].substring(2 * 299, 2 * 302 - 1));
+    }
+    
+    // TESTS FOR chord()
+    /**
+     * @return 6x6 board with a bomb in (0,0) only
+     */
+    private static GameBoard cornerBombBoard() {
+        boolean[] bombs = new boolean[6 * 6];
+        bombs[0] = true;
+        return new GameBoard(6, 6, bombs);
+    }
+    
+    // covers invalid, untouched and flagged cell, dug cell with too few flags or no untouched neighbors
+    @Test
+    public void testChordNothing() {
+        GameBoard g = cornerBombBoard();
+        g.flag(2, 2);
+        long version = g.getVersion();
+        assertEquals("BOARD", g.chord(-1, 0));
+        assertEquals("BOARD", g.chord(1, 1));
+        assertEquals("BOARD", g.chord(2, 2));
+        g.dig(1, 0);
+        version = g.getVersion();
+        assertEquals("too few flags", "BOARD", g.chord(1, 0));
+        assertEquals("nothing changes", version, g.getVersion());
+        assertEquals("untouched", g.getStatus(0, 1));
+        
+        g.deflag(2, 2);
+        g.dig(3, 3);
+        assertTrue(g.isCleared());
+        version = g.getVersion();
+        assertEquals("no untouched neighbors", "BOARD", g.chord(4, 4));
+        assertEquals("nothing changes", version, g.getVersion());
+    }
+    
+    // covers dug cell with as many flags as its number, neighbors dug with openings
+    @Test
+    public void testChordOpenings() {
+        GameBoard g = cornerBombBoard();
+        g.dig(1, 1);
+        g.flag(0, 0);
+        long version = g.getVersion();
+        assertEquals("BOARD", g.chord(1, 1));
+        assertTrue("chord changes the version", g.getVersion() > version);
+        assertTrue("the openings of the neighbors are dug", g.isCleared());
+        assertEquals("flagged", g.getStatus(0, 0));
+        assertEquals(1, g.getFlagCount());
+        assertEquals(0, g.getBombsHit());
+        assertTrue(g.toString().startsWith("F 1        \n1 1        \n"));
+    }
+    
+    // covers neighbors dug without openings, and with a bomb
+    @Test
+    public void testChordWrongFlag() {
+        GameBoard g = cornerBombBoard();
+        g.dig(1, 0);
+        g.flag(2, 1);
+        assertEquals("BOOM", g.chord(1, 0));
+        assertEquals("dug", g.getStatus(0, 0));
+        assertEquals(1, g.getBombsHit());
+        assertEquals(0, g.getBombsRemaining());
+        // with the bomb gone, the neighbors have no neighbors with bombs and open up the board,
+        // except for the flagged cell
+        assertEquals(1, g.getSafeRemaining());
+        assertEquals("flagged", g.getStatus(2, 1));
+        
+        boolean[] bombs = new boolean[6 * 6];
+        bombs[0] = true;
+        bombs[3 * 6] = true;
+        GameBoard h = new GameBoard(6, 6, bombs);
+        h.dig(0, 1);
+        h.flag(0, 0);
+        h.flag(4, 4);
+        assertEquals("BOARD", h.chord(0, 1));
+        assertEquals("dug", h.getStatus(1, 0));
+        assertEquals("dug", h.getStatus(1, 2));
+        assertEquals("neighbors have bombs around them, so no opening", "untouched", h.getStatus(2, 0));
+    }
+    
     // TESTS FOR flag()
     // covers invalid cell
     @Test
@@ -296,4 +445,505 @@ public class GameBoardTest {
         GameBoard g = new GameBoard(5, 3);
         assertEquals("game board contains 3 rows", 3, g.getRows());
     }
+    
+    // TESTS FOR progress counters
+    // covers new board
+    @Test
+    public void testCountersNewBoard() throws IOException {
+        GameBoard g = new GameBoard(new File("test/minesweeper/boards/test_board_5"));
+        assertEquals("7x7 board with 2 bombs has 47 safe cells", 47, g.getSafeRemaining());
+        assertEquals("no bombs dug", 2, g.getBombsRemaining());
+        assertEquals("no flags", 0, g.getFlagCount());
+        assertEquals("no bombs hit", 0, g.getBombsHit());
+        assertFalse("new board is not cleared", g.isCleared());
+    }
+    
+    // covers digging a safe cell, flagging, deflagging
+    @Test
+    public void testCountersDigFlagDeflag() throws IOException {
+        GameBoard g = new GameBoard(new File("test/minesweeper/boards/test_board_5"));
+        g.dig(3, 1);
+        assertEquals("digging a safe cell with a bomb neighbor digs one cell", 46, g.getSafeRemaining());
+        g.flag(0, 0);
+        g.flag(0, 0);
+        g.flag(3, 1);
+        assertEquals("only untouched cells can be flagged", 1, g.getFlagCount());
+        g.deflag(0, 0);
+        g.deflag(0, 0);
+        assertEquals("deflagging removes the flag once", 0, g.getFlagCount());
+        assertEquals("flags do not change safe cells", 46, g.getSafeRemaining());
+    }
+    
+    // covers digging a bomb, flood fill, cleared with a flag still on a bomb
+    @Test
+    public void testCountersBoomFloodFillCleared() throws IOException {
+        GameBoard g = new GameBoard(new File("test/minesweeper/boards/test_board_5"));
+        g.flag(0, 6);
+        assertEquals("digging a bomb returns BOOM", "BOOM", g.dig(4, 1));
+        assertEquals("bomb is removed", 1, g.getBombsRemaining());
+        assertEquals("bomb is counted as hit", 1, g.getBombsHit());
+        assertEquals("flood fill digs every safe cell", 0, g.getSafeRemaining());
+        assertTrue("board is cleared", g.isCleared());
+        assertEquals("Safe cells remaining: 0. Flags placed: 1. Bombs hit: 1.", g.getStats());
+    }
+    
+    // covers flood fill from a cell with no bomb neighbors
+    @Test
+    public void testCountersFloodFillMatchesStatuses() throws IOException {
+        GameBoard g = new GameBoard(new File("test/minesweeper/boards/test5.txt"));
+        g.dig(2, 4);
+        int dug = 0;
+        for (int x = 0; x < g.getCols(); x++) {
+            for (int y = 0; y < g.getRows(); y++) {
+                if (g.getStatus(x, y).equals("dug")) {
+                    dug++;
+                }
+            }
+        }
+        assertEquals("safe cells remaining matches a full scan", 25 - 9 - dug, g.getSafeRemaining());
+    }
+    
+    // TESTS FOR gameBoard(sizeX, sizeY, seed) and reset()
+    // covers same seed on new boards
+    @Test
+    public void testSeedSameBoard() {
+        GameBoard g1 = new GameBoard(20, 10, 42);
+        GameBoard g2 = new GameBoard(20, 10, 42);
+        assertEquals("same seed places the same bombs", g1.getBombsRemaining(), g2.getBombsRemaining());
+        for (int x = 0; x < 20; x++) {
+            for (int y = 0; y < 10; y++) {
+                assertEquals("same seed places the same bombs", g1.dig(x, y), g2.dig(x, y));
+            }
+        }
+        assertEquals(g1.toString(), g2.toString());
+    }
+    
+    // covers reset of a played board
+    @Test
+    public void testResetPlayedBoard() {
+        GameBoard played = new GameBoard(20, 10, 1);
+        played.dig(3, 3);
+        played.flag(0, 0);
+        played.dig(19, 9);
+        played.reset(42);
+        GameBoard fresh = new GameBoard(20, 10, 42);
+        assertEquals("reset board is untouched", fresh.toString(), played.toString());
+        assertEquals(fresh.getStats(), played.getStats());
+        assertEquals(fresh.getBombsRemaining(), played.getBombsRemaining());
+        for (int x = 0; x < 20; x++) {
+            for (int y = 0; y < 10; y++) {
+                assertEquals("reset places the same bombs as a new board", fresh.dig(x, y), played.dig(x, y));
+            }
+        }
+    }
+    
+    // covers safe cell in the middle on a new board, reset of a played board with a safe corner
+    @Test
+    public void testSafeCell() {
+        GameBoard plain = new GameBoard(20, 10, 42);
+        GameBoard safe = new GameBoard(20, 10, 42, 5, 5);
+        GameBoard corner = new GameBoard(20, 10, 1);
+        corner.dig(3, 3);
+        corner.reset(42, 0, 0);
+        for (int x = 0; x < 20; x++) {
+            for (int y = 0; y < 10; y++) {
+                String expected = plain.dig(x, y);
+                if (Math.abs(x - 5) <= 1 && Math.abs(y - 5) <= 1) {
+                    assertEquals("no bomb next to the safe cell", "BOARD", safe.dig(x, y));
+                } else {
+                    assertEquals("other bombs are unchanged", expected, safe.dig(x, y));
+                }
+                if (x <= 1 && y <= 1) {
+                    assertEquals("no bomb next to the safe corner", "BOARD", corner.dig(x, y));
+                } else {
+                    assertEquals("other bombs are unchanged", expected, corner.dig(x, y));
+                }
+            }
+        }
+    }
+    
+    // TESTS FOR setSafeFirstDig()
+    // covers cell mode, first dig on a bomb, later dig on a bomb
+    @Test
+    public void testSafeFirstDigCell() throws IOException {
+        GameBoard g = new GameBoard(new File("test/minesweeper/boards/test_board_5"));
+        g.setSafeFirstDig(true, false);
+        assertEquals("first dig is safe", "BOARD", g.dig(4, 1));
+        assertEquals("cell is dug", "dug", g.getStatus(4, 1));
+        assertEquals("bomb was moved, not removed", 2, g.getBombsRemaining());
+        assertEquals("no bomb hit", 0, g.getBombsHit());
+        assertEquals("later digs are not safe", "BOOM", g.dig(0, 6));
+    }
+    
+    // covers whole area mode, first dig next to a bomb, on new boards and after reset
+    @Test
+    public void testSafeFirstDigArea() {
+        GameBoard g = new GameBoard(12, 12, 1);
+        g.setSafeFirstDig(true, true);
+        for (long seed = 0; seed < 50; seed++) {
+            g.reset(seed);
+            int bombs = g.getBombsRemaining();
+            int x = (int) (seed % 12);
+            int y = (int) (seed * 7 % 12);
+            assertEquals("first dig is safe", "BOARD", g.dig(x, y));
+            assertEquals("bombs were moved, not removed", bombs, g.getBombsRemaining());
+            for (int i = x - 1; i <= x + 1; i++) {
+                for (int j = y - 1; j <= y + 1; j++) {
+                    if (i >= 0 && i < 12 && j >= 0 && j < 12) {
+                        assertEquals("first dig uncovers an opening", "dug", g.getStatus(i, j));
+                    }
+                }
+            }
+        }
+    }
+    
+    // covers neighbor counts after moving bombs: the bombs of a board are found by digging each
+    // cell first on a copy of it, since boards with the same seed move bombs the same way
+    @Test
+    public void testSafeFirstDigNeighborCounts() {
+        final int size = 10;
+        final long seed = 6031;
+        boolean[] bombs = new boolean[size * size];
+        for (int index = 0; index < bombs.length; index++) {
+            GameBoard copy = new GameBoard(size, size, seed);
+            copy.setSafeFirstDig(true, true);
+            copy.dig(4, 4);
+            bombs[index] = copy.dig(index % size, index / size).equals("BOOM");
+        }
+        GameBoard g = new GameBoard(size, size, seed);
+        g.setSafeFirstDig(true, true);
+        g.dig(4, 4);
+        for (int index = 0; index < bombs.length; index++) {
+            if ( ! bombs[index]) {
+                assertEquals("cell without a bomb", "BOARD", g.dig(index % size, index / size));
+            }
+        }
+        assertTrue("board is cleared", g.isCleared());
+        byte[] visible = new byte[size * size];
+        g.snapshotVisible(visible);
+        for (int index = 0; index < bombs.length; index++) {
+            if ( ! bombs[index]) {
+                int expected = 0;
+                for (int i = index % size - 1; i <= index % size + 1; i++) {
+                    for (int j = index / size - 1; j <= index / size + 1; j++) {
+                        if (i >= 0 && i < size && j >= 0 && j < size && bombs[j * size + i]) {
+                            expected++;
+                        }
+                    }
+                }
+                assertEquals("neighbor count of cell " + index, expected, visible[index]);
+            }
+        }
+    }
+    
+    // covers game from restartIfCleared() with a board not in the mode
+    @Test
+    public void testSafeFirstDigRestart() throws IOException {
+        GameBoard g = new GameBoard(new File("test/minesweeper/boards/test_board_5"));
+        g.setSafeFirstDig(true, false);
+        g.dig(3, 3);
+        g.dig(4, 1);
+        GameBoard fresh = new GameBoard(new File("test/minesweeper/boards/test_board_5"));
+        assertTrue("board is cleared", g.restartIfCleared(fresh));
+        assertEquals("first dig of the new game is safe", "BOARD", g.dig(4, 1));
+        assertEquals("fresh board has the cleared game", "dug", fresh.getStatus(3, 3));
+    }
+    
+    // TESTS FOR restartIfCleared()
+    // covers not cleared
+    @Test
+    public void testRestartIfClearedNotCleared() throws IOException {
+        GameBoard g = new GameBoard(new File("test/minesweeper/boards/test_board_5"));
+        GameBoard fresh = new GameBoard(7, 7, 42);
+        g.dig(3, 1);
+        assertFalse("board is not cleared", g.restartIfCleared(fresh));
+        assertEquals("board is unchanged", "dug", g.getStatus(3, 1));
+        assertEquals("fresh board is unchanged", "untouched", fresh.getStatus(3, 1));
+    }
+    
+    // covers cleared
+    @Test
+    public void testRestartIfClearedCleared() throws IOException {
+        GameBoard g = new GameBoard(new File("test/minesweeper/boards/test_board_5"));
+        GameBoard fresh = new GameBoard(7, 7, 42);
+        String freshStats = fresh.getStats();
+        g.dig(4, 1);
+        assertTrue("board is cleared", g.restartIfCleared(fresh));
+        assertEquals("board has the new game", freshStats, g.getStats());
+        assertEquals("board has the new game", "untouched", g.getStatus(3, 1));
+        assertTrue("fresh board has the cleared game", fresh.isCleared());
+        assertEquals("fresh board has the cleared game", "dug", fresh.getStatus(3, 1));
+    }
+    
+    // TESTS FOR setUndoDepth(), undo() and redo()
+    // covers history within the depth, 0, 1 and too many moves, new move after undo
+    @Test
+    public void testUndoRedo() {
+        GameBoard g = new GameBoard(20, 10, 1);
+        g.setUndoDepth(10);
+        String[] states = new String[5];
+        states[0] = g + g.getStats();
+        g.flag(0, 0);
+        states[1] = g + g.getStats();
+        g.dig(10, 5);
+        states[2] = g + g.getStats();
+        g.deflag(0, 0);
+        states[3] = g + g.getStats();
+        g.dig(19, 9);
+        states[4] = g + g.getStats();
+        
+        long version = g.getVersion();
+        assertEquals("BOARD", g.undo(0));
+        assertEquals("undo of no move keeps the version", version, g.getVersion());
+        assertEquals("BOARD", g.undo(1));
+        assertEquals(states[3], g + g.getStats());
+        assertTrue("undo changes the version", g.getVersion() > version);
+        g.undo(2);
+        assertEquals(states[1], g + g.getStats());
+        assertEquals("BOARD", g.redo(1));
+        assertEquals(states[2], g + g.getStats());
+        g.undo(100);
+        assertEquals("undo goes back to the start of the game", states[0], g + g.getStats());
+        version = g.getVersion();
+        g.undo(1);
+        assertEquals("nothing left to undo", version, g.getVersion());
+        g.redo(100);
+        assertEquals(states[4], g + g.getStats());
+        
+        g.undo(3);
+        g.flag(1, 1);
+        String flagged = g + g.getStats();
+        version = g.getVersion();
+        g.redo(1);
+        assertEquals("a new move drops the moves to redo", version, g.getVersion());
+        g.undo(1);
+        assertEquals(states[1], g + g.getStats());
+        g.redo(1);
+        assertEquals(flagged, g + g.getStats());
+    }
+    
+    // covers undo disabled, history longer than the depth
+    @Test
+    public void testUndoDepth() {
+        GameBoard g = new GameBoard(20, 10, 1);
+        g.flag(0, 0);
+        long version = g.getVersion();
+        g.undo(1);
+        assertEquals("undo is disabled", version, g.getVersion());
+        assertEquals("flagged", g.getStatus(0, 0));
+        
+        g.setUndoDepth(2);
+        g.flag(1, 0);
+        g.flag(2, 0);
+        g.flag(3, 0);
+        g.undo(10);
+        assertEquals("undo goes back depth moves", 2, g.getFlagCount());
+        assertEquals("flagged", g.getStatus(1, 0));
+        assertEquals("untouched", g.getStatus(2, 0));
+        g.setUndoDepth(0);
+        g.redo(10);
+        assertEquals("undo is disabled", 2, g.getFlagCount());
+    }
+    
+    // covers history after reset, and after restartIfCleared() with a board without undo
+    @Test
+    public void testUndoNewGame() throws IOException {
+        GameBoard g = new GameBoard(new File("test/minesweeper/boards/test_board_5"));
+        g.setUndoDepth(5);
+        g.flag(0, 0);
+        g.reset(42);
+        String fresh = g.toString();
+        g.undo(1);
+        assertEquals("moves of an earlier game are not undone", fresh, g.toString());
+        
+        g = new GameBoard(new File("test/minesweeper/boards/test_board_5"));
+        g.setUndoDepth(5);
+        g.dig(4, 1);
+        assertTrue("board is cleared", g.restartIfCleared(new GameBoard(7, 7, 42)));
+        String start = g + g.getStats();
+        g.undo(1);
+        assertEquals("moves of an earlier game are not undone", start, g + g.getStats());
+        g.dig(3, 3);
+        g.undo(1);
+        assertEquals("moves of the new game are undone", start, g + g.getStats());
+    }
+    
+    // covers first-dig-safe mode with the first dig undone
+    @Test
+    public void testUndoSafeFirstDig() throws IOException {
+        GameBoard g = new GameBoard(new File("test/minesweeper/boards/test_board_5"));
+        g.setSafeFirstDig(true, false);
+        g.setUndoDepth(5);
+        assertEquals("BOARD", g.dig(4, 1));
+        g.undo(1);
+        assertEquals("bomb is back", "untouched", g.getStatus(4, 1));
+        assertEquals(2, g.getBombsRemaining());
+        assertEquals("first dig is safe again", "BOARD", g.dig(4, 1));
+        assertEquals("bomb was moved, not removed", 2, g.getBombsRemaining());
+        assertEquals("later digs are not safe", "BOOM", g.dig(0, 6));
+    }
+    
+    // TESTS FOR setRegionIndex() and getRegionStats()
+    // covers no index and an index, whole board, corners in any order, rectangles off the board
+    @Test
+    public void testRegionStats() throws IOException {
+        GameBoard scanned = new GameBoard(new File("test/minesweeper/boards/test_board_5"));
+        GameBoard indexed = new GameBoard(new File("test/minesweeper/boards/test_board_5"));
+        indexed.setRegionIndex(true);
+        for (GameBoard g : new GameBoard[] { scanned, indexed }) {
+            assertEquals("Squares: 49. Untouched: 49. Flagged: 0. Dug: 0. Bombs: 2.", g.getRegionStats(0, 0, 6, 6));
+            assertEquals("corners in any order, clipped to the board",
+                    "Squares: 21. Untouched: 21. Flagged: 0. Dug: 0. Bombs: 1.", g.getRegionStats(10, 10, 4, -3));
+            assertEquals("Squares: 0. Untouched: 0. Flagged: 0. Dug: 0. Bombs: 0.", g.getRegionStats(7, 0, 9, 9));
+            g.flag(4, 1);
+            g.dig(0, 0);
+            assertEquals("Squares: 49. Untouched: 2. Flagged: 1. Dug: 46. Bombs: 2.", g.getRegionStats(0, 0, 6, 6));
+            assertEquals("Squares: 1. Untouched: 0. Flagged: 1. Dug: 0. Bombs: 1.", g.getRegionStats(4, 1, 4, 1));
+            g.deflag(4, 1);
+            g.dig(4, 1);
+            assertEquals("Squares: 49. Untouched: 1. Flagged: 0. Dug: 48. Bombs: 1.", g.getRegionStats(6, 6, 0, 0));
+        }
+        indexed.setRegionIndex(false);
+        assertEquals("Squares: 7. Untouched: 1. Flagged: 0. Dug: 6. Bombs: 1.", indexed.getRegionStats(0, 6, 6, 6));
+    }
+    
+    // covers digs, flags, deflags, chords, undo, redo, reset and a safe first dig, against a scan
+    @Test
+    public void testRegionIndexMatchesScan() {
+        GameBoard scanned = new GameBoard(24, 13, 7);
+        GameBoard indexed = new GameBoard(24, 13, 7);
+        for (GameBoard g : new GameBoard[] { scanned, indexed }) {
+            g.setSafeFirstDig(true, true);
+            g.setUndoDepth(5);
+        }
+        indexed.setRegionIndex(true);
+        Random random = new Random(6031);
+        for (int move = 0; move < 400; move++) {
+            int x = random.nextInt(24);
+            int y = random.nextInt(13);
+            int choice = random.nextInt(20);
+            for (GameBoard g : new GameBoard[] { scanned, indexed }) {
+                if (choice < 6) {
+                    g.dig(x, y);
+                } else if (choice < 11) {
+                    g.flag(x, y);
+                } else if (choice < 14) {
+                    g.deflag(x, y);
+                } else if (choice < 16) {
+                    g.chord(x, y);
+                } else if (choice < 18) {
+                    g.undo(1 + x % 3);
+                } else if (choice < 19) {
+                    g.redo(1 + y % 3);
+                } else if (move % 7 == 0) {
+                    g.reset(move);
+                }
+            }
+            for (int query = 0; query < 5; query++) {
+                int x1 = random.nextInt(26) - 1;
+                int y1 = random.nextInt(15) - 1;
+                int x2 = random.nextInt(26) - 1;
+                int y2 = random.nextInt(15) - 1;
+                assertEquals("move " + move, scanned.getRegionStats(x1, y1, x2, y2),
+                        indexed.getRegionStats(x1, y1, x2, y2));
+            }
+        }
+    }
+    
+    // covers restartIfCleared() with a board without an index, which then has none
+    @Test
+    public void testRegionIndexRestart() throws IOException {
+        GameBoard g = new GameBoard(new File("test/minesweeper/boards/test_board_5"));
+        g.setRegionIndex(true);
+        GameBoard fresh = new GameBoard(7, 7, 42);
+        String freshStats = fresh.getRegionStats(0, 0, 6, 6);
+        g.dig(4, 1);
+        assertTrue("board is cleared", g.restartIfCleared(fresh));
+        assertEquals("board has the new game", freshStats, g.getRegionStats(0, 0, 6, 6));
+        GameBoard twin = new GameBoard(7, 7, 42);
+        g.flag(2, 2);
+        twin.flag(2, 2);
+        assertEquals("index follows the new game", twin.getRegionStats(0, 0, 3, 3), g.getRegionStats(0, 0, 3, 3));
+        assertEquals("fresh board has the cleared game", "Squares: 49. Untouched: 1. Flagged: 0. Dug: 48. Bombs: 1.",
+                fresh.getRegionStats(0, 0, 6, 6));
+    }
+    
+    // TESTS FOR getVersion()
+    // covers changes and non-changes
+    @Test
+    public void testGetVersion() throws IOException {
+        GameBoard g = new GameBoard(new File("test/minesweeper/boards/test_board_5"));
+        long version = g.getVersion();
+        g.dig(3, 1);
+        assertTrue("dig changes the version", g.getVersion() > version);
+        version = g.getVersion();
+        g.dig(3, 1);
+        g.dig(-1, 0);
+        g.deflag(0, 0);
+        g.flag(3, 1);
+        assertEquals("commands that change nothing keep the version", version, g.getVersion());
+        g.flag(0, 0);
+        assertTrue("flag changes the version", g.getVersion() > version);
+        version = g.getVersion();
+        g.dig(0, 0);
+        assertEquals("digging a flagged cell keeps the version", version, g.getVersion());
+        g.deflag(0, 0);
+        assertTrue("deflag changes the version", g.getVersion() > version);
+        version = g.getVersion();
+        g.reset(1);
+        assertTrue("reset changes the version", g.getVersion() > version);
+    }
+    
+    // TESTS FOR reads without the lock
+    // covers another thread holding the lock
+    @Test
+    public void testReadsDoNotWaitForLock() throws InterruptedException {
+        GameBoard g = new GameBoard(5, 4, 6031);
+        g.flag(1, 1);
+        AtomicReference<String> read = new AtomicReference<>();
+        Thread reader = new Thread(() -> read.set(g.getStatus(1, 1) + " " + g.getFlagCount() + " "
+                + g.isCleared() + " " + g.getStats() + " " + g.snapshotVisible(new byte[20]) + "\n" + g));
+        synchronized (g) {
+            // as a move in progress does
+            reader.start();
+            reader.join(5000);
+            assertFalse("reads wait for the lock", reader.isAlive());
+        }
+        assertEquals("flagged 1 false " + g.getStats() + " " + g.getVersion() + "\n" + g, read.get());
+    }
+    
+    // covers another thread making moves
+    @Test
+    public void testReadsDuringMoves() throws InterruptedException {
+        GameBoard g = new GameBoard(5, 4, 6031);
+        final long deadline = System.currentTimeMillis() + 300;
+        // flags (0,0) then (1,0), and deflags them in the opposite order, so (1,0) is only ever
+        // flagged while (0,0) is
+        Thread writer = new Thread(() -> {
+            while (System.currentTimeMillis() < deadline) {
+                g.flag(0, 0);
+                g.flag(1, 0);
+                g.deflag(1, 0);
+                g.deflag(0, 0);
+            }
+        });
+        writer.start();
+        byte[] visible = new byte[20];
+        int reads = 0;
+        while (writer.isAlive() || reads == 0) {
+            String board = g.toString();
+            assertTrue(board, board.startsWith("- -") || board.startsWith("F -") || board.startsWith("F F"));
+            g.snapshotVisible(visible);
+            assertTrue("(1,0) flagged before (0,0)",
+                    visible[1] != GameBoard.VISIBLE_FLAGGED || visible[0] == GameBoard.VISIBLE_FLAGGED);
+            int flags = g.getFlagCount();
+            assertTrue("flags: " + flags, flags >= 0 && flags <= 2);
+            String stats = g.getStats();
+            assertTrue(stats, stats.matches(".*Flags placed: [012]\\..*"));
+            reads++;
+        }
+        writer.join();
+        assertEquals("untouched", g.getStatus(0, 0));
+        assertEquals(0, g.getFlagCount());
+    }
 }
@@ -4,17 +4,30 @@
 package minesweeper;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.io.UncheckedIOException;
 import java.net.ConnectException;
+import java.net.InetAddress;
 import java.net.Socket;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
 
 import org.junit.Test;
 
@@ -30,6 +43,8 @@ public class GameServerTest {
      *      dig
      *      flag
      *      deflag
+     *      chord: too few flags, as many flags as the number (text and binary)
+     *      undo, redo: 1 move, N moves, more than --undo allows; without --undo
      *  server output:
      *      board
      *      boom
@@ -47,6 +62,53 @@ public class GameServerTest {
      *      c1 deflags, c2 deflags --> cell remains untouched
      *      c1 deflags, c2 flags --> cell is flagged
      *      c1 deflags, c2 digs --> cell is unchanged
+     *  
+     *  stats:
+     *      new board, after digs/flags/boom, cleared board
+     *  --reset-on-clear:
+     *      dig that clears the board --> cleared message, new board
+     *  --rate-limit:
+     *      commands within the burst --> answered at once; more commands --> slowed down
+     *  --idle-timeout:
+     *      idle client --> disconnected; other client --> still connected
+     *  spectate:
+     *      spectator joins --> sent current board; player changes board --> spectator sent new board;
+     *      spectator says bye --> disconnected
+     *  binary:
+     *      look --> FULL; dig --> DELTA; batch with a bomb --> BOOM status; malformed --> ERROR;
+     *      batch with a malformed move after a good one --> ERROR, no move made; bye --> disconnected
+     *  hint:
+     *      new board --> guess; after a dig --> safe cell; after every safe cell is dug --> bomb
+     *  --no-guess:
+     *      random board --> center dug, cleared by following certain hints without hitting a bomb
+     *  --safe-first-dig:
+     *      first dig on a bomb --> board, not boom; later dig on a bomb --> boom
+     *  --output-queue:
+     *      client that never reads its responses --> disconnected; other client --> still served
+     *  compress:
+     *      rle, deflate --> look and moves send the compressed board; off --> text again;
+     *      unknown mode --> help; board smaller than --compress-threshold --> text
+     *  shutdown:
+     *      commands sent before --> answered, then goodbye; idle client --> goodbye;
+     *      no more connections; board saved to --snapshot, and played on by a new server
+     *  --handoff:
+     *      no server to take over from --> null; new server takes over --> old clients told to
+     *      reconnect, new clients play on the old board; server shut down --> handoff port closed;
+     *      connection to the handoff port that sends something else or nothing --> closed, and a
+     *      server can still take over
+     *  --batch:
+     *      tick 0, tick > 0 with a batch size: moves, 'look', 'stats' and invalid input answered
+     *  count:
+     *      --region-index: whole board, corners in any order, after a flag and a dig;
+     *      without --region-index --> not available
+     *  --max-connections:
+     *      server full --> client told its position in line, then admitted when a client leaves;
+     *      line full --> client told to try again later and disconnected; shutdown --> clients
+     *      in line told goodbye
+     *  --slow-log, --trace-events:
+     *      every command traced and logged --> moves, 'look', 'stats' and invalid input answered as usual
+     *  metrics:
+     *      no look yet; look at an unchanged board --> hit; after a move --> miss, eviction
      */
     
     private static final String LOCALHOST = "127.0.0.1";
@@ -55,32 +117,64 @@ public class GameServerTest {
     private static final String BOARDS_PKG = "minesweeper/boards/";
 
     /**
-     * Start a GameServer with a board file from BOARDS_PKG.
+     * Find a board file in BOARDS_PKG.
      * 
-     * @param boardFile board to load
-     * @return thread running the server
+     * @param boardFile name of the board file
+     * @return the board file
      * @throws IOException if the board file cannot be found
      */
-    private static Thread startGameServer(String boardFile, int port) throws IOException {
+    private static File findBoard(String boardFile) throws IOException {
         final URL boardURL = ClassLoader.getSystemClassLoader().getResource(BOARDS_PKG + boardFile);
         if (boardURL == null) {
             throw new IOException("Failed to locate resource " + boardFile);
         }
-        final String boardPath;
         try {
-            boardPath = new File(boardURL.toURI()).getAbsolutePath();
+            return new File(boardURL.toURI()).getAbsoluteFile();
         } catch (URISyntaxException urise) {
             throw new IOException("Invalid URL " + boardURL, urise);
         }
-        final String[] args = new String[] {
-                "--port", Integer.toString(port),
-                "--file", boardPath
-        };
+    }
+
+    /**
+     * Start a GameServer with a board file from BOARDS_PKG.
+     * 
+     * @param boardFile board to load
+     * @param port port to listen on
+     * @param options extra command-line options for the server
+     * @return thread running the server
+     * @throws IOException if the board file cannot be found
+     */
+    private static Thread startGameServer(String boardFile, int port, String... options) throws IOException {
+        final String boardPath = findBoard(boardFile).getPath();
+        final String[] args = new String[4 + options.length];
+        args[0] = "--port";
+        args[1] = Integer.toString(port);
+        args[2] = "--file";
+        args[3] = boardPath;
+        System.arraycopy(options, 0, args, 4, options.length);
         Thread serverThread = new Thread(() -> GameServer.main(args));
         serverThread.start();
         return serverThread;
     }
 
+    /**
+     * Run a GameServer that the test can stop.
+     * 
+     * @param server server to run
+     * @return thread running server.serve()
+     */
+    private static Thread serve(GameServer server) {
+        Thread serverThread = new Thread(() -> {
+            try {
+                server.serve();
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+        });
+        serverThread.start();
+        return serverThread;
+    }
+
     /**
      * Connect to a GameServer and return the connected socket.
      * 
@@ -384,4 +478,921 @@ public class GameServerTest {
         socket3.close();
         socket4.close();
     }
+    
+    // covers stats on a new board, after digs/flags/boom, and on a cleared board
+    @Test(timeout = 10000)
+    public void testStats() throws IOException {
+        int port = 4003;
+        Thread thread = startGameServer("test_board_5", port);
+
+        Socket socket = connectToGameServer(thread, port);
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+        assertTrue("expected HELLO message", in.readLine().startsWith("Welcome"));
+        
+        out.println("stats");
+        assertEquals("Safe cells remaining: 47. Flags placed: 0. Bombs hit: 0. Players: 1. Your moves: 0.", in.readLine());
+        
+        out.println("flag 0 6");
+        for (int row = 0; row < 7; row++) {
+            in.readLine();
+        }
+        out.println("dig 4 1");
+        assertEquals("BOOM!", in.readLine());
+        
+        // without --reset-on-clear, the cleared board stays
+        out.println("stats");
+        assertEquals("Safe cells remaining: 0. Flags placed: 1. Bombs hit: 1. Players: 1. Your moves: 2.", in.readLine());
+        
+        out.println("bye");
+        socket.close();
+    }
+    
+    // covers hint on a new board, after a dig, after every safe cell is dug
+    @Test(timeout = 10000)
+    public void testHint() throws IOException {
+        int port = 4009;
+        Thread thread = startGameServer("test_board_5", port);
+
+        Socket socket = connectToGameServer(thread, port);
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+        assertTrue("expected HELLO message", in.readLine().startsWith("Welcome"));
+        
+        out.println("hint");
+        String hint = in.readLine();
+        assertTrue("expected a guess, got " + hint, hint.startsWith("Hint: dig 0 0 (bomb probability "));
+        assertTrue("expected solve time, got " + hint, hint.matches(".* Solved in [0-9.,]+ ms\\."));
+        
+        out.println("dig 0 0");
+        for (int row = 0; row < 7; row++) {
+            in.readLine();
+        }
+        out.println("hint");
+        assertTrue(in.readLine().startsWith("Hint: dig 4 0 (safe). Solved in "));
+        
+        out.println("dig 4 0");
+        for (int row = 0; row < 7; row++) {
+            in.readLine();
+        }
+        out.println("hint");
+        assertTrue(in.readLine().startsWith("Hint: flag 4 1 (bomb). Solved in "));
+        
+        out.println("bye");
+        socket.close();
+    }
+    
+    // covers --no-guess with a random board
+    @Test(timeout = 30000)
+    public void testNoGuess() throws IOException {
+        int port = 4010;
+        Thread thread = startGameServer("test_board_5", port, "--size", "9,9", "--no-guess");
+
+        Socket socket = connectToGameServer(thread, port);
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+        assertTrue("expected HELLO message", in.readLine().startsWith("Welcome"));
+        
+        out.println("look");
+        for (int row = 0; row < 9; row++) {
+            String line = in.readLine();
+            if (row == 4) {
+                assertEquals("center is dug with no neighboring bombs", ' ', line.charAt(8));
+            }
+        }
+        while (true) {
+            out.println("hint");
+            String hint = in.readLine();
+            if (hint.startsWith("No hint")) {
+                break;
+            }
+            assertTrue("expected a certain move, got " + hint, hint.matches("Hint: (dig|flag) \\d+ \\d+ \\((safe|bomb)\\)\\..*"));
+            out.println(hint.substring("Hint: ".length(), hint.indexOf(" (")));
+            for (int row = 0; row < 9; row++) {
+                assertTrue("expected no BOOM", ! in.readLine().startsWith("BOOM"));
+            }
+        }
+        out.println("stats");
+        assertTrue(in.readLine().startsWith("Safe cells remaining: 0."));
+        
+        out.println("bye");
+        socket.close();
+    }
+    
+    // covers --safe-first-dig with a first dig on a bomb, then a dig on another bomb
+    @Test(timeout = 10000)
+    public void testSafeFirstDig() throws IOException {
+        int port = 4011;
+        Thread thread = startGameServer("test_board_5", port, "--safe-first-dig", "cell");
+
+        Socket socket = connectToGameServer(thread, port);
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+        assertTrue("expected HELLO message", in.readLine().startsWith("Welcome"));
+        
+        out.println("dig 4 1");
+        for (int row = 0; row < 7; row++) {
+            String line = in.readLine();
+            assertTrue("first dig is safe", ! line.startsWith("BOOM"));
+            if (row == 1) {
+                assertTrue("cell is dug", line.charAt(8) != '-');
+            }
+        }
+        out.println("dig 0 6");
+        assertEquals("later digs are not safe", "BOOM!", in.readLine());
+        
+        out.println("bye");
+        socket.close();
+    }
+    
+    // covers --reset-on-clear with a dig that clears the board
+    @Test(timeout = 10000)
+    public void testResetOnClear() throws IOException {
+        int port = 4004;
+        Thread thread = startGameServer("test_board_5", port, "--reset-on-clear");
+
+        Socket socket = connectToGameServer(thread, port);
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+        assertTrue("expected HELLO message", in.readLine().startsWith("Welcome"));
+        
+        out.println("dig 4 1");
+        assertEquals("Board cleared! Starting a new game.", in.readLine());
+        
+        out.println("look");
+        for (int row = 0; row < 7; row++) {
+            assertEquals("new board is untouched", "- - - - - - -", in.readLine());
+        }
+        out.println("stats");
+        assertTrue("new board has no progress", in.readLine().matches("Safe cells remaining: \\d+\\. Flags placed: 0\\. Bombs hit: 0\\. Players: 1\\. Your moves: 1\\."));
+        
+        out.println("bye");
+        socket.close();
+    }
+    
+    // covers --rate-limit with commands within and beyond the burst
+    @Test(timeout = 10000)
+    public void testRateLimit() throws IOException {
+        int port = 4005;
+        Thread thread = startGameServer("test5.txt", port, "--rate-limit", "10,2");
+
+        Socket socket = connectToGameServer(thread, port);
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+        assertTrue("expected HELLO message", in.readLine().startsWith("Welcome"));
+        
+        long start = System.nanoTime();
+        for (int i = 0; i < 7; i++) {
+            out.println("stats");
+            assertTrue("expected STATS message", in.readLine().startsWith("Safe cells remaining"));
+        }
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        // 2 commands in the burst, then 5 more at 10 per second
+        assertTrue("expected commands to be slowed down, took " + elapsedMillis + " ms", elapsedMillis >= 400);
+        
+        out.println("bye");
+        socket.close();
+    }
+    
+    // covers --idle-timeout with an idle client and an active client
+    @Test(timeout = 10000)
+    public void testIdleTimeout() throws IOException, InterruptedException {
+        int port = 4006;
+        Thread thread = startGameServer("test5.txt", port, "--idle-timeout", "1");
+
+        Socket idle = connectToGameServer(thread, port);
+        BufferedReader idleIn = new BufferedReader(new InputStreamReader(idle.getInputStream()));
+        assertTrue("expected HELLO message", idleIn.readLine().startsWith("Welcome"));
+        
+        Socket active = connectToGameServer(thread, port);
+        BufferedReader in = new BufferedReader(new InputStreamReader(active.getInputStream()));
+        PrintWriter out = new PrintWriter(active.getOutputStream(), true);
+        assertTrue("expected HELLO message", in.readLine().startsWith("Welcome"));
+        
+        for (int i = 0; i < 8; i++) {
+            Thread.sleep(250);
+            out.println("help");
+            assertTrue("expected HELP message", in.readLine().startsWith("Please"));
+        }
+        assertEquals("idle client is disconnected", null, idleIn.readLine());
+        
+        out.println("stats");
+        assertTrue("only the active client is left", in.readLine().contains("Players: 1."));
+        
+        out.println("bye");
+        active.close();
+        idle.close();
+    }
+    
+    // covers spectate: current board, changed board, bye
+    @Test(timeout = 10000)
+    public void testSpectate() throws IOException {
+        int port = 4007;
+        Thread thread = startGameServer("test5.txt", port, "--spectator-fps", "20");
+
+        Socket spectator = connectToGameServer(thread, port);
+        BufferedReader spectatorIn = new BufferedReader(new InputStreamReader(spectator.getInputStream()));
+        PrintWriter spectatorOut = new PrintWriter(spectator.getOutputStream(), true);
+        assertTrue("expected HELLO message", spectatorIn.readLine().startsWith("Welcome"));
+        
+        Socket player = connectToGameServer(thread, port);
+        BufferedReader in = new BufferedReader(new InputStreamReader(player.getInputStream()));
+        PrintWriter out = new PrintWriter(player.getOutputStream(), true);
+        assertTrue("expected HELLO message", in.readLine().startsWith("Welcome"));
+        
+        spectatorOut.println("spectate");
+        for (int row = 0; row < 5; row++) {
+            assertEquals("spectator is sent the current board", "- - - - -", spectatorIn.readLine());
+        }
+        
+        out.println("dig 1 0");
+        for (int row = 0; row < 5; row++) {
+            in.readLine();
+        }
+        assertEquals("spectator is sent the new board", "- 3 - - -", spectatorIn.readLine());
+        for (int row = 1; row < 5; row++) {
+            assertEquals("spectator is sent the new board", "- - - - -", spectatorIn.readLine());
+        }
+        
+        spectatorOut.println("bye");
+        assertEquals("spectator is disconnected", null, spectatorIn.readLine());
+        
+        out.println("bye");
+        player.close();
+        spectator.close();
+    }
+    
+    /**
+     * Sends a binary frame with a move.
+     * 
+     * @param out stream to the server
+     * @param opcode BinaryProtocol.DIG, FLAG, DEFLAG or CHORD
+     * @param x column
+     * @param y row
+     * @throws IOException if the connection fails
+     */
+    private static void sendBinaryMove(OutputStream out, int opcode, int x, int y) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        payload.write(opcode);
+        BinaryProtocol.writeVarint(payload, BinaryProtocol.zigzag(x));
+        BinaryProtocol.writeVarint(payload, BinaryProtocol.zigzag(y));
+        BinaryProtocol.writeFrame(out, payload.toByteArray());
+        out.flush();
+    }
+    
+    // covers binary: look, dig, batch with a bomb, malformed, malformed batch, bye
+    @Test(timeout = 10000)
+    public void testBinary() throws IOException {
+        int port = 4008;
+        Thread thread = startGameServer("test5.txt", port);
+
+        Socket socket = connectToGameServer(thread, port);
+        BufferedReader text = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        PrintWriter textOut = new PrintWriter(socket.getOutputStream(), true);
+        assertTrue("expected HELLO message", text.readLine().startsWith("Welcome"));
+        textOut.println("binary");
+        assertEquals("BINARY", text.readLine());
+        InputStream in = socket.getInputStream();
+        OutputStream out = socket.getOutputStream();
+        byte[] cells = new byte[25];
+        
+        BinaryProtocol.writeFrame(out, new byte[] { BinaryProtocol.LOOK });
+        out.flush();
+        byte[] payload = BinaryProtocol.readFrame(in, 1 << 20);
+        assertEquals("look is FULL", BinaryProtocol.FULL, payload[0] & 0xFF);
+        BinaryProtocol.decodeBoard(payload, cells);
+        
+        sendBinaryMove(out, BinaryProtocol.DIG, 1, 0);
+        payload = BinaryProtocol.readFrame(in, 1 << 20);
+        assertEquals("dig is DELTA", BinaryProtocol.DELTA, payload[0] & 0xFF);
+        assertEquals(BinaryProtocol.STATUS_BOARD, BinaryProtocol.decodeBoard(payload, cells));
+        assertEquals("(1,0) has 3 neighbors with bombs", 3, cells[1]);
+        
+        ByteArrayOutputStream batch = new ByteArrayOutputStream();
+        batch.write(BinaryProtocol.BATCH);
+        BinaryProtocol.writeVarint(batch, 2);
+        batch.write(BinaryProtocol.FLAG);
+        BinaryProtocol.writeVarint(batch, BinaryProtocol.zigzag(4));
+        BinaryProtocol.writeVarint(batch, BinaryProtocol.zigzag(2));
+        batch.write(BinaryProtocol.DIG);
+        BinaryProtocol.writeVarint(batch, BinaryProtocol.zigzag(1));
+        BinaryProtocol.writeVarint(batch, BinaryProtocol.zigzag(4));
+        BinaryProtocol.writeFrame(out, batch.toByteArray());
+        out.flush();
+        payload = BinaryProtocol.readFrame(in, 1 << 20);
+        assertEquals("batch dug a bomb", BinaryProtocol.STATUS_BOOM, BinaryProtocol.decodeBoard(payload, cells));
+        assertEquals("(4,2) is flagged", GameBoard.VISIBLE_FLAGGED, cells[2 * 5 + 4]);
+        assertEquals("(1,4) is dug", 1, cells[4 * 5 + 1]);
+        
+        BinaryProtocol.writeFrame(out, new byte[] { BinaryProtocol.DIG, 1 });
+        out.flush();
+        payload = BinaryProtocol.readFrame(in, 1 << 20);
+        assertEquals("malformed frame", BinaryProtocol.ERROR, payload[0] & 0xFF);
+        
+        batch.reset();
+        batch.write(BinaryProtocol.BATCH);
+        BinaryProtocol.writeVarint(batch, 2);
+        batch.write(BinaryProtocol.FLAG);
+        BinaryProtocol.writeVarint(batch, BinaryProtocol.zigzag(3));
+        BinaryProtocol.writeVarint(batch, BinaryProtocol.zigzag(3));
+        batch.write(0x7F);
+        BinaryProtocol.writeVarint(batch, BinaryProtocol.zigzag(0));
+        BinaryProtocol.writeVarint(batch, BinaryProtocol.zigzag(0));
+        BinaryProtocol.writeFrame(out, batch.toByteArray());
+        out.flush();
+        payload = BinaryProtocol.readFrame(in, 1 << 20);
+        assertEquals("malformed batch", BinaryProtocol.ERROR, payload[0] & 0xFF);
+        BinaryProtocol.writeFrame(out, new byte[] { BinaryProtocol.LOOK });
+        out.flush();
+        BinaryProtocol.decodeBoard(BinaryProtocol.readFrame(in, 1 << 20), cells);
+        assertEquals("malformed batch made no move", GameBoard.VISIBLE_UNTOUCHED, cells[3 * 5 + 3]);
+        
+        BinaryProtocol.writeFrame(out, new byte[] { BinaryProtocol.BYE });
+        out.flush();
+        assertEquals("disconnected", -1, in.read());
+        socket.close();
+    }
+    
+    // covers chord with too few flags and with as many as the number, in text and binary
+    @Test(timeout = 10000)
+    public void testChord() throws IOException {
+        int port = 4019;
+        Thread thread = startGameServer("test5.txt", port);
+        
+        Socket socket = connectToGameServer(thread, port);
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+        assertTrue("expected HELLO message", in.readLine().startsWith("Welcome"));
+        
+        out.println("dig 0 0");
+        assertEquals("2 - - - -", in.readLine());
+        for (int row = 1; row < 5; row++) {
+            assertEquals("- - - - -", in.readLine());
+        }
+        out.println("flag 0 1");
+        for (int row = 0; row < 5; row++) {
+            in.readLine();
+        }
+        out.println("chord 0 0");
+        assertEquals("too few flags", "2 - - - -", in.readLine());
+        assertEquals("F - - - -", in.readLine());
+        for (int row = 2; row < 5; row++) {
+            assertEquals("- - - - -", in.readLine());
+        }
+        out.println("flag 1 1");
+        for (int row = 0; row < 5; row++) {
+            in.readLine();
+        }
+        out.println("chord 0 0");
+        assertEquals("2 3 - - -", in.readLine());
+        assertEquals("F F - - -", in.readLine());
+        for (int row = 2; row < 5; row++) {
+            assertEquals("- - - - -", in.readLine());
+        }
+        
+        out.println("binary");
+        assertEquals("BINARY", in.readLine());
+        InputStream binaryIn = socket.getInputStream();
+        OutputStream binaryOut = socket.getOutputStream();
+        byte[] cells = new byte[25];
+        BinaryProtocol.writeFrame(binaryOut, new byte[] { BinaryProtocol.LOOK });
+        binaryOut.flush();
+        BinaryProtocol.decodeBoard(BinaryProtocol.readFrame(binaryIn, 1 << 20), cells);
+        sendBinaryMove(binaryOut, BinaryProtocol.DIG, 3, 2);
+        BinaryProtocol.decodeBoard(BinaryProtocol.readFrame(binaryIn, 1 << 20), cells);
+        ByteArrayOutputStream batch = new ByteArrayOutputStream();
+        batch.write(BinaryProtocol.BATCH);
+        BinaryProtocol.writeVarint(batch, 4);
+        for (int y = 1; y <= 3; y++) {
+            batch.write(BinaryProtocol.FLAG);
+            BinaryProtocol.writeVarint(batch, BinaryProtocol.zigzag(4));
+            BinaryProtocol.writeVarint(batch, BinaryProtocol.zigzag(y));
+        }
+        batch.write(BinaryProtocol.CHORD);
+        BinaryProtocol.writeVarint(batch, BinaryProtocol.zigzag(3));
+        BinaryProtocol.writeVarint(batch, BinaryProtocol.zigzag(2));
+        BinaryProtocol.writeFrame(binaryOut, batch.toByteArray());
+        binaryOut.flush();
+        assertEquals(BinaryProtocol.STATUS_BOARD,
+                BinaryProtocol.decodeBoard(BinaryProtocol.readFrame(binaryIn, 1 << 20), cells));
+        assertEquals("(2,1) is dug", 2, cells[1 * 5 + 2]);
+        assertEquals("(2,2) is dug", 1, cells[2 * 5 + 2]);
+        assertEquals("(3,3) is dug", 3, cells[3 * 5 + 3]);
+        assertEquals("(4,2) is flagged", GameBoard.VISIBLE_FLAGGED, cells[2 * 5 + 4]);
+        
+        BinaryProtocol.writeFrame(binaryOut, new byte[] { BinaryProtocol.BYE });
+        binaryOut.flush();
+        socket.close();
+    }
+    
+    // covers undo and redo of 1 move, N moves and more than --undo allows, and undo without --undo
+    @Test(timeout = 10000)
+    public void testUndo() throws IOException {
+        int port = 4020;
+        Thread thread = startGameServer("test5.txt", port, "--undo", "2");
+        
+        Socket socket = connectToGameServer(thread, port);
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+        assertTrue("expected HELLO message", in.readLine().startsWith("Welcome"));
+        
+        out.println("flag 4 4");
+        for (int row = 0; row < 5; row++) {
+            in.readLine();
+        }
+        out.println("dig 0 0");
+        for (int row = 0; row < 5; row++) {
+            in.readLine();
+        }
+        out.println("flag 1 0");
+        assertEquals("2 F - - -", in.readLine());
+        for (int row = 1; row < 5; row++) {
+            in.readLine();
+        }
+        out.println("undo");
+        assertEquals("2 - - - -", in.readLine());
+        for (int row = 1; row < 4; row++) {
+            assertEquals("- - - - -", in.readLine());
+        }
+        assertEquals("- - - - F", in.readLine());
+        out.println("undo 5");
+        assertEquals("only 2 moves are undone", "- - - - -", in.readLine());
+        for (int row = 1; row < 4; row++) {
+            assertEquals("- - - - -", in.readLine());
+        }
+        assertEquals("- - - - F", in.readLine());
+        out.println("redo 2");
+        assertEquals("2 F - - -", in.readLine());
+        for (int row = 1; row < 5; row++) {
+            in.readLine();
+        }
+        out.println("stats");
+        assertTrue(in.readLine().startsWith("Safe cells remaining: 15. Flags placed: 2."));
+        out.println("bye");
+        socket.close();
+        
+        port = 4021;
+        thread = startGameServer("test5.txt", port);
+        socket = connectToGameServer(thread, port);
+        in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        out = new PrintWriter(socket.getOutputStream(), true);
+        assertTrue("expected HELLO message", in.readLine().startsWith("Welcome"));
+        out.println("undo");
+        assertEquals("Moves cannot be undone on this server.", in.readLine());
+        out.println("bye");
+        socket.close();
+    }
+    
+    // covers --output-queue with a client that never reads
+    @Test(timeout = 20000)
+    public void testOutputQueue() throws IOException {
+        int port = 4014;
+        Thread thread = startGameServer("test5.txt", port, "--output-queue", "100000");
+        
+        Socket slow = connectToGameServer(thread, port);
+        PrintWriter slowOut = new PrintWriter(slow.getOutputStream(), false);
+        final int commands = 40000;
+        // PrintWriter ignores the error of writing to a disconnected client
+        for (int i = 0; i < commands; i++) {
+            slowOut.println("help");
+        }
+        slowOut.flush();
+        int responses = 0;
+        BufferedReader slowIn = new BufferedReader(new InputStreamReader(slow.getInputStream()));
+        try {
+            while (slowIn.readLine() != null) {
+                responses++;
+            }
+        } catch (IOException ioe) {
+            // connection reset
+        }
+        assertTrue("expected the slow client to be disconnected, got " + responses + " responses", responses < commands);
+        
+        Socket socket = connectToGameServer(thread, port);
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+        assertTrue("expected HELLO message", in.readLine().startsWith("Welcome"));
+        // the slow client's session may take a moment to end after its connection is closed
+        final long deadline = System.currentTimeMillis() + 5000;
+        String stats;
+        do {
+            out.println("stats");
+            stats = in.readLine();
+        } while ( ! stats.contains("Players: 1.") && System.currentTimeMillis() < deadline);
+        assertTrue("only the new client is left, got " + stats, stats.contains("Players: 1."));
+        out.println("bye");
+        socket.close();
+        slow.close();
+    }
+    
+    /**
+     * @param in input from the server
+     * @return next line from in, without the newline
+     */
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        for (int b = in.read(); b != '\n'; b = in.read()) {
+            if (b == -1) {
+                throw new IOException("disconnected");
+            }
+            line.write(b);
+        }
+        return line.toString();
+    }
+    
+    /**
+     * @param in input from the server
+     * @param rows number of rows of the board
+     * @return the board sent as text
+     */
+    private static String readBoard(InputStream in, int rows) throws IOException {
+        StringBuilder board = new StringBuilder(readLine(in));
+        for (int row = 1; row < rows; row++) {
+            board.append('\n').append(readLine(in));
+        }
+        return board.toString();
+    }
+    
+    /**
+     * @param in input from the server
+     * @return the board sent with DEFLATE, decoded
+     */
+    private static String readDeflatedBoard(InputStream in) throws IOException, DataFormatException {
+        byte[] header = (readLine(in) + "\n").getBytes();
+        assertTrue("expected DEFLATE header", new String(header).startsWith("DEFLATE "));
+        int length = Integer.parseInt(new String(header).trim().substring("DEFLATE ".length()));
+        ByteBuffer frame = ByteBuffer.allocate(header.length + length).put(header);
+        new DataInputStream(in).readFully(frame.array(), header.length, length);
+        frame.rewind();
+        return BoardCompressorTest.decodeDeflate(frame);
+    }
+    
+    // covers compress: rle, deflate, off, unknown mode, threshold
+    @Test(timeout = 10000)
+    public void testCompress() throws IOException, DataFormatException {
+        int port = 4015;
+        Thread thread = startGameServer("test5.txt", port, "--compress-threshold", "0");
+        
+        Socket socket = connectToGameServer(thread, port);
+        InputStream in = new BufferedInputStream(socket.getInputStream());
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+        assertTrue("expected HELLO message", readLine(in).startsWith("Welcome"));
+        
+        out.println("compress rle");
+        assertEquals("COMPRESS rle", readLine(in));
+        out.println("look");
+        assertEquals("RLE 5 5", readLine(in));
+        assertEquals("25-", readLine(in));
+        out.println("flag 4 4");
+        assertEquals("RLE 5 5", readLine(in));
+        assertEquals("24- F", readLine(in));
+        
+        out.println("compress deflate");
+        assertEquals("COMPRESS deflate", readLine(in));
+        out.println("dig 1 0");
+        String dug = readDeflatedBoard(in);
+        out.println("look");
+        assertEquals("look after dig", dug, readDeflatedBoard(in));
+        out.println("stats");
+        assertTrue("other responses are text", readLine(in).startsWith("Safe cells remaining"));
+        
+        out.println("compress zip");
+        assertTrue("expected HELP message", readLine(in).startsWith("Please"));
+        out.println("compress off");
+        assertEquals("COMPRESS off", readLine(in));
+        out.println("look");
+        assertEquals("text matches the compressed board", dug, readBoard(in, 5));
+        
+        out.println("bye");
+        socket.close();
+    }
+    
+    // covers compress with a board smaller than the threshold
+    @Test(timeout = 10000)
+    public void testCompressThreshold() throws IOException {
+        int port = 4016;
+        Thread thread = startGameServer("test5.txt", port, "--compress-threshold", "50");
+        
+        Socket socket = connectToGameServer(thread, port);
+        InputStream in = new BufferedInputStream(socket.getInputStream());
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+        assertTrue("expected HELLO message", readLine(in).startsWith("Welcome"));
+        out.println("compress deflate");
+        assertEquals("COMPRESS deflate", readLine(in));
+        out.println("look");
+        // 5 x 5 cells are 49 characters of text
+        assertEquals("- - - - -\n- - - - -\n- - - - -\n- - - - -\n- - - - -", readBoard(in, 5));
+        out.println("bye");
+        socket.close();
+    }
+    
+    // covers --max-connections: client admitted, in line, refused, admitted in turn, told goodbye in line
+    @Test(timeout = 10000)
+    public void testMaxConnections() throws IOException, InterruptedException {
+        int port = 4022;
+        ServerOptions options = new ServerOptions().setMaxConnections(1, 1).setAcceptors(2).setAcceptBacklog(16);
+        GameServer server = new GameServer(port, new GameBoard(findBoard("test5.txt")), options);
+        Thread thread = serve(server);
+        
+        Socket first = connectToGameServer(thread, port);
+        BufferedReader firstIn = new BufferedReader(new InputStreamReader(first.getInputStream()));
+        PrintWriter firstOut = new PrintWriter(first.getOutputStream(), true);
+        assertTrue("expected HELLO message", firstIn.readLine().startsWith("Welcome"));
+        
+        Socket waiting = connectToGameServer(thread, port);
+        BufferedReader waitingIn = new BufferedReader(new InputStreamReader(waiting.getInputStream()));
+        PrintWriter waitingOut = new PrintWriter(waiting.getOutputStream(), true);
+        assertEquals("Server full, position 1. Please wait.", waitingIn.readLine());
+        // read once the client is admitted
+        waitingOut.println("flag 0 0");
+        
+        Socket refused = connectToGameServer(thread, port);
+        BufferedReader refusedIn = new BufferedReader(new InputStreamReader(refused.getInputStream()));
+        assertEquals("Server full. Please try again later.", refusedIn.readLine());
+        assertNull("disconnected", refusedIn.readLine());
+        refused.close();
+        
+        firstOut.println("bye");
+        assertNull("disconnected", firstIn.readLine());
+        first.close();
+        assertEquals("Welcome to Minesweeper. Players: 1 including you. Board: 5 columns by 5 rows. Type 'help' for help.",
+                waitingIn.readLine());
+        assertEquals("F - - - -", waitingIn.readLine());
+        for (int row = 1; row < 5; row++) {
+            waitingIn.readLine();
+        }
+        
+        Socket last = connectToGameServer(thread, port);
+        BufferedReader lastIn = new BufferedReader(new InputStreamReader(last.getInputStream()));
+        assertEquals("Server full, position 1. Please wait.", lastIn.readLine());
+        server.shutdown();
+        assertEquals("Server shutting down. Goodbye.", lastIn.readLine());
+        assertNull("disconnected", lastIn.readLine());
+        assertEquals("Server shutting down. Goodbye.", waitingIn.readLine());
+        assertNull("disconnected", waitingIn.readLine());
+        thread.join();
+        waiting.close();
+        last.close();
+    }
+    
+    // covers --batch: as commands arrive and per tick, 2 clients, moves and 'look' answered
+    @Test(timeout = 10000)
+    public void testBatch() throws IOException {
+        for (String batch : new String[] { "0", "20,2" }) {
+            int port = batch.equals("0") ? 4023 : 4024;
+            Thread thread = startGameServer("test5.txt", port, "--batch", batch);
+            
+            Socket socket = connectToGameServer(thread, port);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+            assertTrue("expected HELLO message", in.readLine().startsWith("Welcome"));
+            Socket other = connectToGameServer(thread, port);
+            BufferedReader otherIn = new BufferedReader(new InputStreamReader(other.getInputStream()));
+            PrintWriter otherOut = new PrintWriter(other.getOutputStream(), true);
+            assertTrue("expected HELLO message", otherIn.readLine().startsWith("Welcome"));
+            
+            out.println("flag 0 0");
+            assertEquals("F - - - -", in.readLine());
+            for (int row = 1; row < 5; row++) {
+                in.readLine();
+            }
+            otherOut.println("look");
+            assertEquals("F - - - -", otherIn.readLine());
+            for (int row = 1; row < 5; row++) {
+                otherIn.readLine();
+            }
+            out.println("dig 4 0");
+            assertEquals("F - - - 1", in.readLine());
+            for (int row = 1; row < 5; row++) {
+                in.readLine();
+            }
+            otherOut.println("stats");
+            assertTrue(otherIn.readLine().startsWith("Safe cells remaining: 15. Flags placed: 1."));
+            otherOut.println("nonsense");
+            assertTrue("expected HELP message", otherIn.readLine().startsWith("Please"));
+            out.println("bye");
+            otherOut.println("bye");
+            assertNull("disconnected", in.readLine());
+            assertNull("disconnected", otherIn.readLine());
+            socket.close();
+            other.close();
+        }
+    }
+    
+    // covers 'count' with --region-index, before and after moves, and without --region-index
+    @Test(timeout = 10000)
+    public void testCount() throws IOException {
+        int port = 4025;
+        Thread thread = startGameServer("test5.txt", port, "--region-index");
+        
+        Socket socket = connectToGameServer(thread, port);
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+        assertTrue("expected HELLO message", in.readLine().startsWith("Welcome"));
+        out.println("count 0 0 4 4");
+        assertEquals("Squares: 25. Untouched: 25. Flagged: 0. Dug: 0. Bombs: 9.", in.readLine());
+        out.println("flag 0 0");
+        for (int row = 0; row < 5; row++) {
+            in.readLine();
+        }
+        out.println("dig 3 3");
+        for (int row = 0; row < 5; row++) {
+            in.readLine();
+        }
+        out.println("count 4 4 0 0");
+        assertEquals("Squares: 25. Untouched: 23. Flagged: 1. Dug: 1. Bombs: 9.", in.readLine());
+        out.println("count 1 1 0 0");
+        assertEquals("Squares: 4. Untouched: 3. Flagged: 1. Dug: 0. Bombs: 2.", in.readLine());
+        out.println("count 0 0 4");
+        assertTrue("expected HELP message", in.readLine().startsWith("Please"));
+        out.println("bye");
+        socket.close();
+        
+        port = 4026;
+        thread = startGameServer("test5.txt", port);
+        socket = connectToGameServer(thread, port);
+        in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        out = new PrintWriter(socket.getOutputStream(), true);
+        assertTrue("expected HELLO message", in.readLine().startsWith("Welcome"));
+        out.println("count 0 0 4 4");
+        assertEquals("Squares cannot be counted on this server.", in.readLine());
+        out.println("bye");
+        socket.close();
+    }
+    
+    // covers --slow-log and --trace-events: tracing every command leaves the answers unchanged
+    @Test(timeout = 10000)
+    public void testTracing() throws IOException {
+        final int port = 4027;
+        Thread thread = startGameServer("test5.txt", port, "--slow-log", "0", "--trace-events");
+        
+        Socket socket = connectToGameServer(thread, port);
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+        assertTrue("expected HELLO message", in.readLine().startsWith("Welcome"));
+        out.println("look");
+        assertEquals("- - - - -", in.readLine());
+        for (int row = 1; row < 5; row++) {
+            in.readLine();
+        }
+        out.println("flag 0 0");
+        assertEquals("F - - - -", in.readLine());
+        for (int row = 1; row < 5; row++) {
+            in.readLine();
+        }
+        out.println("dig 0 0");
+        assertEquals("F - - - -", in.readLine());
+        for (int row = 1; row < 5; row++) {
+            in.readLine();
+        }
+        out.println("stats");
+        assertTrue("expected stats", in.readLine().contains("Your moves: 2."));
+        out.println("dance");
+        assertTrue("expected HELP message", in.readLine().startsWith("Please"));
+        out.println("bye");
+        socket.close();
+    }
+    
+    // covers 'metrics' before any look, after looks at an unchanged board, and after a move
+    @Test(timeout = 10000)
+    public void testMetrics() throws IOException {
+        final int port = 4028;
+        Thread thread = startGameServer("test5.txt", port);
+        
+        Socket socket = connectToGameServer(thread, port);
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+        assertTrue("expected HELLO message", in.readLine().startsWith("Welcome"));
+        out.println("metrics");
+        assertEquals("Response cache: 0 hits, 0 misses (0.0% hit rate), 0 evictions.", in.readLine());
+        for (int look = 0; look < 4; look++) {
+            out.println("look");
+            for (int row = 0; row < 5; row++) {
+                assertEquals("- - - - -", in.readLine());
+            }
+        }
+        out.println("metrics");
+        assertEquals("Response cache: 3 hits, 1 misses (75.0% hit rate), 0 evictions.", in.readLine());
+        out.println("flag 1 1");
+        assertEquals("- - - - -", in.readLine());
+        assertEquals("- F - - -", in.readLine());
+        for (int row = 2; row < 5; row++) {
+            in.readLine();
+        }
+        out.println("metrics");
+        assertEquals("Response cache: 3 hits, 2 misses (60.0% hit rate), 1 evictions.", in.readLine());
+        out.println("bye");
+        socket.close();
+    }
+    
+    // covers shutdown: commands sent before, idle client, snapshot
+    @Test(timeout = 10000)
+    public void testShutdown() throws IOException, InterruptedException {
+        int port = 4017;
+        File snapshot = File.createTempFile("snapshot", ".board");
+        snapshot.delete();
+        try {
+            // slow enough that commands are still being handled when the server stops
+            ServerOptions options = new ServerOptions().setSnapshotFile(snapshot).setRateLimit(5, 1);
+            GameServer server = new GameServer(port, new GameBoard(findBoard("test5.txt")), options);
+            Thread thread = serve(server);
+            
+            Socket socket = connectToGameServer(thread, port);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+            assertTrue("expected HELLO message", in.readLine().startsWith("Welcome"));
+            Socket idle = connectToGameServer(thread, port);
+            BufferedReader idleIn = new BufferedReader(new InputStreamReader(idle.getInputStream()));
+            assertTrue("expected HELLO message", idleIn.readLine().startsWith("Welcome"));
+            
+            out.println("flag 0 0");
+            assertEquals("F - - - -", in.readLine());
+            for (int row = 1; row < 5; row++) {
+                in.readLine();
+            }
+            // these reach the server before it stops, so they are answered
+            out.println("flag 4 4\nlook");
+            Thread.sleep(100);
+            server.shutdown();
+            for (int board = 0; board < 2; board++) {
+                for (int row = 0; row < 4; row++) {
+                    in.readLine();
+                }
+                assertEquals("- - - - F", in.readLine());
+            }
+            assertEquals("Server shutting down. Goodbye.", in.readLine());
+            assertNull("disconnected", in.readLine());
+            assertEquals("Server shutting down. Goodbye.", idleIn.readLine());
+            assertNull("disconnected", idleIn.readLine());
+            thread.join();
+            try {
+                new Socket(LOCALHOST, port).close();
+                throw new AssertionError("expected the server to stop listening");
+            } catch (ConnectException ce) {
+                // expected
+            }
+            socket.close();
+            idle.close();
+            
+            // a new server plays on from the snapshot
+            GameBoard saved = BoardSnapshot.read(snapshot);
+            assertEquals("F - - - -\n- - - - -\n- - - - -\n- - - - -\n- - - - F", saved.toString());
+        } finally {
+            snapshot.delete();
+        }
+    }
+    
+    // covers --handoff: no server to take over from, new server takes over, after a connection that
+    // sends something else and one that sends nothing
+    @Test(timeout = 20000)
+    public void testHandoff() throws IOException, InterruptedException {
+        int port = 4018;
+        int handoffPort = 4029;
+        ServerOptions oldOptions = new ServerOptions().setHandoffPort(handoffPort);
+        assertNull("no server to take over from", GameServer.takeOver(port, oldOptions));
+        GameServer oldServer = new GameServer(port, new GameBoard(findBoard("test5.txt")), oldOptions);
+        Thread oldThread = serve(oldServer);
+        
+        Socket socket = connectToGameServer(oldThread, port);
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+        assertTrue("expected HELLO message", in.readLine().startsWith("Welcome"));
+        out.println("flag 2 2");
+        for (int row = 0; row < 5; row++) {
+            in.readLine();
+        }
+        
+        Socket wrong = new Socket(InetAddress.getLoopbackAddress(), handoffPort);
+        wrong.getOutputStream().write("HELLO!!\n".getBytes(StandardCharsets.US_ASCII));
+        assertEquals("closed", -1, wrong.getInputStream().read());
+        wrong.close();
+        // a connection that never sends anything holds up the handoff thread only for a while
+        Socket silent = new Socket(InetAddress.getLoopbackAddress(), handoffPort);
+        GameServer newServer = GameServer.takeOver(port, new ServerOptions().setHandoffPort(handoffPort));
+        assertNotNull("took over", newServer);
+        assertEquals("closed", -1, silent.getInputStream().read());
+        silent.close();
+        assertEquals("Server restarting. Please reconnect.", in.readLine());
+        assertNull("disconnected", in.readLine());
+        oldThread.join();
+        socket.close();
+        
+        Thread newThread = serve(newServer);
+        Socket again = connectToGameServer(newThread, port);
+        BufferedReader againIn = new BufferedReader(new InputStreamReader(again.getInputStream()));
+        PrintWriter againOut = new PrintWriter(again.getOutputStream(), true);
+        assertTrue("expected HELLO message", againIn.readLine().startsWith("Welcome"));
+        againOut.println("look");
+        assertEquals("- - - - -", againIn.readLine());
+        assertEquals("- - - - -", againIn.readLine());
+        assertEquals("- - F - -", againIn.readLine());
+        againIn.readLine();
+        againIn.readLine();
+        
+        newServer.shutdown();
+        assertEquals("Server shutting down. Goodbye.", againIn.readLine());
+        newThread.join();
+        again.close();
+        assertNull("handoff port closed", GameServer.takeOver(port, new ServerOptions().setHandoffPort(handoffPort)));
+    }
 }
@@ -0,0 +1,147 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compares the garbage-collection pauses of a large board with its cells on the Java heap and
+ * off it. Not a JUnit test: run main() directly, optionally with the side of the board (default
+ * SIDE).
+ *
+ * <p>Each storage is measured with the G1 and the Parallel collector, each in a JVM of its own
+ * with the same heap size, which leaves HEADROOM_MB for everything but the board. The JVM builds a
+ * random board, then plays COMMANDS random digs and flags while allocating what a server allocates
+ * for each command: the command line, its parsing, and a reply, the last RETAINED of which are
+ * kept, as by slow clients, so that some garbage is old. Finally it asks for FULL_GCS full
+ * collections. The pauses are read from the -Xlog:gc output of the JVM, or its -XX:+PrintGC output
+ * before Java 9. Prints:
+ * <pre>
+ *      young      number of young (and mixed) pauses
+ *      young ms   total and longest young pause
+ *      full ms    longest full collection
+ *      other ms   longest other pause (e.g. G1 remark)
+ *      build s    time to build the board
+ * </pre>
+ */
+public class GcPauseBenchmark {
+
+    private static final int SIDE = 16384;
+    private static final int HEADROOM_MB = 512;
+    private static final int COMMANDS = 4_000_000;
+    private static final int RETAINED = 200_000;
+    private static final int FULL_GCS = 3;
+    private static final String[] COLLECTORS = { "-XX:+UseG1GC", "-XX:+UseParallelGC" };
+    private static final String[] STORAGES = { ServerOptions.HEAP, ServerOptions.OFF_HEAP };
+    private static final Pattern PAUSE = Pattern.compile("Pause (Young|Full|\\w+).* ([0-9.]+)ms$");
+    // the same with -XX:+PrintGC, before Java 9: "[GC (Allocation Failure) ..., 0.0123 secs]",
+    // "[GC pause (G1 Evacuation Pause) (young) ..., 0.0123 secs]", "[Full GC ..., 0.123 secs]"
+    private static final Pattern LEGACY_PAUSE = Pattern.compile(
+            "^\\[(GC \\(|GC pause .*\\((?:young|mixed)\\)|Full GC|GC (?!concurrent)).*, ([0-9.]+) secs\\]$");
+
+    /**
+     * Runs the benchmark and prints a table.
+     *
+     * @param args optional side of the board
+     * @throws IOException if a JVM cannot be started
+     * @throws InterruptedException if interrupted
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int side = args.length > 0 ? Integer.parseInt(args[0]) : SIDE;
+        if (args.length > 1) {
+            play(side, args[1]);
+            return;
+        }
+        long heapMb = (long) side * side / (1 << 20) + HEADROOM_MB;
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        // unified logging is Java 9 and later
+        boolean legacy = System.getProperty("java.specification.version").startsWith("1.");
+        System.out.printf("%dx%d board, -Xmx%dm%n", side, side, heapMb);
+        System.out.printf("%10s %9s %7s %10s %10s %10s %10s %8s%n", "collector", "storage", "young",
+                "young ms", "max ms", "full ms", "other ms", "build s");
+        for (String collector : COLLECTORS) {
+            for (String storage : STORAGES) {
+                Process process = new ProcessBuilder(java, collector, "-Xms" + heapMb + "m", "-Xmx" + heapMb + "m",
+                        "-XX:MaxDirectMemorySize=" + heapMb + "m", "-Xss64m", legacy ? "-XX:+PrintGC" : "-Xlog:gc:stdout",
+                        "-cp", System.getProperty("java.class.path"), GcPauseBenchmark.class.getName(),
+                        Integer.toString(side), storage)
+                        .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+                int young = 0;
+                double youngTotal = 0;
+                double youngMax = 0;
+                double fullMax = 0;
+                double otherMax = 0;
+                String build = "?";
+                BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream()));
+                for (String line = in.readLine(); line != null; line = in.readLine()) {
+                    Matcher matcher = PAUSE.matcher(line);
+                    Matcher legacyMatcher = LEGACY_PAUSE.matcher(line);
+                    if (line.startsWith("build ")) {
+                        build = line.substring("build ".length());
+                    } else if (legacyMatcher.find()) {
+                        double millis = Double.parseDouble(legacyMatcher.group(2)) * 1000;
+                        if (legacyMatcher.group(1).startsWith("Full")) {
+                            fullMax = Math.max(fullMax, millis);
+                        } else if (legacyMatcher.group(1).startsWith("GC (") || legacyMatcher.group(1).startsWith("GC pause")) {
+                            young++;
+                            youngTotal += millis;
+                            youngMax = Math.max(youngMax, millis);
+                        } else {
+                            otherMax = Math.max(otherMax, millis);
+                        }
+                    } else if (matcher.find()) {
+                        double millis = Double.parseDouble(matcher.group(2));
+                        if (matcher.group(1).equals("Young")) {
+                            young++;
+                            youngTotal += millis;
+                            youngMax = Math.max(youngMax, millis);
+                        } else if (matcher.group(1).equals("Full")) {
+                            fullMax = Math.max(fullMax, millis);
+                        } else {
+                            otherMax = Math.max(otherMax, millis);
+                        }
+                    }
+                }
+                process.waitFor();
+                System.out.printf("%10s %9s %7d %10.1f %10.2f %10.1f %10.2f %8s%n",
+                        collector.replaceAll("-XX:\\+Use|GC", ""), storage, young, youngTotal, youngMax,
+                        fullMax, otherMax, build);
+            }
+        }
+    }
+
+    /**
+     * Builds a board and plays on it, in the JVM being measured.
+     *
+     * @param side side of the board
+     * @param storage ServerOptions.HEAP or ServerOptions.OFF_HEAP
+     */
+    private static void play(int side, String storage) {
+        long start = System.nanoTime();
+        GameBoard board = storage.equals(ServerOptions.HEAP) ? new GameBoard(side, side, 6031)
+                : new GameBoard(side, side, 6031, OffHeapCellStorage.allocate(side * side));
+        System.out.printf("build %.1f%n", (System.nanoTime() - start) / 1e9);
+        Random random = new Random(1);
+        String[] replies = new String[RETAINED];
+        for (int command = 0; command < COMMANDS; command++) {
+            String line = (random.nextInt(4) == 0 ? "flag " : "dig ") + random.nextInt(side) + " " + random.nextInt(side);
+            String[] tokens = line.split(" ");
+            int x = Integer.parseInt(tokens[1]);
+            int y = Integer.parseInt(tokens[2]);
+            String message = tokens[0].equals("dig") ? board.dig(x, y) : board.flag(x, y);
+            replies[command % RETAINED] = message + " " + board.getStats();
+        }
+        for (int i = 0; i < FULL_GCS; i++) {
+            System.gc();
+        }
+        // keeps the replies reachable until the end
+        System.out.println("replies " + replies.length);
+    }
+}
@@ -0,0 +1,56 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+/**
+ * Measures the throughput of NoGuessGenerator by board size, with one worker thread and with one
+ * per processor. Not a JUnit test: run main() directly, with assertions disabled.
+ *
+ * <p>For each board size and number of threads, generates BOARDS boards from the center cell and prints:
+ * <pre>
+ *      found      boards that can be cleared by logic alone (the others hit the attempt limit)
+ *      tries      candidates tried per board
+ *      boards/s   boards generated per second
+ *      cands/s    candidates validated per second
+ * </pre>
+ */
+public class GenerationBenchmark {
+
+    private static final int[][] SIZES = { {8, 8}, {9, 9}, {12, 12}, {16, 16}, {30, 16} };
+    private static final int BOARDS = 20;
+    private static final int MAX_ATTEMPTS = 20_000;
+
+    /**
+     * Runs the benchmark and prints a table.
+     *
+     * @param args unused
+     * @throws InterruptedException if interrupted
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int processors = Runtime.getRuntime().availableProcessors();
+        System.out.printf("%7s %8s %7s %9s %10s %10s%n", "board", "threads", "found", "tries", "boards/s", "cands/s");
+        for (int[] size : SIZES) {
+            for (int threads : processors > 1 ? new int[] { 1, processors } : new int[] { 1 }) {
+                NoGuessGenerator generator = new NoGuessGenerator(size[0], size[1], size[0] / 2, size[1] / 2,
+                        threads, MAX_ATTEMPTS);
+                // warm up
+                generator.findSeed(-1);
+                long attemptsBefore = generator.getAttempts();
+                int found = 0;
+                long start = System.nanoTime();
+                for (int i = 0; i < BOARDS; i++) {
+                    long seed = generator.findSeed(i);
+                    if (generator.safeCellsLeftByLogic(seed) == 0) {
+                        found++;
+                    }
+                }
+                double seconds = (System.nanoTime() - start) / 1e9;
+                long attempts = generator.getAttempts() - attemptsBefore;
+                System.out.printf("%7s %8d %7d %9.1f %10.1f %10.0f%n", size[0] + "x" + size[1], threads,
+                        found, attempts / (double) BOARDS, BOARDS / seconds, attempts / seconds);
+                generator.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares answering 'look' by rendering the board for every client with answering it from a
+ * ResponseCache, on boards of growing size. Not a JUnit test: run main() directly, with
+ * assertions disabled.
+ *
+ * <p>For each board size, CLIENTS threads each look LOOKS times, while one move is made every
+ * MOVE_EVERY looks, so most looks are at an unchanged board. Prints:
+ * <pre>
+ *      render ms   milliseconds for every look, rendering the board each time
+ *      cache ms    milliseconds for every look, from the cache
+ *      hit rate    percentage of looks answered with a rendering already made or being made
+ * </pre>
+ */
+public class LookBenchmark {
+
+    private static final int[] SIZES = { 100, 400, 1000 };
+    private static final int CLIENTS = 8;
+    private static final int LOOKS = 200;
+    private static final int MOVE_EVERY = 50;
+
+    /** Renders the board for a look. */
+    private interface Look {
+        String look();
+    }
+
+    /**
+     * Has every client look at a board, with moves made meanwhile.
+     *
+     * @param board board to look at
+     * @param look how a client looks
+     * @return milliseconds until every client is done
+     */
+    private static double run(GameBoard board, Look look) throws InterruptedException {
+        int size = board.getCols();
+        List<Thread> clients = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int client = 0; client < CLIENTS; client++) {
+            final int id = client;
+            Thread thread = new Thread(() -> {
+                for (int n = 0; n < LOOKS; n++) {
+                    if (id == 0 && n % MOVE_EVERY == 0) {
+                        board.flag(n % size, n / size);
+                    }
+                    if (look.look().isEmpty()) {
+                        throw new AssertionError("no board");
+                    }
+                }
+            });
+            thread.start();
+            clients.add(thread);
+        }
+        for (Thread thread : clients) {
+            thread.join();
+        }
+        return (System.nanoTime() - start) / 1e6;
+    }
+
+    /**
+     * Runs the benchmark and prints a table.
+     *
+     * @param args unused
+     */
+    public static void main(String[] args) throws InterruptedException {
+        System.out.printf("%11s %10s %10s %10s%n", "board", "render ms", "cache ms", "hit rate");
+        for (int size : SIZES) {
+            GameBoard rendered = new GameBoard(size, size, 6031);
+            GameBoard cached = new GameBoard(size, size, 6031);
+            ResponseCache cache = new ResponseCache(cached, new BoardCompressor(cached));
+            // warm up both paths
+            run(new GameBoard(size, size, 1), rendered::toString);
+            GameBoard warmup = new GameBoard(size, size, 1);
+            run(warmup, new ResponseCache(warmup, new BoardCompressor(warmup))::text);
+            double renderMillis = run(rendered, rendered::toString);
+            double cacheMillis = run(cached, cache::text);
+            System.out.printf("%5dx%-5d %10.1f %10.1f %9.1f%%%n", size, size, renderMillis, cacheMillis,
+                    100.0 * cache.getHits() / (cache.getHits() + cache.getMisses()));
+        }
+    }
+}
@@ -0,0 +1,239 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Measures the cost of recording a board with a MoveLog. Not a JUnit test: run main() directly,
+ * with assertions disabled.
+ * 
+ * <p>For each board size, times two workloads with no log, with a log in memory, and with a log
+ * that also spills to a file, and prints nanoseconds per command and the overhead over no log:
+ * <pre>
+ *      dig        digs every cell of a new board, in random order (including flood fills and booms),
+ *                 over as many games as it takes to dig DIGS cells
+ *      flag       flags and deflags random cells, the cheapest commands that change the board
+ * </pre>
+ * Every game starts with reset(), which is not timed. Times are the best of ROUNDS rounds, and
+ * overheads the median of the overheads in each round. The overhead on digs must stay under
+ * DIG_BOUND percent.
+ * 
+ * <p>The JIT compiles the moves of GameBoard once for all three modes, so before any is timed,
+ * WARMUP_GAMES small games are played, changing mode every game, as a server that records its
+ * board or never does would have them compiled: with the calls to the log inlined, whether or not
+ * they are made. Otherwise they are compiled in the first mode timed, and the others pay for it.
+ * 
+ * <p>Times are CPU time of the thread that plays, which is what limits its throughput when the
+ * writer thread of a spilling log has a processor of its own. On a machine with one processor,
+ * the writer thread's work shows in elapsed time instead.
+ */
+public class MoveLogBenchmark {
+
+    private static final int[] SIZES = { 100, 300, 1000 };
+    private static final int ROUNDS = 51;
+    // games played first, untimed, on a small board, changing mode every game
+    private static final int WARMUP_GAMES = 300;
+    private static final int WARMUP_SIZE = 30;
+    // a round of a small board is too short to time on its own
+    private static final int DIGS = 1_000_000;
+    private static final int FLAGS = 2_000_000;
+    private static final int CAPACITY = 1 << 20;
+    private static final long SEED = 6031;
+    // largest overhead of a log on digs, in percent
+    private static final double DIG_BOUND = 5;
+    private static final int MODES = 3;
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    /**
+     * @param board board to dig
+     * @param order cells of the board in random order
+     * @param seed seed of the first game
+     * @return nanoseconds per dig
+     */
+    private static double digAll(GameBoard board, int[] order, long seed) {
+        int cols = board.getCols();
+        int games = Math.max(1, DIGS / order.length);
+        long nanos = 0;
+        for (int game = 0; game < games; game++) {
+            board.reset(seed + game);
+            long start = THREADS.getCurrentThreadCpuTime();
+            for (int index : order) {
+                board.dig(index % cols, index / cols);
+            }
+            nanos += THREADS.getCurrentThreadCpuTime() - start;
+        }
+        return nanos / (double) games / order.length;
+    }
+
+    /**
+     * @param board board to flag
+     * @param order cells of the board in random order
+     * @return nanoseconds per flag or deflag
+     */
+    private static double flagAll(GameBoard board, int[] order) {
+        int cols = board.getCols();
+        long start = THREADS.getCurrentThreadCpuTime();
+        for (int i = 0; i < FLAGS; i++) {
+            int index = order[i % order.length];
+            if ((i / order.length) % 2 == 0) {
+                board.flag(index % cols, index / cols);
+            } else {
+                board.deflag(index % cols, index / cols);
+            }
+        }
+        return (THREADS.getCurrentThreadCpuTime() - start) / (double) FLAGS;
+    }
+
+    /**
+     * Times the three modes in turn in every round, on the same board, so that they see the same
+     * JIT, memory layout and system noise, starting with a different one each round, so that none
+     * always runs right after another. Each log is made for the round, and closed after it.
+     * 
+     * @param size size of the board
+     * @return nanoseconds per command in each round, indexed by mode (no log, a log in memory, a log
+     *         that spills to a file), workload (dig, flag) and round
+     * @throws IOException if the spill file cannot be written
+     */
+    private static double[][][] measure(int size) throws IOException {
+        File file = File.createTempFile("moves", ".log");
+        file.deleteOnExit();
+        GameBoard board = new GameBoard(size, size, SEED);
+        int[] order = new int[size * size];
+        Random random = new Random(SEED);
+        for (int i = 0; i < order.length; i++) {
+            int j = random.nextInt(i + 1);
+            order[i] = order[j];
+            order[j] = i;
+        }
+        double[][][] times = new double[MODES][2][ROUNDS];
+        for (int round = 0; round < ROUNDS; round++) {
+            play(board, order, file, times, round);
+        }
+        file.delete();
+        return times;
+    }
+
+    /**
+     * Plays WARMUP_GAMES small games, changing mode every game.
+     * 
+     * @throws IOException if a spill file cannot be written
+     */
+    private static void warmUp() throws IOException {
+        File file = File.createTempFile("warmup", ".log");
+        file.deleteOnExit();
+        GameBoard board = new GameBoard(WARMUP_SIZE, WARMUP_SIZE, SEED);
+        int[] order = new int[WARMUP_SIZE * WARMUP_SIZE];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = (int) ((i * 7919L) % order.length);
+        }
+        for (int game = 0; game < WARMUP_GAMES; game++) {
+            int mode = game % MODES;
+            MoveLog log = mode == 0 ? null
+                    : mode == 1 ? new MoveLog(board, CAPACITY) : new MoveLog(board, CAPACITY, file);
+            board.reset(SEED + game);
+            for (int index : order) {
+                board.dig(index % WARMUP_SIZE, index / WARMUP_SIZE);
+            }
+            board.reset(SEED + game);
+            for (int index : order) {
+                board.flag(index % WARMUP_SIZE, index / WARMUP_SIZE);
+                board.deflag(index % WARMUP_SIZE, index / WARMUP_SIZE);
+            }
+            if (log != null) {
+                log.close();
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Plays one round of the three modes.
+     * 
+     * @param board board to play on
+     * @param order cells of the board in random order
+     * @param file spill file of the log that spills
+     * @param times receives the nanoseconds per command of the round, as returned by measure()
+     * @param round index of the round in times
+     * @throws IOException if the spill file cannot be written
+     */
+    private static void play(GameBoard board, int[] order, File file, double[][][] times, int round)
+            throws IOException {
+        for (int turn = 0; turn < MODES; turn++) {
+            int mode = (round + turn) % MODES;
+            MoveLog log = mode == 0 ? null
+                    : mode == 1 ? new MoveLog(board, CAPACITY) : new MoveLog(board, CAPACITY, file);
+            times[mode][0][round] = digAll(board, order, SEED + round * DIGS);
+            board.reset(SEED + round);
+            times[mode][1][round] = flagAll(board, order);
+            if (log != null) {
+                log.close();
+            }
+        }
+    }
+
+    /**
+     * @param times nanoseconds per command in each round
+     * @return the best of them
+     */
+    private static double best(double[] times) {
+        return Arrays.stream(times).min().getAsDouble();
+    }
+
+    /**
+     * Compares a log with no log round by round, which cancels out noise that lasts longer than a
+     * round, such as another process taking the processor for a while.
+     * 
+     * @param log nanoseconds per command in each round, with a log
+     * @param none nanoseconds per command in each round, with no log
+     * @return the median overhead of the log over the rounds, in percent
+     */
+    private static double overhead(double[] log, double[] none) {
+        double[] ratios = new double[log.length];
+        for (int round = 0; round < log.length; round++) {
+            ratios[round] = log[round] / none[round];
+        }
+        Arrays.sort(ratios);
+        return 100 * (ratios[ratios.length / 2] - 1);
+    }
+
+    /**
+     * Runs the benchmark and prints a table, then checks that a log adds less than DIG_BOUND percent
+     * to digs, and exits with status 1 if it does not. A log that spills to a file is only checked
+     * on a machine with more than one processor: on one processor, the writer thread takes turns
+     * with the thread that plays, and evicts its data from the caches each time.
+     * 
+     * @param args unused
+     * @throws IOException if a spill file cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        boolean withinBound = true;
+        warmUp();
+        System.out.printf("%9s %9s %9s %9s %9s %9s %9s %9s %9s %9s %9s%n", "board", "dig none", "dig mem",
+                "dig file", "mem +%", "file +%", "flag none", "flag mem", "flag file", "mem +%", "file +%");
+        for (int size : SIZES) {
+            double[][][] times = measure(size);
+            double[][] none = times[0];
+            double[][] memory = times[1];
+            double[][] file = times[2];
+            System.out.printf("%4dx%-4d %9.1f %9.1f %9.1f %8.1f%% %8.1f%% %9.1f %9.1f %9.1f %8.1f%% %8.1f%%%n",
+                    size, size, best(none[0]), best(memory[0]), best(file[0]), overhead(memory[0], none[0]),
+                    overhead(file[0], none[0]), best(none[1]), best(memory[1]), best(file[1]),
+                    overhead(memory[1], none[1]), overhead(file[1], none[1]));
+            withinBound &= overhead(memory[0], none[0]) < DIG_BOUND;
+            if (Runtime.getRuntime().availableProcessors() > 1) {
+                withinBound &= overhead(file[0], none[0]) < DIG_BOUND;
+            }
+        }
+        System.out.println("Dig overhead " + (withinBound ? "within" : "over") + " the " + DIG_BOUND + "% bound.");
+        if ( ! withinBound) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests methods of the MoveLog class.
+ */
+public class MoveLogTest {
+    
+    /* Testing strategy
+     * recording:
+     *  events: dig of a safe cell, dig of a bomb, flag, deflag, chord (with and without a bomb),
+     *          bomb moved by a safe first dig, new game by reset(), undo, redo, commands that
+     *          change nothing
+     * 
+     * getEvent():
+     *  move: first, last
+     * 
+     * boardAt():
+     *  move: at recording start, between checkpoints, at a checkpoint, latest, after a new game,
+     *        after an undo or redo, after the ring buffer wrapped, too old
+     */
+    
+    /**
+     * Plays random commands on a board, starting a new game now and then, and undoing and redoing
+     * moves if the board allows it, and remembers what the board looked like after each command.
+     * 
+     * @param board board to play on, with a log
+     * @param log log of board
+     * @param commands number of commands to play
+     * @param seed seed of the commands
+     * @return the states of the board, as "MOVE\nSTATS\nBOARD", after each command
+     */
+    static List<String> play(GameBoard board, MoveLog log, int commands, long seed) {
+        Random random = new Random(seed);
+        List<String> states = new ArrayList<>();
+        for (int i = 0; i < commands; i++) {
+            int x = random.nextInt(board.getCols());
+            int y = random.nextInt(board.getRows());
+            int command = random.nextInt(100);
+            if (command == 0) {
+                board.reset(random.nextLong());
+            } else if (command < 3) {
+                board.undo(1 + random.nextInt(3));
+            } else if (command < 5) {
+                board.redo(1 + random.nextInt(3));
+            } else if (command < 20) {
+                board.dig(x, y);
+            } else if (command < 30) {
+                board.chord(x, y);
+            } else if (command < 60) {
+                board.flag(x, y);
+            } else {
+                board.deflag(x, y);
+            }
+            states.add(log.getMoveCount() + "\n" + board.getStats() + "\n" + board);
+        }
+        return states;
+    }
+    
+    /**
+     * @param board a board
+     * @param move its move number
+     * @return its state, as by play()
+     */
+    static String state(GameBoard board, long move) {
+        return move + "\n" + board.getStats() + "\n" + board;
+    }
+    
+    // covers every kind of event, commands that change nothing, getEvent() of the first and last move
+    @Test
+    public void testEvents() throws IOException {
+        GameBoard board = new GameBoard(new File("test/minesweeper/boards/test_board_5"));
+        board.setSafeFirstDig(true, false);
+        MoveLog log = new MoveLog(board, 16);
+        board.flag(0, 0);
+        board.flag(0, 0);
+        board.deflag(0, 0);
+        board.dig(4, 1);
+        board.dig(4, 1);
+        board.dig(-1, 0);
+        board.dig(0, 6);
+        assertEquals("changes are recorded", 6, log.getMoveCount());
+        assertEquals("flag 0 0", log.getEvent(0));
+        assertEquals("deflag 0 0", log.getEvent(1));
+        assertTrue("bomb is moved by the first dig", log.getEvent(2).startsWith("move 4 1 "));
+        assertEquals("dig 4 1", log.getEvent(3));
+        assertEquals("dig 0 6", log.getEvent(4));
+        assertEquals("boom 0 6", log.getEvent(5));
+        board.reset(42);
+        assertEquals("new game", log.getEvent(6));
+        log.close();
+    }
+    
+    // covers chords, with and without a bomb
+    @Test
+    public void testChordEvents() throws IOException {
+        boolean[] bombs = new boolean[6 * 6];
+        bombs[0] = true;
+        GameBoard board = new GameBoard(6, 6, bombs);
+        MoveLog log = new MoveLog(board, 16);
+        board.dig(1, 1);
+        board.flag(0, 0);
+        board.chord(1, 1);
+        board.chord(1, 1);
+        assertEquals("changes are recorded", 3, log.getMoveCount());
+        assertEquals("chord 1 1", log.getEvent(2));
+        assertEquals("replayed chord", state(board, 3), state(log.boardAt(3), 3));
+        
+        GameBoard wrong = new GameBoard(6, 6, bombs);
+        MoveLog wrongLog = new MoveLog(wrong, 16);
+        wrong.dig(1, 1);
+        wrong.flag(2, 2);
+        assertEquals("BOOM", wrong.chord(1, 1));
+        assertEquals("chord 1 1", wrongLog.getEvent(2));
+        assertEquals("boom 0 0", wrongLog.getEvent(3));
+        assertEquals("replayed chord", state(wrong, 4), state(wrongLog.boardAt(4), 4));
+        log.close();
+        wrongLog.close();
+    }
+    
+    // covers undo and redo events
+    @Test
+    public void testUndoEvents() throws IOException {
+        GameBoard board = new GameBoard(new File("test/minesweeper/boards/test_board_5"));
+        board.setUndoDepth(5);
+        MoveLog log = new MoveLog(board, 16);
+        board.flag(0, 0);
+        board.dig(3, 3);
+        board.undo(2);
+        board.undo(1);
+        board.redo(1);
+        assertEquals("changes are recorded", 4, log.getMoveCount());
+        assertEquals("undo 2", log.getEvent(2));
+        assertEquals("redo 1", log.getEvent(3));
+        assertEquals("board after undo", state(new GameBoard(new File("test/minesweeper/boards/test_board_5")), 3),
+                state(log.boardAt(3), 3));
+        assertEquals("board after redo", state(board, 4), state(log.boardAt(4), 4));
+        log.close();
+    }
+    
+    // covers boardAt() at every move of a game with new games, undo, redo, checkpoints and a
+    // wrapped ring buffer
+    @Test
+    public void testBoardAt() throws IOException {
+        GameBoard board = new GameBoard(30, 30, 6031);
+        board.setSafeFirstDig(true, true);
+        board.setUndoDepth(8);
+        String initial = state(board, 0);
+        MoveLog log = new MoveLog(board, 2048);
+        assertEquals("board at recording start", initial, state(log.boardAt(0), 0));
+        List<String> states = play(board, log, 5000, 1);
+        assertTrue("ring buffer wrapped", log.getMoveCount() > 2048);
+        assertTrue("old moves are forgotten", log.getOldestMove() > 0);
+        for (String expected : states) {
+            long move = Long.parseLong(expected.substring(0, expected.indexOf('\n')));
+            if (move >= log.getOldestMove()) {
+                assertEquals("board at move " + move, expected, state(log.boardAt(move), move));
+            }
+        }
+        assertEquals("latest board", state(board, log.getMoveCount()), state(log.boardAt(log.getMoveCount()), log.getMoveCount()));
+        log.close();
+    }
+    
+    // covers boardAt() of a move that is no longer in memory
+    @Test(expected=IllegalArgumentException.class)
+    public void testBoardAtTooOld() throws IOException {
+        GameBoard board = new GameBoard(30, 30, 6031);
+        MoveLog log = new MoveLog(board, 2048);
+        play(board, log, 4000, 2);
+        log.boardAt(log.getOldestMove() - 1);
+    }
+}
@@ -0,0 +1,112 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests methods of the MoveReplayer class.
+ */
+public class MoveReplayerTest {
+    
+    /* Testing strategy
+     * MoveReplayer():
+     *  file: complete, ends in the middle of a record, ends between a new game and its checkpoint,
+     *        not a move log
+     * 
+     * boardAt():
+     *  move: first, between checkpoints, at a checkpoint, after a new game, after an undo or redo,
+     *        last
+     */
+    
+    // covers a complete file, boardAt() of every move
+    @Test
+    public void testBoardAt() throws IOException {
+        File file = File.createTempFile("moves", ".log");
+        file.deleteOnExit();
+        GameBoard board = new GameBoard(30, 30, 6031);
+        board.setSafeFirstDig(true, true);
+        board.setUndoDepth(8);
+        String initial = MoveLogTest.state(board, 0);
+        // fewer events in memory than in the file
+        MoveLog log = new MoveLog(board, 64, file);
+        List<String> states = MoveLogTest.play(board, log, 3000, 3);
+        log.close();
+        
+        MoveReplayer replayer = new MoveReplayer(file);
+        assertEquals(30, replayer.getCols());
+        assertEquals(30, replayer.getRows());
+        assertEquals("every event is in the file", log.getMoveCount(), replayer.getMoveCount());
+        assertEquals(0, replayer.getFirstMove());
+        assertEquals("board at recording start", initial, MoveLogTest.state(replayer.boardAt(0), 0));
+        for (String expected : states) {
+            long move = Long.parseLong(expected.substring(0, expected.indexOf('\n')));
+            assertEquals("board at move " + move, expected, MoveLogTest.state(replayer.boardAt(move), move));
+        }
+    }
+    
+    // covers a file that ends in the middle of a record
+    @Test
+    public void testTruncated() throws IOException {
+        File file = File.createTempFile("moves", ".log");
+        file.deleteOnExit();
+        GameBoard board = new GameBoard(30, 30, 6031);
+        MoveLog log = new MoveLog(board, 64, file);
+        List<String> states = MoveLogTest.play(board, log, 1000, 4);
+        log.close();
+        try (RandomAccessFile truncated = new RandomAccessFile(file, "rw")) {
+            truncated.setLength(truncated.length() - 3);
+        }
+        
+        MoveReplayer replayer = new MoveReplayer(file);
+        assertTrue("complete events are read", replayer.getMoveCount() > 0);
+        assertTrue("the cut event is not", replayer.getMoveCount() < log.getMoveCount());
+        for (String expected : states) {
+            long move = Long.parseLong(expected.substring(0, expected.indexOf('\n')));
+            if (move <= replayer.getMoveCount()) {
+                assertEquals("board at move " + move, expected, MoveLogTest.state(replayer.boardAt(move), move));
+            }
+        }
+    }
+    
+    // covers a file that ends after a new game, before its checkpoint is complete
+    @Test
+    public void testTruncatedNewGame() throws IOException {
+        File file = File.createTempFile("moves", ".log");
+        file.deleteOnExit();
+        GameBoard board = new GameBoard(30, 30, 6031);
+        MoveLog log = new MoveLog(board, 64, file);
+        List<String> states = MoveLogTest.play(board, log, 200, 5);
+        String before = states.get(states.size() - 1);
+        long moves = log.getMoveCount();
+        board.reset(42);
+        log.close();
+        byte[] recorded = Files.readAllBytes(file.toPath());
+        int checkpoint = Integer.BYTES + MoveLog.Checkpoint.size(30 * 30);
+        // cut right after the new game, and in the middle of its checkpoint
+        for (int cut : new int[] { checkpoint, checkpoint / 2 }) {
+            Files.write(file.toPath(), Arrays.copyOf(recorded, recorded.length - cut));
+            MoveReplayer replayer = new MoveReplayer(file);
+            assertEquals("the new game is not counted", moves, replayer.getMoveCount());
+            assertEquals("board before the new game", before,
+                    MoveLogTest.state(replayer.boardAt(replayer.getMoveCount()), moves));
+        }
+    }
+    
+    // covers a file that is not a move log
+    @Test(expected=IOException.class)
+    public void testNotMoveLog() throws IOException {
+        new MoveReplayer(new File("test/minesweeper/boards/test_board_5"));
+    }
+}
@@ -0,0 +1,78 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests methods of the NoGuessGenerator class.
+ */
+public class NoGuessGeneratorTest {
+    
+    /* Testing strategy
+     * findSeed():
+     *  threads: 1, >1
+     *  outcome: board found, no board found within maxAttempts
+     * 
+     * generate():
+     *  start cell: middle, corner
+     * 
+     * safeCellsLeftByLogic():
+     *  board: clearable by logic, needs a guess
+     */
+    
+    // covers findSeed() with 1 and >1 threads, board found
+    @Test
+    public void testFindSeedDeterministic() throws InterruptedException {
+        NoGuessGenerator one = new NoGuessGenerator(9, 9, 4, 4, 1, 1000);
+        NoGuessGenerator many = new NoGuessGenerator(9, 9, 4, 4, 4, 1000);
+        for (long base = 0; base < 5; base++) {
+            long seed = one.findSeed(base);
+            assertEquals("same base seed finds the same board", seed, many.findSeed(base));
+            assertEquals("board is clearable by logic", 0, one.safeCellsLeftByLogic(seed));
+        }
+        assertTrue(one.getAttempts() >= 5);
+        one.close();
+        many.close();
+    }
+    
+    // covers findSeed() with no board found, safeCellsLeftByLogic() of a board that needs a guess
+    @Test
+    public void testFindSeedClosest() throws InterruptedException {
+        NoGuessGenerator generator = new NoGuessGenerator(60, 60, 30, 30, 2, 3);
+        long seed = generator.findSeed(7);
+        assertEquals(3, generator.getAttempts());
+        assertTrue("large dense board needs a guess", generator.safeCellsLeftByLogic(seed) > 0);
+        assertEquals("same base seed finds the same closest board", seed, generator.findSeed(7));
+        generator.close();
+    }
+    
+    // covers generate() from the middle and from a corner
+    @Test
+    public void testGenerate() throws InterruptedException {
+        int[][] starts = { {5, 3}, {0, 0} };
+        for (int[] start : starts) {
+            NoGuessGenerator generator = new NoGuessGenerator(10, 7, start[0], start[1], 2, 1000);
+            GameBoard board = generator.generate();
+            assertEquals("board has the generator's size", 10, board.getCols());
+            assertEquals("board has the generator's size", 7, board.getRows());
+            assertEquals("start cell has no bomb", "BOARD", board.dig(start[0], start[1]));
+            Solver solver = new Solver(board);
+            while ( ! board.isCleared()) {
+                Solver.Hint hint = solver.hint();
+                assertTrue("a move is always certain", hint.isCertain());
+                if (hint.getCommand().equals("dig")) {
+                    assertEquals("certain dig is safe", "BOARD", board.dig(hint.getX(), hint.getY()));
+                } else {
+                    board.flag(hint.getX(), hint.getY());
+                }
+            }
+            assertEquals(0, board.getBombsHit());
+            generator.close();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests OffHeapCellStorage, and GameBoard with its cells off the heap.
+ */
+public class OffHeapCellStorageTest {
+    /*
+     * Testing Strategy:
+     *  storage: direct, mapped new file, mapped existing file
+     *  operations: get, set, clear, copyTo
+     *  GameBoard on direct storage: same moves and seed as on the heap --> same board and stats
+     *  GameBoard on mapped storage: reloaded from the file after digs, flags and booms --> same
+     *      board, stats, and further play
+     *  bad files: not a board file, wrong size --> IOException
+     */
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    @Test
+    public void testDirect() {
+        OffHeapCellStorage storage = OffHeapCellStorage.allocate(100_000);
+        assertEquals(100_000, storage.size());
+        assertEquals(0, storage.getCols());
+        storage.set(0, (byte) 7);
+        storage.set(99_999, (byte) -1);
+        assertEquals(7, storage.get(0));
+        assertEquals(-1, storage.get(99_999));
+        assertEquals(0, storage.get(50_000));
+        byte[] copy = new byte[100_000];
+        storage.copyTo(copy);
+        assertEquals(7, copy[0]);
+        assertEquals(-1, copy[99_999]);
+        storage.clear();
+        storage.copyTo(copy);
+        assertArrayEquals(new byte[100_000], copy);
+        storage.flush();
+    }
+
+    @Test
+    public void testBoardOffHeap() {
+        GameBoard heap = new GameBoard(40, 30, 6031);
+        GameBoard offHeap = new GameBoard(40, 30, 6031, OffHeapCellStorage.allocate(40 * 30));
+        Random random = new Random(1);
+        for (int move = 0; move < 500; move++) {
+            int x = random.nextInt(40);
+            int y = random.nextInt(30);
+            switch (random.nextInt(3)) {
+            case 0: assertEquals(heap.dig(x, y), offHeap.dig(x, y)); break;
+            case 1: heap.flag(x, y); offHeap.flag(x, y); break;
+            default: heap.deflag(x, y); offHeap.deflag(x, y); break;
+            }
+        }
+        assertEquals(heap.toString(), offHeap.toString());
+        assertEquals(heap.getStats(), offHeap.getStats());
+        heap.reset(5);
+        offHeap.reset(5);
+        assertEquals(heap.toString(), offHeap.toString());
+        assertEquals(heap.getBombsRemaining(), offHeap.getBombsRemaining());
+    }
+
+    @Test
+    public void testMappedReload() throws IOException {
+        File file = File.createTempFile("board", ".board");
+        file.delete();
+        try {
+            OffHeapCellStorage storage = OffHeapCellStorage.map(file, 50, 20);
+            assertTrue(storage.isCreated());
+            GameBoard board = new GameBoard(50, 20, 42, storage);
+            GameBoard reference = new GameBoard(50, 20, 42);
+            Random random = new Random(2);
+            for (int move = 0; move < 300; move++) {
+                int x = random.nextInt(50);
+                int y = random.nextInt(20);
+                if (random.nextInt(4) == 0) {
+                    board.flag(x, y);
+                    reference.flag(x, y);
+                } else {
+                    board.dig(x, y);
+                    reference.dig(x, y);
+                }
+            }
+            assertTrue("no bomb was hit", reference.getBombsHit() > 0);
+            board.flush();
+            assertEquals(16 + 50 * 20, file.length());
+
+            // the size given to map() is ignored for an existing board file
+            OffHeapCellStorage reopened = OffHeapCellStorage.map(file, 1, 1);
+            assertFalse(reopened.isCreated());
+            assertEquals(50, reopened.getCols());
+            assertEquals(20, reopened.getRows());
+            GameBoard reloaded = new GameBoard(reopened.getCols(), reopened.getRows(), reopened);
+            assertEquals(reference.toString(), reloaded.toString());
+            assertEquals(reference.getStats(), reloaded.getStats());
+            assertEquals(reference.getBombsRemaining(), reloaded.getBombsRemaining());
+            for (int x = 0; x < 50; x++) {
+                for (int y = 0; y < 20; y++) {
+                    reference.deflag(x, y);
+                    reloaded.deflag(x, y);
+                    assertEquals(reference.dig(x, y), reloaded.dig(x, y));
+                }
+            }
+            assertTrue(reloaded.isCleared());
+            assertEquals(reference.getStats(), reloaded.getStats());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testBadFile() throws IOException {
+        File file = File.createTempFile("board", ".board");
+        try {
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                out.write("12 12\n".getBytes());
+            }
+            try {
+                OffHeapCellStorage.map(file, 10, 10);
+                throw new AssertionError("expected IOException");
+            } catch (IOException ioe) {
+                assertTrue(ioe.getMessage().startsWith("not a board file"));
+            }
+            file.delete();
+            OffHeapCellStorage.map(file, 10, 10).set(0, (byte) 1);
+            try (FileOutputStream out = new FileOutputStream(file, true)) {
+                out.write(0);
+            }
+            try {
+                OffHeapCellStorage.map(file, 10, 10);
+                throw new AssertionError("expected IOException");
+            } catch (IOException ioe) {
+                assertTrue(ioe.getMessage().startsWith("bad board size"));
+            }
+        } finally {
+            file.delete();
+        }
+    }
+}
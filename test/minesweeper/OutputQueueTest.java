@@ -0,0 +1,146 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+/**
+ * Tests OutputQueue.
+ */
+public class OutputQueueTest {
+    /*
+     * Testing Strategy:
+     *  responses: one, many queued at once (coalesced), larger than the queue
+     *  client: reads everything, reads slowly, never reads
+     *  policy when full: disconnect --> send() fails and the session is closed;
+     *      block --> send() waits, and every byte arrives in order
+     *  flush() --> returns once everything was written; close() --> queued responses still written
+     */
+
+    private static final int FRAME = 1 << 20;
+    private static final int FRAMES = 40;
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    /**
+     * @param listener listening channel
+     * @param client socket connected to listener
+     * @return server end of the connection
+     */
+    private static SocketChannel accept(ServerSocketChannel listener, Socket client) throws IOException {
+        client.connect(listener.getLocalAddress());
+        return listener.accept();
+    }
+
+    /**
+     * @param fill value of every byte
+     * @return a FRAME-byte response
+     */
+    private static ByteBuffer frame(int fill) {
+        byte[] bytes = new byte[FRAME];
+        Arrays.fill(bytes, (byte) fill);
+        return ByteBuffer.wrap(bytes);
+    }
+
+    @Test(timeout = 10000)
+    public void testLines() throws IOException {
+        try (ServerSocketChannel listener = ServerSocketChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+                Socket client = new Socket()) {
+            SocketChannel channel = accept(listener, client);
+            OutputQueue queue = new OutputQueue(channel, new PlayerSession(1, channel.socket(), null), 100_000, false);
+            for (int i = 0; i < 500; i++) {
+                queue.send("line " + i);
+            }
+            queue.flush();
+            // larger than the queue, so accepted only when the queue is empty, and alone
+            queue.send(String.join("", Collections.nCopies(200_000, "-")));
+            queue.flush();
+            queue.send("last");
+            queue.close();
+            channel.close();
+            BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream()));
+            for (int i = 0; i < 500; i++) {
+                assertEquals("line " + i, in.readLine());
+            }
+            assertEquals(200_000, in.readLine().length());
+            assertEquals("last", in.readLine());
+            assertEquals(null, in.readLine());
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testDisconnect() throws IOException {
+        try (ServerSocketChannel listener = ServerSocketChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+                Socket client = new Socket()) {
+            SocketChannel channel = accept(listener, client);
+            PlayerSession session = new PlayerSession(1, channel.socket(), null);
+            OutputQueue queue = new OutputQueue(channel, session, 2 * FRAME, false);
+            int sent = 0;
+            try {
+                // the client never reads, so the kernel buffers fill up, then the queue
+                for (; sent < FRAMES; sent++) {
+                    queue.send(frame(sent));
+                }
+            } catch (IOException ioe) {
+                assertTrue(ioe.getMessage().startsWith("client fell behind"));
+            }
+            assertTrue("expected the client to fall behind", sent < FRAMES);
+            assertTrue(session.isClosed());
+            queue.close();
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testBlock() throws IOException, InterruptedException {
+        try (ServerSocketChannel listener = ServerSocketChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+                Socket client = new Socket()) {
+            SocketChannel channel = accept(listener, client);
+            PlayerSession session = new PlayerSession(1, channel.socket(), null);
+            OutputQueue queue = new OutputQueue(channel, session, 2 * FRAME, true);
+            byte[][] received = new byte[FRAMES][FRAME];
+            Thread reader = new Thread(() -> {
+                try {
+                    Thread.sleep(500);
+                    DataInputStream in = new DataInputStream(client.getInputStream());
+                    for (byte[] bytes : received) {
+                        in.readFully(bytes);
+                    }
+                } catch (IOException | InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            reader.start();
+            for (int i = 0; i < FRAMES; i++) {
+                queue.send(frame(i));
+            }
+            queue.flush();
+            queue.close();
+            reader.join();
+            assertFalse(session.isClosed());
+            for (int i = 0; i < FRAMES; i++) {
+                assertArrayEquals(frame(i).array(), received[i]);
+            }
+        }
+    }
+}
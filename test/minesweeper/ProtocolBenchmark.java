@@ -0,0 +1,82 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compares the bandwidth and CPU cost of the text and binary protocols for sending the board.
+ * Not a JUnit test: run main() directly, with assertions disabled.
+ * 
+ * <p>For each board size, measures the bytes and time to encode:
+ * <pre>
+ *      text       board.toString(), as sent after every command of the text protocol
+ *      full       a FULL frame, as sent for a binary LOOK
+ *      delta      a DELTA frame after one dig, as sent for a binary DIG
+ * </pre>
+ */
+public class ProtocolBenchmark {
+
+    private static final int[] SIZES = { 20, 50, 100, 200 };
+    private static final long SEED = 6031;
+
+    /**
+     * @param warmup iterations to run first, untimed
+     * @param iterations iterations to time
+     * @param task code to time
+     * @return average nanoseconds per iteration
+     */
+    private static double time(int warmup, int iterations, Runnable task) {
+        for (int i = 0; i < warmup; i++) {
+            task.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            task.run();
+        }
+        return (System.nanoTime() - start) / (double) iterations;
+    }
+
+    /**
+     * Runs the benchmark and prints a table.
+     * 
+     * @param args unused
+     */
+    public static void main(String[] args) {
+        System.out.printf("%9s %12s %12s %12s %12s %12s %12s%n", "board", "text bytes", "full bytes",
+                "delta bytes", "text us", "full us", "delta us");
+        for (int size : SIZES) {
+            GameBoard board = new GameBoard(size, size, SEED);
+            int iterations = Math.max(5, 200_000 / (size * size));
+
+            int textBytes = board.toString().getBytes(StandardCharsets.UTF_8).length;
+            double textNanos = time(iterations, iterations,
+                    () -> board.toString().getBytes(StandardCharsets.UTF_8));
+
+            BinaryProtocol full = new BinaryProtocol(board);
+            int fullBytes = full.encodeBoard(BinaryProtocol.STATUS_BOARD, true).length;
+            double fullNanos = time(iterations, iterations,
+                    () -> full.encodeBoard(BinaryProtocol.STATUS_BOARD, true));
+
+            // a delta after one dig: alternate flag and deflag of one cell, so every frame has one change
+            BinaryProtocol delta = new BinaryProtocol(board);
+            delta.encodeBoard(BinaryProtocol.STATUS_BOARD, true);
+            board.flag(0, 0);
+            int deltaBytes = delta.encodeBoard(BinaryProtocol.STATUS_BOARD, false).length;
+            boolean[] flagged = { true };
+            double deltaNanos = time(iterations, iterations, () -> {
+                if (flagged[0]) {
+                    board.deflag(0, 0);
+                } else {
+                    board.flag(0, 0);
+                }
+                flagged[0] = ! flagged[0];
+                delta.encodeBoard(BinaryProtocol.STATUS_BOARD, false);
+            });
+
+            System.out.printf("%4dx%-4d %12d %12d %12d %12.1f %12.1f %12.1f%n", size, size, textBytes,
+                    fullBytes, deltaBytes, textNanos / 1000, fullNanos / 1000, deltaNanos / 1000);
+        }
+    }
+}
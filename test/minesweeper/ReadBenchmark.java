@@ -0,0 +1,126 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Measures how reads of a GameBoard scale with the number of reading threads, while another
+ * thread keeps making moves. Not a JUnit test: run main() directly, with assertions disabled.
+ *
+ * <p>Each reading thread repeats one read as fast as it can, and the writing thread makes a move
+ * (flag or deflag a random cell) every WRITE_INTERVAL_NANOS. For each read, number of readers and
+ * way of locking, prints the reads and moves per second:
+ * <pre>
+ *      status     getStatus() of a random cell
+ *      look       toString() of the whole board
+ *      locked     every read holds the lock on the board, as all reads did before they were
+ *                 made optimistic, so that readers wait for each other and for moves
+ *      optimistic the reads of GameBoard as they are
+ * </pre>
+ */
+public class ReadBenchmark {
+
+    private static final int SIZE = 100;
+    private static final int[] READERS = { 1, 2, 4, 8 };
+    private static final long WRITE_INTERVAL_NANOS = 100_000;
+    private static final long RUN_MILLIS = 1000;
+
+    // keeps the results of reads, so that they are not optimized away
+    private static volatile int sink;
+
+    /**
+     * @param board board to read
+     * @param look true to read the whole board, false to read cell (x,y)
+     * @param x column of the cell
+     * @param y row of the cell
+     * @return length of what was read
+     */
+    private static int read(GameBoard board, boolean look, int x, int y) {
+        return (look ? board.toString() : board.getStatus(x, y)).length();
+    }
+
+    /**
+     * Runs readers and a writer on a new board for RUN_MILLIS, and prints a line.
+     *
+     * @param look true to read the whole board, false to read a cell
+     * @param readers number of reading threads
+     * @param locked true to hold the lock on the board while reading
+     */
+    private static void run(boolean look, int readers, boolean locked) throws InterruptedException {
+        GameBoard board = new GameBoard(SIZE, SIZE, 6031);
+        LongAdder reads = new LongAdder();
+        LongAdder writes = new LongAdder();
+        final long deadline = System.currentTimeMillis() + RUN_MILLIS;
+        List<Thread> threads = new ArrayList<>();
+        for (int r = 0; r < readers; r++) {
+            Random random = new Random(r);
+            threads.add(new Thread(() -> {
+                int length = 0;
+                while (System.currentTimeMillis() < deadline) {
+                    for (int i = 0; i < 100; i++) {
+                        int x = random.nextInt(SIZE);
+                        int y = random.nextInt(SIZE);
+                        if (locked) {
+                            synchronized (board) {
+                                length += read(board, look, x, y);
+                            }
+                        } else {
+                            length += read(board, look, x, y);
+                        }
+                    }
+                    reads.add(100);
+                }
+                sink += length;
+            }));
+        }
+        threads.add(new Thread(() -> {
+            Random random = new Random(-1);
+            while (System.currentTimeMillis() < deadline) {
+                int x = random.nextInt(SIZE);
+                int y = random.nextInt(SIZE);
+                if (board.getStatus(x, y).equals("flagged")) {
+                    board.deflag(x, y);
+                } else {
+                    board.flag(x, y);
+                }
+                writes.increment();
+                LockSupport.parkNanos(WRITE_INTERVAL_NANOS);
+            }
+        }));
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        System.out.printf("%-6s %7d %-10s %14.0f %12.0f%n", look ? "look" : "status", readers,
+                locked ? "locked" : "optimistic", reads.sum() * 1000.0 / RUN_MILLIS,
+                writes.sum() * 1000.0 / RUN_MILLIS);
+    }
+
+    /**
+     * Runs the benchmark and prints a table.
+     *
+     * @param args unused
+     */
+    public static void main(String[] args) throws InterruptedException {
+        System.out.println(Runtime.getRuntime().availableProcessors() + " processors, " + SIZE + "x" + SIZE + " board");
+        System.out.printf("%-6s %7s %-10s %14s %12s%n", "read", "readers", "locking", "reads/s", "moves/s");
+        for (boolean look : new boolean[] { false, true }) {
+            // warm up
+            run(look, 1, false);
+            run(look, 1, true);
+            for (int readers : READERS) {
+                for (boolean locked : new boolean[] { true, false }) {
+                    run(look, readers, locked);
+                }
+            }
+        }
+    }
+}
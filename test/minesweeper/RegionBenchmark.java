@@ -0,0 +1,102 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import java.util.Random;
+
+/**
+ * Measures how long counting the cells of a rectangle takes with and without a region index, and
+ * what the index costs per move, on boards of growing size. Not a JUnit test: run main() directly,
+ * with assertions disabled.
+ *
+ * <p>For each board size, makes MOVES random flags, deflags and digs on a board with a region
+ * index and on one without, then counts QUERIES random rectangles of up to a quarter of the board
+ * on each. Prints:
+ * <pre>
+ *      build ms    milliseconds to build the index of the board, once
+ *      move us     microseconds per move, without the index
+ *      +index us   microseconds per move, with the index
+ *      scan us     microseconds per count, without the index
+ *      index us    microseconds per count, with the index
+ * </pre>
+ */
+public class RegionBenchmark {
+
+    private static final int[] SIZES = { 100, 1000, 4000 };
+    private static final int MOVES = 20000;
+    private static final int QUERIES = 200;
+
+    /**
+     * Makes the same random moves on a board.
+     *
+     * @param board board to play on
+     * @param size columns and rows of the board
+     * @return nanoseconds per move
+     */
+    private static double play(GameBoard board, int size) {
+        Random random = new Random(size);
+        long start = System.nanoTime();
+        for (int move = 0; move < MOVES; move++) {
+            int x = random.nextInt(size);
+            int y = random.nextInt(size);
+            if (move % 20 == 0) {
+                board.dig(x, y);
+            } else if (move % 2 == 0) {
+                board.flag(x, y);
+            } else {
+                board.deflag(x, y);
+            }
+        }
+        return (double) (System.nanoTime() - start) / MOVES;
+    }
+
+    /**
+     * Counts the same random rectangles of a board.
+     *
+     * @param board board to count on
+     * @param size columns and rows of the board
+     * @return nanoseconds per count
+     */
+    private static double count(GameBoard board, int size) {
+        Random random = new Random(size);
+        long start = System.nanoTime();
+        int total = 0;
+        for (int query = 0; query < QUERIES; query++) {
+            int x = random.nextInt(size);
+            int y = random.nextInt(size);
+            total += board.getRegionStats(x, y, x + random.nextInt(size / 2), y + random.nextInt(size / 2)).length();
+        }
+        if (total == 0) {
+            throw new AssertionError("no counts");
+        }
+        return (double) (System.nanoTime() - start) / QUERIES;
+    }
+
+    /**
+     * Runs the benchmark and prints a table.
+     *
+     * @param args unused
+     */
+    public static void main(String[] args) {
+        System.out.printf("%9s %10s %10s %10s %12s %10s%n", "board", "build ms", "move us", "+index us", "scan us",
+                "index us");
+        for (int size : SIZES) {
+            GameBoard scanned = new GameBoard(size, size, 6031);
+            GameBoard indexed = new GameBoard(size, size, 6031);
+            long start = System.nanoTime();
+            indexed.setRegionIndex(true);
+            long buildNanos = System.nanoTime() - start;
+            // warm up both paths, then measure on the same moves
+            play(new GameBoard(size, size, 1), size);
+            double moveNanos = play(scanned, size);
+            double indexedMoveNanos = play(indexed, size);
+            for (int warmup = 0; warmup < 10; warmup++) {
+                count(scanned, size);
+                count(indexed, size);
+            }
+            System.out.printf("%4dx%-4d %10.1f %10.2f %10.2f %12.1f %10.2f%n", size, size, buildNanos / 1e6,
+                    moveNanos / 1e3, indexedMoveNanos / 1e3, count(scanned, size) / 1e3, count(indexed, size) / 1e3);
+        }
+    }
+}
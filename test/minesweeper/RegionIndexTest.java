@@ -0,0 +1,120 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests RegionIndex.
+ */
+public class RegionIndexTest {
+    /*
+     * Testing Strategy:
+     *  board: 1 x 1, sizes that are and are not powers of 2, more columns than rows and the reverse
+     *  changes: add, remove; of each kind, of several kinds in one cell
+     *  rectangle: one cell, a row, a column, the whole board, every rectangle of a small board
+     *  rebuild: empty board, after changes --> same counts as the changes made one by one
+     */
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    /**
+     * Checks the count of every kind in every rectangle of a board against the cells.
+     * @param index index of the board
+     * @param kinds kinds[kind][index] is true iff the cell is of the kind
+     * @param cols number of columns of the board
+     * @param rows number of rows of the board
+     */
+    private static void assertCounts(RegionIndex index, boolean[][] kinds, int cols, int rows) {
+        for (int kind = 0; kind < kinds.length; kind++) {
+            for (int x1 = 0; x1 < cols; x1++) {
+                for (int x2 = x1; x2 < cols; x2++) {
+                    for (int y1 = 0; y1 < rows; y1++) {
+                        for (int y2 = y1; y2 < rows; y2++) {
+                            int expected = 0;
+                            for (int y = y1; y <= y2; y++) {
+                                for (int x = x1; x <= x2; x++) {
+                                    expected += kinds[kind][y * cols + x] ? 1 : 0;
+                                }
+                            }
+                            assertEquals("kind " + kind + " from (" + x1 + "," + y1 + ") to (" + x2 + "," + y2 + ")",
+                                    expected, index.count(kind, x1, y1, x2, y2));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // covers a 1 x 1 board, add and remove, several kinds in one cell
+    @Test
+    public void testOneCell() {
+        RegionIndex index = new RegionIndex(1, 1);
+        assertEquals(0, index.count(RegionIndex.BOMBS, 0, 0, 0, 0));
+        index.add(0, RegionIndex.BOMBS, 1);
+        index.add(0, RegionIndex.FLAGS, 1);
+        assertEquals(1, index.count(RegionIndex.BOMBS, 0, 0, 0, 0));
+        assertEquals(1, index.count(RegionIndex.FLAGS, 0, 0, 0, 0));
+        assertEquals(0, index.count(RegionIndex.DUG, 0, 0, 0, 0));
+        index.add(0, RegionIndex.FLAGS, -1);
+        index.add(0, RegionIndex.DUG, 1);
+        assertEquals(0, index.count(RegionIndex.FLAGS, 0, 0, 0, 0));
+        assertEquals(1, index.count(RegionIndex.DUG, 0, 0, 0, 0));
+    }
+
+    // covers sizes that are and are not powers of 2, wide and tall boards, every rectangle
+    @Test
+    public void testRandomChanges() {
+        int[][] sizes = { { 8, 4 }, { 7, 5 }, { 3, 11 } };
+        Random random = new Random(6031);
+        for (int[] size : sizes) {
+            int cols = size[0];
+            int rows = size[1];
+            RegionIndex index = new RegionIndex(cols, rows);
+            boolean[][] kinds = new boolean[3][cols * rows];
+            for (int change = 0; change < 200; change++) {
+                int kind = random.nextInt(3);
+                int cell = random.nextInt(cols * rows);
+                index.add(cell, kind, kinds[kind][cell] ? -1 : 1);
+                kinds[kind][cell] = ! kinds[kind][cell];
+            }
+            assertCounts(index, kinds, cols, rows);
+        }
+    }
+
+    // covers rebuild of an empty board and of a changed board
+    @Test
+    public void testRebuild() {
+        int cols = 9;
+        int rows = 6;
+        Random random = new Random(42);
+        boolean[][] kinds = new boolean[3][cols * rows];
+        RegionIndex changed = new RegionIndex(cols, rows);
+        for (int cell = 0; cell < cols * rows; cell++) {
+            for (int kind = 0; kind < 3; kind++) {
+                if (random.nextInt(3) == 0) {
+                    kinds[kind][cell] = true;
+                    changed.add(cell, kind, 1);
+                }
+            }
+        }
+        RegionIndex rebuilt = new RegionIndex(cols, rows);
+        rebuilt.rebuild(cell -> 0);
+        assertEquals(0, rebuilt.count(RegionIndex.DUG, 0, 0, cols - 1, rows - 1));
+        rebuilt.rebuild(cell -> (kinds[0][cell] ? 1 : 0) | (kinds[1][cell] ? 2 : 0) | (kinds[2][cell] ? 4 : 0));
+        assertCounts(rebuilt, kinds, cols, rows);
+        assertCounts(changed, kinds, cols, rows);
+        // the rebuilt index goes on counting changes
+        rebuilt.add(0, RegionIndex.BOMBS, kinds[0][0] ? -1 : 1);
+        kinds[0][0] = ! kinds[0][0];
+        assertCounts(rebuilt, kinds, cols, rows);
+    }
+}
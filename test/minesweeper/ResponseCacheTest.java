@@ -0,0 +1,112 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+
+import org.junit.Test;
+
+/**
+ * Tests ResponseCache.
+ */
+public class ResponseCacheTest {
+    /*
+     * Testing Strategy:
+     *  format: text, rle, deflate
+     *  board: unchanged --> hit, same rendering; changed --> miss, earlier version evicted;
+     *      failed move --> unchanged
+     *  callers: one, several at once on the same version --> rendered once
+     *  metrics: no renderings, some hits and misses
+     */
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // covers text on an unchanged board, a changed board and after a failed move, metrics
+    @Test
+    public void testText() {
+        GameBoard board = new GameBoard(30, 20, 6031);
+        ResponseCache cache = new ResponseCache(board, new BoardCompressor(board));
+        assertEquals("Response cache: 0 hits, 0 misses (0.0% hit rate), 0 evictions.", cache.getMetrics());
+        String text = cache.text();
+        assertEquals(board.toString(), text);
+        assertSame("unchanged board", text, cache.text());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        board.flag(3, 4);
+        String flagged = cache.text();
+        assertNotSame("new rendering", text, flagged);
+        assertEquals(board.toString(), flagged);
+        assertEquals(1, cache.getEvictions());
+        // a failed move does not change the board
+        board.deflag(10, 10);
+        assertSame(flagged, cache.text());
+        assertEquals("Response cache: 2 hits, 2 misses (50.0% hit rate), 1 evictions.", cache.getMetrics());
+    }
+
+    // covers rle and deflate, cached apart from text
+    @Test
+    public void testCompressed() {
+        GameBoard board = new GameBoard(60, 60, 42);
+        BoardCompressor compressor = new BoardCompressor(board);
+        ResponseCache cache = new ResponseCache(board, compressor);
+        String rle = cache.rle();
+        ByteBuffer deflated = cache.deflate();
+        String text = cache.text();
+        assertEquals(compressor.rle(), rle);
+        assertEquals(compressor.deflate(), deflated);
+        assertEquals(board.toString(), text);
+        assertSame(rle, cache.rle());
+        assertEquals(deflated, cache.deflate());
+        assertEquals(3, cache.getMisses());
+        assertEquals(2, cache.getHits());
+        assertEquals("views are independent", 0, cache.deflate().position());
+        board.dig(0, 0);
+        assertEquals(compressor.rle(), cache.rle());
+        assertEquals(4, cache.getMisses());
+        assertEquals("only the rle rendering is replaced", 1, cache.getEvictions());
+    }
+
+    // covers several callers at once on the same version
+    @Test
+    public void testSingleFlight() throws Exception {
+        GameBoard board = new GameBoard(1000, 1000, 6031);
+        ResponseCache cache = new ResponseCache(board, new BoardCompressor(board));
+        final int callers = 8;
+        CyclicBarrier start = new CyclicBarrier(callers);
+        String[] texts = new String[callers];
+        List<Thread> threads = new ArrayList<>();
+        for (int caller = 0; caller < callers; caller++) {
+            final int index = caller;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (Exception e) {
+                    throw new AssertionError(e);
+                }
+                texts[index] = cache.text();
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals("rendered once", 1, cache.getMisses());
+        assertEquals(callers - 1, cache.getHits());
+        for (String text : texts) {
+            assertSame(texts[0], text);
+        }
+        assertEquals(board.toString(), texts[0]);
+    }
+}
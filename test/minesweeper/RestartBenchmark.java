@@ -0,0 +1,175 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.ConnectException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Measures how long a GameServer is unavailable while it is restarted, with --handoff and by
+ * shutting it down with --snapshot and starting a new server from the snapshot.
+ * Not a JUnit test: run main() directly, with assertions disabled.
+ *
+ * <p>While the server restarts, CLIENTS threads keep connecting, sending 'stats' and saying 'bye',
+ * each as soon as the last one is done. For each board size and way of restarting, prints:
+ * <pre>
+ *      restart    milliseconds from starting the restart until the new server accepts clients
+ *      gap        longest time no client was answered, in milliseconds
+ *      slowest    longest time a client waited for its answer, in milliseconds
+ *      refused    connections refused
+ *      dropped    connections closed before the answer, e.g. told to reconnect
+ * </pre>
+ */
+public class RestartBenchmark {
+
+    private static final String LOCALHOST = "127.0.0.1";
+    private static final int PORT = 4030;
+    private static final int HANDOFF_PORT = 4033;
+    private static final int[] SIZES = { 100, 1000, 4000 };
+    private static final int CLIENTS = 4;
+    // milliseconds that clients run before and after the restart
+    private static final long SETTLE_MILLIS = 500;
+
+    /** Clients of a server, and what happened to them. */
+    private static class Clients {
+        private final List<Thread> threads = new ArrayList<>();
+        private final List<long[]> answered = new ArrayList<>();
+        private int refused = 0;
+        private int dropped = 0;
+        private volatile boolean running = true;
+
+        /**
+         * Starts the client threads.
+         */
+        Clients() {
+            for (int i = 0; i < CLIENTS; i++) {
+                Thread thread = new Thread(this::run);
+                threads.add(thread);
+                thread.start();
+            }
+        }
+
+        /**
+         * Body of a client thread.
+         */
+        private void run() {
+            while (running) {
+                long start = System.nanoTime();
+                try (Socket socket = new Socket(LOCALHOST, PORT)) {
+                    BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+                    PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+                    String welcome = in.readLine();
+                    out.println("stats");
+                    String stats = in.readLine();
+                    out.println("bye");
+                    synchronized (this) {
+                        if (welcome != null && welcome.startsWith("Welcome") && stats != null && stats.startsWith("Safe")) {
+                            answered.add(new long[] { start, System.nanoTime() });
+                        } else {
+                            dropped++;
+                        }
+                    }
+                } catch (ConnectException ce) {
+                    synchronized (this) {
+                        refused++;
+                    }
+                } catch (IOException ioe) {
+                    synchronized (this) {
+                        dropped++;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Stops the client threads, and prints what happened to them.
+         *
+         * @param label first columns of the line
+         * @param restartNanos duration of the restart
+         */
+        void stopAndPrint(String label, long restartNanos) throws InterruptedException {
+            running = false;
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            List<Long> ends = new ArrayList<>();
+            long slowest = 0;
+            for (long[] times : answered) {
+                ends.add(times[1]);
+                slowest = Math.max(slowest, times[1] - times[0]);
+            }
+            Collections.sort(ends);
+            long gap = 0;
+            for (int i = 1; i < ends.size(); i++) {
+                gap = Math.max(gap, ends.get(i) - ends.get(i - 1));
+            }
+            System.out.printf("%s %10.1f %10.1f %10.1f %8d %8d%n", label, restartNanos / 1e6, gap / 1e6,
+                    slowest / 1e6, refused, dropped);
+        }
+    }
+
+    /**
+     * @param server server to run
+     * @return thread running server.serve()
+     */
+    private static Thread serve(GameServer server) {
+        Thread thread = new Thread(() -> {
+            try {
+                server.serve();
+            } catch (IOException ioe) {
+                ioe.printStackTrace();
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Runs the benchmark and prints a table.
+     *
+     * @param args unused
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        File snapshot = File.createTempFile("restart-benchmark", ".board");
+        System.out.printf("%9s %8s %10s %10s %10s %8s %8s%n", "board", "restart", "restart ms", "gap ms",
+                "slowest ms", "refused", "dropped");
+        for (int size : SIZES) {
+            for (boolean handingOff : new boolean[] { true, false }) {
+                ServerOptions options = handingOff ? new ServerOptions().setHandoffPort(HANDOFF_PORT)
+                        : new ServerOptions().setSnapshotFile(snapshot);
+                GameServer oldServer = new GameServer(PORT, new GameBoard(size, size, 6031), options);
+                Thread oldThread = serve(oldServer);
+                Clients clients = new Clients();
+                Thread.sleep(SETTLE_MILLIS);
+
+                long start = System.nanoTime();
+                GameServer newServer;
+                if (handingOff) {
+                    newServer = GameServer.takeOver(PORT, options);
+                } else {
+                    oldServer.shutdown();
+                    newServer = new GameServer(PORT, BoardSnapshot.read(snapshot), options);
+                }
+                Thread newThread = serve(newServer);
+                long restartNanos = System.nanoTime() - start;
+                oldThread.join();
+
+                Thread.sleep(SETTLE_MILLIS);
+                clients.stopAndPrint(String.format("%4dx%-4d %8s", size, size, handingOff ? "handoff" : "snapshot"),
+                        restartNanos);
+                newServer.shutdown();
+                newThread.join();
+            }
+        }
+        snapshot.delete();
+    }
+}
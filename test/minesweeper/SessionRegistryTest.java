@@ -0,0 +1,150 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests the SessionRegistry, PlayerSession and TokenBucket classes.
+ */
+public class SessionRegistryTest {
+    
+    /* Testing strategy
+     * register(), unregister(), size():
+     *  sessions: 0, 1, >1; registered from one thread, from many threads
+     *  unregister: registered session, already unregistered session
+     * 
+     * reapIdle():
+     *  idle timeout: 0, >0
+     *  sessions: idle, active, already closed
+     * 
+     * stopReadingAll(), awaitEmpty(), closeAll():
+     *  sessions: waiting for a command, busy; unregistered before the timeout, never unregistered
+     * 
+     * PlayerSession.countMove(), getMoves():
+     *  moves: 0, >0
+     * 
+     * TokenBucket.tryAcquire():
+     *  bucket: full, empty
+     */
+    
+    // covers 0, 1, >1 sessions, unregistering twice
+    @Test
+    public void testRegisterUnregister() {
+        SessionRegistry registry = new SessionRegistry(0, 1, 0);
+        assertEquals("no sessions", 0, registry.size());
+        PlayerSession first = registry.register(new Socket());
+        assertEquals("one session", 1, registry.size());
+        PlayerSession second = registry.register(new Socket());
+        assertEquals("two sessions", 2, registry.size());
+        assertTrue("ids are unique", first.getId() != second.getId());
+        registry.unregister(first);
+        registry.unregister(first);
+        assertEquals("unregistering twice removes one session", 1, registry.size());
+        registry.close();
+    }
+    
+    // covers sessions registered and unregistered from many threads
+    @Test
+    public void testRegisterConcurrently() throws InterruptedException {
+        SessionRegistry registry = new SessionRegistry(0, 1, 0);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    PlayerSession session = registry.register(new Socket());
+                    if (i % 2 == 0) {
+                        registry.unregister(session);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals("half of the sessions are left", 8 * 500, registry.size());
+        registry.close();
+    }
+    
+    // covers idle timeout 0 and >0, idle, active and closed sessions
+    @Test
+    public void testReapIdle() {
+        SessionRegistry never = new SessionRegistry(0, 1, 0);
+        never.register(new Socket());
+        assertEquals("no timeout", 0, never.reapIdle(System.nanoTime() + TimeUnit.DAYS.toNanos(1)));
+        
+        SessionRegistry registry = new SessionRegistry(0, 1, 1000);
+        PlayerSession idle = registry.register(new Socket());
+        PlayerSession active = registry.register(new Socket());
+        long later = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        active.touch();
+        assertEquals("nobody is idle yet", 0, registry.reapIdle(System.nanoTime()));
+        assertEquals("both are idle later", 2, registry.reapIdle(later));
+        assertTrue("idle session is closed", idle.isClosed());
+        assertEquals("closed sessions are not reaped again", 0, registry.reapIdle(later));
+        assertEquals("sessions stay registered until unregistered", 2, registry.size());
+        registry.close();
+    }
+    
+    // covers sessions waiting and busy, unregistered before the timeout and never unregistered
+    @Test(timeout = 10000)
+    public void testDrain() throws InterruptedException {
+        SessionRegistry registry = new SessionRegistry(0, 1, 0);
+        PlayerSession waiting = registry.register(new Socket());
+        PlayerSession busy = registry.register(new Socket());
+        assertTrue("reading commands", waiting.waitForCommand());
+        registry.stopReadingAll();
+        assertFalse("stopped reading", busy.waitForCommand());
+        busy.doneWaitingForCommand();
+        assertFalse("sessions are still registered", registry.awaitEmpty(10));
+        
+        Thread leaving = new Thread(() -> {
+            registry.unregister(busy);
+            registry.unregister(waiting);
+        });
+        leaving.start();
+        assertTrue("every session left", registry.awaitEmpty(5000));
+        leaving.join();
+        
+        PlayerSession stuck = registry.register(new Socket());
+        registry.closeAll();
+        assertTrue("stuck session is closed", stuck.isClosed());
+        assertFalse("closed sessions stay registered", registry.awaitEmpty(0));
+        registry.close();
+    }
+    
+    // covers 0 and >0 moves
+    @Test
+    public void testMoves() {
+        PlayerSession session = new PlayerSession(1, new Socket(), null);
+        assertEquals("no moves", 0, session.getMoves());
+        session.countMove();
+        session.countMove();
+        assertEquals("two moves", 2, session.getMoves());
+        assertFalse("session is open", session.isClosed());
+    }
+    
+    // covers full and empty token bucket
+    @Test
+    public void testTokenBucket() {
+        TokenBucket bucket = new TokenBucket(1, 3);
+        assertEquals("first token", 0, bucket.tryAcquire());
+        assertEquals("second token", 0, bucket.tryAcquire());
+        assertEquals("third token", 0, bucket.tryAcquire());
+        long wait = bucket.tryAcquire();
+        assertTrue("bucket is empty, wait about a second: " + wait,
+                wait > TimeUnit.MILLISECONDS.toNanos(900) && wait <= TimeUnit.SECONDS.toNanos(1));
+    }
+}
@@ -0,0 +1,164 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.ConnectException;
+import java.net.Socket;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests ShardRouter, with shards in this process and in processes of their own.
+ */
+public class ShardRouterTest {
+    /*
+     * Testing Strategy:
+     *  shards: in this process, in local processes launched by GameServer --shards
+     *  single player, random digs, flags and deflags on a board of 3x2 shards --> every answer and
+     *      the stats are those of a GameServer with a GameBoard of the same bombs, including flood
+     *      fills across several regions and bombs dug next to an edge
+     *  commands not available on a sharded board --> message
+     */
+
+    private static final String LOCALHOST = "127.0.0.1";
+
+    /**
+     * Connect to a router, waiting for it to start listening.
+     *
+     * @param port port of the router
+     * @param timeoutMillis how long to wait
+     * @return socket connected to the router
+     * @throws IOException if the connection fails
+     */
+    private static Socket connect(int port, long timeoutMillis) throws IOException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (true) {
+            try {
+                Socket socket = new Socket(LOCALHOST, port);
+                socket.setSoTimeout(10000);
+                return socket;
+            } catch (ConnectException ce) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw ce;
+                }
+                try { Thread.sleep(50); } catch (InterruptedException ie) { ie.printStackTrace(); }
+            }
+        }
+    }
+
+    /**
+     * @return the next rows lines from in, joined by newlines
+     */
+    private static String readBoard(BufferedReader in, int rows) throws IOException {
+        StringBuilder board = new StringBuilder(in.readLine());
+        for (int row = 1; row < rows; row++) {
+            board.append('\n').append(in.readLine());
+        }
+        return board.toString();
+    }
+
+    @Test(timeout = 60000)
+    public void testMatchesGameBoard() throws IOException {
+        final int cols = 30;
+        final int rows = 20;
+        ShardLayout layout = new ShardLayout(cols, rows, 3, 2, 6031);
+        int[] ports = new int[layout.getShardCount()];
+        for (int s = 0; s < ports.length; s++) {
+            ShardServer shard = new ShardServer(0, layout, s);
+            ports[s] = shard.getPort();
+            Thread thread = new Thread(() -> {
+                try {
+                    shard.serve();
+                } catch (IOException ioe) {
+                    ioe.printStackTrace();
+                }
+            });
+            thread.setDaemon(true);
+            thread.start();
+        }
+        ShardRouter router = new ShardRouter(4012, layout, ports, new ServerOptions());
+        Thread serving = new Thread(() -> {
+            try {
+                router.serve();
+            } catch (IOException ioe) {
+                // closed
+            }
+        });
+        serving.start();
+        GameBoard reference = new GameBoard(cols, rows, layout.bombs(0, 0, cols, rows));
+
+        try (Socket socket = connect(4012, 5000)) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+            assertTrue(in.readLine().startsWith("Welcome"));
+            out.println("look");
+            assertEquals(reference.toString(), readBoard(in, rows));
+            out.println("hint");
+            assertEquals("Not available on a sharded board.", in.readLine());
+
+            Random random = new Random(5);
+            for (int move = 0; move < 300; move++) {
+                int x = random.nextInt(cols + 2) - 1;
+                int y = random.nextInt(rows + 2) - 1;
+                int kind = random.nextInt(10);
+                String command = kind < 7 ? "dig" : kind < 9 ? "flag" : "deflag";
+                out.println(command + " " + x + " " + y);
+                String expected;
+                if (command.equals("dig")) {
+                    expected = reference.dig(x, y).equals("BOOM") ? "BOOM!" : reference.toString();
+                } else if (command.equals("flag")) {
+                    reference.flag(x, y);
+                    expected = reference.toString();
+                } else {
+                    reference.deflag(x, y);
+                    expected = reference.toString();
+                }
+                String actual = expected.equals("BOOM!") ? in.readLine() : readBoard(in, rows);
+                assertEquals(command + " " + x + " " + y, expected, actual);
+            }
+            out.println("stats");
+            assertEquals(reference.getStats() + " Players: 1. Your moves: 300.", in.readLine());
+            out.println("bye");
+        } finally {
+            router.close();
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testLocalProcesses() throws IOException {
+        int port = 4013;
+        Thread server = new Thread(() -> GameServer.main(new String[] {
+            "--port", Integer.toString(port), "--size", "40,30", "--shards", "2,2" }));
+        server.setDaemon(true);
+        server.start();
+
+        try (Socket socket = connect(port, 30000)) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+            assertEquals("Welcome to Minesweeper. Players: 1 including you. Board: 40 columns by 30 rows. Type 'help' for help.",
+                    in.readLine());
+            out.println("look");
+            String board = readBoard(in, 30);
+            assertEquals(30, board.split("\n").length);
+            for (String row : board.split("\n")) {
+                assertEquals(row.replaceAll("[^-]", "").length(), 40);
+            }
+            out.println("flag 39 29");
+            String flagged = readBoard(in, 30);
+            assertTrue(flagged.endsWith("- F"));
+            out.println("stats");
+            String stats = in.readLine();
+            assertTrue(stats, stats.matches("Safe cells remaining: \\d+\\. Flags placed: 1\\. Bombs hit: 0\\. Players: 1\\. Your moves: 1\\."));
+            out.println("bye");
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Tests ShardLayout and the shard protocol of ShardServer.
+ */
+public class ShardServerTest {
+    /*
+     * Testing Strategy:
+     *  layout: strips of equal and unequal sizes; every cell is in the region of exactly the shard
+     *      shardAt() gives; bombs depend only on seed and cell
+     *  requests:
+     *      look: new region, after flag and dig
+     *      stats: new region, after flag and dig of a bomb
+     *      dig: bomb --> BOOM; cell with no neighbor bombs on the edge --> handoff across the edge;
+     *          cell of another shard --> ERROR
+     *      unbomb: bomb next to the region --> neighbor counts drop; cell not next to the region --> ERROR
+     *      malformed --> ERROR
+     */
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    @Test
+    public void testLayoutTilesBoard() {
+        ShardLayout layout = new ShardLayout(10, 7, 3, 2, 42);
+        assertEquals(6, layout.getShardCount());
+        int[] cellsPerShard = new int[layout.getShardCount()];
+        for (int x = 0; x < 10; x++) {
+            for (int y = 0; y < 7; y++) {
+                int shard = layout.shardAt(x, y);
+                cellsPerShard[shard]++;
+                assertTrue(x >= layout.left(shard) && x < layout.left(shard) + layout.width(shard));
+                assertTrue(y >= layout.top(shard) && y < layout.top(shard) + layout.height(shard));
+            }
+        }
+        for (int shard = 0; shard < layout.getShardCount(); shard++) {
+            assertEquals(layout.width(shard) * layout.height(shard), cellsPerShard[shard]);
+        }
+        assertEquals(Arrays.asList(0, 3, 6), Arrays.asList(layout.left(0), layout.left(1), layout.left(2)));
+        assertEquals(3, layout.top(3));
+    }
+
+    @Test
+    public void testLayoutBombs() {
+        ShardLayout layout = new ShardLayout(100, 100, 1, 1, 6031);
+        ShardLayout same = new ShardLayout(100, 100, 4, 4, 6031);
+        boolean[] bombs = layout.bombs(0, 0, 100, 100);
+        int count = 0;
+        for (int index = 0; index < bombs.length; index++) {
+            assertEquals(bombs[index], same.hasBomb(index % 100, index / 100));
+            count += bombs[index] ? 1 : 0;
+        }
+        // about BOMB_PROBABILITY of the cells
+        assertTrue("bombs: " + count, count > 2000 && count < 3000);
+        assertEquals(Arrays.toString(layout.bombs(10, 20, 3, 2)),
+                Arrays.toString(new boolean[] { bombs[2010], bombs[2011], bombs[2012], bombs[2110], bombs[2111], bombs[2112] }));
+    }
+
+    @Test
+    public void testLookAndStats() throws IOException {
+        ShardLayout layout = new ShardLayout(8, 6, 2, 1, 1);
+        ShardServer server = new ShardServer(0, layout, 1);
+        assertEquals("------------------------", server.handleRequest("look"));
+        int safe = 0;
+        for (int x = 4; x < 8; x++) {
+            for (int y = 0; y < 6; y++) {
+                safe += layout.hasBomb(x, y) ? 0 : 1;
+            }
+        }
+        assertEquals(safe + " 0 0", server.handleRequest("stats"));
+        assertEquals("BOARD", server.handleRequest("flag 5 0"));
+        assertEquals("-F----------------------", server.handleRequest("look"));
+        assertEquals(safe + " 1 0", server.handleRequest("stats"));
+        assertEquals("BOARD", server.handleRequest("deflag 5 0"));
+        assertEquals(safe + " 0 0", server.handleRequest("stats"));
+    }
+
+    @Test
+    public void testDigBomb() throws IOException {
+        ShardLayout layout = new ShardLayout(20, 20, 2, 2, 7);
+        ShardServer server = new ShardServer(0, layout, 3);
+        int bomb = firstCell(layout, 3, true);
+        int x = bomb % 20;
+        int y = bomb / 20;
+        assertTrue(server.handleRequest("dig " + x + " " + y).startsWith("BOOM"));
+        assertTrue(server.handleRequest("stats").endsWith(" 0 1"));
+        assertEquals("ERROR", server.handleRequest("dig 0 0"));
+        assertEquals("ERROR", server.handleRequest("flag 0 0"));
+    }
+
+    @Test
+    public void testHandoff() throws IOException {
+        // find a layout with a cell on the right edge of shard 0 that has no neighbor bombs
+        for (long seed = 0; ; seed++) {
+            ShardLayout layout = new ShardLayout(10, 10, 2, 1, seed);
+            for (int y = 1; y < 9; y++) {
+                if (bombsAround(layout, 4, y) == 0 && ! layout.hasBomb(4, y)) {
+                    ShardServer server = new ShardServer(0, layout, 0);
+                    String answer = server.handleRequest("dig 4 " + y);
+                    assertTrue(answer, answer.startsWith("BOARD"));
+                    // every neighbor across the edge is handed off
+                    for (int j = y - 1; j <= y + 1; j++) {
+                        assertTrue(answer, (" " + answer + " ").contains(" 5 " + j + " "));
+                    }
+                    // digging again changes nothing and hands nothing off
+                    assertEquals("BOARD", server.handleRequest("dig 4 " + y));
+                    return;
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testUnbomb() throws IOException {
+        // find a layout with a bomb just right of shard 0, next to a cell of shard 0 without a bomb
+        for (long seed = 0; ; seed++) {
+            ShardLayout layout = new ShardLayout(10, 10, 2, 1, seed);
+            if (layout.hasBomb(5, 5) && ! layout.hasBomb(4, 5)) {
+                ShardServer server = new ShardServer(0, layout, 0);
+                int before = bombsAround(layout, 4, 5);
+                assertEquals("OK", server.handleRequest("unbomb 5 5"));
+                server.handleRequest("dig 4 5");
+                String region = server.handleRequest("look");
+                assertEquals((char) ('0' + before - 1), region.charAt(5 * 5 + 4));
+                assertEquals("ERROR", server.handleRequest("unbomb 7 5"));
+                assertEquals("ERROR", server.handleRequest("unbomb 4 5"));
+                assertEquals("ERROR", server.handleRequest("unbomb 5"));
+                assertEquals("ERROR", server.handleRequest("dig x 5"));
+                assertEquals("ERROR", server.handleRequest("explode"));
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return number of bombs next to (x,y) on the whole board
+     */
+    private static int bombsAround(ShardLayout layout, int x, int y) {
+        int count = 0;
+        for (int i = x - 1; i <= x + 1; i++) {
+            for (int j = y - 1; j <= y + 1; j++) {
+                if ((i != x || j != y) && layout.isCell(i, j) && layout.hasBomb(i, j)) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return index on the whole board of the first cell of shard's region with or without a bomb
+     */
+    private static int firstCell(ShardLayout layout, int shard, boolean bomb) {
+        for (int y = layout.top(shard); y < layout.top(shard) + layout.height(shard); y++) {
+            for (int x = layout.left(shard); x < layout.left(shard) + layout.width(shard); x++) {
+                if (layout.hasBomb(x, y) == bomb) {
+                    return y * layout.getCols() + x;
+                }
+            }
+        }
+        throw new AssertionError("no such cell");
+    }
+}
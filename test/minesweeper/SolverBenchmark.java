@@ -0,0 +1,95 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+/**
+ * Measures the solver with an automated player. Not a JUnit test: run main() directly, with
+ * assertions disabled.
+ *
+ * <p>For each board size, the player repeatedly analyzes the board, digs every cell that is
+ * certainly safe, and otherwise flags the certain bombs and follows the hint. Bombs dug by a guess
+ * are removed, as for any player, and the game goes on until the board is cleared or the player
+ * has analyzed the board MAX_ANALYSES times. Prints:
+ * <pre>
+ *      analyses   number of times the board was analyzed
+ *      moves      digs and flags made
+ *      booms      guesses that dug a bomb
+ *      cleared    percentage of safe cells dug
+ *      first ms   time of the first analysis that found a frontier, which solves every component
+ *      avg ms     average time of an analysis
+ *      max ms     longest analysis
+ *      solved %   components solved rather than found in the cache, over all analyses
+ * </pre>
+ */
+public class SolverBenchmark {
+
+    private static final int[] SIZES = { 20, 100, 300, 1000 };
+    private static final int MAX_ANALYSES = 400;
+    private static final long SEED = 6031;
+
+    /**
+     * Runs the benchmark and prints a table.
+     *
+     * @param args unused
+     */
+    public static void main(String[] args) {
+        System.out.printf("%9s %9s %9s %7s %9s %9s %9s %9s %9s%n", "board", "analyses", "moves", "booms",
+                "cleared", "first ms", "avg ms", "max ms", "solved %");
+        for (int size : SIZES) {
+            GameBoard board = new GameBoard(size, size, SEED);
+            int safeCells = board.getSafeRemaining();
+            Solver solver = new Solver(board);
+            int analyses = 0;
+            int moves = 0;
+            long firstNanos = -1;
+            long totalNanos = 0;
+            long maxNanos = 0;
+            long components = 0;
+            long solved = 0;
+            while ( ! board.isCleared() && analyses < MAX_ANALYSES) {
+                Solver.Analysis analysis = solver.analyze();
+                analyses++;
+                totalNanos += analysis.getSolveNanos();
+                maxNanos = Math.max(maxNanos, analysis.getSolveNanos());
+                components += analysis.getComponents();
+                solved += analysis.getComponentsSolved();
+                if (firstNanos < 0 && analysis.getComponents() > 0) {
+                    firstNanos = analysis.getSolveNanos();
+                }
+                int[] safe = analysis.getSafeCells();
+                for (int index : safe) {
+                    // an earlier dig may have dug this cell already
+                    if (board.getStatus(index % size, index / size).equals("untouched")) {
+                        board.dig(index % size, index / size);
+                        moves++;
+                    }
+                }
+                if (safe.length > 0) {
+                    continue;
+                }
+                for (int index : analysis.getBombCells()) {
+                    if (board.getStatus(index % size, index / size).equals("untouched")) {
+                        board.flag(index % size, index / size);
+                        moves++;
+                    }
+                }
+                Solver.Hint hint = analysis.getHint();
+                if (hint == null) {
+                    break;
+                } else if (hint.getCommand().equals("dig")) {
+                    board.dig(hint.getX(), hint.getY());
+                } else if (hint.getCommand().equals("flag")) {
+                    board.flag(hint.getX(), hint.getY());
+                } else {
+                    board.deflag(hint.getX(), hint.getY());
+                }
+                moves++;
+            }
+            double cleared = 100.0 * (safeCells - board.getSafeRemaining()) / safeCells;
+            System.out.printf("%9s %9d %9d %7d %8.1f%% %9.2f %9.2f %9.2f %8.1f%%%n", size + "x" + size,
+                    analyses, moves, board.getBombsHit(), cleared, firstNanos / 1e6,
+                    totalNanos / 1e6 / analyses, maxNanos / 1e6, 100.0 * solved / Math.max(1, components));
+        }
+    }
+}
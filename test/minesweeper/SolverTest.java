@@ -0,0 +1,124 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+/**
+ * Tests methods of the Solver class.
+ */
+public class SolverTest {
+    
+    /* Testing strategy
+     * analyze():
+     *  frontier: empty, one component, many components
+     *  deduction: single-cell, subset, none (enumeration only)
+     *  previous analysis: none, same board, board changed in one component
+     *  flags: none, on a safe cell
+     * 
+     * getHint():
+     *  output: dig a safe cell, deflag a safe cell, flag a bomb, guess on the frontier,
+     *          guess off the frontier, null
+     */
+    
+    // covers empty frontier, guess off the frontier
+    @Test
+    public void testFreshBoard() throws IOException {
+        GameBoard board = new GameBoard(new File("test/minesweeper/boards/test_board_5"));
+        Solver.Analysis analysis = new Solver(board).analyze();
+        assertEquals(0, analysis.getComponents());
+        Solver.Hint hint = analysis.getHint();
+        assertEquals("dig", hint.getCommand());
+        assertEquals(2.0 / 49, hint.getBombProbability(), 1e-9);
+        assertTrue("expected a guess", ! hint.isCertain());
+    }
+    
+    // covers single-cell deduction, dig a safe cell, flag a bomb, null hint
+    @Test
+    public void testSingleCell() throws IOException {
+        GameBoard board = new GameBoard(new File("test/minesweeper/boards/test_board_5"));
+        board.dig(0, 0);
+        Solver solver = new Solver(board);
+        Solver.Analysis analysis = solver.analyze();
+        assertEquals(2, analysis.getComponents());
+        assertArrayEquals(new int[] {0*7 + 4}, analysis.getSafeCells());
+        assertArrayEquals(new int[] {1*7 + 4, 6*7 + 0}, analysis.getBombCells());
+        assertEquals("dig 4 0 (safe)", analysis.getHint().toString());
+        
+        board.dig(4, 0);
+        assertEquals("flag 4 1 (bomb)", solver.hint().toString());
+        board.flag(4, 1);
+        board.flag(0, 6);
+        assertNull(solver.hint());
+    }
+    
+    // covers subset deduction, flag on a safe cell, deflag a safe cell
+    @Test
+    public void testSubset() throws IOException {
+        GameBoard board = new GameBoard(new File("test/minesweeper/boards/solver_subset"));
+        board.dig(0, 0);
+        board.dig(1, 0);
+        board.dig(2, 0);
+        Solver solver = new Solver(board);
+        Solver.Analysis analysis = solver.analyze();
+        assertArrayEquals(new int[] {4}, analysis.getSafeCells());
+        assertArrayEquals(new int[] {3, 5}, analysis.getBombCells());
+        assertEquals("dig 1 1 (safe)", analysis.getHint().toString());
+        
+        // flags are not trusted
+        board.flag(1, 1);
+        assertEquals("deflag 1 1 (safe)", solver.hint().toString());
+    }
+    
+    // covers no deduction, guess on the frontier
+    @Test
+    public void testProbability() throws IOException {
+        GameBoard board = new GameBoard(new File("test/minesweeper/boards/solver_guess"));
+        board.dig(0, 0);
+        Solver.Analysis analysis = new Solver(board).analyze();
+        assertEquals(1, analysis.getComponents());
+        assertEquals(0, analysis.getSafeCells().length);
+        assertEquals(0, analysis.getBombCells().length);
+        for (int x = 0; x < 2; x++) {
+            for (int y = 0; y < 2; y++) {
+                double expected = x == 0 && y == 0 ? 0 : 1.0 / 3;
+                assertEquals(expected, analysis.getBombProbability(x, y), 1e-9);
+            }
+        }
+        assertEquals("dig 1 0 (bomb probability 0.33)", analysis.getHint().toString());
+    }
+    
+    // covers many components, previous analysis of the same board and of a changed board
+    @Test
+    public void testIncremental() {
+        GameBoard board = new GameBoard(40, 40, 42);
+        for (int i = 0; i < 40; i += 6) {
+            board.dig(i, i);
+            board.dig(39 - i, i);
+        }
+        Solver solver = new Solver(board);
+        Solver.Analysis first = solver.analyze();
+        assertTrue("expected many components", first.getComponents() > 3);
+        assertEquals(first.getComponents(), first.getComponentsSolved());
+        
+        Solver.Analysis same = solver.analyze();
+        assertEquals(first.getComponents(), same.getComponents());
+        assertEquals(0, same.getComponentsSolved());
+        
+        Solver.Hint hint = same.getHint();
+        board.dig(hint.getX(), hint.getY());
+        Solver.Analysis changed = solver.analyze();
+        assertTrue("expected a component to be solved again", changed.getComponentsSolved() >= 1);
+        assertTrue("expected other components to be cached",
+                changed.getComponentsSolved() < changed.getComponents());
+    }
+}
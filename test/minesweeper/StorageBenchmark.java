@@ -0,0 +1,144 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+
+/**
+ * Compares the memory and speed of GameBoard on each kind of CellStorage. Not a JUnit test: run
+ * main() directly, with assertions disabled, optionally with the side of the board (default SIDE).
+ *
+ * <p>For each storage, builds a random SIDE x SIDE board, then flags and deflags FLAGS random
+ * cells, then digs every cell in random order (including flood fills and booms), and prints:
+ * <pre>
+ *      build ms   time to build the board
+ *      new MB     memory retained by the new board, on the heap and in direct memory
+ *      flag ns    time per flag or deflag
+ *      flagged MB memory retained after the flags
+ *      dig ns     time per dig
+ *      dug MB     memory retained after digging every cell
+ * </pre>
+ * "sparse" starts with every cell 0, and is filled in as the board places its bombs; "sparse
+ * board" starts with the cells of a board, computed from a seed (with other bombs than the rest).
+ * Times are CPU time of the thread that plays, and the best of ROUNDS rounds; memory is measured
+ * after full collections, in the last round.
+ */
+public class StorageBenchmark {
+
+    private static final int SIDE = 2048;
+    private static final int ROUNDS = 3;
+    private static final int FLAGS = 2_000_000;
+    private static final long SEED = 6031;
+    private static final String[] STORAGES = { "heap", "off-heap", "chunked", "sparse", "sparse board" };
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    // the last board measured, kept reachable until its memory was measured
+    private static volatile GameBoard measured;
+
+    /**
+     * @param storage one of STORAGES
+     * @param side side of the board
+     * @return new board with its cells in that storage
+     */
+    private static GameBoard build(String storage, int side) {
+        switch (storage) {
+        case "heap": return new GameBoard(side, side, SEED, new HeapCellStorage(side * side));
+        case "off-heap": return new GameBoard(side, side, SEED, OffHeapCellStorage.allocate(side * side));
+        case "chunked": return new GameBoard(side, side, SEED, new ChunkedCellStorage(side * side));
+        case "sparse": return new GameBoard(side, side, SEED, new SparseCellStorage(side * side));
+        case "sparse board": return new GameBoard(side, side, new SparseCellStorage(side, side, SEED));
+        default: throw new IllegalArgumentException(storage);
+        }
+    }
+
+    /**
+     * @return bytes used on the heap and in direct memory, after full collections
+     */
+    private static long usedMemory() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        long used = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            used += pool.getMemoryUsed();
+        }
+        return used;
+    }
+
+    /**
+     * Plays one round on a new board, which is garbage when the round returns.
+     *
+     * @param storage one of STORAGES
+     * @param side side of the board
+     * @param order every cell of the board, in random order
+     * @param flags cells to flag and deflag in turn
+     * @return build ms, new MB, flag ns, flagged MB, dig ns and dug MB
+     */
+    private static double[] round(String storage, int side, int[] order, int[] flags) {
+        double[] result = new double[6];
+        long before = usedMemory();
+        long start = THREADS.getCurrentThreadCpuTime();
+        GameBoard board = build(storage, side);
+        result[0] = (THREADS.getCurrentThreadCpuTime() - start) / 1e6;
+        result[1] = (usedMemory() - before) / 1e6;
+
+        start = THREADS.getCurrentThreadCpuTime();
+        for (int i = 0; i < flags.length; i++) {
+            int index = flags[i];
+            if ((i & 1) == 0) {
+                board.flag(index % side, index / side);
+            } else {
+                board.deflag(index % side, index / side);
+            }
+        }
+        result[2] = (THREADS.getCurrentThreadCpuTime() - start) / (double) flags.length;
+        result[3] = (usedMemory() - before) / 1e6;
+
+        start = THREADS.getCurrentThreadCpuTime();
+        for (int index : order) {
+            board.dig(index % side, index / side);
+        }
+        result[4] = (THREADS.getCurrentThreadCpuTime() - start) / (double) order.length;
+        result[5] = (usedMemory() - before) / 1e6;
+        measured = board;
+        return result;
+    }
+
+    /**
+     * Runs the benchmark and prints a table.
+     *
+     * @param args optional side of the board
+     */
+    public static void main(String[] args) {
+        int side = args.length > 0 ? Integer.parseInt(args[0]) : SIDE;
+        Random random = new Random(1);
+        int[] order = new int[side * side];
+        for (int index = 0; index < order.length; index++) {
+            int other = random.nextInt(index + 1);
+            order[index] = order[other];
+            order[other] = index;
+        }
+        int[] flags = new int[FLAGS];
+        for (int i = 0; i < FLAGS; i++) {
+            flags[i] = random.nextInt(side * side);
+        }
+        System.out.printf("%dx%d board%n", side, side);
+        System.out.printf("%13s %9s %8s %8s %10s %8s %8s%n", "storage", "build ms", "new MB", "flag ns",
+                "flagged MB", "dig ns", "dug MB");
+        for (String storage : STORAGES) {
+            double[] best = round(storage, side, order, flags);
+            for (int round = 1; round < ROUNDS; round++) {
+                double[] result = round(storage, side, order, flags);
+                // best times, and the memory of the last round
+                for (int column = 0; column < result.length; column++) {
+                    best[column] = column % 2 == 0 ? Math.min(best[column], result[column]) : result[column];
+                }
+            }
+            System.out.printf("%13s %9.0f %8.1f %8.1f %10.1f %8.1f %8.1f%n", storage, best[0], best[1], best[2],
+                    best[3], best[4], best[5]);
+        }
+    }
+}
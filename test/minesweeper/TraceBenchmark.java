@@ -0,0 +1,63 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures what tracing costs per command: beginning a trace, marking every phase and ending it,
+ * with tracing off, with a slow-request log that no command reaches, and with Flight Recorder
+ * events on but no recording running, for which CommandEvent must be built from src-jfr. Not a
+ * JUnit test: run main() directly, with assertions disabled.
+ *
+ * <p>For each way of tracing, prints:
+ * <pre>
+ *      ns/command      nanoseconds per command traced, best of ROUNDS
+ *      bytes/command   bytes allocated per command traced
+ * </pre>
+ */
+public class TraceBenchmark {
+
+    private static final int COMMANDS = 1_000_000;
+    private static final int ROUNDS = 5;
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * Traces COMMANDS commands with every phase marked, and prints a line.
+     *
+     * @param way name of the way of tracing
+     * @param tracer tracer to trace with
+     */
+    private static void measure(String way, CommandTracer tracer) {
+        long best = Long.MAX_VALUE;
+        long allocated = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long allocatedBefore = THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+            long start = System.nanoTime();
+            for (int command = 0; command < COMMANDS; command++) {
+                tracer.begin("dig 3 4");
+                for (int mark = CommandTracer.THROTTLED; mark <= CommandTracer.WRITTEN; mark++) {
+                    tracer.mark(mark);
+                }
+                tracer.end();
+            }
+            best = Math.min(best, System.nanoTime() - start);
+            allocated = THREADS.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocatedBefore;
+        }
+        System.out.printf("%-10s %14.1f %14.2f%n", way, (double) best / COMMANDS, (double) allocated / COMMANDS);
+    }
+
+    /**
+     * Runs the benchmark and prints a table.
+     *
+     * @param args unused
+     */
+    public static void main(String[] args) {
+        System.out.printf("%-10s %14s %14s%n", "tracing", "ns/command", "bytes/command");
+        measure("off", new CommandTracer(-1, false, null));
+        measure("slow-log", new CommandTracer(60_000, false, System.err::println));
+        measure("events", new CommandTracer(-1, true, null));
+    }
+}
@@ -0,0 +1,84 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import java.util.Random;
+
+/**
+ * Measures the memory that undo history takes per move, and how long moves, undo and redo take,
+ * on boards of growing size. Not a JUnit test: run main() directly, with assertions disabled.
+ *
+ * <p>For each board size, makes MOVES random flags and deflags (and a few digs) on a board with
+ * an undo depth of MOVES, then undoes and redoes them all, one at a time and at once. Prints:
+ * <pre>
+ *      bytes/move   heap kept by the history per move: what disabling undo frees, after garbage
+ *                   collection
+ *      copy/move    bytes per move if each move kept a copy of the whole board, for comparison
+ *      move us      microseconds per move, with the history kept
+ *      undo us      microseconds per undo of one move
+ *      jump us      microseconds to undo all MOVES moves at once, then redo them at once
+ * </pre>
+ */
+public class UndoBenchmark {
+
+    private static final int[] SIZES = { 100, 1000, 4000 };
+    private static final int MOVES = 2000;
+
+    /**
+     * @return bytes of heap in use, after collecting garbage
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Runs the benchmark and prints a table.
+     *
+     * @param args unused
+     */
+    public static void main(String[] args) {
+        System.out.printf("%9s %12s %12s %10s %10s %10s%n", "board", "bytes/move", "copy/move", "move us",
+                "undo us", "jump us");
+        for (int size : SIZES) {
+            GameBoard board = new GameBoard(size, size, 6031);
+            board.setUndoDepth(MOVES);
+            Random random = new Random(size);
+            long start = System.nanoTime();
+            for (int move = 0; move < MOVES; move++) {
+                int x = random.nextInt(size);
+                int y = random.nextInt(size);
+                if (move % 50 == 0) {
+                    board.dig(x, y);
+                } else if (board.getStatus(x, y).equals("flagged")) {
+                    board.deflag(x, y);
+                } else {
+                    board.flag(x, y);
+                }
+            }
+            long moveNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int move = 0; move < MOVES; move++) {
+                board.undo(1);
+            }
+            long undoNanos = System.nanoTime() - start;
+            board.redo(MOVES);
+            start = System.nanoTime();
+            board.undo(MOVES);
+            board.redo(MOVES);
+            long jumpNanos = System.nanoTime() - start;
+            // what the history keeps is what disabling undo frees
+            long withHistory = usedHeap();
+            board.setUndoDepth(0);
+            long kept = withHistory - usedHeap();
+
+            System.out.printf("%4dx%-4d %12.0f %12d %10.2f %10.2f %10.2f%n", size, size, (double) kept / MOVES,
+                    (long) size * size, moveNanos / 1e3 / MOVES, undoNanos / 1e3 / MOVES, jumpNanos / 1e3);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+/**
+ * Tests UndoHistory.
+ */
+public class UndoHistoryTest {
+    /*
+     * Testing Strategy:
+     *  capacity: 1, > 1
+     *  states: one, fewer than the capacity, more (oldest evicted, several times around the ring)
+     *  undo, redo: 0 steps, within the states, past the oldest or newest --> stops there
+     *  record after undo --> states to redo dropped
+     */
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // covers capacity 1
+    @Test
+    public void testCapacityOne() {
+        UndoHistory<String> history = new UndoHistory<>(1, "a");
+        assertNull(history.undo(1));
+        history.record("b");
+        assertEquals(0, history.undoable());
+        assertNull(history.undo(1));
+        assertNull(history.redo(1));
+    }
+
+    // covers fewer states than the capacity, 0 steps, within the states, past the ends
+    @Test
+    public void testUndoRedo() {
+        UndoHistory<String> history = new UndoHistory<>(10, "a");
+        history.record("b");
+        history.record("c");
+        history.record("d");
+        assertNull(history.undo(0));
+        assertEquals("c", history.undo(1));
+        assertEquals("a", history.undo(5));
+        assertEquals(0, history.undoable());
+        assertEquals(3, history.redoable());
+        assertEquals("c", history.redo(2));
+        assertEquals("d", history.redo(5));
+        assertNull(history.redo(1));
+    }
+
+    // covers record after undo
+    @Test
+    public void testRecordDropsRedo() {
+        UndoHistory<String> history = new UndoHistory<>(10, "a");
+        history.record("b");
+        history.record("c");
+        history.undo(2);
+        history.record("x");
+        assertEquals(0, history.redoable());
+        assertEquals(1, history.undoable());
+        assertEquals("a", history.undo(1));
+        assertEquals("x", history.redo(1));
+    }
+
+    // covers more states than the capacity, several times around the ring
+    @Test
+    public void testEviction() {
+        UndoHistory<Integer> history = new UndoHistory<>(4, 0);
+        for (int state = 1; state <= 10; state++) {
+            history.record(state);
+        }
+        assertEquals(3, history.undoable());
+        assertEquals(Integer.valueOf(7), history.undo(100));
+        assertEquals(Integer.valueOf(10), history.redo(100));
+        history.undo(2);
+        history.record(11);
+        assertEquals(Integer.valueOf(7), history.undo(100));
+        assertEquals(Integer.valueOf(11), history.redo(100));
+    }
+}
@@ -0,0 +1,27 @@
+/* Copyright (c) 2007-2017 MIT 6.005/6.031 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package minesweeper;
+
+import org.junit.After;
+import org.junit.Before;
+
+/**
+ * Runs every test of GameBoardTest on boards whose cells are in VersionedCellStorage.
+ */
+public class VersionedGameBoardTest extends GameBoardTest {
+    /*
+     * Testing Strategy:
+     *  as GameBoardTest, for boards made by the public constructors with versioned storage
+     */
+
+    @Before
+    public void useVersionedStorage() {
+        GameBoard.setDefaultStorage(VersionedCellStorage::new);
+    }
+
+    @After
+    public void useHeapStorage() {
+        GameBoard.setDefaultStorage(HeapCellStorage::new);
+    }
+}